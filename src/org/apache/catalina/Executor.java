@@ -0,0 +1,56 @@
+package org.apache.catalina;
+
+
+/**
+ * An <strong>Executor</strong> is a named pool of threads, owned by a
+ * <code>Service</code>, which may be shared by several of the Connectors
+ * of this Service to process their requests.  Connectors refer to the
+ * Executor they use by name.
+ */
+
+public interface Executor extends Lifecycle {
+
+
+    // ------------------------------------------------------------- Properties
+
+
+    /**
+     * Return the number of threads which are currently executing a task.
+     */
+    public int getActiveCount();
+
+
+    /**
+     * Return the name of this Executor, which is used by the Connectors to
+     * refer to it.
+     */
+    public String getName();
+
+
+    /**
+     * Return the number of threads currently in the pool.
+     */
+    public int getPoolSize();
+
+
+    /**
+     * Return the number of tasks waiting for a thread to become available.
+     */
+    public int getQueueSize();
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Execute the specified task on one of the threads of this pool.
+     * Return <code>false</code> if the task was rejected, because the
+     * Executor is not started or because its queue is full, in which case
+     * the caller remains responsible for any resources held by the task.
+     *
+     * @param task The task to be executed
+     */
+    public boolean execute(Runnable task);
+
+
+}
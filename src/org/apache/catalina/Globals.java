@@ -98,6 +98,24 @@ public final class Globals {
         "javax.servlet.error.message";
 
 
+    /**
+     * The request note under which the connector stores the time (as an
+     * object of type Long, in microseconds) a new connection waited for
+     * the first byte of its first request.
+     */
+    public static final String FIRST_BYTE_TIME_NOTE =
+        "org.apache.catalina.time.firstByte";
+
+
+    /**
+     * The request note under which the connector stores the time (as an
+     * object of type Long, in microseconds) taken to receive and parse the
+     * request headers, after the request line.
+     */
+    public static final String HEADERS_TIME_NOTE =
+        "org.apache.catalina.time.headers";
+
+
     /**
      * The request attribute under which the Invoker servlet will store
      * the invoking servlet path, if it was used to execute a servlet
@@ -107,6 +125,15 @@ public final class Globals {
         "org.apache.catalina.INVOKED";
 
 
+    /**
+     * The request note under which the connector stores the value of
+     * <code>System.nanoTime()</code> (as an object of type Long) when it
+     * passed the request to its Container.
+     */
+    public static final String INVOKE_START_NOTE =
+        "org.apache.catalina.time.invokeStart";
+
+
     /**
      * The request attribute under which we expose the value of the
      * <code>&lt;jsp-file&gt;</code> value associated with this servlet,
@@ -172,6 +199,52 @@ public final class Globals {
         "javax.servlet.include.request_uri";
 
 
+    /**
+     * The request note under which the connector stores the time (as an
+     * object of type Long, in microseconds) taken to receive and parse the
+     * request line, from its first byte.
+     */
+    public static final String REQUEST_LINE_TIME_NOTE =
+        "org.apache.catalina.time.requestLine";
+
+
+    /**
+     * The request attribute under which the connector indicates (as an
+     * object of type Boolean) that it can write the content of a file
+     * directly to the client.
+     */
+    public static final String SENDFILE_SUPPORTED_ATTR =
+        "org.apache.catalina.sendfile.support";
+
+
+    /**
+     * The request attribute under which a servlet asks the connector to
+     * write the content of the file with the specified canonical path
+     * (as an object of type String) directly to the client, once the
+     * response headers have been sent.
+     */
+    public static final String SENDFILE_FILENAME_ATTR =
+        "org.apache.catalina.sendfile.filename";
+
+
+    /**
+     * The request attribute under which a servlet stores the offset of the
+     * first byte of the file (as an object of type Long) which should be
+     * written by the connector.
+     */
+    public static final String SENDFILE_FILE_START_ATTR =
+        "org.apache.catalina.sendfile.start";
+
+
+    /**
+     * The request attribute under which a servlet stores the offset
+     * following the last byte of the file (as an object of type Long) which
+     * should be written by the connector.
+     */
+    public static final String SENDFILE_FILE_END_ATTR =
+        "org.apache.catalina.sendfile.end";
+
+
     /**
      * The request attribute under which we forward a servlet name to
      * an error page.
@@ -227,4 +300,29 @@ public final class Globals {
         "javax.servlet.context.tempdir";
 
 
+    /**
+     * The request attribute under which the connector lets servlets
+     * suspend the request (as an object of type
+     * <code>java.util.concurrent.Callable</code>), when it supports it.
+     * Calling the <code>Callable</code> suspends the request, as
+     * <code>Request.suspend()</code> does, and returns a
+     * <code>Runnable</code> which resumes it, from any thread, as
+     * <code>Request.resume()</code> does.
+     */
+    public static final String SUSPEND_ATTR =
+        "org.apache.catalina.suspend";
+
+
+    /**
+     * The request attribute under which the connector indicates (as an
+     * object of type Boolean) whether the content written so far to the
+     * response has been handed to the network, when it writes responses
+     * without waiting for slow clients.  Servlets streaming content may
+     * stop producing it while this is <code>Boolean.FALSE</code>.  The
+     * value is computed each time the attribute is read.
+     */
+    public static final String WRITE_READY_ATTR =
+        "org.apache.catalina.writeReady";
+
+
 }
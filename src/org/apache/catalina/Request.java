@@ -246,6 +246,13 @@ public interface Request {
     public Iterator getNoteNames();
 
 
+    /**
+     * Return <code>true</code> if this request has been suspended, and has
+     * not been resumed yet.
+     */
+    public boolean isSuspended();
+
+
     /**
      * Release all object references, and initialize instance variables, in
      * preparation for reuse of this object.
@@ -262,6 +269,19 @@ public interface Request {
     public void removeNote(String name);
 
 
+    /**
+     * Resume this suspended request, which is complete.  The connector
+     * finishes the response, and goes on with the next request received on
+     * the same connection, if any.  This method may be called from any
+     * thread, including before the Container returns from
+     * <code>invoke()</code>, but the request and its response must not be
+     * used anymore afterwards.
+     *
+     * @exception IllegalStateException if this request is not suspended
+     */
+    public void resume();
+
+
     /**
      * Set the content length associated with this Request.
      *
@@ -342,4 +362,22 @@ public interface Request {
     public void setServerPort(int port);
 
 
+    /**
+     * Suspend this request, so that it can be completed later, from any
+     * thread, by calling <code>resume()</code>.  When the Container returns
+     * from <code>invoke()</code>, the connector does not finish the
+     * response, and releases the thread processing the request instead;
+     * the request and its response remain usable until the request is
+     * resumed.  This allows long-poll and streaming requests not to hold a
+     * request processing thread while they are waiting.  Servlets, which
+     * only see the request facade, suspend the request through the handle
+     * stored under the <code>Globals.SUSPEND_ATTR</code> request
+     * attribute.
+     *
+     * @exception IllegalStateException if the connector does not support
+     *  suspending requests, or if this request is already suspended
+     */
+    public void suspend();
+
+
 }
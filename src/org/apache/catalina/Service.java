@@ -149,12 +149,36 @@ public interface Service {
     public void addConnector(Connector connector);
 
 
+    /**
+     * Add a new Executor to the set of Executors which may be shared by the
+     * Connectors of this Service.
+     *
+     * @param executor The Executor to be added
+     */
+    public void addExecutor(Executor executor);
+
+
     /**
      * Find and return the set of Connectors associated with this Service.
      */
     public Connector[] findConnectors();
 
 
+    /**
+     * Find and return the set of Executors associated with this Service.
+     */
+    public Executor[] findExecutors();
+
+
+    /**
+     * Return the Executor with the specified name, or <code>null</code> if
+     * there is no such Executor.
+     *
+     * @param name Name of the requested Executor
+     */
+    public Executor getExecutor(String name);
+
+
     /**
      * Remove the specified Connector from the set associated from this
      * Service.  The removed Connector will also be disassociated from our
@@ -164,6 +188,16 @@ public interface Service {
      */
     public void removeConnector(Connector connector);
 
+
+    /**
+     * Remove the specified Executor from the set associated with this
+     * Service.
+     *
+     * @param executor The Executor to be removed
+     */
+    public void removeExecutor(Executor executor);
+
+
     /**
      * Invoke a pre-startup initialization. This is used to allow connectors
      * to bind to restricted ports under Unix operating environments.
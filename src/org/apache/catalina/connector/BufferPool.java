@@ -0,0 +1,149 @@
+package org.apache.catalina.connector;
+
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+
+/**
+ * Pool of response buffers shared by all the responses of a Connector.
+ * Responses borrow a buffer when they first write content, and give it back
+ * when they are recycled, so that idle processors do not hold on to any
+ * buffer.  Only buffers of the default size of the pool are kept; larger
+ * buffers, requested through <code>setBufferSize()</code>, are allocated on
+ * the heap and discarded after use.
+ */
+
+public final class BufferPool {
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Construct a new buffer pool.
+     *
+     * @param bufferSize The size of the pooled buffers
+     * @param maxBuffers The maximum number of idle buffers kept by this
+     *  pool, or -1 for no limit
+     * @param direct Should the pooled buffers be direct buffers?
+     */
+    public BufferPool(int bufferSize, int maxBuffers, boolean direct) {
+
+        super();
+        this.bufferSize = bufferSize;
+        this.maxBuffers = maxBuffers;
+        this.direct = direct;
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The size of the pooled buffers.
+     */
+    private int bufferSize = 0;
+
+
+    /**
+     * The idle buffers of this pool.
+     */
+    private ArrayList buffers = new ArrayList();
+
+
+    /**
+     * Are the pooled buffers direct buffers?
+     */
+    private boolean direct = false;
+
+
+    /**
+     * The maximum number of idle buffers kept by this pool, or -1 for no
+     * limit.
+     */
+    private int maxBuffers = -1;
+
+
+    // ------------------------------------------------------------- Properties
+
+
+    /**
+     * Return the size of the pooled buffers.
+     */
+    public int getBufferSize() {
+
+        return (this.bufferSize);
+
+    }
+
+
+    /**
+     * Return <code>true</code> if the pooled buffers are direct buffers.
+     */
+    public boolean isDirect() {
+
+        return (this.direct);
+
+    }
+
+
+    /**
+     * Return the number of idle buffers currently held by this pool.
+     */
+    public int getIdleCount() {
+
+        synchronized (buffers) {
+            return (buffers.size());
+        }
+
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Return a cleared buffer of at least the specified size.
+     *
+     * @param size The minimum size of the buffer
+     */
+    public ByteBuffer allocate(int size) {
+
+        if (size > bufferSize)
+            return (ByteBuffer.allocate(size));
+
+        synchronized (buffers) {
+            int n = buffers.size();
+            if (n > 0)
+                return ((ByteBuffer) buffers.remove(n - 1));
+        }
+        if (direct)
+            return (ByteBuffer.allocateDirect(bufferSize));
+        else
+            return (ByteBuffer.allocate(bufferSize));
+
+    }
+
+
+    /**
+     * Give back a buffer obtained from <code>allocate()</code>.
+     *
+     * @param buffer The buffer to release
+     */
+    public void release(ByteBuffer buffer) {
+
+        if ((buffer.capacity() != bufferSize)
+            || (buffer.isDirect() != direct))
+            return;
+        buffer.clear();
+        synchronized (buffers) {
+            if ((maxBuffers < 0) || (buffers.size() < maxBuffers))
+                buffers.add(buffer);
+        }
+
+    }
+
+
+}
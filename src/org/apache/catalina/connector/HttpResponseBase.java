@@ -2,10 +2,10 @@ package org.apache.catalina.connector;
 
 
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
 // import java.net.URL;
 import java.security.AccessController;
 import java.security.PrivilegedExceptionAction;
@@ -126,6 +126,83 @@ public class HttpResponseBase
     protected static final TimeZone zone = TimeZone.getTimeZone("GMT");
 
 
+    /**
+     * The buffer in which the status line and headers are serialized.  It
+     * is reused for all the responses, and is only grown when the headers
+     * do not fit.
+     */
+    private byte[] headerBuffer = new byte[2048];
+
+
+    /**
+     * The number of bytes currently in the header buffer.
+     */
+    private int headerCount = 0;
+
+
+    /**
+     * The value of the <code>Date</code> header encoded in
+     * <code>dateLine</code>.
+     */
+    private String dateValue = null;
+
+
+    /**
+     * The encoded <code>Date</code> header line last sent by this response.
+     */
+    private byte[] dateLine = null;
+
+
+    /**
+     * The value of the <code>Server</code> header encoded in
+     * <code>serverLine</code>.
+     */
+    private String serverValue = null;
+
+
+    /**
+     * The encoded <code>Server</code> header line last sent by this
+     * response.
+     */
+    private byte[] serverLine = null;
+
+
+    /**
+     * The status codes for which the status line is pre-encoded.
+     */
+    private static final int COMMON_STATUS[] = {
+        SC_OK, SC_CREATED, SC_ACCEPTED, SC_NO_CONTENT, SC_PARTIAL_CONTENT,
+        SC_MOVED_PERMANENTLY, SC_MOVED_TEMPORARILY, SC_SEE_OTHER,
+        SC_NOT_MODIFIED, SC_TEMPORARY_REDIRECT, SC_BAD_REQUEST,
+        SC_UNAUTHORIZED, SC_FORBIDDEN, SC_NOT_FOUND, SC_METHOD_NOT_ALLOWED,
+        SC_PRECONDITION_FAILED, SC_REQUEST_ENTITY_TOO_LARGE,
+        SC_REQUESTED_RANGE_NOT_SATISFIABLE, SC_INTERNAL_SERVER_ERROR,
+        SC_NOT_IMPLEMENTED, SC_BAD_GATEWAY, SC_SERVICE_UNAVAILABLE
+    };
+
+
+    /**
+     * The pre-encoded HTTP/1.0 status lines, indexed by status code.
+     */
+    private static final byte[][] STATUS_LINES_10 = new byte[600][];
+
+
+    /**
+     * The pre-encoded HTTP/1.1 status lines, indexed by status code.
+     */
+    private static final byte[][] STATUS_LINES_11 = new byte[600][];
+
+
+    static {
+        for (int i = 0; i < COMMON_STATUS.length; i++) {
+            int status = COMMON_STATUS[i];
+            String line = " " + status + " " + statusMessage(status) + "\r\n";
+            STATUS_LINES_10[status] = ascii("HTTP/1.0" + line);
+            STATUS_LINES_11[status] = ascii("HTTP/1.1" + line);
+        }
+    }
+
+
     // ------------------------------------------------------------- Properties
 
 
@@ -320,6 +397,18 @@ public class HttpResponseBase
      */
     protected String getStatusMessage(int status) {
 
+        return (statusMessage(status));
+
+    }
+
+
+    /**
+     * Returns the default status message for the specified HTTP status code.
+     *
+     * @param status The status code for which a message is desired
+     */
+    private static String statusMessage(int status) {
+
         switch (status) {
         case SC_OK:
             return ("OK");
@@ -514,6 +603,8 @@ public class HttpResponseBase
 
     /**
      * Send the HTTP response headers, if this has not already occurred.
+     * The headers are serialized in a reusable buffer, and actually written
+     * together with the first buffer of content.
      */
     protected void sendHeaders() throws IOException {
 
@@ -526,37 +617,40 @@ public class HttpResponseBase
             return;
         }
 
-        // Prepare a suitable output writer
-        OutputStreamWriter osr = null;
-        try {
-            osr = new OutputStreamWriter(getStream(), getCharacterEncoding());
-        } catch (UnsupportedEncodingException e) {
-            osr = new OutputStreamWriter(getStream());
+        // Serialize the status line and headers in our header buffer
+        headerCount = 0;
+        byte[] statusLine = null;
+        if ((status >= 0) && (status < STATUS_LINES_11.length)
+            && (message != null) && message.equals(statusMessage(status))) {
+            String protocol = this.getProtocol();
+            if ("HTTP/1.1".equals(protocol))
+                statusLine = STATUS_LINES_11[status];
+            else if ("HTTP/1.0".equals(protocol))
+                statusLine = STATUS_LINES_10[status];
         }
-        final PrintWriter outputWriter = new PrintWriter(osr);
-
-        // Send the "Status:" header
-        outputWriter.print(this.getProtocol());
-        outputWriter.print(" ");
-        outputWriter.print(status);
-        if (message != null) {
-            outputWriter.print(" ");
-            outputWriter.print(message);
+        if (statusLine != null) {
+            appendHeader(statusLine);
+        } else {
+            appendHeader(this.getProtocol());
+            appendHeader(" ");
+            appendHeader(String.valueOf(status));
+            if (message != null) {
+                appendHeader(" ");
+                appendHeader(message);
+            }
+            appendHeader("\r\n");
         }
-        outputWriter.print("\r\n");
-        // System.out.println("sendHeaders: " +
-        //                    request.getRequest().getProtocol() +
-        //                    " " + status + " " + message);
 
         // Send the content-length and content-type headers (if any)
         if (getContentType() != null) {
-            outputWriter.print("Content-Type: " + getContentType() + "\r\n");
-            // System.out.println(" Content-Type: " + getContentType());
+            appendHeader("Content-Type: ");
+            appendHeader(getContentType());
+            appendHeader("\r\n");
         }
         if (getContentLength() >= 0) {
-            outputWriter.print("Content-Length: " + getContentLength() +
-                               "\r\n");
-            // System.out.println(" Content-Length: " + getContentLength());
+            appendHeader("Content-Length: ");
+            appendHeader(String.valueOf(getContentLength()));
+            appendHeader("\r\n");
         }
 
         // Send all specified headers (if any)
@@ -568,16 +662,64 @@ public class HttpResponseBase
             Iterator items = values.iterator();
             while (items.hasNext()) {
                 String value = (String) items.next();
-                    outputWriter.print(name);
-                    outputWriter.print(": ");
-                    outputWriter.print(value);
-                    outputWriter.print("\r\n");
-                    // System.out.println(" " + name + ": " + value);
+                    // The Date and Server values are usually the same
+                    // String instances from one response to the next, in
+                    // which case their encoded lines are reused
+                    if ((value != null) && "Date".equals(name)) {
+                        if (value != dateValue) {
+                            dateLine = encodeHeader(name, value);
+                            dateValue = value;
+                        }
+                        appendHeader(dateLine);
+                    } else if ((value != null) && "Server".equals(name)) {
+                        if (value != serverValue) {
+                            serverLine = encodeHeader(name, value);
+                            serverValue = value;
+                        }
+                        appendHeader(serverLine);
+                    } else {
+                        appendHeader(name);
+                        appendHeader(": ");
+                        appendHeader(String.valueOf(value));
+                        appendHeader("\r\n");
+                    }
                 }
             }
         }
 
         // Add the session ID cookie if necessary
+        addSessionCookie();
+
+        // Send all specified cookies (if any)
+        synchronized (cookies) {
+            Iterator items = cookies.iterator();
+            while (items.hasNext()) {
+                Cookie cookie = (Cookie) items.next();
+                appendHeader(CookieTools.getCookieHeaderName(cookie));
+                appendHeader(": ");
+                appendHeader(CookieTools.getCookieHeaderValue(cookie));
+                appendHeader("\r\n");
+            }
+        }
+
+        // Send a terminating blank line to mark the end of the headers
+        appendHeader("\r\n");
+
+        // The headers are written together with the first buffer of content
+        prefix = ByteBuffer.wrap(headerBuffer, 0, headerCount);
+
+        // The response is now committed
+        committed = true;
+
+    }
+
+
+    /**
+     * Add the session ID cookie to the cookies of this response, if a new
+     * session has been created while processing the request.
+     */
+    protected void addSessionCookie() {
+
         HttpServletRequest hreq = (HttpServletRequest) request.getRequest();
         HttpSession session = hreq.getSession(false);
 
@@ -599,30 +741,6 @@ public class HttpResponseBase
             addCookie(cookie);
         }
 
-        // Send all specified cookies (if any)
-        synchronized (cookies) {
-            Iterator items = cookies.iterator();
-            while (items.hasNext()) {
-                Cookie cookie = (Cookie) items.next();
-                outputWriter.print(CookieTools.getCookieHeaderName(cookie));
-                outputWriter.print(": ");
-                outputWriter.print(CookieTools.getCookieHeaderValue(cookie));
-                outputWriter.print("\r\n");
-                //System.out.println(" " +
-                //                   CookieTools.getCookieHeaderName(cookie) +
-                //                   ": " +
-                //                  CookieTools.getCookieHeaderValue(cookie));
-            }
-        }
-
-        // Send a terminating blank line to mark the end of the headers
-        outputWriter.print("\r\n");
-        outputWriter.flush();
-        // System.out.println("----------");
-
-        // The response is now committed
-        committed = true;
-
     }
 
 
@@ -698,6 +816,114 @@ public class HttpResponseBase
     }
 
 
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Return the specified US-ASCII String encoded as bytes.
+     *
+     * @param str The String to encode
+     */
+    private static byte[] ascii(String str) {
+
+        int len = str.length();
+        byte[] bytes = new byte[len];
+        for (int i = 0; i < len; i++)
+            bytes[i] = (byte) str.charAt(i);
+        return (bytes);
+
+    }
+
+
+    /**
+     * Append the specified bytes to the header buffer.
+     *
+     * @param bytes The bytes to append
+     */
+    private void appendHeader(byte[] bytes) {
+
+        ensureHeaderCapacity(bytes.length);
+        System.arraycopy(bytes, 0, headerBuffer, headerCount, bytes.length);
+        headerCount += bytes.length;
+
+    }
+
+
+    /**
+     * Append the specified String to the header buffer.  US-ASCII strings
+     * are copied directly, others are encoded using the character encoding
+     * of this response.
+     *
+     * @param str The String to append
+     */
+    private void appendHeader(String str) {
+
+        int len = str.length();
+        ensureHeaderCapacity(len);
+        int start = headerCount;
+        for (int i = 0; i < len; i++) {
+            char c = str.charAt(i);
+            if (c >= 0x80) {
+                headerCount = start;
+                appendHeader(encode(str));
+                return;
+            }
+            headerBuffer[headerCount++] = (byte) c;
+        }
+
+    }
+
+
+    /**
+     * Return the specified String encoded using the character encoding of
+     * this response.
+     *
+     * @param str The String to encode
+     */
+    private byte[] encode(String str) {
+
+        try {
+            return (str.getBytes(getCharacterEncoding()));
+        } catch (UnsupportedEncodingException e) {
+            return (str.getBytes());
+        }
+
+    }
+
+
+    /**
+     * Return the encoded header line for the specified header.
+     *
+     * @param name The header name
+     * @param value The header value
+     */
+    private byte[] encodeHeader(String name, String value) {
+
+        return (encode(name + ": " + value + "\r\n"));
+
+    }
+
+
+    /**
+     * Make sure that the specified number of bytes can be appended to the
+     * header buffer, growing it if necessary.
+     *
+     * @param len The number of bytes to be appended
+     */
+    private void ensureHeaderCapacity(int len) {
+
+        if (headerCount + len <= headerBuffer.length)
+            return;
+        int size = headerBuffer.length * 2;
+        if (size < headerCount + len)
+            size = headerCount + len;
+        byte[] newBuffer = new byte[size];
+        System.arraycopy(headerBuffer, 0, newBuffer, 0, headerCount);
+        headerBuffer = newBuffer;
+
+    }
+
+
     // ------------------------------------------------ ServletResponse Methods
 
 
@@ -191,6 +191,18 @@ public abstract class RequestBase
     protected Socket socket = null;
 
 
+    /**
+     * Has this suspended request been resumed?
+     */
+    protected boolean resumed = false;
+
+
+    /**
+     * Has this request been suspended?
+     */
+    protected boolean suspended = false;
+
+
     /**
      * The ServletInputStream that has been returned by
      * <code>getInputStream()</code>, if any.
@@ -483,6 +495,17 @@ public abstract class RequestBase
     }
 
 
+    /**
+     * Return <code>true</code> if this request has been suspended, and has
+     * not been resumed yet.
+     */
+    public synchronized boolean isSuspended() {
+
+        return (suspended && !resumed);
+
+    }
+
+
     /**
      * Release all object references, and initialize instance variables, in
      * preparation for reuse of this object.
@@ -511,6 +534,10 @@ public abstract class RequestBase
         socket = null;
         stream = null;
         wrapper = null;
+        synchronized (this) {
+            suspended = false;
+            resumed = false;
+        }
 
     }
 
@@ -530,6 +557,25 @@ public abstract class RequestBase
     }
 
 
+    /**
+     * Resume this suspended request, which is complete, and notify the
+     * connector by calling <code>resumed()</code>.
+     *
+     * @exception IllegalStateException if this request is not suspended
+     */
+    public void resume() {
+
+        synchronized (this) {
+            if (!suspended || resumed)
+                throw new IllegalStateException
+                    (sm.getString("requestBase.resume.ise"));
+            resumed = true;
+        }
+        resumed();
+
+    }
+
+
     /**
      * Set the content length associated with this Request.
      *
@@ -661,6 +707,53 @@ public abstract class RequestBase
     }
 
 
+    /**
+     * Suspend this request, so that it can be completed later by calling
+     * <code>resume()</code>, if the connector supports it.
+     *
+     * @exception IllegalStateException if the connector does not support
+     *  suspending requests, or if this request is already suspended
+     */
+    public synchronized void suspend() {
+
+        if (!isSuspendable())
+            throw new IllegalStateException
+                (sm.getString("requestBase.suspend.unsupported"));
+        if (suspended)
+            throw new IllegalStateException
+                (sm.getString("requestBase.suspend.ise"));
+        suspended = true;
+
+    }
+
+
+    // ------------------------------------------------------ Protected Methods
+
+
+    /**
+     * Return <code>true</code> if the connector which received this request
+     * supports suspending it.  The default implementation returns
+     * <code>false</code>.
+     */
+    protected boolean isSuspendable() {
+
+        return (false);
+
+    }
+
+
+    /**
+     * Called when this suspended request has been resumed, so that the
+     * connector finishes the response.  The default implementation does
+     * nothing.
+     */
+    protected void resumed() {
+
+        ;
+
+    }
+
+
     // ------------------------------------------------- ServletRequest Methods
 
 
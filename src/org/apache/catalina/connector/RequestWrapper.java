@@ -343,6 +343,17 @@ public abstract class RequestWrapper implements Request {
     }
 
 
+    /**
+     * Return <code>true</code> if this request has been suspended, and has
+     * not been resumed yet.
+     */
+    public boolean isSuspended() {
+
+        return (request.isSuspended());
+
+    }
+
+
     /**
      * Release all object references, and initialize instance variables, in
      * preparation for reuse of this object.
@@ -354,6 +365,18 @@ public abstract class RequestWrapper implements Request {
     }
 
 
+    /**
+     * Resume this suspended request, which is complete.
+     *
+     * @exception IllegalStateException if this request is not suspended
+     */
+    public void resume() {
+
+        request.resume();
+
+    }
+
+
     /**
      * Set the content length associated with this Request.
      *
@@ -456,4 +479,18 @@ public abstract class RequestWrapper implements Request {
     }
 
 
+    /**
+     * Suspend this request, so that it can be completed later by calling
+     * <code>resume()</code>.
+     *
+     * @exception IllegalStateException if the connector does not support
+     *  suspending requests, or if this request is already suspended
+     */
+    public void suspend() {
+
+        request.suspend();
+
+    }
+
+
 }
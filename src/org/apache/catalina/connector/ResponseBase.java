@@ -5,6 +5,9 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Locale;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.ServletResponse;
@@ -42,15 +45,24 @@ public abstract class ResponseBase
 
 
     /**
-     * The buffer through which all of our output bytes are passed.
+     * The buffer through which all of our output bytes are passed.  It is
+     * allocated when the first byte is written, and contains the bytes
+     * which have not been written to the output stream yet between its
+     * start and its position.
      */
-    protected byte[] buffer = new byte[1024];
+    protected ByteBuffer buffer = null;
 
 
     /**
-     * The number of data bytes currently in the buffer.
+     * The pool from which our buffer is allocated, if any.
      */
-    protected int bufferCount = 0;
+    protected BufferPool bufferPool = null;
+
+
+    /**
+     * The size of the buffer which will be allocated for this response.
+     */
+    protected int bufferSize = 1024;
 
 
     /**
@@ -126,6 +138,15 @@ public abstract class ResponseBase
     protected OutputStream output = null;
 
 
+    /**
+     * The bytes which must be written before the content of the buffer,
+     * such as the status line and headers of an HTTP response, or
+     * <code>null</code>.  They are written together with the first buffer
+     * of content.
+     */
+    protected ByteBuffer prefix = null;
+
+
     /**
      * The Request with which this Response is associated.
      */
@@ -210,6 +231,31 @@ public abstract class ResponseBase
     }
 
 
+    /**
+     * Return the pool from which the buffer of this response is allocated.
+     */
+    public BufferPool getBufferPool() {
+
+        return (this.bufferPool);
+
+    }
+
+
+    /**
+     * Set the pool from which the buffer of this response is allocated.
+     * The size of the pooled buffers becomes the default buffer size of
+     * this response.
+     *
+     * @param bufferPool The new buffer pool
+     */
+    public void setBufferPool(BufferPool bufferPool) {
+
+        this.bufferPool = bufferPool;
+        this.bufferSize = bufferPool.getBufferSize();
+
+    }
+
+
     /**
      * Return the number of bytes actually written to the output stream.
      */
@@ -487,8 +533,16 @@ public abstract class ResponseBase
      */
     public void recycle() {
 
-        // buffer is NOT reset when recycling
-        bufferCount = 0;
+        if (bufferPool != null) {
+            // Give the buffer back, and restore the default buffer size
+            if (buffer != null)
+                bufferPool.release(buffer);
+            buffer = null;
+            bufferSize = bufferPool.getBufferSize();
+        } else if (buffer != null) {
+            // buffer is NOT reallocated when recycling
+            buffer.clear();
+        }
         committed = false;
         appCommitted = false;
         suspended = false;
@@ -501,6 +555,7 @@ public abstract class ResponseBase
         included = false;
         locale = Locale.getDefault();
         output = null;
+        prefix = null;
         request = null;
         stream = null;
         writer = null;
@@ -525,9 +580,11 @@ public abstract class ResponseBase
             throw new IOException
                 (sm.getString("responseBase.write.suspended"));
 
-        if (bufferCount >= buffer.length)
+        if (buffer == null)
+            allocateBuffer();
+        else if (!buffer.hasRemaining())
             flushBuffer();
-        buffer[bufferCount++] = (byte) b;
+        buffer.put((byte) b);
         contentCount++;
 
     }
@@ -572,20 +629,22 @@ public abstract class ResponseBase
         // If the whole thing fits in the buffer, just put it there
         if (len == 0)
             return;
-        if (len <= (buffer.length - bufferCount)) {
-            System.arraycopy(b, off, buffer, bufferCount, len);
-            bufferCount += len;
+        if (buffer == null)
+            allocateBuffer();
+        if (len <= buffer.remaining()) {
+            buffer.put(b, off, len);
             contentCount += len;
             return;
         }
 
         // Flush the buffer and start writing full-buffer-size chunks
         flushBuffer();
-        int iterations = len / buffer.length;
-        int leftoverStart = iterations * buffer.length;
+        int size = buffer.capacity();
+        int iterations = len / size;
+        int leftoverStart = iterations * size;
         int leftoverLen = len - leftoverStart;
         for (int i = 0; i < iterations; i++)
-            write(b, off + (i * buffer.length), buffer.length);
+            write(b, off + (i * size), size);
 
         // Write the remainder (guaranteed to fit in the buffer)
         if (leftoverLen > 0)
@@ -594,6 +653,94 @@ public abstract class ResponseBase
     }
 
 
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Allocate the buffer of this response, from our buffer pool if we
+     * have one.
+     */
+    private void allocateBuffer() {
+
+        if (bufferPool != null)
+            buffer = bufferPool.allocate(bufferSize);
+        else
+            buffer = ByteBuffer.allocate(bufferSize);
+
+    }
+
+
+    /**
+     * Write the pending prefix, if any, and the remaining content of our
+     * buffer to the output stream.  When there is both a prefix and some
+     * content, they are sent with a single gathering write if the output
+     * stream is also a channel, or with a single write if the content fits
+     * in the unused space of the prefix array.
+     *
+     * @param content Does our buffer hold some content?
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    private void writeBuffer(boolean content) throws IOException {
+
+        if (prefix != null) {
+            if (!content) {
+                writeFully(prefix);
+                return;
+            }
+            if (output instanceof GatheringByteChannel) {
+                GatheringByteChannel channel = (GatheringByteChannel) output;
+                ByteBuffer srcs[] = new ByteBuffer[] { prefix, buffer };
+                while (buffer.hasRemaining())
+                    channel.write(srcs);
+                return;
+            }
+            if (prefix.hasArray()
+                && (prefix.capacity() - prefix.limit() >= buffer.remaining())) {
+                int start = prefix.position();
+                prefix.position(prefix.limit());
+                prefix.limit(prefix.capacity());
+                prefix.put(buffer);
+                prefix.limit(prefix.position());
+                prefix.position(start);
+                writeFully(prefix);
+                return;
+            }
+            writeFully(prefix);
+        }
+        writeFully(buffer);
+
+    }
+
+
+    /**
+     * Write the remaining content of the specified buffer to the output
+     * stream.  Streams which are also channels are given the buffer itself,
+     * so that direct buffers are written without being copied.
+     *
+     * @param bb The buffer to be written
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    private void writeFully(ByteBuffer bb) throws IOException {
+
+        if (output instanceof WritableByteChannel) {
+            WritableByteChannel channel = (WritableByteChannel) output;
+            while (bb.hasRemaining())
+                channel.write(bb);
+        } else if (bb.hasArray()) {
+            output.write(bb.array(), bb.arrayOffset() + bb.position(),
+                         bb.remaining());
+            bb.position(bb.limit());
+        } else {
+            byte[] bytes = new byte[bb.remaining()];
+            bb.get(bytes);
+            output.write(bytes);
+        }
+
+    }
+
+
     // ------------------------------------------------ ServletResponse Methods
 
 
@@ -605,11 +752,16 @@ public abstract class ResponseBase
     public void flushBuffer() throws IOException {
 
         committed = true;
-        if (bufferCount > 0) {
+        boolean content = (buffer != null) && (buffer.position() > 0);
+        if (content || (prefix != null)) {
             try {
-                output.write(buffer, 0, bufferCount);
+                if (content)
+                    buffer.flip();
+                writeBuffer(content);
             } finally {
-                bufferCount = 0;
+                prefix = null;
+                if (buffer != null)
+                    buffer.clear();
             }
         }
 
@@ -621,7 +773,10 @@ public abstract class ResponseBase
      */
     public int getBufferSize() {
 
-        return (buffer.length);
+        if (buffer != null)
+            return (buffer.capacity());
+        else
+            return (bufferSize);
 
     }
 
@@ -724,7 +879,8 @@ public abstract class ResponseBase
 
         if (stream != null)
             ((ResponseStream) stream).reset();
-        bufferCount = 0;
+        if (buffer != null)
+            buffer.clear();
         contentLength = -1;
         contentType = null;
 
@@ -743,7 +899,8 @@ public abstract class ResponseBase
             throw new IllegalStateException
                 (sm.getString("responseBase.resetBuffer.ise"));
 
-        bufferCount = 0;
+        if (buffer != null)
+            buffer.clear();
 
     }
 
@@ -758,13 +915,18 @@ public abstract class ResponseBase
      */
     public void setBufferSize(int size) {
 
-        if (committed || (bufferCount > 0))
+        if (committed || ((buffer != null) && (buffer.position() > 0)))
             throw new IllegalStateException
                 (sm.getString("responseBase.setBufferSize.ise"));
 
-        if (buffer.length >= size)
+        if (getBufferSize() >= size)
             return;
-        buffer = new byte[size];
+        if (buffer != null) {
+            if (bufferPool != null)
+                bufferPool.release(buffer);
+            buffer = null;
+        }
+        bufferSize = size;
 
     }
 
@@ -0,0 +1,316 @@
+package org.apache.catalina.connector.http;
+
+
+/**
+ * Admission controller limiting the number of requests processed at the
+ * same time by the container on behalf of an <code>HttpConnector</code>.
+ * The limit adapts to the latency of the requests: it grows while the
+ * recent latency stays close to the long term latency, and shrinks as
+ * soon as requests start queueing up in the container, which shows as a
+ * rising latency.  Requests exceeding the limit are rejected right away
+ * by the connector, rather than making all requests wait until the
+ * container collapses.
+ * <p>
+ * The limit is computed as <code>limit * gradient + sqrt(limit)</code>
+ * at the end of each window of samples, where the gradient is the ratio
+ * of the long term latency (with some tolerance) to the average latency
+ * of the window, between 0.5 and 1, and the square root of the limit
+ * allows for some queueing.  The limit only grows if the requests
+ * actually used at least half of it during the window.
+ *
+ * @deprecated
+ */
+
+final class AdmissionController {
+
+
+    // ------------------------------------------------------- Static Variables
+
+
+    /**
+     * The initial concurrency limit.
+     */
+    private static final int INITIAL_LIMIT = 20;
+
+
+    /**
+     * The number of samples over which the long term latency is averaged.
+     */
+    private static final int LONG_WINDOW = 600;
+
+
+    /**
+     * The minimum concurrency limit.
+     */
+    private static final int MIN_LIMIT = 1;
+
+
+    /**
+     * The weight of a new limit, compared to the current one.
+     */
+    private static final double SMOOTHING = 0.2;
+
+
+    /**
+     * The ratio of the window latency to the long term latency which is
+     * considered as normal variation rather than queueing.
+     */
+    private static final double TOLERANCE = 1.5;
+
+
+    /**
+     * The number of samples in a window.
+     */
+    private static final int WINDOW = 10;
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Construct a new admission controller.
+     *
+     * @param maxLimit The maximum concurrency limit
+     */
+    public AdmissionController(int maxLimit) {
+
+        super();
+        this.maxLimit = Math.max(maxLimit, MIN_LIMIT);
+        this.limit = Math.min(INITIAL_LIMIT, this.maxLimit);
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The number of requests being processed.
+     */
+    private int inFlight = 0;
+
+
+    /**
+     * The current concurrency limit.
+     */
+    private double limit = 0.0;
+
+
+    /**
+     * The long term average latency, in milliseconds.
+     */
+    private double longLatency = 0.0;
+
+
+    /**
+     * The number of samples included in the long term latency, up to
+     * <code>LONG_WINDOW</code>.
+     */
+    private int longSamples = 0;
+
+
+    /**
+     * The maximum concurrency limit.
+     */
+    private int maxLimit = 0;
+
+
+    /**
+     * The longest time a request waited before being processed, in
+     * milliseconds.
+     */
+    private long maxQueueTime = 0L;
+
+
+    /**
+     * The number of requests which have waited before being processed.
+     */
+    private long queued = 0L;
+
+
+    /**
+     * The total time requests waited before being processed, in
+     * milliseconds.
+     */
+    private long queueTime = 0L;
+
+
+    /**
+     * The number of rejected requests.
+     */
+    private long rejected = 0L;
+
+
+    /**
+     * The highest number of requests processed at the same time during the
+     * current window.
+     */
+    private int windowInFlight = 0;
+
+
+    /**
+     * The total latency of the samples of the current window, in
+     * milliseconds.
+     */
+    private long windowLatency = 0L;
+
+
+    /**
+     * The number of samples of the current window.
+     */
+    private int windowSamples = 0;
+
+
+    // ------------------------------------------------------------- Properties
+
+
+    /**
+     * Return the number of requests being processed.
+     */
+    synchronized int getInFlight() {
+
+        return (this.inFlight);
+
+    }
+
+
+    /**
+     * Return the current concurrency limit.
+     */
+    synchronized int getLimit() {
+
+        return ((int) this.limit);
+
+    }
+
+
+    /**
+     * Return the longest time a request waited before being processed, in
+     * milliseconds.
+     */
+    synchronized long getMaxQueueTime() {
+
+        return (this.maxQueueTime);
+
+    }
+
+
+    /**
+     * Return the average time requests waited before being processed, in
+     * milliseconds.
+     */
+    synchronized long getQueueTime() {
+
+        if (queued == 0)
+            return (0L);
+        return (queueTime / queued);
+
+    }
+
+
+    /**
+     * Return the number of rejected requests.
+     */
+    synchronized long getRejected() {
+
+        return (this.rejected);
+
+    }
+
+
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Admit a new request if the concurrency limit allows it.  Return
+     * <code>true</code> if the request is admitted, in which case
+     * <code>release()</code> must be called when it has been processed.
+     */
+    synchronized boolean acquire() {
+
+        if (inFlight >= (int) limit) {
+            rejected++;
+            return (false);
+        }
+        inFlight++;
+        if (inFlight > windowInFlight)
+            windowInFlight = inFlight;
+        return (true);
+
+    }
+
+
+    /**
+     * Record the time a request waited, after the connection was accepted
+     * or became readable, before being processed.
+     *
+     * @param time The waiting time, in milliseconds
+     */
+    synchronized void addQueueTime(long time) {
+
+        if (time < 0)
+            return;
+        queued++;
+        queueTime += time;
+        if (time > maxQueueTime)
+            maxQueueTime = time;
+
+    }
+
+
+    /**
+     * Release an admitted request, which has been processed.
+     *
+     * @param latency The time it took to process the request, in
+     *  milliseconds
+     */
+    synchronized void release(long latency) {
+
+        inFlight--;
+        windowLatency += Math.max(latency, 1L);
+        windowSamples++;
+        if (windowSamples >= WINDOW)
+            update();
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Update the concurrency limit at the end of a window of samples.
+     */
+    private void update() {
+
+        double latency = (double) windowLatency / windowSamples;
+        int peak = windowInFlight;
+        windowLatency = 0L;
+        windowSamples = 0;
+        windowInFlight = inFlight;
+
+        // Average the window latency into the long term latency
+        if (longSamples < LONG_WINDOW)
+            longSamples++;
+        longLatency += (latency - longLatency) / longSamples;
+
+        // The long term latency drifts up during a long overload, so bring
+        // it back faster once the latency has dropped again
+        if (longLatency / latency > 2.0)
+            longLatency *= 0.95;
+
+        double gradient = (TOLERANCE * longLatency) / latency;
+        gradient = Math.max(0.5, Math.min(1.0, gradient));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+
+        // Do not grow the limit when it is not actually used
+        if ((newLimit > limit) && (peak < limit / 2))
+            return;
+
+        newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        limit = Math.max(MIN_LIMIT, Math.min(maxLimit, newLimit));
+
+    }
+
+
+}
@@ -0,0 +1,436 @@
+package org.apache.catalina.connector.http;
+
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+
+
+/**
+ * Output stream writing to a non blocking <code>SocketChannel</code>.  When
+ * the socket send buffer is full, the calling thread waits until the
+ * channel becomes writable again, using a private selector, so that the
+ * blocking semantics expected by the response objects are preserved.
+ * <p>
+ * Alternatively, up to <code>maxPending</code> bytes which the channel
+ * cannot accept right away are copied and kept pending, so that the
+ * calling thread can go on; the thread only waits once the limit has been
+ * reached.  The pending bytes are then handed over to the poller thread of
+ * the connector, which writes them as the client reads them, so that a
+ * slow client does not tie up a worker thread for its whole transfer.
+ * This stream is also a <code>GatheringByteChannel</code>, so that the
+ * response buffers can be written without being copied, and together with
+ * the response headers.
+ * <p>
+ * Instances are owned by a single worker thread, and are reused for the
+ * successive connections handled by this thread.
+ *
+ * @deprecated
+ */
+
+final class ChannelOutputStream
+    extends OutputStream implements GatheringByteChannel {
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Construct a new channel output stream.
+     *
+     * @param timeout The write timeout in milliseconds, or zero for no
+     *  timeout
+     */
+    public ChannelOutputStream(int timeout) {
+
+        super();
+        this.timeout = timeout;
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The channel we are currently writing to.
+     */
+    private SocketChannel channel = null;
+
+
+    /**
+     * The maximum number of pending bytes, or zero if writes always wait
+     * for the channel.
+     */
+    private int maxPending = 0;
+
+
+    /**
+     * The copies of the bytes which the channel has not accepted yet.
+     */
+    private ArrayList pending = new ArrayList();
+
+
+    /**
+     * The number of pending bytes.
+     */
+    private int pendingBytes = 0;
+
+
+    /**
+     * Single byte buffer used by <code>write(int)</code>.
+     */
+    private byte[] single = new byte[1];
+
+
+    /**
+     * The selector used to wait for the channel to become writable, created
+     * on first use.
+     */
+    private Selector selector = null;
+
+
+    /**
+     * The write timeout in milliseconds.
+     */
+    private int timeout = 0;
+
+
+    // ------------------------------------------------------------- Properties
+
+
+    /**
+     * Set the channel we should write to.
+     *
+     * @param channel The new channel
+     */
+    void setChannel(SocketChannel channel) {
+
+        this.channel = channel;
+
+    }
+
+
+    /**
+     * Set the maximum number of bytes which can be kept pending, rather
+     * than waiting for the channel to accept them.
+     *
+     * @param maxPending The new maximum, or zero to always wait
+     */
+    void setMaxPending(int maxPending) {
+
+        this.maxPending = maxPending;
+
+    }
+
+
+    /**
+     * Return <code>true</code> if no bytes are pending, after writing as
+     * many of them as the channel accepts without waiting.  Producers of
+     * streamed content may use this to back off while the client is slow.
+     */
+    boolean isWriteReady() {
+
+        try {
+            return (drain());
+        } catch (IOException e) {
+            return (true);
+        }
+
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Write the specified byte.
+     *
+     * @param b The byte to be written
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    public void write(int b) throws IOException {
+
+        single[0] = (byte) b;
+        write(single, 0, 1);
+
+    }
+
+
+    /**
+     * Write <code>len</code> bytes from the specified byte array, starting
+     * at the specified offset.
+     *
+     * @param b The byte array containing the bytes to be written
+     * @param off Zero-relative starting offset of the bytes to be written
+     * @param len The number of bytes to be written
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    public void write(byte b[], int off, int len) throws IOException {
+
+        write(ByteBuffer.wrap(b, off, len));
+
+    }
+
+
+    /**
+     * Write the remaining content of the specified buffer, and return the
+     * number of bytes written.
+     *
+     * @param bb The buffer to be written
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    public int write(ByteBuffer bb) throws IOException {
+
+        int count = bb.remaining();
+        while (bb.hasRemaining()) {
+            if (drain() && (channel.write(bb) > 0))
+                continue;
+            if (queue(bb))
+                break;
+            awaitWritable();
+        }
+        return (count);
+
+    }
+
+
+    /**
+     * Write the remaining content of the specified buffers, using as few
+     * writes on the channel as possible, and return the number of bytes
+     * written.
+     *
+     * @param srcs The buffers to be written
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    public long write(ByteBuffer[] srcs) throws IOException {
+
+        return (write(srcs, 0, srcs.length));
+
+    }
+
+
+    /**
+     * Write the remaining content of the specified buffers, using as few
+     * writes on the channel as possible, and return the number of bytes
+     * written.
+     *
+     * @param srcs The buffers to be written
+     * @param offset Index of the first buffer to be written
+     * @param length The number of buffers to be written
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    public long write(ByteBuffer[] srcs, int offset, int length)
+        throws IOException {
+
+        long count = 0;
+        for (int i = offset; i < offset + length; i++)
+            count += srcs[i].remaining();
+        long written = 0;
+        while (written < count) {
+            long n = 0;
+            if (drain())
+                n = channel.write(srcs, offset, length);
+            if (n > 0) {
+                written += n;
+                continue;
+            }
+            if (pendingBytes + (count - written) <= maxPending) {
+                for (int i = offset; i < offset + length; i++)
+                    queue(srcs[i]);
+                break;
+            }
+            awaitWritable();
+        }
+        return (count);
+
+    }
+
+
+    /**
+     * Write the specified region of a file, using
+     * <code>FileChannel.transferTo()</code> so that the bytes are not
+     * copied through the heap.
+     *
+     * @param file The file to be written
+     * @param position Offset of the first byte to be written
+     * @param count The number of bytes to be written
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    public void transferFrom(FileChannel file, long position, long count)
+        throws IOException {
+
+        // The file must follow the bytes which are pending
+        while (!drain())
+            awaitWritable();
+        while (count > 0) {
+            long n = file.transferTo(position, count, channel);
+            if (n == 0) {
+                if (position >= file.size())
+                    throw new EOFException();
+                awaitWritable();
+                continue;
+            }
+            position += n;
+            count -= n;
+        }
+
+    }
+
+
+    /**
+     * Flush this stream.  Pending bytes are written by the poller thread
+     * once they are handed over to it, so there is nothing to do.
+     */
+    public void flush() throws IOException {
+
+        ;
+
+    }
+
+
+    /**
+     * Return <code>true</code> if this stream is attached to an open
+     * channel.
+     */
+    public boolean isOpen() {
+
+        return ((channel != null) && channel.isOpen());
+
+    }
+
+
+    /**
+     * Close this stream.  The underlying channel is managed by the
+     * connector, and is not closed here.
+     */
+    public void close() throws IOException {
+
+        ;
+
+    }
+
+
+    /**
+     * Return the bytes which are still pending, if any, and forget about
+     * them.
+     */
+    ByteBuffer[] detachPending() {
+
+        if (pendingBytes == 0)
+            return (null);
+        ByteBuffer[] buffers =
+            (ByteBuffer[]) pending.toArray(new ByteBuffer[pending.size()]);
+        pending.clear();
+        pendingBytes = 0;
+        return (buffers);
+
+    }
+
+
+    /**
+     * Release the selector used by this stream, and drop the pending
+     * bytes.
+     */
+    void release() {
+
+        pending.clear();
+        pendingBytes = 0;
+
+        if (selector != null) {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                ;
+            }
+            selector = null;
+        }
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Write as many pending bytes as the channel accepts without waiting,
+     * and return <code>true</code> if none are left.
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    private boolean drain() throws IOException {
+
+        while (pendingBytes > 0) {
+            ByteBuffer bb = (ByteBuffer) pending.get(0);
+            int n = channel.write(bb);
+            pendingBytes -= n;
+            if (bb.hasRemaining())
+                return (false);
+            pending.remove(0);
+        }
+        return (true);
+
+    }
+
+
+    /**
+     * Keep a copy of the remaining content of the specified buffer pending
+     * if the limit allows it, and return <code>true</code> if it does.
+     *
+     * @param bb The buffer
+     */
+    private boolean queue(ByteBuffer bb) {
+
+        int len = bb.remaining();
+        if (pendingBytes + len > maxPending)
+            return (false);
+        if (len == 0)
+            return (true);
+        ByteBuffer copy = ByteBuffer.allocate(len);
+        copy.put(bb);
+        copy.flip();
+        pending.add(copy);
+        pendingBytes += len;
+        return (true);
+
+    }
+
+
+    /**
+     * Wait until the channel can accept more bytes.
+     *
+     * @exception IOException if the timeout expires, or if an input/output
+     *  error occurs
+     */
+    private void awaitWritable() throws IOException {
+
+        if (selector == null)
+            selector = Selector.open();
+        SelectionKey key = channel.register(selector, SelectionKey.OP_WRITE);
+        try {
+            if (selector.select(timeout) == 0)
+                throw new SocketTimeoutException();
+        } finally {
+            key.cancel();
+            // Flush the cancelled key so the channel can be registered again
+            selector.selectNow();
+        }
+
+    }
+
+
+}
@@ -14,4 +14,12 @@ public final class Constants {
     public static final int PROCESSOR_IDLE = 0;
     public static final int PROCESSOR_ACTIVE = 1;
 
+    public static final int PHASE_FIRST_BYTE = 0;
+    public static final int PHASE_REQUEST_LINE = 1;
+    public static final int PHASE_HEADERS = 2;
+    public static final int PHASE_INVOKE = 3;
+    public static final int PHASE_FINISH = 4;
+    public static final int PHASE_FLUSH = 5;
+    public static final int PHASE_TOTAL = 6;
+
 }
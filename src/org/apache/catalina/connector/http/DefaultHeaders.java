@@ -29,6 +29,35 @@ final class DefaultHeaders {
         "transfer-encoding".toCharArray();
 
 
+    /**
+     * Ordinals of the well-known header names, which are used as indexes
+     * in the <code>NAMES</code> and <code>NAME_STRINGS</code> tables.
+     */
+    static final int UNKNOWN = -1;
+    static final int AUTHORIZATION = 0;
+    static final int ACCEPT_LANGUAGE = 1;
+    static final int COOKIE = 2;
+    static final int CONTENT_LENGTH = 3;
+    static final int CONTENT_TYPE = 4;
+    static final int HOST = 5;
+    static final int CONNECTION = 6;
+    static final int EXPECT = 7;
+    static final int TRANSFER_ENCODING = 8;
+
+
+    static final char[][] NAMES = {
+        AUTHORIZATION_NAME, ACCEPT_LANGUAGE_NAME, COOKIE_NAME,
+        CONTENT_LENGTH_NAME, CONTENT_TYPE_NAME, HOST_NAME, CONNECTION_NAME,
+        EXPECT_NAME, TRANSFER_ENCODING_NAME
+    };
+
+
+    static final String[] NAME_STRINGS = {
+        "authorization", "accept-language", "cookie", "content-length",
+        "content-type", "host", "connection", "expect", "transfer-encoding"
+    };
+
+
     static final HttpHeader CONNECTION_CLOSE =
         new HttpHeader("connection", "close");
     static final HttpHeader EXPECT_CONTINUE =
@@ -49,6 +78,30 @@ final class DefaultHeaders {
     // --------------------------------------------------------- Public Methods
 
 
+    /**
+     * Return the ordinal of the specified (lower case) header name, or
+     * <code>UNKNOWN</code> if it is not one of the well-known names.
+     *
+     * @param name The buffer holding the header name
+     * @param end The length of the header name
+     */
+    static int ordinal(char[] name, int end) {
+
+        for (int i = 0; i < NAMES.length; i++) {
+            char[] known = NAMES[i];
+            if (known.length != end)
+                continue;
+            int j = 0;
+            while ((j < end) && (known[j] == name[j]))
+                j++;
+            if (j == end)
+                return (i);
+        }
+        return (UNKNOWN);
+
+    }
+
+
     // --------------------------------------------------------- Object Methods
 
 
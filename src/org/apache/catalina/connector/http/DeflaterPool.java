@@ -0,0 +1,104 @@
+package org.apache.catalina.connector.http;
+
+
+import java.util.ArrayList;
+import java.util.zip.Deflater;
+
+
+/**
+ * Pool of <code>Deflater</code> instances shared by the responses of an
+ * <code>HttpConnector</code>.  Deflaters hold native memory which is only
+ * freed when they are ended or finalized, so they are reused rather than
+ * created for each compressed response.  Deflaters producing raw deflate
+ * data (for the gzip format) and zlib data (for the deflate format) are
+ * kept separately.
+ *
+ * @deprecated
+ */
+
+final class DeflaterPool {
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Construct a new deflater pool.
+     *
+     * @param maxDeflaters The maximum number of idle deflaters of each kind
+     *  kept by this pool, or -1 for no limit
+     */
+    public DeflaterPool(int maxDeflaters) {
+
+        super();
+        this.maxDeflaters = maxDeflaters;
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The maximum number of idle deflaters of each kind kept by this pool,
+     * or -1 for no limit.
+     */
+    private int maxDeflaters = -1;
+
+
+    /**
+     * The idle deflaters producing raw deflate data.
+     */
+    private ArrayList raw = new ArrayList();
+
+
+    /**
+     * The idle deflaters producing zlib data.
+     */
+    private ArrayList zlib = new ArrayList();
+
+
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Return a deflater ready to compress new data.
+     *
+     * @param nowrap Should the deflater produce raw deflate data, without
+     *  the zlib header and checksum?
+     */
+    Deflater allocate(boolean nowrap) {
+
+        ArrayList deflaters = nowrap ? raw : zlib;
+        synchronized (deflaters) {
+            int n = deflaters.size();
+            if (n > 0)
+                return ((Deflater) deflaters.remove(n - 1));
+        }
+        return (new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap));
+
+    }
+
+
+    /**
+     * Give back a deflater obtained from <code>allocate()</code>.
+     *
+     * @param deflater The deflater to release
+     * @param nowrap The value which was passed to <code>allocate()</code>
+     */
+    void release(Deflater deflater, boolean nowrap) {
+
+        deflater.reset();
+        ArrayList deflaters = nowrap ? raw : zlib;
+        synchronized (deflaters) {
+            if ((maxDeflaters < 0) || (deflaters.size() < maxDeflaters)) {
+                deflaters.add(deflater);
+                return;
+            }
+        }
+        deflater.end();
+
+    }
+
+
+}
@@ -0,0 +1,290 @@
+package org.apache.catalina.connector.http;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import org.apache.catalina.util.StringManager;
+
+
+/**
+ * Decoder of the header blocks received on an HTTP/2 connection, compressed
+ * with HPACK (RFC 7541).  The decoder owns the dynamic table of the
+ * receiving direction of the connection, so header blocks must be decoded
+ * in the order they were received.  Header strings are decoded as
+ * ISO-8859-1.
+ *
+ * @deprecated
+ */
+
+final class HpackDecoder {
+
+
+    // ------------------------------------------------------- Static Variables
+
+
+    /**
+     * The Huffman decoding tree.  The children of node <code>n</code> are
+     * at <code>2 * n</code> (bit 0) and <code>2 * n + 1</code> (bit 1); a
+     * positive child is the number of an inner node, a negative child is
+     * a leaf holding the opposite of its symbol minus one.
+     */
+    private static final int[] HUFFMAN_TREE = new int[1024];
+
+
+    static {
+        int nodes = 1;
+        for (int symbol = 0; symbol < HpackTable.HUFFMAN_CODES.length;
+             symbol++) {
+            int code = HpackTable.HUFFMAN_CODES[symbol];
+            int length = HpackTable.HUFFMAN_LENGTHS[symbol];
+            int node = 0;
+            for (int i = length - 1; i > 0; i--) {
+                int child = 2 * node + ((code >>> i) & 1);
+                if (HUFFMAN_TREE[child] == 0)
+                    HUFFMAN_TREE[child] = nodes++;
+                node = HUFFMAN_TREE[child];
+            }
+            HUFFMAN_TREE[2 * node + (code & 1)] = -(symbol + 1);
+        }
+    }
+
+
+    /**
+     * The string manager for this package.
+     */
+    private static StringManager sm =
+        StringManager.getManager(Constants.Package);
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Construct a new decoder.
+     *
+     * @param maxTableSize The maximum size of the dynamic table, as
+     *  advertised to the peer
+     * @param maxHeaderListSize The maximum size of a decoded header list
+     */
+    public HpackDecoder(int maxTableSize, int maxHeaderListSize) {
+
+        super();
+        this.maxTableSize = maxTableSize;
+        this.maxHeaderListSize = maxHeaderListSize;
+        this.table = new HpackTable(maxTableSize);
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The header block being decoded.
+     */
+    private byte[] buf = null;
+
+
+    /**
+     * The end of the header block being decoded.
+     */
+    private int end = 0;
+
+
+    /**
+     * The maximum size of a decoded header list.
+     */
+    private int maxHeaderListSize = 0;
+
+
+    /**
+     * The maximum size of the dynamic table advertised to the peer.
+     */
+    private int maxTableSize = 0;
+
+
+    /**
+     * The position of the next octet to decode.
+     */
+    private int pos = 0;
+
+
+    /**
+     * Buffer used to decode header strings.
+     */
+    private StringBuffer sb = new StringBuffer();
+
+
+    /**
+     * The header table.
+     */
+    private HpackTable table = null;
+
+
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Decode the specified header block, adding the name and the value of
+     * each decoded header field to the specified list.
+     *
+     * @param block The buffer holding the header block
+     * @param off The offset of the header block
+     * @param len The length of the header block
+     * @param headers The list to which names and values are added
+     *
+     * @exception IOException if the header block cannot be decoded, which
+     *  is a connection error
+     */
+    void decode(byte[] block, int off, int len, ArrayList headers)
+        throws IOException {
+
+        buf = block;
+        pos = off;
+        end = off + len;
+        int listSize = 0;
+        boolean first = true;
+        try {
+            while (pos < end) {
+                int b = buf[pos] & 0xff;
+                String name = null;
+                String value = null;
+                if ((b & 0x80) != 0) {
+                    // Indexed header field
+                    String[] entry = table.get(readInt(7));
+                    if (entry == null)
+                        throw new IOException
+                            (sm.getString("hpack.index"));
+                    name = entry[0];
+                    value = entry[1];
+                } else if ((b & 0x40) != 0) {
+                    // Literal header field with incremental indexing
+                    name = readName(6);
+                    value = readString();
+                    table.add(name, value);
+                } else if ((b & 0x20) != 0) {
+                    // Dynamic table size update
+                    int size = readInt(5);
+                    if (!first || (size > maxTableSize))
+                        throw new IOException
+                            (sm.getString("hpack.tableSize"));
+                    table.setMaxSize(size);
+                    continue;
+                } else {
+                    // Literal header field without indexing, or never
+                    // indexed
+                    name = readName(4);
+                    value = readString();
+                }
+                first = false;
+                listSize += name.length() + value.length()
+                    + HpackTable.ENTRY_OVERHEAD;
+                if (listSize > maxHeaderListSize)
+                    throw new IOException(sm.getString("hpack.tooLarge"));
+                headers.add(name);
+                headers.add(value);
+            }
+        } finally {
+            buf = null;
+        }
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Read an integer with the specified prefix length.
+     *
+     * @param prefix The number of bits of the prefix
+     */
+    private int readInt(int prefix) throws IOException {
+
+        int max = (1 << prefix) - 1;
+        int value = buf[pos++] & max;
+        if (value < max)
+            return (value);
+        int shift = 0;
+        while (true) {
+            if ((pos >= end) || (shift > 21))
+                throw new IOException(sm.getString("hpack.integer"));
+            int b = buf[pos++] & 0xff;
+            value += (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return (value);
+            shift += 7;
+        }
+
+    }
+
+
+    /**
+     * Read the name of a literal header field, which is either indexed or
+     * follows the index as a string literal.
+     *
+     * @param prefix The number of bits of the index prefix
+     */
+    private String readName(int prefix) throws IOException {
+
+        int index = readInt(prefix);
+        if (index == 0)
+            return (readString());
+        String[] entry = table.get(index);
+        if (entry == null)
+            throw new IOException(sm.getString("hpack.index"));
+        return (entry[0]);
+
+    }
+
+
+    /**
+     * Read a string literal, which may be Huffman encoded.
+     */
+    private String readString() throws IOException {
+
+        if (pos >= end)
+            throw new IOException(sm.getString("hpack.string"));
+        boolean huffman = (buf[pos] & 0x80) != 0;
+        int length = readInt(7);
+        if (length > end - pos)
+            throw new IOException(sm.getString("hpack.string"));
+        int start = pos;
+        pos += length;
+        if (!huffman)
+            return (new String(buf, start, length, "ISO-8859-1"));
+
+        sb.setLength(0);
+        int node = 0;
+        int bits = 0;
+        boolean ones = true;
+        for (int i = start; i < start + length; i++) {
+            int b = buf[i] & 0xff;
+            for (int shift = 7; shift >= 0; shift--) {
+                int bit = (b >>> shift) & 1;
+                node = HUFFMAN_TREE[2 * node + bit];
+                bits++;
+                ones = ones && (bit == 1);
+                if (node < 0) {
+                    int symbol = -node - 1;
+                    if (symbol == 256)
+                        throw new IOException
+                            (sm.getString("hpack.huffman"));
+                    sb.append((char) symbol);
+                    node = 0;
+                    bits = 0;
+                    ones = true;
+                } else if (node == 0) {
+                    throw new IOException(sm.getString("hpack.huffman"));
+                }
+            }
+        }
+        // The padding must be a prefix of the EOS symbol
+        if ((bits > 7) || !ones)
+            throw new IOException(sm.getString("hpack.huffman"));
+        return (sb.toString());
+
+    }
+
+
+}
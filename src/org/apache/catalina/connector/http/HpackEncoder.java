@@ -0,0 +1,246 @@
+package org.apache.catalina.connector.http;
+
+
+/**
+ * Encoder of the header blocks sent on an HTTP/2 connection, compressed
+ * with HPACK (RFC 7541).  The encoder owns the dynamic table of the sending
+ * direction of the connection, so header blocks must be sent in the order
+ * they were encoded.  Header fields which usually change from one response
+ * to the next are not added to the dynamic table.  Header strings are
+ * encoded as ISO-8859-1, and Huffman encoded when this makes them shorter.
+ *
+ * @deprecated
+ */
+
+final class HpackEncoder {
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Construct a new encoder.
+     *
+     * @param maxTableSize The maximum size of the dynamic table
+     */
+    public HpackEncoder(int maxTableSize) {
+
+        super();
+        this.maxTableSize = maxTableSize;
+        this.table = new HpackTable(maxTableSize);
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The buffer holding the header block being encoded.
+     */
+    private byte[] buf = new byte[256];
+
+
+    /**
+     * The length of the header block being encoded.
+     */
+    private int count = 0;
+
+
+    /**
+     * The maximum size of the dynamic table.
+     */
+    private int maxTableSize = 0;
+
+
+    /**
+     * The maximum size of the dynamic table allowed by the peer, if it has
+     * changed since the last header block, or -1.
+     */
+    private int pendingTableSize = -1;
+
+
+    /**
+     * The header table.
+     */
+    private HpackTable table = null;
+
+
+    // ------------------------------------------------------------- Properties
+
+
+    /**
+     * Return the buffer holding the header block being encoded.
+     */
+    byte[] getBuffer() {
+
+        return (this.buf);
+
+    }
+
+
+    /**
+     * Return the length of the header block being encoded.
+     */
+    int getLength() {
+
+        return (this.count);
+
+    }
+
+
+    /**
+     * Set the maximum size of the dynamic table allowed by the peer.  The
+     * change is signalled at the beginning of the next header block.
+     *
+     * @param size The new maximum size
+     */
+    void setMaxTableSize(int size) {
+
+        if (size > maxTableSize)
+            size = maxTableSize;
+        if (size != table.getMaxSize())
+            pendingTableSize = size;
+
+    }
+
+
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Begin a new header block.
+     */
+    void begin() {
+
+        count = 0;
+        if (pendingTableSize >= 0) {
+            table.setMaxSize(pendingTableSize);
+            writeInt(0x20, 5, pendingTableSize);
+            pendingTableSize = -1;
+        }
+
+    }
+
+
+    /**
+     * Add the specified header field to the current header block.
+     *
+     * @param name The header name, in lower case
+     * @param value The header value
+     */
+    void encode(String name, String value) {
+
+        int index = table.find(name, value);
+        if (index > 0) {
+            writeInt(0x80, 7, index);
+            return;
+        }
+
+        boolean indexed = !"date".equals(name)
+            && !"content-length".equals(name)
+            && !"set-cookie".equals(name);
+        if (indexed)
+            writeInt(0x40, 6, -index);
+        else
+            writeInt(0x00, 4, -index);
+        if (index == 0)
+            writeString(name);
+        writeString(value);
+        if (indexed)
+            table.add(name, value);
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Make sure that the specified number of octets can be appended to the
+     * header block.
+     *
+     * @param n The number of octets
+     */
+    private void ensureCapacity(int n) {
+
+        if (count + n <= buf.length)
+            return;
+        byte[] newBuf = new byte[Math.max(buf.length * 2, count + n)];
+        System.arraycopy(buf, 0, newBuf, 0, count);
+        buf = newBuf;
+
+    }
+
+
+    /**
+     * Append an integer with the specified prefix.
+     *
+     * @param flags The bits preceding the prefix in the first octet
+     * @param prefix The number of bits of the prefix
+     * @param value The value to be written
+     */
+    private void writeInt(int flags, int prefix, int value) {
+
+        ensureCapacity(6);
+        int max = (1 << prefix) - 1;
+        if (value < max) {
+            buf[count++] = (byte) (flags | value);
+            return;
+        }
+        buf[count++] = (byte) (flags | max);
+        value -= max;
+        while (value >= 0x80) {
+            buf[count++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buf[count++] = (byte) value;
+
+    }
+
+
+    /**
+     * Append a string literal.
+     *
+     * @param s The string to be written
+     */
+    private void writeString(String s) {
+
+        int length = s.length();
+        long bits = 0;
+        for (int i = 0; i < length; i++)
+            bits += HpackTable.HUFFMAN_LENGTHS[s.charAt(i) & 0xff];
+        int huffmanLength = (int) ((bits + 7) / 8);
+
+        if (huffmanLength >= length) {
+            writeInt(0x00, 7, length);
+            ensureCapacity(length);
+            for (int i = 0; i < length; i++)
+                buf[count++] = (byte) s.charAt(i);
+            return;
+        }
+
+        writeInt(0x80, 7, huffmanLength);
+        ensureCapacity(huffmanLength);
+        long current = 0;
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            int symbol = s.charAt(i) & 0xff;
+            current = (current << HpackTable.HUFFMAN_LENGTHS[symbol])
+                | HpackTable.HUFFMAN_CODES[symbol];
+            n += HpackTable.HUFFMAN_LENGTHS[symbol];
+            while (n >= 8) {
+                n -= 8;
+                buf[count++] = (byte) (current >>> n);
+            }
+        }
+        if (n > 0) {
+            // Pad with the most significant bits of the EOS symbol
+            current = (current << (8 - n)) | (0xff >>> n);
+            buf[count++] = (byte) current;
+        }
+
+    }
+
+
+}
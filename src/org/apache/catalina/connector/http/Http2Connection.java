@@ -0,0 +1,1587 @@
+package org.apache.catalina.connector.http;
+
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.catalina.Globals;
+import org.apache.catalina.HttpRequest;
+import org.apache.catalina.Logger;
+import org.apache.catalina.util.Base64;
+import org.apache.catalina.util.FastHttpDateFormat;
+import org.apache.catalina.util.ServerInfo;
+import org.apache.catalina.util.StringManager;
+
+
+/**
+ * Cleartext HTTP/2 connection (RFC 7540), established either by upgrading
+ * an HTTP/1.1 request carrying an <code>Upgrade: h2c</code> header, or
+ * directly by clients with prior knowledge of HTTP/2 support.
+ * <p>
+ * Frames are read by the processor thread which accepted the connection.
+ * Each request stream is processed on its own thread, obtained from the
+ * Executor of the connector if there is one, so that the streams of a
+ * connection are processed concurrently and are not blocked behind each
+ * other.  The bodies of requests are passed to the application as they are
+ * received.  Responses are written as frames through the lock of this
+ * object, which also guards the flow control windows of the peer and the
+ * HPACK encoder state.
+ *
+ * @deprecated
+ */
+
+final class Http2Connection {
+
+
+    // ------------------------------------------------------- Manifest Constants
+
+
+    /**
+     * The client connection preface.
+     */
+    static final byte[] PREFACE = {
+        'P', 'R', 'I', ' ', '*', ' ', 'H', 'T', 'T', 'P', '/', '2', '.', '0',
+        '\r', '\n', '\r', '\n', 'S', 'M', '\r', '\n', '\r', '\n'
+    };
+
+
+    /**
+     * The length of the part of the client connection preface which follows
+     * what looks like an HTTP/1.x request line and the blank line ending
+     * its headers.
+     */
+    static final int PREFACE_TAIL = 6;
+
+
+    // Frame types
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int PRIORITY = 0x2;
+    private static final int RST_STREAM = 0x3;
+    private static final int SETTINGS = 0x4;
+    private static final int PUSH_PROMISE = 0x5;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+    private static final int WINDOW_UPDATE = 0x8;
+    private static final int CONTINUATION = 0x9;
+
+    // Frame flags
+    private static final int FLAG_ACK = 0x1;
+    private static final int FLAG_END_STREAM = 0x1;
+    private static final int FLAG_END_HEADERS = 0x4;
+    private static final int FLAG_PADDED = 0x8;
+    private static final int FLAG_PRIORITY = 0x20;
+
+    // Error codes
+    private static final int NO_ERROR = 0x0;
+    private static final int PROTOCOL_ERROR = 0x1;
+    private static final int INTERNAL_ERROR = 0x2;
+    private static final int FLOW_CONTROL_ERROR = 0x3;
+    private static final int STREAM_CLOSED = 0x5;
+    private static final int FRAME_SIZE_ERROR = 0x6;
+    private static final int REFUSED_STREAM = 0x7;
+    private static final int COMPRESSION_ERROR = 0x9;
+
+    // Settings
+    private static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+    private static final int SETTINGS_ENABLE_PUSH = 0x2;
+    private static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+    private static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+    private static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+
+    /**
+     * The initial flow control window size of HTTP/2.
+     */
+    private static final int DEFAULT_WINDOW_SIZE = 65535;
+
+
+    /**
+     * The maximum frame payload size we accept, which is the default of
+     * HTTP/2.
+     */
+    private static final int MAX_FRAME_SIZE = 16384;
+
+
+    /**
+     * The maximum size of the header list of a request.
+     */
+    private static final int MAX_HEADER_LIST_SIZE = 65536;
+
+
+    /**
+     * The size of the HPACK dynamic tables.
+     */
+    private static final int HEADER_TABLE_SIZE = 4096;
+
+
+    /**
+     * The largest flow control window size.
+     */
+    private static final int MAX_WINDOW_SIZE = 0x7fffffff;
+
+
+    /**
+     * Server information string for this server.
+     */
+    private static final String SERVER_INFO =
+        ServerInfo.getServerInfo() + " (HTTP/1.1 Connector)";
+
+
+    /**
+     * The string manager for this package.
+     */
+    private static StringManager sm =
+        StringManager.getManager(Constants.Package);
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Construct a new HTTP/2 connection on the specified socket.
+     *
+     * @param connector The connector which accepted the connection
+     * @param processor The processor which accepted the connection
+     * @param socket The socket on which we are connected to the client
+     * @param input The input stream from which frames are read, which may
+     *  already hold the beginning of the client connection preface
+     * @param output The output stream on which frames are written
+     */
+    Http2Connection(HttpConnector connector, HttpProcessor processor,
+                    Socket socket, InputStream input, OutputStream output) {
+
+        super();
+        this.connector = connector;
+        this.processor = processor;
+        this.socket = socket;
+        this.input = input;
+        this.output =
+            new BufferedOutputStream(output, MAX_FRAME_SIZE + 9);
+        this.timeout = connector.getConnectionTimeout();
+        this.maxConcurrentStreams = connector.getMaxConcurrentStreams();
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The connector which accepted the connection.
+     */
+    private HttpConnector connector = null;
+
+
+    /**
+     * Has this connection been closed?
+     */
+    private boolean closed = false;
+
+
+    /**
+     * The decoder of the header blocks received.
+     */
+    private HpackDecoder decoder =
+        new HpackDecoder(HEADER_TABLE_SIZE, MAX_HEADER_LIST_SIZE);
+
+
+    /**
+     * The encoder of the header blocks sent.
+     */
+    private HpackEncoder encoder = new HpackEncoder(HEADER_TABLE_SIZE);
+
+
+    /**
+     * The header block being received.
+     */
+    private byte[] headerBlock = new byte[MAX_FRAME_SIZE];
+
+
+    /**
+     * The length of the header block being received.
+     */
+    private int headerCount = 0;
+
+
+    /**
+     * Did the HEADERS frame of the header block being received end its
+     * stream?
+     */
+    private boolean headerEndStream = false;
+
+
+    /**
+     * The stream of the header block being received, or zero.
+     */
+    private int headerStreamId = 0;
+
+
+    /**
+     * The input stream from which frames are read.
+     */
+    private InputStream input = null;
+
+
+    /**
+     * The identifier of the last stream opened by the client.
+     */
+    private int lastStreamId = 0;
+
+
+    /**
+     * The maximum number of streams processed concurrently.
+     */
+    private int maxConcurrentStreams = 0;
+
+
+    /**
+     * The output stream on which frames are written.
+     */
+    private OutputStream output = null;
+
+
+    /**
+     * The buffer holding the payload of the frame being read.
+     */
+    private byte[] payload = new byte[MAX_FRAME_SIZE];
+
+
+    /**
+     * The initial flow control window size of the streams, as set by the
+     * peer.
+     */
+    private int peerInitialWindow = DEFAULT_WINDOW_SIZE;
+
+
+    /**
+     * The maximum frame payload size accepted by the peer.
+     */
+    private int peerMaxFrameSize = MAX_FRAME_SIZE;
+
+
+    /**
+     * The processor which accepted the connection.
+     */
+    private HttpProcessor processor = null;
+
+
+    /**
+     * The buffer holding the header of the frame being read.
+     */
+    private byte[] readHeader = new byte[9];
+
+
+    /**
+     * The flow control window of the connection for the frames we send.
+     */
+    private int sendWindow = DEFAULT_WINDOW_SIZE;
+
+
+    /**
+     * The socket on which we are connected to the client.
+     */
+    private Socket socket = null;
+
+
+    /**
+     * The open streams, keyed by identifier.
+     */
+    private HashMap streams = new HashMap();
+
+
+    /**
+     * The timeout, in milliseconds, for reading and writing.
+     */
+    private int timeout = 0;
+
+
+    /**
+     * The header list of the HTTP/1.1 request which asked for the upgrade
+     * to HTTP/2, if any.
+     */
+    private ArrayList upgradeHeaders = null;
+
+
+    /**
+     * The buffer holding the header of the frame being written.
+     */
+    private byte[] writeHeader = new byte[9];
+
+
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Write any buffered frames to the client.
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    synchronized void flush() throws IOException {
+
+        output.flush();
+
+    }
+
+
+    /**
+     * Process the frames received on this connection until it is closed.
+     * When the connection was upgraded from HTTP/1.1, the whole client
+     * connection preface is expected; otherwise, only its part following
+     * the blank line is.
+     */
+    void process() {
+
+        try {
+            writeSettings();
+            if (upgradeHeaders != null) {
+                lastStreamId = 1;
+                Stream stream = new Stream(1);
+                stream.remoteClosed = true;
+                stream.inputEnd = true;
+                synchronized (this) {
+                    streams.put(new Integer(1), stream);
+                }
+                start(stream, upgradeHeaders);
+            }
+            int offset = (upgradeHeaders != null)
+                ? 0 : PREFACE.length - PREFACE_TAIL;
+            upgradeHeaders = null;
+            byte[] preface = new byte[PREFACE.length - offset];
+            readFully(preface, 0, preface.length);
+            for (int i = 0; i < preface.length; i++) {
+                if (preface[i] != PREFACE[offset + i])
+                    connectionError(PROTOCOL_ERROR);
+            }
+            while (true) {
+                try {
+                    readFrame();
+                } catch (InterruptedIOException e) {
+                    // Close the connection if it has been idle
+                    synchronized (this) {
+                        if (streams.isEmpty() && (headerStreamId == 0)) {
+                            writeGoAway(NO_ERROR);
+                            break;
+                        }
+                    }
+                }
+            }
+        } catch (EOFException e) {
+            // Let the streams being processed complete
+            long deadline = System.currentTimeMillis() + timeout;
+            synchronized (this) {
+                while (!streams.isEmpty()) {
+                    long delay = 0;
+                    if (timeout > 0) {
+                        delay = deadline - System.currentTimeMillis();
+                        if (delay <= 0)
+                            break;
+                    }
+                    try {
+                        wait(delay);
+                    } catch (InterruptedException f) {
+                        ;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            ;
+        } catch (Throwable t) {
+            log("process.invoke", t);
+        }
+        close();
+
+    }
+
+
+    /**
+     * Set up the stream through which the HTTP/1.1 request which asked for
+     * the upgrade to HTTP/2 is answered, once <code>process()</code> has
+     * sent the server connection preface.
+     *
+     * @param settings The value of the <code>HTTP2-Settings</code> header
+     * @param headers The names and values of the pseudo headers and headers
+     *  of the request
+     *
+     * @exception IOException if the settings are invalid
+     */
+    void upgrade(String settings, ArrayList headers) throws IOException {
+
+        // Decode the base64url encoded SETTINGS frame payload
+        StringBuffer sb = new StringBuffer(settings.trim());
+        for (int i = 0; i < sb.length(); i++) {
+            if (sb.charAt(i) == '-')
+                sb.setCharAt(i, '+');
+            else if (sb.charAt(i) == '_')
+                sb.setCharAt(i, '/');
+        }
+        while (sb.length() % 4 != 0)
+            sb.append('=');
+        byte[] bytes = Base64.decode(sb.toString().getBytes("ISO-8859-1"));
+        if (bytes.length % 6 != 0)
+            throw new IOException(sm.getString("http2.settings"));
+        applySettings(bytes, 0, bytes.length);
+        upgradeHeaders = headers;
+
+    }
+
+
+    /**
+     * Write the response headers of the specified stream.  They are
+     * flushed with the first DATA frame of the stream, or by
+     * <code>flush()</code>.
+     *
+     * @param streamId The identifier of the stream
+     * @param headers The names and values of the pseudo headers and headers
+     *  of the response
+     *
+     * @exception IOException if the stream has been reset, or if an
+     *  input/output error occurs
+     */
+    synchronized void writeHeaders(int streamId, ArrayList headers)
+        throws IOException {
+
+        Stream stream = (Stream) streams.get(new Integer(streamId));
+        if ((stream == null) || stream.reset || closed)
+            throw new IOException(sm.getString("http2.reset"));
+
+        encoder.begin();
+        for (int i = 0; i < headers.size(); i += 2)
+            encoder.encode((String) headers.get(i),
+                           (String) headers.get(i + 1));
+        byte[] block = encoder.getBuffer();
+        int length = encoder.getLength();
+
+        int type = HEADERS;
+        int pos = 0;
+        do {
+            int n = Math.min(length - pos, peerMaxFrameSize);
+            int flags = (pos + n == length) ? FLAG_END_HEADERS : 0;
+            writeFrameHeader(n, type, flags, streamId);
+            output.write(block, pos, n);
+            pos += n;
+            type = CONTINUATION;
+        } while (pos < length);
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Apply the specified settings received from the peer.
+     *
+     * @param buf The buffer holding the settings
+     * @param off The offset of the settings
+     * @param len The length of the settings
+     */
+    private void applySettings(byte[] buf, int off, int len)
+        throws IOException {
+
+        for (int i = off; i < off + len; i += 6) {
+            int id = ((buf[i] & 0xff) << 8) | (buf[i + 1] & 0xff);
+            int value = readInt(buf, i + 2);
+            switch (id) {
+
+            case SETTINGS_HEADER_TABLE_SIZE:
+                synchronized (this) {
+                    encoder.setMaxTableSize(value);
+                }
+                break;
+
+            case SETTINGS_ENABLE_PUSH:
+                if ((value != 0) && (value != 1))
+                    connectionError(PROTOCOL_ERROR);
+                break;
+
+            case SETTINGS_INITIAL_WINDOW_SIZE:
+                if (value < 0)
+                    connectionError(FLOW_CONTROL_ERROR);
+                synchronized (this) {
+                    int delta = value - peerInitialWindow;
+                    peerInitialWindow = value;
+                    Iterator items = streams.values().iterator();
+                    while (items.hasNext())
+                        ((Stream) items.next()).sendWindow += delta;
+                    notifyAll();
+                }
+                break;
+
+            case SETTINGS_MAX_FRAME_SIZE:
+                if ((value < MAX_FRAME_SIZE) || (value > 0xffffff))
+                    connectionError(PROTOCOL_ERROR);
+                synchronized (this) {
+                    peerMaxFrameSize = value;
+                }
+                break;
+
+            default:
+                // Unknown settings, and settings which do not constrain
+                // the responses of this server, are ignored
+                break;
+
+            }
+        }
+
+    }
+
+
+    /**
+     * Close this connection, and wake up the streams waiting for it.
+     */
+    private void close() {
+
+        synchronized (this) {
+            closed = true;
+            Iterator items = streams.values().iterator();
+            while (items.hasNext())
+                ((Stream) items.next()).cancel();
+            notifyAll();
+        }
+        try {
+            output.flush();
+        } catch (IOException e) {
+            ;
+        }
+
+    }
+
+
+    /**
+     * Signal a connection error to the peer, and stop reading frames.
+     *
+     * @param error The HTTP/2 error code
+     *
+     * @exception IOException always, to stop reading frames
+     */
+    private void connectionError(int error) throws IOException {
+
+        synchronized (this) {
+            writeGoAway(error);
+        }
+        throw new IOException(sm.getString("http2.connectionError",
+                                           new Integer(error)));
+
+    }
+
+
+    /**
+     * Process a complete header block.
+     */
+    private void endHeaders() throws IOException {
+
+        int streamId = headerStreamId;
+        boolean endStream = headerEndStream;
+        headerStreamId = 0;
+
+        // The block is always decoded, to keep the dynamic table in sync
+        ArrayList headers = new ArrayList();
+        try {
+            decoder.decode(headerBlock, 0, headerCount, headers);
+        } catch (IOException e) {
+            connectionError(COMPRESSION_ERROR);
+        }
+
+        Stream stream = null;
+        synchronized (this) {
+            stream = (Stream) streams.get(new Integer(streamId));
+        }
+        if (stream != null) {
+            // Trailers, which are not made available to the application
+            if (!endStream)
+                connectionError(PROTOCOL_ERROR);
+            stream.receive(null, 0, 0, true);
+            return;
+        }
+        if (streamId <= lastStreamId)
+            connectionError(STREAM_CLOSED);
+        lastStreamId = streamId;
+
+        synchronized (this) {
+            if (streams.size() >= maxConcurrentStreams) {
+                writeReset(streamId, REFUSED_STREAM);
+                return;
+            }
+            stream = new Stream(streamId);
+            streams.put(new Integer(streamId), stream);
+        }
+        if (endStream) {
+            stream.remoteClosed = true;
+            stream.inputEnd = true;
+        }
+        start(stream, headers);
+
+    }
+
+
+    /**
+     * Log a message on the Logger associated with our Container (if any).
+     *
+     * @param message Message to be logged
+     * @param throwable Associated exception
+     */
+    private void log(String message, Throwable throwable) {
+
+        Logger logger = connector.getContainer().getLogger();
+        String localName = "Http2Connection[" + connector.getPort() + "]";
+        if (logger != null)
+            logger.log(localName + " " + message, throwable);
+        else {
+            System.out.println(localName + " " + message);
+            throwable.printStackTrace(System.out);
+        }
+
+    }
+
+
+    /**
+     * Read and process the next frame.
+     */
+    private void readFrame() throws IOException {
+
+        // Timeouts are only expected between frames
+        int b = input.read();
+        if (b < 0)
+            throw new EOFException();
+        readHeader[0] = (byte) b;
+        try {
+            readFully(readHeader, 1, 8);
+            readFully(payload, 0, length(readHeader));
+        } catch (InterruptedIOException e) {
+            throw new IOException(e.getMessage());
+        }
+
+        int length = length(readHeader);
+        int type = readHeader[3] & 0xff;
+        int flags = readHeader[4] & 0xff;
+        int streamId = readInt(readHeader, 5) & 0x7fffffff;
+
+        // A header block must not be interleaved with other frames
+        if ((headerStreamId != 0)
+            && ((type != CONTINUATION) || (streamId != headerStreamId)))
+            connectionError(PROTOCOL_ERROR);
+
+        int off = 0;
+        int len = length;
+        switch (type) {
+
+        case DATA:
+            if (streamId == 0)
+                connectionError(PROTOCOL_ERROR);
+            if ((flags & FLAG_PADDED) != 0) {
+                if (len < 1)
+                    connectionError(FRAME_SIZE_ERROR);
+                off = 1;
+                len -= 1 + (payload[0] & 0xff);
+                if (len < 0)
+                    connectionError(PROTOCOL_ERROR);
+            }
+            // The connection window is given back as soon as the data is
+            // received, and the stream window once it has been read
+            synchronized (this) {
+                if (length > 0)
+                    writeWindowUpdate(0, length);
+            }
+            Stream stream = null;
+            synchronized (this) {
+                stream = (Stream) streams.get(new Integer(streamId));
+            }
+            if ((stream == null) || stream.remoteClosed || stream.reset) {
+                if (streamId > lastStreamId)
+                    connectionError(PROTOCOL_ERROR);
+                synchronized (this) {
+                    writeReset(streamId, STREAM_CLOSED);
+                }
+                break;
+            }
+            if (!stream.receive(payload, off, len,
+                                (flags & FLAG_END_STREAM) != 0)) {
+                synchronized (this) {
+                    writeReset(streamId, FLOW_CONTROL_ERROR);
+                }
+                stream.cancel();
+                break;
+            }
+            if ((length > len) && !stream.remoteClosed) {
+                // Padding does not count as data read by the application
+                synchronized (this) {
+                    writeWindowUpdate(streamId, length - len);
+                }
+            }
+            break;
+
+        case HEADERS:
+            if ((streamId == 0) || ((streamId & 1) == 0))
+                connectionError(PROTOCOL_ERROR);
+            int padding = 0;
+            if ((flags & FLAG_PADDED) != 0) {
+                if (len < 1)
+                    connectionError(FRAME_SIZE_ERROR);
+                padding = payload[0] & 0xff;
+                off++;
+                len--;
+            }
+            if ((flags & FLAG_PRIORITY) != 0) {
+                off += 5;
+                len -= 5;
+            }
+            len -= padding;
+            if (len < 0)
+                connectionError(PROTOCOL_ERROR);
+            headerStreamId = streamId;
+            headerEndStream = (flags & FLAG_END_STREAM) != 0;
+            headerCount = 0;
+            appendHeaderBlock(off, len);
+            if ((flags & FLAG_END_HEADERS) != 0)
+                endHeaders();
+            break;
+
+        case CONTINUATION:
+            if (headerStreamId == 0)
+                connectionError(PROTOCOL_ERROR);
+            appendHeaderBlock(0, len);
+            if ((flags & FLAG_END_HEADERS) != 0)
+                endHeaders();
+            break;
+
+        case PRIORITY:
+            if (length != 5)
+                connectionError(FRAME_SIZE_ERROR);
+            break;
+
+        case RST_STREAM:
+            if (length != 4)
+                connectionError(FRAME_SIZE_ERROR);
+            if ((streamId == 0) || (streamId > lastStreamId))
+                connectionError(PROTOCOL_ERROR);
+            synchronized (this) {
+                stream = (Stream) streams.get(new Integer(streamId));
+                if (stream != null)
+                    stream.cancel();
+                notifyAll();
+            }
+            break;
+
+        case SETTINGS:
+            if (streamId != 0)
+                connectionError(PROTOCOL_ERROR);
+            if ((flags & FLAG_ACK) != 0)
+                break;
+            if (length % 6 != 0)
+                connectionError(FRAME_SIZE_ERROR);
+            applySettings(payload, 0, length);
+            synchronized (this) {
+                writeFrameHeader(0, SETTINGS, FLAG_ACK, 0);
+                output.flush();
+            }
+            break;
+
+        case PUSH_PROMISE:
+            connectionError(PROTOCOL_ERROR);
+            break;
+
+        case PING:
+            if (streamId != 0)
+                connectionError(PROTOCOL_ERROR);
+            if (length != 8)
+                connectionError(FRAME_SIZE_ERROR);
+            if ((flags & FLAG_ACK) != 0)
+                break;
+            synchronized (this) {
+                writeFrameHeader(8, PING, FLAG_ACK, 0);
+                output.write(payload, 0, 8);
+                output.flush();
+            }
+            break;
+
+        case GOAWAY:
+            // The client will not open new streams, but those already
+            // opened are still processed
+            break;
+
+        case WINDOW_UPDATE:
+            if (length != 4)
+                connectionError(FRAME_SIZE_ERROR);
+            int increment = readInt(payload, 0) & 0x7fffffff;
+            if ((increment == 0) && (streamId == 0))
+                connectionError(PROTOCOL_ERROR);
+            synchronized (this) {
+                if (streamId == 0) {
+                    if (sendWindow > MAX_WINDOW_SIZE - increment)
+                        connectionError(FLOW_CONTROL_ERROR);
+                    sendWindow += increment;
+                } else {
+                    stream = (Stream) streams.get(new Integer(streamId));
+                    if (stream != null) {
+                        if ((increment == 0) || (stream.sendWindow
+                                                 > MAX_WINDOW_SIZE
+                                                 - increment)) {
+                            writeReset(streamId, (increment == 0)
+                                       ? PROTOCOL_ERROR
+                                       : FLOW_CONTROL_ERROR);
+                            stream.cancel();
+                        } else {
+                            stream.sendWindow += increment;
+                        }
+                    }
+                }
+                notifyAll();
+            }
+            break;
+
+        default:
+            // Unknown frame types are ignored
+            break;
+
+        }
+
+    }
+
+
+    /**
+     * Append a fragment of the payload of the current frame to the header
+     * block being received.
+     *
+     * @param off The offset of the fragment in the payload
+     * @param len The length of the fragment
+     */
+    private void appendHeaderBlock(int off, int len) throws IOException {
+
+        if (headerCount + len > headerBlock.length) {
+            if (headerCount + len > MAX_HEADER_LIST_SIZE)
+                connectionError(PROTOCOL_ERROR);
+            byte[] newBlock = new byte[Math.max(headerBlock.length * 2,
+                                                headerCount + len)];
+            System.arraycopy(headerBlock, 0, newBlock, 0, headerCount);
+            headerBlock = newBlock;
+        }
+        System.arraycopy(payload, off, headerBlock, headerCount, len);
+        headerCount += len;
+
+    }
+
+
+    /**
+     * Return the payload length of the frame with the specified header.
+     */
+    private int length(byte[] header) throws IOException {
+
+        int length = ((header[0] & 0xff) << 16)
+            | ((header[1] & 0xff) << 8) | (header[2] & 0xff);
+        if (length > MAX_FRAME_SIZE)
+            connectionError(FRAME_SIZE_ERROR);
+        return (length);
+
+    }
+
+
+    /**
+     * Read exactly the specified number of bytes.
+     */
+    private void readFully(byte[] b, int off, int len) throws IOException {
+
+        while (len > 0) {
+            int n = input.read(b, off, len);
+            if (n < 0)
+                throw new EOFException();
+            off += n;
+            len -= n;
+        }
+
+    }
+
+
+    /**
+     * Return the 32 bits integer at the specified position.
+     */
+    private static int readInt(byte[] b, int off) {
+
+        return (((b[off] & 0xff) << 24) | ((b[off + 1] & 0xff) << 16)
+                | ((b[off + 2] & 0xff) << 8) | (b[off + 3] & 0xff));
+
+    }
+
+
+    /**
+     * Remove the specified stream, which is complete.
+     */
+    private synchronized void remove(Stream stream) {
+
+        streams.remove(new Integer(stream.id));
+        notifyAll();
+
+    }
+
+
+    /**
+     * Build the request of the specified stream from its header list, and
+     * hand the stream off to a thread.  Malformed requests are answered
+     * with a stream error.
+     *
+     * @param stream The stream
+     * @param headers The names and values of the pseudo headers and headers
+     *  of the request
+     */
+    private void start(Stream stream, ArrayList headers) throws IOException {
+
+        if (!stream.prepare(headers)) {
+            synchronized (this) {
+                writeReset(stream.id, PROTOCOL_ERROR);
+            }
+            stream.recycle();
+            remove(stream);
+            return;
+        }
+        // Refuse the stream if too many requests are being processed
+        AdmissionController admission = connector.getAdmissionController();
+        if (admission != null) {
+            if (!admission.acquire()) {
+                synchronized (this) {
+                    writeReset(stream.id, REFUSED_STREAM);
+                }
+                stream.recycle();
+                remove(stream);
+                return;
+            }
+            stream.admitted = System.currentTimeMillis();
+        }
+        if (!connector.execute(stream)) {
+            synchronized (this) {
+                writeReset(stream.id, REFUSED_STREAM);
+            }
+            stream.recycle();
+            remove(stream);
+        }
+
+    }
+
+
+    /**
+     * Write the DATA frames carrying the specified bytes on the specified
+     * stream, waiting for the flow control windows of the peer to open as
+     * necessary.
+     *
+     * @param stream The stream
+     * @param b The bytes to be written
+     * @param off The offset of the bytes
+     * @param len The number of bytes, which may be zero to end the stream
+     * @param endStream Is this the end of the stream?
+     */
+    private synchronized void writeData(Stream stream, byte[] b, int off,
+                                        int len, boolean endStream)
+        throws IOException {
+
+        while (true) {
+            if (stream.reset || closed)
+                throw new IOException(sm.getString("http2.reset"));
+            if ((len == 0) && endStream) {
+                writeFrameHeader(0, DATA, FLAG_END_STREAM, stream.id);
+                break;
+            }
+            int n = Math.min(Math.min(len, peerMaxFrameSize),
+                             Math.min(sendWindow, stream.sendWindow));
+            if (n <= 0) {
+                output.flush();
+                long start = System.currentTimeMillis();
+                try {
+                    wait(timeout);
+                } catch (InterruptedException e) {
+                    ;
+                }
+                if ((timeout > 0)
+                    && (System.currentTimeMillis() - start >= timeout))
+                    throw new InterruptedIOException();
+                continue;
+            }
+            len -= n;
+            writeFrameHeader(n, DATA, ((len == 0) && endStream)
+                             ? FLAG_END_STREAM : 0, stream.id);
+            output.write(b, off, n);
+            off += n;
+            sendWindow -= n;
+            stream.sendWindow -= n;
+            if (len == 0)
+                break;
+        }
+        output.flush();
+
+    }
+
+
+    /**
+     * Write a frame header.  The caller must hold the lock on this object.
+     */
+    private void writeFrameHeader(int length, int type, int flags,
+                                  int streamId) throws IOException {
+
+        writeHeader[0] = (byte) (length >>> 16);
+        writeHeader[1] = (byte) (length >>> 8);
+        writeHeader[2] = (byte) length;
+        writeHeader[3] = (byte) type;
+        writeHeader[4] = (byte) flags;
+        writeInt(writeHeader, 5, streamId);
+        output.write(writeHeader, 0, 9);
+
+    }
+
+
+    /**
+     * Write a GOAWAY frame.  The caller must hold the lock on this object.
+     *
+     * @param error The HTTP/2 error code
+     */
+    private void writeGoAway(int error) throws IOException {
+
+        byte[] b = new byte[8];
+        writeInt(b, 0, lastStreamId);
+        writeInt(b, 4, error);
+        writeFrameHeader(8, GOAWAY, 0, 0);
+        output.write(b);
+        output.flush();
+
+    }
+
+
+    /**
+     * Write the 32 bits integer at the specified position.
+     */
+    private static void writeInt(byte[] b, int off, int value) {
+
+        b[off] = (byte) (value >>> 24);
+        b[off + 1] = (byte) (value >>> 16);
+        b[off + 2] = (byte) (value >>> 8);
+        b[off + 3] = (byte) value;
+
+    }
+
+
+    /**
+     * Write a RST_STREAM frame.  The caller must hold the lock on this
+     * object.
+     *
+     * @param streamId The identifier of the stream
+     * @param error The HTTP/2 error code
+     */
+    private void writeReset(int streamId, int error) throws IOException {
+
+        byte[] b = new byte[4];
+        writeInt(b, 0, error);
+        writeFrameHeader(4, RST_STREAM, 0, streamId);
+        output.write(b);
+        output.flush();
+
+    }
+
+
+    /**
+     * Write our SETTINGS frame, which is the server connection preface.
+     */
+    private synchronized void writeSettings() throws IOException {
+
+        byte[] b = new byte[18];
+        int[] settings = {
+            SETTINGS_MAX_CONCURRENT_STREAMS, maxConcurrentStreams,
+            SETTINGS_ENABLE_PUSH, 0,
+            SETTINGS_MAX_HEADER_LIST_SIZE, MAX_HEADER_LIST_SIZE
+        };
+        for (int i = 0; i < 3; i++) {
+            b[6 * i] = (byte) (settings[2 * i] >>> 8);
+            b[6 * i + 1] = (byte) settings[2 * i];
+            writeInt(b, 6 * i + 2, settings[2 * i + 1]);
+        }
+        writeFrameHeader(b.length, SETTINGS, 0, 0);
+        output.write(b);
+        output.flush();
+
+    }
+
+
+    /**
+     * Write a WINDOW_UPDATE frame.  The caller must hold the lock on this
+     * object.
+     *
+     * @param streamId The identifier of the stream, or zero for the
+     *  connection
+     * @param increment The window size increment
+     */
+    private void writeWindowUpdate(int streamId, int increment)
+        throws IOException {
+
+        byte[] b = new byte[4];
+        writeInt(b, 0, increment);
+        writeFrameHeader(4, WINDOW_UPDATE, 0, streamId);
+        output.write(b);
+        output.flush();
+
+    }
+
+
+    // ---------------------------------------------------------- Inner Classes
+
+
+    /**
+     * A request stream, processed on its own thread.
+     */
+    private class Stream implements Runnable {
+
+        Stream(int id) {
+            this.id = id;
+            this.sendWindow = peerInitialWindow;
+        }
+
+        /**
+         * The identifier of this stream.
+         */
+        int id = 0;
+
+        /**
+         * The time at which the request was admitted by the admission
+         * controller, or -1.
+         */
+        long admitted = -1L;
+
+        /**
+         * Has the request been found invalid, after the stream was set
+         * up?
+         */
+        boolean badRequest = false;
+
+        /**
+         * The chunks of request body received and not read yet.
+         */
+        LinkedList chunks = new LinkedList();
+
+        /**
+         * The position of the next byte to be read in the first chunk.
+         */
+        int chunkPos = 0;
+
+        /**
+         * Has the whole request body been read by the application?
+         */
+        boolean inputEnd = false;
+
+        /**
+         * The number of bytes of request body received, and not given back
+         * to the peer flow control window yet.
+         */
+        int receiveWindow = DEFAULT_WINDOW_SIZE;
+
+        /**
+         * Has the client ended this stream?
+         */
+        boolean remoteClosed = false;
+
+        /**
+         * The request of this stream.
+         */
+        HttpRequestImpl request = null;
+
+        /**
+         * Has this stream been reset?
+         */
+        boolean reset = false;
+
+        /**
+         * The response of this stream.
+         */
+        Http2Response response = null;
+
+        /**
+         * The flow control window of this stream for the frames we send,
+         * guarded by the connection lock.
+         */
+        int sendWindow = 0;
+
+        /**
+         * Reset this stream, and wake up its threads.
+         */
+        synchronized void cancel() {
+            reset = true;
+            inputEnd = true;
+            notifyAll();
+        }
+
+        /**
+         * Set up the request of this stream from its header list, and
+         * return <code>false</code> if it is malformed.
+         */
+        boolean prepare(ArrayList headers) {
+
+            request = (HttpRequestImpl) connector.createRequest();
+            response = new Http2Response();
+            response.setConnector(connector);
+            response.setBufferPool(connector.getBufferPool());
+            response.setHttp2Stream(Http2Connection.this, id);
+            request.setResponse(response);
+            response.setRequest(request);
+            request.setStream(new StreamInputStream(this));
+            response.setStream(new StreamOutputStream(this));
+            request.setInet(socket.getInetAddress());
+            request.setSocket(socket);
+            request.setProtocol("HTTP/2.0");
+            request.setSecure(connector.getSecure());
+            request.setScheme(connector.getScheme());
+
+            String method = null;
+            String path = null;
+            String scheme = null;
+            String authority = null;
+            String host = null;
+            StringBuffer cookie = null;
+            boolean regular = false;
+            for (int i = 0; i < headers.size(); i += 2) {
+                String name = (String) headers.get(i);
+                String value = (String) headers.get(i + 1);
+                if (name.startsWith(":")) {
+                    // Pseudo headers come first, once each
+                    if (regular)
+                        return (false);
+                    if (name.equals(":method") && (method == null))
+                        method = value;
+                    else if (name.equals(":path") && (path == null))
+                        path = value;
+                    else if (name.equals(":scheme") && (scheme == null))
+                        scheme = value;
+                    else if (name.equals(":authority")
+                             && (authority == null))
+                        authority = value;
+                    else
+                        return (false);
+                    continue;
+                }
+                regular = true;
+                for (int j = 0; j < name.length(); j++) {
+                    char c = name.charAt(j);
+                    if ((c >= 'A') && (c <= 'Z'))
+                        return (false);
+                }
+                if (name.equals("connection") || name.equals("keep-alive")
+                    || name.equals("proxy-connection")
+                    || name.equals("transfer-encoding")
+                    || name.equals("upgrade")
+                    || (name.equals("te") && !value.equals("trailers")))
+                    return (false);
+                if (name.equals("cookie")) {
+                    // Cookies may be split in several fields
+                    if (cookie == null)
+                        cookie = new StringBuffer(value);
+                    else
+                        cookie.append("; ").append(value);
+                    continue;
+                }
+                if (name.equals("content-length")) {
+                    try {
+                        request.setContentLength(Integer.parseInt(value));
+                    } catch (NumberFormatException e) {
+                        return (false);
+                    }
+                } else if (name.equals("content-type")) {
+                    request.setContentType(value);
+                } else if (name.equals("host")) {
+                    host = value;
+                }
+                request.addHeader(name, value);
+            }
+            if ((method == null) || (path == null) || (scheme == null)
+                || (path.length() == 0))
+                return (false);
+
+            // Server name and port
+            if (host == null) {
+                host = authority;
+                if (host != null)
+                    request.addHeader("host", host);
+            }
+            if (connector.getProxyPort() != 0)
+                request.setServerPort(connector.getProxyPort());
+            else
+                request.setServerPort(connector.getPort());
+            if (host != null) {
+                int n = host.lastIndexOf(':');
+                if ((n > host.lastIndexOf(']'))
+                    && (connector.getProxyPort() == 0)) {
+                    try {
+                        request.setServerPort
+                            (Integer.parseInt(host.substring(n + 1)));
+                    } catch (NumberFormatException e) {
+                        return (false);
+                    }
+                    host = host.substring(0, n);
+                } else if ((n > host.lastIndexOf(']'))) {
+                    host = host.substring(0, n);
+                }
+                request.setServerName(host);
+            }
+            if (connector.getProxyName() != null)
+                request.setServerName(connector.getProxyName());
+
+            // Request URI, query string and requested session id
+            ((HttpRequest) request).setMethod(method);
+            String uri = path;
+            int question = uri.indexOf('?');
+            if (question >= 0) {
+                request.setQueryString(uri.substring(question + 1));
+                uri = uri.substring(0, question);
+            }
+            String match = ";" + Globals.SESSION_PARAMETER_NAME + "=";
+            int semicolon = uri.indexOf(match);
+            if (semicolon >= 0) {
+                String rest = uri.substring(semicolon + match.length());
+                int semicolon2 = rest.indexOf(';');
+                if (semicolon2 >= 0) {
+                    request.setRequestedSessionId
+                        (rest.substring(0, semicolon2));
+                    rest = rest.substring(semicolon2);
+                } else {
+                    request.setRequestedSessionId(rest);
+                    rest = "";
+                }
+                request.setRequestedSessionURL(true);
+                uri = uri.substring(0, semicolon) + rest;
+            }
+            if (cookie != null) {
+                request.addHeader("cookie", cookie.toString());
+                Cookie[] cookies = request.getCookies();
+                for (int i = 0; i < cookies.length; i++) {
+                    if (cookies[i].getName()
+                        .equals(Globals.SESSION_COOKIE_NAME)) {
+                        // Override anything requested in the URL
+                        request.setRequestedSessionId
+                            (cookies[i].getValue());
+                        request.setRequestedSessionCookie(true);
+                        request.setRequestedSessionURL(false);
+                        break;
+                    }
+                }
+            }
+            String normalizedUri = processor.normalize(uri);
+            if (normalizedUri != null) {
+                ((HttpRequest) request).setRequestURI(normalizedUri);
+            } else {
+                ((HttpRequest) request).setRequestURI(uri);
+                badRequest = true;
+            }
+            return (true);
+
+        }
+
+        /**
+         * Add the specified request body bytes to those which have not
+         * been read yet, and return <code>false</code> if the peer has
+         * exceeded the flow control window of this stream.
+         */
+        synchronized boolean receive(byte[] b, int off, int len,
+                                     boolean endStream) {
+
+            if (len > 0) {
+                receiveWindow -= len;
+                if (receiveWindow < 0)
+                    return (false);
+                byte[] chunk = new byte[len];
+                System.arraycopy(b, off, chunk, 0, len);
+                chunks.addLast(chunk);
+            }
+            if (endStream)
+                remoteClosed = true;
+            notifyAll();
+            return (true);
+
+        }
+
+        /**
+         * Read request body bytes, waiting for them to be received as
+         * necessary, and give them back to the flow control window of the
+         * peer.
+         */
+        int read(byte[] b, int off, int len) throws IOException {
+
+            int n = 0;
+            synchronized (this) {
+                while (chunks.isEmpty()) {
+                    if (inputEnd || remoteClosed) {
+                        inputEnd = true;
+                        return (-1);
+                    }
+                    long start = System.currentTimeMillis();
+                    try {
+                        wait(timeout);
+                    } catch (InterruptedException e) {
+                        ;
+                    }
+                    if ((timeout > 0) && chunks.isEmpty()
+                        && (System.currentTimeMillis() - start >= timeout))
+                        throw new InterruptedIOException();
+                }
+                byte[] chunk = (byte[]) chunks.getFirst();
+                n = Math.min(len, chunk.length - chunkPos);
+                System.arraycopy(chunk, chunkPos, b, off, n);
+                chunkPos += n;
+                if (chunkPos == chunk.length) {
+                    chunks.removeFirst();
+                    chunkPos = 0;
+                }
+                receiveWindow += n;
+                if (remoteClosed)
+                    return (n);
+            }
+            synchronized (Http2Connection.this) {
+                if (!closed)
+                    writeWindowUpdate(id, n);
+            }
+            return (n);
+
+        }
+
+        /**
+         * Release the request and the response of this stream, and its
+         * slot in the admission controller.
+         */
+        void recycle() {
+            AdmissionController admission =
+                connector.getAdmissionController();
+            if ((admitted >= 0) && (admission != null))
+                admission.release(System.currentTimeMillis() - admitted);
+            admitted = -1L;
+            if (request != null)
+                request.recycle();
+            if (response != null)
+                response.recycle();
+            request = null;
+            response = null;
+        }
+
+        /**
+         * Process the request of this stream.
+         */
+        public void run() {
+
+            boolean ok = true;
+            try {
+                ((HttpServletResponse) response).setHeader
+                    ("Server", SERVER_INFO);
+                ((HttpServletResponse) response).setHeader
+                    ("Date", FastHttpDateFormat.getCurrentDate());
+                if (badRequest)
+                    ((HttpServletResponse) response.getResponse())
+                        .sendError(HttpServletResponse.SC_BAD_REQUEST);
+                else
+                    connector.getContainer().invoke(request, response);
+            } catch (IOException e) {
+                ok = false;
+            } catch (ServletException e) {
+                log("process.invoke", e);
+                try {
+                    ((HttpServletResponse) response.getResponse())
+                        .sendError
+                        (HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                } catch (Exception f) {
+                    ;
+                }
+            } catch (Throwable t) {
+                log("process.invoke", t);
+                try {
+                    ((HttpServletResponse) response.getResponse())
+                        .sendError
+                        (HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                } catch (Exception f) {
+                    ;
+                }
+            }
+
+            try {
+                if (ok) {
+                    response.finishResponse();
+                    request.finishRequest();
+                    writeData(this, null, 0, 0, true);
+                }
+                synchronized (Http2Connection.this) {
+                    if (!ok) {
+                        if (!reset && !closed)
+                            writeReset(id, INTERNAL_ERROR);
+                    } else if (!remoteClosed && !reset && !closed) {
+                        // The request body is not needed anymore
+                        writeReset(id, NO_ERROR);
+                    }
+                }
+            } catch (IOException e) {
+                ;
+            } catch (Throwable t) {
+                log("process.invoke", t);
+            } finally {
+                recycle();
+                remove(this);
+            }
+
+        }
+
+    }
+
+
+    /**
+     * Input stream reading the request body of a stream.
+     */
+    private class StreamInputStream extends InputStream {
+
+        StreamInputStream(Stream stream) {
+            this.stream = stream;
+        }
+
+        private Stream stream = null;
+
+        private byte[] single = new byte[1];
+
+        public int read() throws IOException {
+            int n = stream.read(single, 0, 1);
+            return ((n < 0) ? -1 : (single[0] & 0xff));
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return (0);
+            return (stream.read(b, off, len));
+        }
+
+    }
+
+
+    /**
+     * Output stream writing the response body of a stream as DATA frames.
+     */
+    private class StreamOutputStream extends OutputStream {
+
+        StreamOutputStream(Stream stream) {
+            this.stream = stream;
+        }
+
+        private Stream stream = null;
+
+        private byte[] single = new byte[1];
+
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            writeData(stream, single, 0, 1, false);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0)
+                writeData(stream, b, off, len, false);
+        }
+
+    }
+
+
+}
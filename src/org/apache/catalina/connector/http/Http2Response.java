@@ -0,0 +1,169 @@
+package org.apache.catalina.connector.http;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import javax.servlet.http.Cookie;
+import org.apache.catalina.connector.HttpResponseBase;
+import org.apache.catalina.util.CookieTools;
+
+
+/**
+ * Implementation of <b>HttpResponse</b> for the streams of an HTTP/2
+ * connection.  The response headers are sent as a HEADERS frame, and the
+ * content is written to an output stream producing DATA frames.
+ *
+ * @deprecated
+ */
+
+final class Http2Response
+    extends HttpResponseBase {
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The HTTP/2 connection of this response.
+     */
+    private Http2Connection connection = null;
+
+
+    /**
+     * Descriptive information about this Response implementation.
+     */
+    protected static final String info =
+        "org.apache.catalina.connector.http.Http2Response/1.0";
+
+
+    /**
+     * The identifier of the stream of this response.
+     */
+    private int streamId = 0;
+
+
+    // ------------------------------------------------------------- Properties
+
+
+    /**
+     * Return descriptive information about this Response implementation and
+     * the corresponding version number, in the format
+     * <code>&lt;description&gt;/&lt;version&gt;</code>.
+     */
+    public String getInfo() {
+
+        return (info);
+
+    }
+
+
+    /**
+     * Set the HTTP/2 stream of this response.
+     *
+     * @param connection The HTTP/2 connection
+     * @param streamId The identifier of the stream
+     */
+    void setHttp2Stream(Http2Connection connection, int streamId) {
+
+        this.connection = connection;
+        this.streamId = streamId;
+
+    }
+
+
+    // ------------------------------------------------------ Protected Methods
+
+
+    /**
+     * Send the HTTP response headers as a HEADERS frame, if this has not
+     * already occurred.  Connection specific headers, which are not allowed
+     * in HTTP/2, are dropped.
+     */
+    protected void sendHeaders() throws IOException {
+
+        if (isCommitted())
+            return;
+
+        ArrayList fields = new ArrayList();
+        fields.add(":status");
+        fields.add(String.valueOf(status));
+        if (getContentType() != null) {
+            fields.add("content-type");
+            fields.add(getContentType());
+        }
+        if (getContentLength() >= 0) {
+            fields.add("content-length");
+            fields.add(String.valueOf(getContentLength()));
+        }
+
+        synchronized (headers) {
+            Iterator names = headers.keySet().iterator();
+            while (names.hasNext()) {
+                String name = (String) names.next();
+                String lowerName = name.toLowerCase();
+                if (lowerName.equals("connection")
+                    || lowerName.equals("keep-alive")
+                    || lowerName.equals("transfer-encoding")
+                    || lowerName.equals("upgrade"))
+                    continue;
+                ArrayList values = (ArrayList) headers.get(name);
+                Iterator items = values.iterator();
+                while (items.hasNext()) {
+                    fields.add(lowerName);
+                    fields.add(String.valueOf(items.next()));
+                }
+            }
+        }
+
+        addSessionCookie();
+        synchronized (cookies) {
+            Iterator items = cookies.iterator();
+            while (items.hasNext()) {
+                Cookie cookie = (Cookie) items.next();
+                fields.add(CookieTools.getCookieHeaderName(cookie)
+                           .toLowerCase());
+                fields.add(CookieTools.getCookieHeaderValue(cookie));
+            }
+        }
+
+        connection.writeHeaders(streamId, fields);
+        committed = true;
+
+    }
+
+
+    // ------------------------------------------------ ServletResponse Methods
+
+
+    /**
+     * Flush the buffer and commit this response, making sure that the
+     * headers are sent even if there is no content yet.
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    public void flushBuffer() throws IOException {
+
+        super.flushBuffer();
+        connection.flush();
+
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Release all object references, and initialize instance variables, in
+     * preparation for reuse of this object.
+     */
+    public void recycle() {
+
+        super.recycle();
+        connection = null;
+        streamId = 0;
+
+    }
+
+
+}
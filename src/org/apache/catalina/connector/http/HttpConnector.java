@@ -2,13 +2,20 @@ package org.apache.catalina.connector.http;
 
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.BindException;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketException;
 import java.security.AccessControlException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Stack;
+import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.WeakHashMap;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
@@ -16,6 +23,7 @@ import java.security.UnrecoverableKeyException;
 import java.security.KeyManagementException;
 import org.apache.catalina.Connector;
 import org.apache.catalina.Container;
+import org.apache.catalina.Executor;
 import org.apache.catalina.Lifecycle;
 import org.apache.catalina.LifecycleException;
 import org.apache.catalina.LifecycleListener;
@@ -23,10 +31,14 @@ import org.apache.catalina.Logger;
 import org.apache.catalina.Request;
 import org.apache.catalina.Response;
 import org.apache.catalina.Service;
+import org.apache.catalina.connector.BufferPool;
+import org.apache.catalina.net.ChannelServerSocketFactory;
 import org.apache.catalina.net.DefaultServerSocketFactory;
 import org.apache.catalina.net.ServerSocketFactory;
 import org.apache.catalina.util.LifecycleSupport;
+import org.apache.catalina.util.ReusePort;
 import org.apache.catalina.util.StringManager;
+import org.apache.catalina.util.VirtualThreads;
 
 
 /**
@@ -39,7 +51,7 @@ import org.apache.catalina.util.StringManager;
  */
 
 
-public final class HttpConnector
+public class HttpConnector
     implements Connector, Lifecycle, Runnable {
 
 
@@ -58,6 +70,32 @@ public final class HttpConnector
     private int acceptCount = 10;
 
 
+    /**
+     * The number of threads accepting incoming connections.
+     */
+    private int acceptorThreadCount = 1;
+
+
+    /**
+     * The acceptor threads.
+     */
+    private Thread[] acceptors = null;
+
+
+    /**
+     * The admission controller limiting the number of requests processed
+     * at the same time, if admission control is enabled.
+     */
+    private AdmissionController admission = null;
+
+
+    /**
+     * Should the number of requests processed at the same time be limited
+     * adaptively, shedding the excess requests ?
+     */
+    private boolean admissionControl = false;
+
+
     /**
      * The IP address on which to bind, if any.  If <code>null</code>, all
      * addresses on the server will be bound.
@@ -65,18 +103,58 @@ public final class HttpConnector
     private String address = null;
 
 
+    /**
+     * The timeout of each read of a request body, in milliseconds, or -1
+     * to use the connection timeout.
+     */
+    private int bodyReadTimeout = -1;
+
+
     /**
      * The input buffer size we should create on input streams.
      */
     private int bufferSize = 2048;
 
 
+    /**
+     * The pool of response buffers shared by our processors.
+     */
+    private BufferPool bufferPool = null;
+
+
     /**
      * The Container used for processing requests received by this Connector.
      */
     protected Container container = null;
 
 
+    /**
+     * The MIME types of the responses which may be compressed.
+     */
+    private String compressableMimeTypes =
+        "text/html,text/xml,text/plain,text/css,text/javascript,"
+        + "application/javascript,application/json";
+
+
+    /**
+     * The parsed MIME types of the responses which may be compressed.
+     */
+    private String compressableTypes[] = parseTypes(compressableMimeTypes);
+
+
+    /**
+     * Should responses be compressed when the client accepts it?
+     */
+    private boolean compression = false;
+
+
+    /**
+     * The minimum size of the responses which are compressed, when their
+     * size is known in advance.
+     */
+    private int compressionMinSize = 2048;
+
+
     /**
      * The set of processors that have ever been created.
      */
@@ -95,18 +173,53 @@ public final class HttpConnector
     private int debug = 0;
 
 
+    /**
+     * The pool of deflaters used to compress responses.
+     */
+    private DeflaterPool deflaterPool = null;
+
+
     /**
      * The "enable DNS lookups" flag for this Connector.
      */
     private boolean enableLookups = false;
 
 
+    /**
+     * The Executor processing the requests of this Connector, if any.
+     */
+    private Executor executor = null;
+
+
+    /**
+     * The name of the Executor of our Service which should process the
+     * requests of this Connector.  If not specified, this Connector uses
+     * its own processor threads.
+     */
+    private String executorName = null;
+
+
     /**
      * The server socket factory for this component.
      */
     private ServerSocketFactory factory = null;
 
 
+    /**
+     * The timeout for reading the request line and headers of a request,
+     * from its first byte, in milliseconds, or -1 to use the connection
+     * timeout.
+     */
+    private int headerReadTimeout = -1;
+
+
+    /**
+     * Should clients be allowed to switch to cleartext HTTP/2, using an
+     * <code>Upgrade: h2c</code> header or prior knowledge?
+     */
+    private boolean http2 = false;
+
+
     /**
      * Descriptive information about this Connector implementation.
      */
@@ -120,6 +233,13 @@ public final class HttpConnector
     protected LifecycleSupport lifecycle = new LifecycleSupport(this);
 
 
+    /**
+     * The pre-rendered response sent when a connection or a request is
+     * rejected because this connector is overloaded.
+     */
+    private byte[] serviceUnavailable = null;
+
+
     /**
      * The minimum number of processors to start at initialization time.
      */
@@ -132,6 +252,62 @@ public final class HttpConnector
     private int maxProcessors = 20;
 
 
+    /**
+     * The maximum number of requests processed at the same time, when
+     * admission control is enabled.
+     */
+    private int maxConcurrentRequests = 1000;
+
+
+    /**
+     * The timeout of the wait for the next request on a keep-alive
+     * connection, in milliseconds, or -1 to use the connection timeout.
+     */
+    private int keepAliveTimeout = -1;
+
+
+    /**
+     * The latency histograms of the phases of request processing, indexed
+     * by the <code>Constants.PHASE_*</code> constants.
+     */
+    private LatencyHistogram[] latencies = new LatencyHistogram[] {
+        new LatencyHistogram(), new LatencyHistogram(),
+        new LatencyHistogram(), new LatencyHistogram(),
+        new LatencyHistogram(), new LatencyHistogram(),
+        new LatencyHistogram()
+    };
+
+
+    /**
+     * The number of requests already processed on the parked keep-alive
+     * connections, when their number is limited.
+     */
+    private Map keepAliveRequests =
+        Collections.synchronizedMap(new WeakHashMap());
+
+
+    /**
+     * The input streams of the connections which go on after a resumed
+     * request, holding the bytes of the next requests already read.
+     */
+    private Map resumedInputs =
+        Collections.synchronizedMap(new WeakHashMap());
+
+
+    /**
+     * The maximum number of requests processed on a keep-alive connection,
+     * or -1 for no limit.
+     */
+    private int maxKeepAliveRequests = -1;
+
+
+    /**
+     * The maximum number of streams of an HTTP/2 connection processed
+     * concurrently.
+     */
+    private int maxConcurrentStreams = 100;
+
+
     /**
      * Timeout value on the incoming connection.
      * Note : a value of 0 means no timeout.
@@ -139,6 +315,25 @@ public final class HttpConnector
     private int connectionTimeout = Constants.DEFAULT_CONNECTION_TIMEOUT;
 
 
+    /**
+     * Should idle keep-alive connections be parked on a poller thread,
+     * rather than holding a processor while waiting for the next request?
+     */
+    private boolean pollKeepAlive = false;
+
+
+    /**
+     * The timing wheel enforcing the timeouts of our connections.
+     */
+    private TimingWheel timer = null;
+
+
+    /**
+     * The poller watching the parked keep-alive connections, if any.
+     */
+    private KeepAlivePoller poller = null;
+
+
     /**
      * The port number on which we listen for HTTP requests.
      */
@@ -152,6 +347,13 @@ public final class HttpConnector
     private Stack processors = new Stack();
 
 
+    /**
+     * The parked connections which have received a new request, and are
+     * waiting for a processor to become available.
+     */
+    private ArrayList resumed = new ArrayList();
+
+
     /**
      * The server name to which we should pretend requests to this Connector
      * were directed.  This is useful when operating Tomcat behind a proxy
@@ -176,6 +378,12 @@ public final class HttpConnector
     private int redirectPort = 443;
 
 
+    /**
+     * The default response buffer size.
+     */
+    private int responseBufferSize = 8192;
+
+
     /**
      * The request scheme that will be set on all requests received
      * through this connector.
@@ -191,9 +399,31 @@ public final class HttpConnector
 
 
     /**
-     * The server socket through which we listen for incoming TCP connections.
+     * Should each acceptor thread listen on a server socket of its own,
+     * bound to the same port with the <code>SO_REUSEPORT</code> option ?
      */
-    private ServerSocket serverSocket = null;
+    private boolean reusePort = false;
+
+
+    /**
+     * The number of acceptor threads which have not shut down yet.
+     */
+    private int runningAcceptors = 0;
+
+
+    /**
+     * The number of seconds after which clients are asked to retry the
+     * requests rejected because this connector is overloaded.
+     */
+    private int retryAfter = 1;
+
+
+    /**
+     * The server sockets through which we listen for incoming TCP
+     * connections: one per acceptor thread if they are sharded with
+     * <code>SO_REUSEPORT</code>, or one shared by all the acceptor threads.
+     */
+    private ServerSocket[] serverSockets = null;
 
 
     /**
@@ -221,12 +451,6 @@ public final class HttpConnector
     private boolean stopped = false;
 
 
-    /**
-     * The background thread.
-     */
-    private Thread thread = null;
-
-
     /**
      * The name to register for the background thread.
      */
@@ -251,6 +475,20 @@ public final class HttpConnector
     private boolean tcpNoDelay = true;
 
 
+    /**
+     * Should each connection be processed on a thread of its own, rather
+     * than by a pooled processor ?
+     */
+    private boolean virtualThreads = false;
+
+
+    /**
+     * May the content of static files be written directly from the file
+     * system to the socket ?
+     */
+    private boolean useSendfile = true;
+
+
     // ------------------------------------------------------------- Properties
 
 
@@ -320,6 +558,58 @@ public final class HttpConnector
     }
 
 
+    /**
+     * Return the number of threads accepting incoming connections.
+     */
+    public int getAcceptorThreadCount() {
+
+        return (acceptorThreadCount);
+
+    }
+
+
+    /**
+     * Set the number of threads accepting incoming connections.  Unless
+     * <code>reusePort</code> is enabled, they all accept connections from
+     * the same server socket.
+     *
+     * @param acceptorThreadCount The new number of acceptor threads
+     */
+    public void setAcceptorThreadCount(int acceptorThreadCount) {
+
+        if (acceptorThreadCount < 1)
+            acceptorThreadCount = 1;
+        this.acceptorThreadCount = acceptorThreadCount;
+
+    }
+
+
+    /**
+     * Return the admission control flag.
+     */
+    public boolean getAdmissionControl() {
+
+        return (this.admissionControl);
+
+    }
+
+
+    /**
+     * Set the admission control flag.  When set, the number of requests
+     * processed at the same time is limited to a value which adapts to
+     * their latency, up to <code>maxConcurrentRequests</code>, and the
+     * requests exceeding the limit are answered right away with a
+     * <code>503</code> status and a <code>Retry-After</code> header.
+     *
+     * @param admissionControl The new admission control flag
+     */
+    public void setAdmissionControl(boolean admissionControl) {
+
+        this.admissionControl = admissionControl;
+
+    }
+
+
     /**
      * Get the allow chunking flag.
      */
@@ -384,6 +674,33 @@ public final class HttpConnector
     }
 
 
+    /**
+     * Return the timeout of each read of a request body, in milliseconds.
+     */
+    public int getBodyReadTimeout() {
+
+        if (bodyReadTimeout < 0)
+            return (connectionTimeout);
+        return (this.bodyReadTimeout);
+
+    }
+
+
+    /**
+     * Set the timeout of each read of a request body, in milliseconds.
+     * Slow uploads are not cut off as long as each read makes progress
+     * before this timeout.  The default value of -1 uses the connection
+     * timeout.
+     *
+     * @param bodyReadTimeout The new timeout
+     */
+    public void setBodyReadTimeout(int bodyReadTimeout) {
+
+        this.bodyReadTimeout = bodyReadTimeout;
+
+    }
+
+
     /**
      * Return the input buffer size for this Connector.
      */
@@ -430,6 +747,92 @@ public final class HttpConnector
     }
 
 
+    /**
+     * Return the MIME types of the responses which may be compressed, as a
+     * comma separated list.
+     */
+    public String getCompressableMimeTypes() {
+
+        return (this.compressableMimeTypes);
+
+    }
+
+
+    /**
+     * Set the MIME types of the responses which may be compressed.
+     *
+     * @param compressableMimeTypes The new comma separated list of MIME
+     *  types
+     */
+    public void setCompressableMimeTypes(String compressableMimeTypes) {
+
+        this.compressableMimeTypes = compressableMimeTypes;
+        this.compressableTypes = parseTypes(compressableMimeTypes);
+
+    }
+
+
+    /**
+     * Return the compression flag.
+     */
+    public boolean getCompression() {
+
+        return (this.compression);
+
+    }
+
+
+    /**
+     * Set the compression flag.  When set, responses of a compressable MIME
+     * type are compressed using gzip or deflate, if the client accepts one
+     * of these encodings.
+     *
+     * @param compression The new compression flag
+     */
+    public void setCompression(boolean compression) {
+
+        this.compression = compression;
+
+    }
+
+
+    /**
+     * Return the minimum size of the responses which are compressed.
+     */
+    public int getCompressionMinSize() {
+
+        return (this.compressionMinSize);
+
+    }
+
+
+    /**
+     * Set the minimum size of the responses which are compressed.  Responses
+     * whose length is not known in advance are always compressed.
+     *
+     * @param compressionMinSize The new minimum size
+     */
+    public void setCompressionMinSize(int compressionMinSize) {
+
+        this.compressionMinSize = compressionMinSize;
+
+    }
+
+
+    /**
+     * Return the current limit of the number of requests processed at the
+     * same time, or zero if admission control is disabled.
+     */
+    public int getConcurrencyLimit() {
+
+        AdmissionController admission = this.admission;
+        if (admission == null)
+            return (0);
+        return (admission.getLimit());
+
+    }
+
+
     /**
      * Return the current number of processors that have been created.
      */
@@ -485,300 +888,1113 @@ public final class HttpConnector
 
 
     /**
-     * Return the server socket factory used by this Container.
+     * Return the name of the Executor used by this Connector, if any.
      */
-    public ServerSocketFactory getFactory() {
+    public String getExecutor() {
 
-        if (this.factory == null) {
-            synchronized (this) {
-                this.factory = new DefaultServerSocketFactory();
-            }
-        }
-        return (this.factory);
+        return (this.executorName);
 
     }
 
 
     /**
-     * Set the server socket factory used by this Container.
+     * Set the name of the Executor used by this Connector.  The Executor is
+     * looked up in the Service of this Connector when it is started, and
+     * may be shared with other Connectors of this Service.
      *
-     * @param factory The new server socket factory
+     * @param executorName The name of the Executor
      */
-    public void setFactory(ServerSocketFactory factory) {
+    public void setExecutor(String executorName) {
 
-        this.factory = factory;
+        this.executorName = executorName;
 
     }
 
 
     /**
-     * Return descriptive information about this Connector implementation.
+     * Return a summary of the time taken to complete the responses once the
+     * Container is done with them, in microseconds.
      */
-    public String getInfo() {
+    public String getFinishLatency() {
 
-        return (info);
+        return (latencies[Constants.PHASE_FINISH].toString());
 
     }
 
 
     /**
-     * Return the minimum number of processors to start at initialization.
+     * Return a summary of the time new connections waited for the first
+     * byte of their first request, in microseconds.
      */
-    public int getMinProcessors() {
+    public String getFirstByteLatency() {
 
-        return (minProcessors);
+        return (latencies[Constants.PHASE_FIRST_BYTE].toString());
 
     }
 
 
     /**
-     * Set the minimum number of processors to start at initialization.
-     *
-     * @param minProcessors The new minimum processors
+     * Return a summary of the time taken to flush the completed responses,
+     * in microseconds.
      */
-    public void setMinProcessors(int minProcessors) {
+    public String getFlushLatency() {
 
-        this.minProcessors = minProcessors;
+        return (latencies[Constants.PHASE_FLUSH].toString());
+
+    }
+
+
+    /**
+     * Return the server socket factory used by this Container.
+     */
+    public ServerSocketFactory getFactory() {
+
+        if (this.factory == null) {
+            synchronized (this) {
+                if (pollKeepAlive)
+                    this.factory = new ChannelServerSocketFactory();
+                else
+                    this.factory = new DefaultServerSocketFactory();
+            }
+        }
+        return (this.factory);
+
+    }
+
+
+    /**
+     * Set the server socket factory used by this Container.
+     *
+     * @param factory The new server socket factory
+     */
+    public void setFactory(ServerSocketFactory factory) {
+
+        this.factory = factory;
+
+    }
+
+
+    /**
+     * Return a summary of the time taken to receive and parse the request
+     * headers, in microseconds.
+     */
+    public String getHeadersLatency() {
+
+        return (latencies[Constants.PHASE_HEADERS].toString());
+
+    }
+
+
+    /**
+     * Return the timeout for reading the request line and headers of a
+     * request, in milliseconds.
+     */
+    public int getHeaderReadTimeout() {
+
+        if (headerReadTimeout < 0)
+            return (connectionTimeout);
+        return (this.headerReadTimeout);
+
+    }
+
+
+    /**
+     * Set the timeout for reading the request line and headers of a
+     * request, counted from its first byte, in milliseconds.  This limits
+     * the time a client sending its headers very slowly can hold a
+     * processor.  The default value of -1 uses the connection timeout.
+     *
+     * @param headerReadTimeout The new timeout
+     */
+    public void setHeaderReadTimeout(int headerReadTimeout) {
+
+        this.headerReadTimeout = headerReadTimeout;
+
+    }
+
+
+    /**
+     * Return the HTTP/2 flag for this Connector.
+     */
+    public boolean getHttp2() {
+
+        return (this.http2);
+
+    }
+
+
+    /**
+     * Set the HTTP/2 flag for this Connector.  When set, clients may switch
+     * their connections to cleartext HTTP/2, either by upgrading an
+     * HTTP/1.1 request or with prior knowledge.
+     *
+     * @param http2 The new HTTP/2 flag
+     */
+    public void setHttp2(boolean http2) {
+
+        this.http2 = http2;
+
+    }
+
+
+    /**
+     * Return descriptive information about this Connector implementation.
+     */
+    public String getInfo() {
+
+        return (info);
+
+    }
+
+
+    /**
+     * Return the number of requests being processed, or zero if admission
+     * control is disabled.
+     */
+    public int getInFlightRequests() {
+
+        AdmissionController admission = this.admission;
+        if (admission == null)
+            return (0);
+        return (admission.getInFlight());
+
+    }
+
+
+    /**
+     * Return a summary of the time taken by the Container to process the
+     * requests, in microseconds.
+     */
+    public String getInvokeLatency() {
+
+        return (latencies[Constants.PHASE_INVOKE].toString());
+
+    }
+
+
+    /**
+     * Return the timeout of the wait for the next request on a keep-alive
+     * connection, in milliseconds.
+     */
+    public int getKeepAliveTimeout() {
+
+        if (keepAliveTimeout < 0)
+            return (connectionTimeout);
+        return (this.keepAliveTimeout);
+
+    }
+
+
+    /**
+     * Set the timeout of the wait for the next request on a keep-alive
+     * connection, in milliseconds.  Idle connections can be closed
+     * aggressively with a short timeout, without affecting the requests
+     * being received.  The default value of -1 uses the connection
+     * timeout.
+     *
+     * @param keepAliveTimeout The new timeout
+     */
+    public void setKeepAliveTimeout(int keepAliveTimeout) {
+
+        this.keepAliveTimeout = keepAliveTimeout;
+
+    }
+
+
+    /**
+     * Return the minimum number of processors to start at initialization.
+     */
+    public int getMinProcessors() {
+
+        return (minProcessors);
+
+    }
+
+
+    /**
+     * Set the minimum number of processors to start at initialization.
+     *
+     * @param minProcessors The new minimum processors
+     */
+    public void setMinProcessors(int minProcessors) {
+
+        this.minProcessors = minProcessors;
+
+    }
+
+
+    /**
+     * Return the maximum number of processors allowed, or <0 for unlimited.
+     */
+    public int getMaxProcessors() {
+
+        return (maxProcessors);
+
+    }
+
+
+    /**
+     * Set the maximum number of processors allowed, or <0 for unlimited.
+     *
+     * @param maxProcessors The new maximum processors
+     */
+    public void setMaxProcessors(int maxProcessors) {
+
+        this.maxProcessors = maxProcessors;
+
+    }
+
+
+    /**
+     * Return the maximum number of requests processed at the same time,
+     * when admission control is enabled.
+     */
+    public int getMaxConcurrentRequests() {
+
+        return (this.maxConcurrentRequests);
+
+    }
+
+
+    /**
+     * Set the maximum number of requests processed at the same time, when
+     * admission control is enabled.
+     *
+     * @param maxConcurrentRequests The new maximum
+     */
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+
+        this.maxConcurrentRequests = maxConcurrentRequests;
+
+    }
+
+
+    /**
+     * Return the maximum number of streams of an HTTP/2 connection
+     * processed concurrently.
+     */
+    public int getMaxConcurrentStreams() {
+
+        return (this.maxConcurrentStreams);
+
+    }
+
+
+    /**
+     * Set the maximum number of streams of an HTTP/2 connection processed
+     * concurrently.  This limit is advertised to the clients, and further
+     * streams are refused.
+     *
+     * @param maxConcurrentStreams The new maximum number of streams
+     */
+    public void setMaxConcurrentStreams(int maxConcurrentStreams) {
+
+        this.maxConcurrentStreams = maxConcurrentStreams;
+
+    }
+
+
+    /**
+     * Return the maximum number of requests processed on a keep-alive
+     * connection.
+     */
+    public int getMaxKeepAliveRequests() {
+
+        return (this.maxKeepAliveRequests);
+
+    }
+
+
+    /**
+     * Set the maximum number of requests processed on a keep-alive
+     * connection, after which the connection is closed, or -1 for no limit.
+     *
+     * @param maxKeepAliveRequests The new maximum
+     */
+    public void setMaxKeepAliveRequests(int maxKeepAliveRequests) {
+
+        this.maxKeepAliveRequests = maxKeepAliveRequests;
+
+    }
+
+
+    /**
+     * Return the longest time a request waited before being processed, in
+     * milliseconds, or zero if admission control is disabled.
+     */
+    public long getMaxQueueTime() {
+
+        AdmissionController admission = this.admission;
+        if (admission == null)
+            return (0L);
+        return (admission.getMaxQueueTime());
+
+    }
+
+
+    /**
+     * Return the number of idle keep-alive connections currently parked.
+     */
+    public int getParkedConnections() {
+
+        KeepAlivePoller poller = this.poller;
+        if (poller == null)
+            return (0);
+        return (poller.getParkedCount());
+
+    }
+
+
+    /**
+     * Return the "poll keep-alive connections" flag.
+     */
+    public boolean getPollKeepAlive() {
+
+        return (this.pollKeepAlive);
+
+    }
+
+
+    /**
+     * Set the "poll keep-alive connections" flag.  When set, a processor
+     * which has completed a request on a persistent connection returns to
+     * the pool, and the connection is watched by a poller thread until the
+     * next request arrives.  This requires sockets exposing their channel,
+     * which is the case with the default server socket factory; connections
+     * accepted through other factories (such as SSL) are not parked.
+     *
+     * @param pollKeepAlive The new flag value
+     */
+    public void setPollKeepAlive(boolean pollKeepAlive) {
+
+        this.pollKeepAlive = pollKeepAlive;
+
+    }
+
+
+    /**
+     * Return the port number on which we listen for HTTP requests.
+     */
+    public int getPort() {
+
+        return (this.port);
+
+    }
+
+
+    /**
+     * Set the port number on which we listen for HTTP requests.
+     *
+     * @param port The new port number
+     */
+    public void setPort(int port) {
+
+        this.port = port;
+
+    }
+
+
+    /**
+     * Return the proxy server name for this Connector.
+     */
+    public String getProxyName() {
+
+        return (this.proxyName);
+
+    }
+
+
+    /**
+     * Set the proxy server name for this Connector.
+     *
+     * @param proxyName The new proxy server name
+     */
+    public void setProxyName(String proxyName) {
+
+        this.proxyName = proxyName;
+
+    }
+
+
+    /**
+     * Return the proxy server port for this Connector.
+     */
+    public int getProxyPort() {
+
+        return (this.proxyPort);
+
+    }
+
+
+    /**
+     * Set the proxy server port for this Connector.
+     *
+     * @param proxyPort The new proxy server port
+     */
+    public void setProxyPort(int proxyPort) {
+
+        this.proxyPort = proxyPort;
+
+    }
+
+
+    /**
+     * Return the average time requests waited before being processed, in
+     * milliseconds, or zero if admission control is disabled.
+     */
+    public long getQueueTime() {
+
+        AdmissionController admission = this.admission;
+        if (admission == null)
+            return (0L);
+        return (admission.getQueueTime());
+
+    }
+
+
+    /**
+     * Return the port number to which a request should be redirected if
+     * it comes in on a non-SSL port and is subject to a security constraint
+     * with a transport guarantee that requires SSL.
+     */
+    public int getRedirectPort() {
+
+        return (this.redirectPort);
+
+    }
+
+
+    /**
+     * Set the redirect port number.
+     *
+     * @param redirectPort The redirect port number (non-SSL to SSL)
+     */
+    public void setRedirectPort(int redirectPort) {
+
+        this.redirectPort = redirectPort;
+
+    }
+
+
+    /**
+     * Return the number of requests rejected by admission control.
+     */
+    public long getRejectedRequests() {
+
+        AdmissionController admission = this.admission;
+        if (admission == null)
+            return (0L);
+        return (admission.getRejected());
+
+    }
+
+
+    /**
+     * Return a summary of the time taken to receive and parse the request
+     * lines, from their first byte, in microseconds.
+     */
+    public String getRequestLineLatency() {
+
+        return (latencies[Constants.PHASE_REQUEST_LINE].toString());
+
+    }
+
+
+    /**
+     * Return the default response buffer size for this Connector.
+     */
+    public int getResponseBufferSize() {
+
+        return (this.responseBufferSize);
+
+    }
+
+
+    /**
+     * Set the default response buffer size for this Connector.  Responses
+     * use pooled buffers of this size, unless the application requests a
+     * larger buffer.
+     *
+     * @param responseBufferSize The new response buffer size
+     */
+    public void setResponseBufferSize(int responseBufferSize) {
+
+        this.responseBufferSize = responseBufferSize;
+
+    }
+
+
+    /**
+     * Return <code>true</code> if each acceptor thread listens on a server
+     * socket of its own.
+     */
+    public boolean getReusePort() {
+
+        return (this.reusePort);
+
+    }
+
+
+    /**
+     * Set the flag which causes a server socket to be opened for each
+     * acceptor thread, all bound to the same port with the
+     * <code>SO_REUSEPORT</code> option, so that the operating system
+     * distributes the incoming connections among them.  This requires
+     * support from the JVM and from the operating system (Linux), and a
+     * default or channel server socket factory; otherwise, a single server
+     * socket is shared by the acceptor threads.
+     *
+     * @param reusePort The new flag value
+     */
+    public void setReusePort(boolean reusePort) {
+
+        this.reusePort = reusePort;
+
+    }
+
+
+    /**
+     * Return the number of seconds after which clients are asked to retry
+     * the requests rejected because this connector is overloaded.
+     */
+    public int getRetryAfter() {
+
+        return (this.retryAfter);
+
+    }
+
+
+    /**
+     * Set the number of seconds after which clients are asked to retry the
+     * requests rejected because this connector is overloaded.
+     *
+     * @param retryAfter The new delay, in seconds
+     */
+    public void setRetryAfter(int retryAfter) {
+
+        this.retryAfter = retryAfter;
+
+    }
+
+
+    /**
+     * Return the scheme that will be assigned to requests received
+     * through this connector.  Default value is "http".
+     */
+    public String getScheme() {
+
+        return (this.scheme);
+
+    }
+
+
+    /**
+     * Set the scheme that will be assigned to requests received through
+     * this connector.
+     *
+     * @param scheme The new scheme
+     */
+    public void setScheme(String scheme) {
+
+        this.scheme = scheme;
+
+    }
+
+
+    /**
+     * Return the secure connection flag that will be assigned to requests
+     * received through this connector.  Default value is "false".
+     */
+    public boolean getSecure() {
+
+        return (this.secure);
+
+    }
+
+
+    /**
+     * Set the secure connection flag that will be assigned to requests
+     * received through this connector.
+     *
+     * @param secure The new secure connection flag
+     */
+    public void setSecure(boolean secure) {
+
+        this.secure = secure;
+
+    }
+
+
+    /**
+     * Return the TCP no delay flag value.
+     */
+    public boolean getTcpNoDelay() {
+
+        return (this.tcpNoDelay);
+
+    }
+
+
+    /**
+     * Set the TCP no delay flag which will be set on the socket after
+     * accepting a connection.
+     *
+     * @param tcpNoDelay The new TCP no delay flag
+     */
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+
+        this.tcpNoDelay = tcpNoDelay;
+
+    }
+
+
+    /**
+     * Return a summary of the total time taken to process the requests,
+     * from the first byte of the request to the flush of the response, in
+     * microseconds.
+     */
+    public String getTotalLatency() {
+
+        return (latencies[Constants.PHASE_TOTAL].toString());
+
+    }
+
+
+    /**
+     * Return the "use sendfile" flag.
+     */
+    public boolean getUseSendfile() {
+
+        return (this.useSendfile);
+
+    }
+
+
+    /**
+     * Set the "use sendfile" flag.  When set, servlets such as the default
+     * servlet may ask this connector to write the content of a file directly
+     * from the file system to the socket, using
+     * <code>FileChannel.transferTo()</code>.  This is only possible with
+     * sockets exposing their channel, such as the sockets created by a
+     * <code>ChannelServerSocketFactory</code> or by the
+     * <code>NioHttpConnector</code>.
+     *
+     * @param useSendfile The new flag value
+     */
+    public void setUseSendfile(boolean useSendfile) {
+
+        this.useSendfile = useSendfile;
+
+    }
+
+
+    /**
+     * Return the "thread per connection" flag.
+     */
+    public boolean getVirtualThreads() {
+
+        return (this.virtualThreads);
+
+    }
+
+
+    /**
+     * Set the "thread per connection" flag.  When set, each accepted
+     * connection is processed on a new thread instead of being assigned
+     * to a pooled processor, and the <code>minProcessors</code> and
+     * <code>maxProcessors</code> limits only bound the number of idle
+     * processors kept for later connections.  The new threads are
+     * virtual threads when the JVM supports them, and daemon platform
+     * threads otherwise.
+     *
+     * @param virtualThreads The new flag value
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+
+        this.virtualThreads = virtualThreads;
+
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Create (or allocate) and return a Request object suitable for
+     * specifying the contents of a Request to the responsible Container.
+     */
+    public Request createRequest() {
+
+        //        if (debug >= 2)
+        //            log("createRequest: Creating new request");
+        HttpRequestImpl request = new HttpRequestImpl();
+        request.setConnector(this);
+        return (request);
+
+    }
+
+
+    /**
+     * Create (or allocate) and return a Response object suitable for
+     * receiving the contents of a Response from the responsible Container.
+     */
+    public Response createResponse() {
+
+        //        if (debug >= 2)
+        //            log("createResponse: Creating new response");
+        HttpResponseImpl response = new HttpResponseImpl();
+        response.setConnector(this);
+        response.setBufferPool(getBufferPool());
+        return (response);
 
     }
 
 
     /**
-     * Return the maximum number of processors allowed, or <0 for unlimited.
+     * Forget the latencies recorded so far for the phases of request
+     * processing.
      */
-    public int getMaxProcessors() {
+    public void resetLatencies() {
 
-        return (maxProcessors);
+        for (int i = 0; i < latencies.length; i++)
+            latencies[i].reset();
 
     }
 
 
+    // -------------------------------------------------------- Package Methods
+
+
     /**
-     * Set the maximum number of processors allowed, or <0 for unlimited.
-     *
-     * @param maxProcessors The new maximum processors
+     * Return the admission controller of this connector, or
+     * <code>null</code> if admission control is disabled.
      */
-    public void setMaxProcessors(int maxProcessors) {
+    AdmissionController getAdmissionController() {
 
-        this.maxProcessors = maxProcessors;
+        return (this.admission);
 
     }
 
 
     /**
-     * Return the port number on which we listen for HTTP requests.
+     * Return the latency histogram of the specified phase of request
+     * processing.
+     *
+     * @param phase The phase, one of the <code>Constants.PHASE_*</code>
+     *  constants
      */
-    public int getPort() {
+    LatencyHistogram getLatency(int phase) {
 
-        return (this.port);
+        return (latencies[phase]);
 
     }
 
 
     /**
-     * Set the port number on which we listen for HTTP requests.
-     *
-     * @param port The new port number
+     * Return the pre-rendered <code>503</code> response sent when a
+     * connection or a request is rejected because this connector is
+     * overloaded.
      */
-    public void setPort(int port) {
+    byte[] getServiceUnavailable() {
 
-        this.port = port;
+        return (this.serviceUnavailable);
 
     }
 
 
     /**
-     * Return the proxy server name for this Connector.
+     * Create the admission controller, if admission control is enabled,
+     * and render the <code>503</code> response according to the current
+     * configuration.  This is called when the connector is started.
      */
-    public String getProxyName() {
+    void initAdmission() {
 
-        return (this.proxyName);
+        serviceUnavailable = ("HTTP/1.1 503 Service Unavailable\r\n"
+                              + "Retry-After: " + retryAfter + "\r\n"
+                              + "Connection: close\r\n"
+                              + "Content-Length: 0\r\n\r\n").getBytes();
+        if (admissionControl)
+            admission = new AdmissionController(maxConcurrentRequests);
+        else
+            admission = null;
 
     }
 
 
     /**
-     * Set the proxy server name for this Connector.
-     *
-     * @param proxyName The new proxy server name
+     * Return the pool of response buffers shared by our processors,
+     * creating it if necessary.
      */
-    public void setProxyName(String proxyName) {
+    synchronized BufferPool getBufferPool() {
 
-        this.proxyName = proxyName;
+        if (bufferPool == null)
+            bufferPool = new BufferPool
+                (responseBufferSize, (maxProcessors > 0) ? maxProcessors : -1,
+                 isDirectBuffers());
+        return (bufferPool);
 
     }
 
 
     /**
-     * Return the proxy server port for this Connector.
+     * Return the pool of deflaters used to compress responses, creating it
+     * if necessary.
      */
-    public int getProxyPort() {
+    synchronized DeflaterPool getDeflaterPool() {
 
-        return (this.proxyPort);
+        if (deflaterPool == null)
+            deflaterPool =
+                new DeflaterPool((maxProcessors > 0) ? maxProcessors : -1);
+        return (deflaterPool);
 
     }
 
 
     /**
-     * Set the proxy server port for this Connector.
+     * Return <code>true</code> if responses of the specified content type
+     * may be compressed.
      *
-     * @param proxyPort The new proxy server port
-     */
-    public void setProxyPort(int proxyPort) {
-
-        this.proxyPort = proxyPort;
+     * @param contentType The content type of the response, which may
+     *  include parameters
+     */
+    boolean isCompressable(String contentType) {
+
+        if (contentType == null)
+            return (false);
+        int semi = contentType.indexOf(';');
+        if (semi >= 0)
+            contentType = contentType.substring(0, semi);
+        contentType = contentType.trim();
+        String types[] = compressableTypes;
+        for (int i = 0; i < types.length; i++) {
+            if (types[i].equalsIgnoreCase(contentType))
+                return (true);
+        }
+        return (false);
 
     }
 
 
     /**
-     * Return the port number to which a request should be redirected if
-     * it comes in on a non-SSL port and is subject to a security constraint
-     * with a transport guarantee that requires SSL.
+     * Return <code>true</code> if the response buffers should be direct
+     * buffers, which is only worthwhile when the responses are written to
+     * a channel.
      */
-    public int getRedirectPort() {
+    boolean isDirectBuffers() {
 
-        return (this.redirectPort);
+        return (false);
 
     }
 
 
     /**
-     * Set the redirect port number.
+     * Execute the specified task, which processes a stream of an HTTP/2
+     * connection, on a thread of our Executor, or on a new thread if there
+     * is no Executor.  Return <code>false</code> if the Executor rejected
+     * the task.
      *
-     * @param redirectPort The redirect port number (non-SSL to SSL)
+     * @param task The task to be executed
      */
-    public void setRedirectPort(int redirectPort) {
+    boolean execute(Runnable task) {
 
-        this.redirectPort = redirectPort;
+        if (executor != null)
+            return (executor.execute(task));
+        VirtualThreads.start(task, threadName + "-stream");
+        return (true);
 
     }
 
 
     /**
-     * Return the scheme that will be assigned to requests received
-     * through this connector.  Default value is "http".
+     * Return <code>true</code> if connections may be switched to HTTP/2,
+     * which requires the processors to own their connection.
      */
-    public String getScheme() {
+    boolean isHttp2Supported() {
 
-        return (this.scheme);
+        return (http2);
 
     }
 
 
     /**
-     * Set the scheme that will be assigned to requests received through
-     * this connector.
+     * Recycle the specified Processor so that it can be used again.
      *
-     * @param scheme The new scheme
+     * @param processor The processor to be recycled
      */
-    public void setScheme(String scheme) {
+    void recycle(HttpProcessor processor) {
 
-        this.scheme = scheme;
+        //        if (debug >= 2)
+        //            log("recycle: Recycling processor " + processor);
+        Socket socket = null;
+        synchronized (processors) {
+            if (resumed.size() > 0)
+                socket = (Socket) resumed.remove(0);
+            else
+                processors.push(processor);
+        }
+        if (socket != null)
+            processor.assign(socket);
 
     }
 
 
     /**
-     * Return the secure connection flag that will be assigned to requests
-     * received through this connector.  Default value is "false".
+     * Park the specified idle keep-alive socket until the next request is
+     * received on it.  Return <code>false</code> if the socket cannot be
+     * parked, in which case the caller remains responsible for it.
+     *
+     * @param socket The socket to park
+     * @param requests The number of requests already processed on the
+     *  socket
      */
-    public boolean getSecure() {
+    boolean park(Socket socket, int requests) {
 
-        return (this.secure);
+        KeepAlivePoller poller = this.poller;
+        if ((poller == null) || (socket.getChannel() == null))
+            return (false);
+        if (maxKeepAliveRequests > 0)
+            keepAliveRequests.put(socket, new Integer(requests));
+        poller.park(socket);
+        return (true);
 
     }
 
 
     /**
-     * Set the secure connection flag that will be assigned to requests
-     * received through this connector.
+     * Wait for the next request on the specified kept-alive socket, whose
+     * last request has been finished outside of a processor: the socket is
+     * parked if possible, or assigned to a processor otherwise, which goes
+     * on reading from the input stream of the previous requests so that
+     * the bytes of pipelined requests already read are not lost.
      *
-     * @param secure The new secure connection flag
+     * @param socket The socket
+     * @param requests The number of requests already processed on the
+     *  socket
+     * @param input The input stream from which the last request was read
      */
-    public void setSecure(boolean secure) {
+    void proceed(Socket socket, int requests, SocketInputStream input) {
 
-        this.secure = secure;
+        if ((input.buffered() == 0) && park(socket, requests))
+            return;
+        if (maxKeepAliveRequests > 0)
+            keepAliveRequests.put(socket, new Integer(requests));
+        resumedInputs.put(socket, input);
+        resume(socket);
 
     }
 
 
     /**
-     * Return the TCP no delay flag value.
+     * Return the number of requests already processed on the specified
+     * socket, if it was parked, or zero for a new connection.
+     *
+     * @param socket The socket
      */
-    public boolean getTcpNoDelay() {
+    int getKeepAliveRequests(Socket socket) {
 
-        return (this.tcpNoDelay);
+        Integer requests = (Integer) keepAliveRequests.remove(socket);
+        if (requests == null)
+            return (0);
+        return (requests.intValue());
 
     }
 
 
     /**
-     * Set the TCP no delay flag which will be set on the socket after
-     * accepting a connection.
+     * Return the input stream to go on reading from on the specified
+     * socket, if its last request was resumed, or <code>null</code> for
+     * a new or parked connection.
      *
-     * @param tcpNoDelay The new TCP no delay flag
+     * @param socket The socket
      */
-    public void setTcpNoDelay(boolean tcpNoDelay) {
+    SocketInputStream getResumedInput(Socket socket) {
 
-        this.tcpNoDelay = tcpNoDelay;
+        return ((SocketInputStream) resumedInputs.remove(socket));
 
     }
 
 
-    // --------------------------------------------------------- Public Methods
+    /**
+     * Return the timing wheel enforcing the timeouts of our connections.
+     */
+    TimingWheel getTimer() {
+
+        return (this.timer);
+
+    }
 
 
     /**
-     * Create (or allocate) and return a Request object suitable for
-     * specifying the contents of a Request to the responsible Container.
+     * Assign a parked socket on which a new request has been received to an
+     * available processor.  If none is available, the socket will be
+     * assigned to the next processor which is recycled.
+     *
+     * @param socket The socket to process
      */
-    public Request createRequest() {
+    void resume(Socket socket) {
 
-        //        if (debug >= 2)
-        //            log("createRequest: Creating new request");
-        HttpRequestImpl request = new HttpRequestImpl();
-        request.setConnector(this);
-        return (request);
+        if ((executor != null) || virtualThreads) {
+            dispatch(socket);
+            return;
+        }
+
+        HttpProcessor processor = null;
+        synchronized (processors) {
+            processor = createProcessor();
+            if (processor == null) {
+                resumed.add(socket);
+                return;
+            }
+        }
+        processor.assign(socket);
 
     }
 
 
     /**
-     * Create (or allocate) and return a Response object suitable for
-     * receiving the contents of a Response from the responsible Container.
+     * Set the socket options of this connector on the specified accepted
+     * socket.  This is done by the thread processing the connection rather
+     * than by the acceptor threads, so that they can go back to accepting
+     * connections right away.
+     *
+     * @param socket The socket to configure
+     *
+     * @exception SocketException if an option cannot be set
      */
-    public Response createResponse() {
+    void setSocketOptions(Socket socket) throws SocketException {
 
-        //        if (debug >= 2)
-        //            log("createResponse: Creating new response");
-        HttpResponseImpl response = new HttpResponseImpl();
-        response.setConnector(this);
-        return (response);
+        // Read timeouts are enforced by our timing wheel
+        socket.setSoTimeout(0);
+        socket.setTcpNoDelay(tcpNoDelay);
 
     }
 
 
-    // -------------------------------------------------------- Package Methods
+    // -------------------------------------------------------- Private Methods
 
 
     /**
-     * Recycle the specified Processor so that it can be used again.
+     * Hand the specified socket off to a new thread, or to our Executor.
+     * If the Executor rejects it, a <code>503</code> response is sent and
+     * the socket is closed.
      *
-     * @param processor The processor to be recycled
+     * @param socket The socket to process
      */
-    void recycle(HttpProcessor processor) {
+    private void dispatch(Socket socket) {
 
-        //        if (debug >= 2)
-        //            log("recycle: Recycling processor " + processor);
-        processors.push(processor);
+        if (virtualThreads) {
+            VirtualThreads.start(new SocketProcessor(socket),
+                                 threadName + "-connection");
+            return;
+        }
+        if (executor.execute(new SocketProcessor(socket)))
+            return;
+        log(sm.getString("httpConnector.rejected", executorName));
+        reject(socket);
 
     }
 
 
-    // -------------------------------------------------------- Private Methods
-
-
     /**
      * Create (or allocate) and return an available processor for use in
      * processing a specific HTTP request, if possible.  If the maximum
@@ -933,17 +2149,141 @@ public final class HttpConnector
     }
 
 
+    /**
+     * Open the server sockets of this connector: one for each acceptor
+     * thread if <code>reusePort</code> is enabled and supported, or a
+     * single one otherwise.
+     *
+     * @exception IOException                input/output or network error
+     * @exception KeyStoreException          error instantiating the
+     *                                       KeyStore from file (SSL only)
+     * @exception NoSuchAlgorithmException   KeyStore algorithm unsupported
+     *                                       by current provider (SSL only)
+     * @exception CertificateException       general certificate error (SSL only)
+     * @exception UnrecoverableKeyException  internal KeyStore problem with
+     *                                       the certificate (SSL only)
+     * @exception KeyManagementException     problem in the key management
+     *                                       layer (SSL only)
+     */
+    private ServerSocket[] openAll()
+    throws IOException, KeyStoreException, NoSuchAlgorithmException,
+           CertificateException, UnrecoverableKeyException,
+           KeyManagementException
+    {
+
+        // Ask the server socket factory to enable SO_REUSEPORT, if possible
+        int count = 1;
+        if (reusePort) {
+            ServerSocketFactory factory = getFactory();
+            if (!ReusePort.isSupported()) {
+                log(sm.getString("httpConnector.noReusePort"));
+            } else if (factory instanceof DefaultServerSocketFactory) {
+                ((DefaultServerSocketFactory) factory).setReusePort(true);
+                count = acceptorThreadCount;
+            } else if (factory instanceof ChannelServerSocketFactory) {
+                ((ChannelServerSocketFactory) factory).setReusePort(true);
+                count = acceptorThreadCount;
+            } else {
+                log(sm.getString("httpConnector.noReusePort"));
+            }
+        }
+
+        ServerSocket[] results = new ServerSocket[count];
+        boolean ok = false;
+        try {
+            for (int i = 0; i < count; i++)
+                results[i] = open();
+            ok = true;
+        } finally {
+            // Do not leave the server sockets already opened bound
+            for (int i = 0; !ok && (i < count); i++) {
+                if (results[i] != null) {
+                    try {
+                        results[i].close();
+                    } catch (IOException e) {
+                        ;
+                    }
+                }
+            }
+        }
+        return (results);
+
+    }
+
+
+    /**
+     * Parse a comma separated list of MIME types.
+     *
+     * @param types The list to parse
+     */
+    private static String[] parseTypes(String types) {
+
+        ArrayList results = new ArrayList();
+        if (types != null) {
+            StringTokenizer tokenizer = new StringTokenizer(types, ",");
+            while (tokenizer.hasMoreTokens()) {
+                String type = tokenizer.nextToken().trim();
+                if (type.length() > 0)
+                    results.add(type);
+            }
+        }
+        return ((String[]) results.toArray(new String[results.size()]));
+
+    }
+
+
+    /**
+     * Send the pre-rendered <code>503</code> response on the specified
+     * socket, and close it.
+     *
+     * @param socket The socket to reject
+     */
+    private void reject(Socket socket) {
+
+        try {
+            OutputStream output = socket.getOutputStream();
+            output.write(serviceUnavailable);
+            output.flush();
+        } catch (IOException e) {
+            ;
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            ;
+        }
+
+    }
+
+
     // ---------------------------------------------- Background Thread Methods
 
 
     /**
-     * The background thread that listens for incoming TCP/IP connections and
-     * hands them off to an appropriate processor.
+     * The background thread that listens for incoming TCP/IP connections on
+     * the first server socket and hands them off to an appropriate
+     * processor.
      */
     public void run() {
+
+        accept(0);
+
+    }
+
+
+    /**
+     * Listen for incoming TCP/IP connections on the specified server socket
+     * and hand them off to an appropriate processor, until we receive a
+     * shutdown command.  The socket options are set by the processing
+     * thread (see <code>setSocketOptions()</code>).
+     *
+     * @param index The index of the server socket
+     */
+    private void accept(int index) {
         // Loop until we receive a shutdown command
         while (!stopped) {
             // Accept the next incoming connection from the server socket
+            ServerSocket serverSocket = serverSockets[index];
             Socket socket = null;
             try {
                 //                if (debug >= 3)
@@ -951,9 +2291,6 @@ public final class HttpConnector
                 socket = serverSocket.accept();
                 //                if (debug >= 3)
                 //                    log("run: Returned from serverSocket.accept()");
-                if (connectionTimeout > 0)
-                    socket.setSoTimeout(connectionTimeout);
-                socket.setTcpNoDelay(tcpNoDelay);
             } catch (AccessControlException ace) {
                 log("socket accept security exception", ace);
                 continue;
@@ -965,13 +2302,16 @@ public final class HttpConnector
                     synchronized (threadSync) {
                         if (started && !stopped)
                             log("accept error: ", e);
-                        if (!stopped) {
+                        // Another acceptor sharing this server socket may
+                        // have reopened it already
+                        if (!stopped
+                            && (serverSockets[index] == serverSocket)) {
                             //                    if (debug >= 3)
                             //                        log("run: Closing server socket");
                             serverSocket.close();
                             //                        if (debug >= 3)
                             //                            log("run: Reopening server socket");
-                            serverSocket = open();
+                            serverSockets[index] = open();
                         }
                     }
                     //                    if (debug >= 3)
@@ -999,15 +2339,18 @@ public final class HttpConnector
                 continue;
             }
 
+            // Hand this socket off to our Executor or to a thread of its
+            // own, if requested
+            if ((executor != null) || virtualThreads) {
+                dispatch(socket);
+                continue;
+            }
+
             // Hand this socket off to an appropriate processor
             HttpProcessor processor = createProcessor();
             if (processor == null) {
-                try {
-                    log(sm.getString("httpConnector.noProcessor"));
-                    socket.close();
-                } catch (IOException e) {
-                    ;
-                }
+                log(sm.getString("httpConnector.noProcessor"));
+                reject(socket);
                 continue;
             }
             //            if (debug >= 3)
@@ -1022,6 +2365,7 @@ public final class HttpConnector
         //        if (debug >= 3)
         //            log("run: Notifying threadStop() that we have shut down");
         synchronized (threadSync) {
+            runningAcceptors--;
             threadSync.notifyAll();
         }
 
@@ -1029,33 +2373,51 @@ public final class HttpConnector
 
 
     /**
-     * Start the background processing thread.
+     * Start the background acceptor threads.  Each thread accepts
+     * connections from the server socket of the same index modulo the
+     * number of server sockets.
      */
     private void threadStart() {
 
         log(sm.getString("httpConnector.starting"));
 
-        thread = new Thread(this, threadName);
-        thread.setDaemon(true);
-        thread.start();
+        acceptors = new Thread[acceptorThreadCount];
+        synchronized (threadSync) {
+            runningAcceptors = acceptors.length;
+        }
+        for (int i = 0; i < acceptors.length; i++) {
+            String name = threadName;
+            if (acceptors.length > 1)
+                name = threadName + "[" + i + "]";
+            acceptors[i] = new Thread
+                (new Acceptor(i % serverSockets.length), name);
+            acceptors[i].setDaemon(true);
+            acceptors[i].start();
+        }
 
     }
 
 
     /**
-     * Stop the background processing thread.
+     * Stop the background acceptor threads.
      */
     private void threadStop() {
 
         log(sm.getString("httpConnector.stopping"));
 
         stopped = true;
+        long deadline = System.currentTimeMillis() + 5000;
         try {
-            threadSync.wait(5000);
+            while (runningAcceptors > 0) {
+                long timeout = deadline - System.currentTimeMillis();
+                if (timeout <= 0)
+                    break;
+                threadSync.wait(timeout);
+            }
         } catch (InterruptedException e) {
             ;
         }
-        thread = null;
+        acceptors = null;
 
     }
 
@@ -1110,9 +2472,9 @@ public final class HttpConnector
         this.initialized=true;
         Exception eRethrow = null;
 
-        // Establish a server socket on the specified port
+        // Establish the server sockets on the specified port
         try {
-            serverSocket = open();
+            serverSockets = openAll();
         } catch (IOException ioe) {
             log("httpConnector, io problem: ", ioe);
             eRethrow = ioe;
@@ -1154,11 +2516,37 @@ public final class HttpConnector
         lifecycle.fireLifecycleEvent(START_EVENT, null);
         started = true;
 
+        // Look up the Executor we should use, if any
+        if ((executorName != null) && (service != null))
+            executor = service.getExecutor(executorName);
+        if ((executorName != null) && (executor == null))
+            log(sm.getString("httpConnector.noExecutor", executorName));
+        if (virtualThreads && !VirtualThreads.isSupported())
+            log(sm.getString("httpConnector.noVirtualThreads"));
+
+        initAdmission();
+
+        // Start the timing wheel, with a tick of 100ms
+        timer = new TimingWheel("HttpTimer[" + port + "]", 100, 512);
+        timer.start();
+
         // Start our background thread
         threadStart();
 
+        // Start the keep-alive poller, if requested
+        if (pollKeepAlive) {
+            poller = new KeepAlivePoller(this);
+            try {
+                poller.start();
+            } catch (IOException e) {
+                log("HttpConnector.start", e);
+                poller = null;
+            }
+        }
+
         // Create the specified minimum number of processors
-        while (curProcessors < minProcessors) {
+        while ((executor == null) && !virtualThreads
+               && (curProcessors < minProcessors)) {
             if ((maxProcessors > 0) && (curProcessors >= maxProcessors))
                 break;
             HttpProcessor processor = newProcessor();
@@ -1182,6 +2570,23 @@ public final class HttpConnector
         lifecycle.fireLifecycleEvent(STOP_EVENT, null);
         started = false;
 
+        // Close the parked keep-alive connections
+        if (poller != null) {
+            poller.stop();
+            poller = null;
+        }
+        synchronized (processors) {
+            for (int i = 0; i < resumed.size(); i++) {
+                try {
+                    ((Socket) resumed.get(i)).close();
+                } catch (IOException e) {
+                    ;
+                }
+            }
+            resumed.clear();
+        }
+        resumedInputs.clear();
+
         // Gracefully shut down all processors we have created
         for (int i = created.size() - 1; i >= 0; i--) {
             HttpProcessor processor = (HttpProcessor) created.elementAt(i);
@@ -1194,19 +2599,100 @@ public final class HttpConnector
             }
         }
 
+        executor = null;
+
+        if (timer != null) {
+            timer.stop();
+            timer = null;
+        }
+
         synchronized (threadSync) {
-            // Close the server socket we were using
-            if (serverSocket != null) {
+            // Close the server sockets we were using
+            for (int i = 0; (serverSockets != null)
+                     && (i < serverSockets.length); i++) {
                 try {
-                    serverSocket.close();
+                    serverSockets[i].close();
                 } catch (IOException e) {
                     ;
                 }
             }
-            // Stop our background thread
+            // Stop our background threads
             threadStop();
         }
-        serverSocket = null;
+        serverSockets = null;
+
+    }
+
+
+
+    // --------------------------------------------------------- Inner Classes
+
+
+    /**
+     * Background thread accepting connections from one of our server
+     * sockets.
+     */
+    private class Acceptor implements Runnable {
+
+        private int index = 0;
+
+        public Acceptor(int index) {
+            this.index = index;
+        }
+
+        public void run() {
+            accept(index);
+        }
+
+    }
+
+
+    /**
+     * Task processing a socket on a thread of our Executor, or on a thread
+     * dedicated to this connection, using a processor borrowed from our
+     * pool.  Processors used this way do not have a background thread of
+     * their own.
+     */
+    private class SocketProcessor implements Runnable {
+
+        private Socket socket = null;
+
+        private long created = System.currentTimeMillis();
+
+        public SocketProcessor(Socket socket) {
+            this.socket = socket;
+        }
+
+        public void run() {
+
+            AdmissionController admission = getAdmissionController();
+            if (admission != null)
+                admission.addQueueTime(System.currentTimeMillis() - created);
+
+            HttpProcessor processor = null;
+            synchronized (processors) {
+                if (processors.size() > 0)
+                    processor = (HttpProcessor) processors.pop();
+                else
+                    processor = new HttpProcessor(HttpConnector.this,
+                                                  curProcessors++);
+            }
+            try {
+                processor.process(socket);
+            } catch (Throwable t) {
+                log("process.invoke", t);
+            }
+            // Keep no more idle processors than the connector would pool,
+            // rather than one for each connection of the busiest moment
+            int limit = (maxProcessors > 0) ? maxProcessors : minProcessors;
+            synchronized (processors) {
+                if (processors.size() < limit)
+                    processors.push(processor);
+                else
+                    curProcessors--;
+            }
+
+        }
 
     }
 
@@ -47,6 +47,7 @@ final class HttpHeader {
         this.nameEnd = name.length();
         this.value = value.toCharArray();
         this.valueEnd = value.length();
+        this.valueString = value;
 
     }
 
@@ -61,9 +62,72 @@ final class HttpHeader {
     protected int hashCode = 0;
 
 
+    /**
+     * The ordinal of the name of this header in the well-known header
+     * table, or -2 if it has not been looked up yet.
+     */
+    protected int ordinal = -2;
+
+
+    /**
+     * The name of this header as a String, created on first use.
+     */
+    protected String nameString = null;
+
+
+    /**
+     * The value of this header as a String, created on first use.
+     */
+    protected String valueString = null;
+
+
     // ------------------------------------------------------------- Properties
 
 
+    /**
+     * Return the ordinal of the name of this header in the well-known header
+     * table (see <code>DefaultHeaders</code>), or
+     * <code>DefaultHeaders.UNKNOWN</code>.
+     */
+    public int getOrdinal() {
+
+        if (ordinal == -2)
+            ordinal = DefaultHeaders.ordinal(name, nameEnd);
+        return (ordinal);
+
+    }
+
+
+    /**
+     * Return the (lower case) name of this header.  The String is only
+     * created once, and is shared for the well-known header names.
+     */
+    public String getName() {
+
+        if (nameString == null) {
+            int ordinal = getOrdinal();
+            if (ordinal != DefaultHeaders.UNKNOWN)
+                nameString = DefaultHeaders.NAME_STRINGS[ordinal];
+            else
+                nameString = new String(name, 0, nameEnd);
+        }
+        return (nameString);
+
+    }
+
+
+    /**
+     * Return the value of this header.  The String is only created once.
+     */
+    public String getValue() {
+
+        if (valueString == null)
+            valueString = new String(value, 0, valueEnd);
+        return (valueString);
+
+    }
+
+
     // --------------------------------------------------------- Public Methods
 
 
@@ -76,6 +140,9 @@ final class HttpHeader {
         nameEnd = 0;
         valueEnd = 0;
         hashCode = 0;
+        ordinal = -2;
+        nameString = null;
+        valueString = null;
 
     }
 
@@ -109,7 +176,30 @@ final class HttpHeader {
      * The String given must be made of lower case characters.
      */
     public boolean equals(String str) {
-        return equals(str.toCharArray(), str.length());
+        int end = str.length();
+        if (end != nameEnd)
+            return false;
+        for (int i=0; i<end; i++) {
+            if (str.charAt(i) != name[i])
+                return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * Test if the name of the header is equal to the given string, ignoring
+     * case.
+     */
+    public boolean equalsIgnoreCase(String str) {
+        int end = str.length();
+        if (end != nameEnd)
+            return false;
+        for (int i=0; i<end; i++) {
+            if (Character.toLowerCase(str.charAt(i)) != name[i])
+                return false;
+        }
+        return true;
     }
 
 
@@ -139,7 +229,14 @@ final class HttpHeader {
      * Test if the value of the header is equal to the given string.
      */
     public boolean valueEquals(String str) {
-        return valueEquals(str.toCharArray(), str.length());
+        int end = str.length();
+        if (end != valueEnd)
+            return false;
+        for (int i=0; i<end; i++) {
+            if (str.charAt(i) != value[i])
+                return false;
+        }
+        return true;
     }
 
 
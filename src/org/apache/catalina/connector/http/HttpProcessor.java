@@ -2,17 +2,16 @@ package org.apache.catalina.connector.http;
 
 
 import java.io.EOFException;
+import java.io.FileInputStream;
 import java.io.InterruptedIOException;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.Locale;
-import java.util.TreeMap;
 import javax.servlet.ServletException;
-import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.catalina.Globals;
@@ -23,10 +22,8 @@ import org.apache.catalina.LifecycleListener;
 import org.apache.catalina.Logger;
 import org.apache.catalina.util.FastHttpDateFormat;
 import org.apache.catalina.util.LifecycleSupport;
-import org.apache.catalina.util.RequestUtil;
 import org.apache.catalina.util.ServerInfo;
 import org.apache.catalina.util.StringManager;
-import org.apache.catalina.util.StringParser;
 
 
 /**
@@ -56,6 +53,14 @@ final class HttpProcessor
         ServerInfo.getServerInfo() + " (HTTP/1.1 Connector)";
 
 
+    /**
+     * The response accepting the upgrade of a connection to HTTP/2.
+     */
+    private static final byte[] SWITCHING_PROTOCOLS =
+        ("HTTP/1.1 101 Switching Protocols\r\n"
+         + "Connection: Upgrade\r\nUpgrade: h2c\r\n\r\n").getBytes();
+
+
     // ----------------------------------------------------------- Constructors
 
 
@@ -76,6 +81,8 @@ final class HttpProcessor
         this.request = (HttpRequestImpl) connector.createRequest();
         this.response = (HttpResponseImpl) connector.createResponse();
         this.serverPort = connector.getPort();
+        this.channelOutput =
+            new ChannelOutputStream(connector.getConnectionTimeout());
         this.threadName =
           "HttpProcessor[" + connector.getPort() + "][" + id + "]";
 
@@ -85,6 +92,12 @@ final class HttpProcessor
     // ----------------------------------------------------- Instance Variables
 
 
+    /**
+     * The time at which the current socket was assigned to this processor.
+     */
+    private long assigned = 0L;
+
+
     /**
      * Is there a new socket available?
      */
@@ -97,6 +110,12 @@ final class HttpProcessor
     private HttpConnector connector = null;
 
 
+    /**
+     * The output stream used for connections which expose their channel.
+     */
+    private ChannelOutputStream channelOutput = null;
+
+
     /**
      * The debugging detail level for this component.
      */
@@ -128,12 +147,6 @@ final class HttpProcessor
     private static final char[] SESSION_ID = match.toCharArray();
 
 
-    /**
-     * The string parser we will use for parsing request lines.
-     */
-    private StringParser parser = new StringParser();
-
-
     /**
      * The proxy server name for our Connector.
      */
@@ -208,18 +221,52 @@ final class HttpProcessor
     private Object threadSync = new Object();
 
 
+    /**
+     * The value of <code>System.nanoTime()</code> when the processing of
+     * the current connection started, or zero if it was kept alive.
+     */
+    private long connectionStart = 0L;
+
+
     /**
      * Keep alive indicator.
      */
     private boolean keepAlive = false;
 
 
+    /**
+     * The number of requests processed on the current connection.
+     */
+    private int requestCount = 0;
+
+
+    /**
+     * The input stream enforcing the timeouts of the current connection,
+     * if it is processed by <code>process()</code>.
+     */
+    private TimeoutInputStream timeoutInput = null;
+
+
     /**
      * HTTP/1.1 client.
      */
     private boolean http11 = true;
 
 
+    /**
+     * The HTTP/2 connection to which the current connection has been
+     * switched, if any.
+     */
+    private Http2Connection http2 = null;
+
+
+    /**
+     * The request suspended during the last call to <code>service()</code>,
+     * if any.
+     */
+    private SuspendedRequest suspension = null;
+
+
     /**
      * True if the client has asked to recieve a request acknoledgement. If so
      * the server will send a preliminary 100 Continue response just after it
@@ -276,6 +323,44 @@ final class HttpProcessor
     // -------------------------------------------------------- Package Methods
 
 
+    /**
+     * Return the request suspended during the last call to
+     * <code>service()</code>, if any, and forget about it.  The caller must
+     * set the continuation of the suspended request, and must not use the
+     * connection anymore, as it now belongs to the suspended request.
+     */
+    SuspendedRequest detach() {
+
+        SuspendedRequest suspension = this.suspension;
+        this.suspension = null;
+        return (suspension);
+
+    }
+
+
+    /**
+     * Return the number of requests processed on the current connection.
+     */
+    int getRequestCount() {
+
+        return (this.requestCount);
+
+    }
+
+
+    /**
+     * Set the number of requests already processed on the connection whose
+     * requests are about to be passed to <code>service()</code>.
+     *
+     * @param requestCount The number of requests
+     */
+    void setRequestCount(int requestCount) {
+
+        this.requestCount = requestCount;
+
+    }
+
+
     /**
      * Process an incoming TCP/IP connection on the specified socket.  Any
      * exception that occurs during processing must be logged and swallowed.
@@ -297,6 +382,7 @@ final class HttpProcessor
 
         // Store the newly available Socket and notify our thread
         this.socket = socket;
+        assigned = System.currentTimeMillis();
         available = true;
         notifyAll();
 
@@ -328,6 +414,11 @@ final class HttpProcessor
         available = false;
         notifyAll();
 
+        // Record how long the socket waited for this processor
+        AdmissionController admission = connector.getAdmissionController();
+        if ((admission != null) && (socket != null))
+            admission.addQueueTime(System.currentTimeMillis() - assigned);
+
         if ((debug >= 1) && (socket != null))
             log("  The incoming request has been awaited");
 
@@ -366,118 +457,6 @@ final class HttpProcessor
     }
 
 
-    /**
-     * Parse the value of an <code>Accept-Language</code> header, and add
-     * the corresponding Locales to the current request.
-     *
-     * @param value The value of the <code>Accept-Language</code> header.
-     */
-    private void parseAcceptLanguage(String value) {
-
-        // Store the accumulated languages that have been requested in
-        // a local collection, sorted by the quality value (so we can
-        // add Locales in descending order).  The values will be ArrayLists
-        // containing the corresponding Locales to be added
-        TreeMap locales = new TreeMap();
-
-        // Preprocess the value to remove all whitespace
-        int white = value.indexOf(' ');
-        if (white < 0)
-            white = value.indexOf('\t');
-        if (white >= 0) {
-            StringBuffer sb = new StringBuffer();
-            int len = value.length();
-            for (int i = 0; i < len; i++) {
-                char ch = value.charAt(i);
-                if ((ch != ' ') && (ch != '\t'))
-                    sb.append(ch);
-            }
-            value = sb.toString();
-        }
-
-        // Process each comma-delimited language specification
-        parser.setString(value);        // ASSERT: parser is available to us
-        int length = parser.getLength();
-        while (true) {
-
-            // Extract the next comma-delimited entry
-            int start = parser.getIndex();
-            if (start >= length)
-                break;
-            int end = parser.findChar(',');
-            String entry = parser.extract(start, end).trim();
-            parser.advance();   // For the following entry
-
-            // Extract the quality factor for this entry
-            double quality = 1.0;
-            int semi = entry.indexOf(";q=");
-            if (semi >= 0) {
-                try {
-                    quality = Double.parseDouble(entry.substring(semi + 3));
-                } catch (NumberFormatException e) {
-                    quality = 0.0;
-                }
-                entry = entry.substring(0, semi);
-            }
-
-            // Skip entries we are not going to keep track of
-            if (quality < 0.00005)
-                continue;       // Zero (or effectively zero) quality factors
-            if ("*".equals(entry))
-                continue;       // FIXME - "*" entries are not handled
-
-            // Extract the language and country for this entry
-            String language = null;
-            String country = null;
-            String variant = null;
-            int dash = entry.indexOf('-');
-            if (dash < 0) {
-                language = entry;
-                country = "";
-                variant = "";
-            } else {
-                language = entry.substring(0, dash);
-                country = entry.substring(dash + 1);
-                int vDash = country.indexOf('-');
-                if (vDash > 0) {
-                    String cTemp = country.substring(0, vDash);
-                    variant = country.substring(vDash + 1);
-                    country = cTemp;
-                } else {
-                    variant = "";
-                }
-            }
-
-            // Add a new Locale to the list of Locales for this quality level
-            Locale locale = new Locale(language, country, variant);
-            Double key = new Double(-quality);  // Reverse the order
-            ArrayList values = (ArrayList) locales.get(key);
-            if (values == null) {
-                values = new ArrayList();
-                locales.put(key, values);
-            }
-            values.add(locale);
-
-        }
-
-        // Process the quality values in highest->lowest order (due to
-        // negating the Double value when creating the key)
-        Iterator keys = locales.keySet().iterator();
-        while (keys.hasNext()) {
-            Double key = (Double) keys.next();
-            ArrayList list = (ArrayList) locales.get(key);
-            Iterator values = list.iterator();
-            while (values.hasNext()) {
-                Locale locale = (Locale) values.next();
-                if (debug >= 1)
-                    log(" Adding locale '" + locale + "'");
-                request.addLocale(locale);
-            }
-        }
-
-    }
-
-
     /**
      * Parse and record the connection parameters related to this request.
      *
@@ -529,52 +508,39 @@ final class HttpProcessor
                 }
             }
 
-            String value = new String(header.value, 0, header.valueEnd);
             if (debug >= 1)
-                log(" Header " + new String(header.name, 0, header.nameEnd)
-                    + " = " + value);
-
-            // Set the corresponding request headers
-            if (header.equals(DefaultHeaders.AUTHORIZATION_NAME)) {
-                request.setAuthorization(value);
-            } else if (header.equals(DefaultHeaders.ACCEPT_LANGUAGE_NAME)) {
-                parseAcceptLanguage(value);
-            } else if (header.equals(DefaultHeaders.COOKIE_NAME)) {
-                Cookie cookies[] = RequestUtil.parseCookieHeader(value);
-                for (int i = 0; i < cookies.length; i++) {
-                    if (cookies[i].getName().equals
-                        (Globals.SESSION_COOKIE_NAME)) {
-                        // Override anything requested in the URL
-                        if (!request.isRequestedSessionIdFromCookie()) {
-                            // Accept only the first session id cookie
-                            request.setRequestedSessionId
-                                (cookies[i].getValue());
-                            request.setRequestedSessionCookie(true);
-                            request.setRequestedSessionURL(false);
-                            if (debug >= 1)
-                                log(" Requested cookie session id is " +
-                                    ((HttpServletRequest) request.getRequest())
-                                    .getRequestedSessionId());
-                        }
-                    }
-                    if (debug >= 1)
-                        log(" Adding cookie " + cookies[i].getName() + "=" +
-                            cookies[i].getValue());
-                    request.addCookie(cookies[i]);
-                }
-            } else if (header.equals(DefaultHeaders.CONTENT_LENGTH_NAME)) {
-                int n = -1;
-                try {
-                    n = Integer.parseInt(value);
-                } catch (Exception e) {
-                    throw new ServletException
-                        (sm.getString
-                         ("httpProcessor.parseHeaders.contentLength"));
-                }
-                request.setContentLength(n);
-            } else if (header.equals(DefaultHeaders.CONTENT_TYPE_NAME)) {
-                request.setContentType(value);
-            } else if (header.equals(DefaultHeaders.HOST_NAME)) {
+                log(" Header " + header.getName() + " = "
+                    + header.getValue());
+
+            // Set the corresponding request headers.  The value of the
+            // header is only converted to a String if we need it
+            String value = null;
+            switch (header.getOrdinal()) {
+
+            case DefaultHeaders.AUTHORIZATION:
+                request.setAuthorization(header.getValue());
+                break;
+
+            case DefaultHeaders.ACCEPT_LANGUAGE:
+                // Locales are parsed on demand by the request
+                break;
+
+            case DefaultHeaders.COOKIE:
+                // Cookies are parsed on demand by the request, only the
+                // session id is extracted here
+                parseSessionCookie(header);
+                break;
+
+            case DefaultHeaders.CONTENT_LENGTH:
+                request.setContentLength(parseContentLength(header));
+                break;
+
+            case DefaultHeaders.CONTENT_TYPE:
+                request.setContentType(header.getValue());
+                break;
+
+            case DefaultHeaders.HOST:
+                value = header.getValue();
                 int n = value.indexOf(':');
                 if (n < 0) {
                     if (connector.getScheme().equals("http")) {
@@ -606,7 +572,9 @@ final class HttpProcessor
                         request.setServerPort(port);
                     }
                 }
-            } else if (header.equals(DefaultHeaders.CONNECTION_NAME)) {
+                break;
+
+            case DefaultHeaders.CONNECTION:
                 if (header.valueEquals
                     (DefaultHeaders.CONNECTION_CLOSE_VALUE)) {
                     keepAlive = false;
@@ -618,15 +586,21 @@ final class HttpProcessor
                   keepAlive = true;
                   }
                 */
-            } else if (header.equals(DefaultHeaders.EXPECT_NAME)) {
+                break;
+
+            case DefaultHeaders.EXPECT:
                 if (header.valueEquals(DefaultHeaders.EXPECT_100_VALUE))
                     sendAck = true;
                 else
                     throw new ServletException
                         (sm.getString
                          ("httpProcessor.parseHeaders.unknownExpectation"));
-            } else if (header.equals(DefaultHeaders.TRANSFER_ENCODING_NAME)) {
+                break;
+
+            case DefaultHeaders.TRANSFER_ENCODING:
                 //request.setTransferEncoding(header);
+                break;
+
             }
 
             request.nextHeader();
@@ -636,6 +610,136 @@ final class HttpProcessor
     }
 
 
+    /**
+     * Parse the value of a <code>Content-Length</code> header, directly from
+     * the characters of the header.
+     *
+     * @param header The header to parse
+     *
+     * @exception ServletException if the value is not a valid length
+     */
+    private int parseContentLength(HttpHeader header)
+        throws ServletException {
+
+        int start = 0;
+        int end = header.valueEnd;
+        while ((start < end) && (header.value[start] == ' '))
+            start++;
+        while ((end > start) && (header.value[end - 1] == ' '))
+            end--;
+        long n = 0;
+        for (int i = start; i < end; i++) {
+            char c = header.value[i];
+            if ((c < '0') || (c > '9'))
+                break;
+            n = (n * 10) + (c - '0');
+            if (n > Integer.MAX_VALUE)
+                break;
+            if (i == end - 1)
+                return ((int) n);
+        }
+        throw new ServletException
+            (sm.getString("httpProcessor.parseHeaders.contentLength"));
+
+    }
+
+
+    /**
+     * Look for the session id cookie in the value of a <code>Cookie</code>
+     * header, without parsing the other cookies, and set the requested
+     * session id of the current request if it is found.  Only the first
+     * session id cookie received is taken into account.
+     *
+     * @param header The <code>Cookie</code> header
+     */
+    private void parseSessionCookie(HttpHeader header) {
+
+        if (request.isRequestedSessionIdFromCookie())
+            return;
+
+        char[] value = header.value;
+        int end = header.valueEnd;
+        int pos = 0;
+        while (pos < end) {
+
+            // Locate the boundaries of the next cookie
+            int semicolon = header.valueIndexOf(';', pos);
+            if (semicolon < 0)
+                semicolon = end;
+            int equals = header.valueIndexOf('=', pos);
+
+            if ((equals > pos) && (equals < semicolon)) {
+                int nameStart = trimStart(value, pos, equals);
+                int nameEnd = trimEnd(value, nameStart, equals);
+                if (regionEquals(value, nameStart, nameEnd,
+                                 Globals.SESSION_COOKIE_NAME)) {
+                    int valueStart = trimStart(value, equals + 1, semicolon);
+                    int valueEnd = trimEnd(value, valueStart, semicolon);
+                    // Override anything requested in the URL
+                    request.setRequestedSessionId
+                        (new String(value, valueStart,
+                                    valueEnd - valueStart));
+                    request.setRequestedSessionCookie(true);
+                    request.setRequestedSessionURL(false);
+                    if (debug >= 1)
+                        log(" Requested cookie session id is " +
+                            ((HttpServletRequest) request.getRequest())
+                            .getRequestedSessionId());
+                    return;
+                }
+            }
+
+            pos = semicolon + 1;
+
+        }
+
+    }
+
+
+    /**
+     * Return <code>true</code> if the specified region of a character array
+     * is equal to the specified String.
+     */
+    private static boolean regionEquals(char[] buf, int start, int end,
+                                        String str) {
+
+        if (end - start != str.length())
+            return (false);
+        for (int i = start; i < end; i++) {
+            if (buf[i] != str.charAt(i - start))
+                return (false);
+        }
+        return (true);
+
+    }
+
+
+    /**
+     * Return the index of the first non whitespace character of the
+     * specified region of a character array.
+     */
+    private static int trimStart(char[] buf, int start, int end) {
+
+        while ((start < end) && (buf[start] <= ' '))
+            start++;
+        return (start);
+
+    }
+
+
+    /**
+     * Return the index following the last non whitespace character of the
+     * specified region of a character array.
+     */
+    private static int trimEnd(char[] buf, int start, int end) {
+
+        while ((end > start) && (buf[end - 1] <= ' '))
+            end--;
+        return (end);
+
+    }
+
+
     /**
      * Parse the incoming HTTP request and set the corresponding HTTP request
      * properties.
@@ -656,11 +760,9 @@ final class HttpProcessor
         // request
         status = Constants.PROCESSOR_ACTIVE;
 
-        String method =
-            new String(requestLine.method, 0, requestLine.methodEnd);
+        String method = requestLine.getMethod();
         String uri = null;
-        String protocol = new String(requestLine.protocol, 0,
-                                     requestLine.protocolEnd);
+        String protocol = requestLine.getProtocol();
 
         //System.out.println(" Method:" + method + "_ Uri:" + uri
         //                   + "_ Protocol:" + protocol);
@@ -875,177 +977,620 @@ final class HttpProcessor
      *
      * @param socket The socket on which we are connected to the client
      */
-    private void process(Socket socket) {
+    void process(Socket socket) {
         boolean ok = true;
-        boolean finishResponse = true;
         SocketInputStream input = null;
         OutputStream output = null;
 
         // Construct and initialize the objects we will need
         try {
-            input = new SocketInputStream(socket.getInputStream(),
-                                          connector.getBufferSize());
+            connector.setSocketOptions(socket);
+            TimingWheel timer = connector.getTimer();
+            input = connector.getResumedInput(socket);
+            if (input != null) {
+                // Go on with the connection of a resumed request, and with
+                // the bytes already read from it
+                if (input.getInputStream() instanceof TimeoutInputStream) {
+                    timeoutInput =
+                        (TimeoutInputStream) input.getInputStream();
+                    timeoutInput.idle(connector.getKeepAliveTimeout());
+                }
+            } else if (timer != null) {
+                timeoutInput = new TimeoutInputStream
+                    (timer, socket, connector.getHeaderReadTimeout());
+                timeoutInput.idle(connector.getConnectionTimeout());
+                input = new SocketInputStream(timeoutInput,
+                                              connector.getBufferSize());
+            } else {
+                input = new SocketInputStream(socket.getInputStream(),
+                                              connector.getBufferSize());
+            }
+            requestCount = connector.getKeepAliveRequests(socket);
+            connectionStart = (requestCount == 0) ? System.nanoTime() : 0L;
+            if (socket.getChannel() != null) {
+                // Write to the channel, so that the response headers and
+                // content can be sent using gathering writes
+                channelOutput.setChannel(socket.getChannel());
+                output = channelOutput;
+            } else {
+                output = socket.getOutputStream();
+            }
         } catch (Exception e) {
             log("process.create", e);
             ok = false;
         }
 
-        keepAlive = true;
+        // The same input stream is used for all the requests received on
+        // this connection, so that the bytes of pipelined requests which
+        // were read along with the previous request are not lost; requests,
+        // and therefore responses, are processed strictly in order
+        while (!stopped && ok) {
+            ok = service(socket, input, output);
+            SuspendedRequest suspension = detach();
+            if (suspension != null) {
+                // The connection is taken care of when the request is
+                // resumed, and this processor becomes available
+                suspend(suspension, socket, input, output);
+                return;
+            }
+            if (http2 != null) {
+                // The connection now speaks HTTP/2 until it is closed, and
+                // enforces its own idle timeout
+                Http2Connection connection = http2;
+                http2 = null;
+                if (timeoutInput != null)
+                    timeoutInput.stop();
+                try {
+                    socket.setSoTimeout(connector.getConnectionTimeout());
+                } catch (IOException e) {
+                    ;
+                }
+                connection.process();
+                break;
+            }
+            if (!ok || stopped)
+                break;
+            // Rather than waiting for the next request, hand the idle
+            // connection over to the connector's poller if possible
+            if (timeoutInput != null)
+                timeoutInput.stop();
+            if ((available(input) == 0)
+                && connector.park(socket, requestCount)) {
+                channelOutput.setChannel(null);
+                timeoutInput = null;
+                return;
+            }
+            if (timeoutInput != null)
+                timeoutInput.idle(connector.getKeepAliveTimeout());
+        }
+        channelOutput.setChannel(null);
+        if (timeoutInput != null) {
+            timeoutInput.stop();
+            timeoutInput = null;
+        }
+
+        try {
+            shutdownInput(input);
+            socket.close();
+        } catch (IOException e) {
+            ;
+        } catch (Throwable e) {
+            log("process.invoke", e);
+        }
+        socket = null;
 
-        while (!stopped && ok && keepAlive) {
+    }
 
-            finishResponse = true;
 
-            try {
-                request.setStream(input);
-                request.setResponse(response);
-                output = socket.getOutputStream();
-                response.setStream(output);
-                response.setRequest(request);
-                ((HttpServletResponse) response.getResponse()).setHeader
-                    ("Server", SERVER_INFO);
-            } catch (Exception e) {
-                log("process.create", e);
-                ok = false;
-            }
+    /**
+     * Parse and process a single HTTP request read from the specified input
+     * stream, and write the corresponding response on the specified output
+     * stream.  Any exceptions that occur during processing must be
+     * swallowed and dealt with.
+     *
+     * @param socket The socket on which we are connected to the client
+     * @param input The input stream from which the request is read
+     * @param output The output stream on which the response is written
+     * @return <code>true</code> if the connection can be kept alive for
+     *  another request
+     */
+    boolean service(Socket socket, SocketInputStream input,
+                    OutputStream output) {
 
+        boolean ok = true;
+        boolean finishResponse = true;
+        long serviceStart = System.nanoTime();
+        long requestLineEnd = 0L;
+        long headersEnd = 0L;
 
-            // Parse the incoming request
-            try {
-                if (ok) {
-
-                    parseConnection(socket);
-                    parseRequest(input, output);
-                    if (!request.getRequest().getProtocol()
-                        .startsWith("HTTP/0"))
-                        parseHeaders(input);
-                    if (http11) {
-                        // Sending a request acknowledge back to the client if
-                        // requested.
-                        ackRequest(output);
-                        // If the protocol is HTTP/1.1, chunking is allowed.
-                        if (connector.isChunkingAllowed())
-                            response.setAllowChunking(true);
-                    }
+        keepAlive = true;
 
+        try {
+            request.setStream(input);
+            request.setResponse(response);
+            response.setStream(output);
+            response.setRequest(request);
+            ((HttpServletResponse) response.getResponse()).setHeader
+                ("Server", SERVER_INFO);
+        } catch (Exception e) {
+            log("process.create", e);
+            ok = false;
+        }
+
+
+        // Parse the incoming request
+        try {
+            if (ok) {
+
+                parseConnection(socket);
+                parseRequest(input, output);
+                requestLineEnd = System.nanoTime();
+                if (!request.getRequest().getProtocol()
+                    .startsWith("HTTP/0"))
+                    parseHeaders(input);
+                headersEnd = System.nanoTime();
+                if (http11) {
+                    // Sending a request acknowledge back to the client if
+                    // requested.
+                    ackRequest(output);
+                    // If the protocol is HTTP/1.1, chunking is allowed.
+                    if (connector.isChunkingAllowed())
+                        response.setAllowChunking(true);
                 }
-            } catch (EOFException e) {
-                // It's very likely to be a socket disconnect on either the
-                // client or the server
-                ok = false;
-                finishResponse = false;
-            } catch (ServletException e) {
-                ok = false;
+
+            }
+        } catch (EOFException e) {
+            // It's very likely to be a socket disconnect on either the
+            // client or the server
+            ok = false;
+            finishResponse = false;
+        } catch (ServletException e) {
+            ok = false;
+            try {
+                ((HttpServletResponse) response.getResponse())
+                    .sendError(HttpServletResponse.SC_BAD_REQUEST);
+            } catch (Exception f) {
+                ;
+            }
+        } catch (InterruptedIOException e) {
+            if (debug > 1) {
                 try {
+                    log("process.parse", e);
                     ((HttpServletResponse) response.getResponse())
                         .sendError(HttpServletResponse.SC_BAD_REQUEST);
                 } catch (Exception f) {
                     ;
                 }
-            } catch (InterruptedIOException e) {
-                if (debug > 1) {
-                    try {
-                        log("process.parse", e);
-                        ((HttpServletResponse) response.getResponse())
-                            .sendError(HttpServletResponse.SC_BAD_REQUEST);
-                    } catch (Exception f) {
-                        ;
-                    }
-                }
-                ok = false;
-            } catch (Exception e) {
-                try {
-                    log("process.parse", e);
-                    ((HttpServletResponse) response.getResponse()).sendError
-                        (HttpServletResponse.SC_BAD_REQUEST);
-                } catch (Exception f) {
-                    ;
-                }
-                ok = false;
             }
-
-            // Ask our Container to process this request
+            ok = false;
+        } catch (Exception e) {
             try {
-                ((HttpServletResponse) response).setHeader
-                    ("Date", FastHttpDateFormat.getCurrentDate());
-                if (ok) {
-                    connector.getContainer().invoke(request, response);
-                }
-            } catch (ServletException e) {
-                log("process.invoke", e);
-                try {
-                    ((HttpServletResponse) response.getResponse()).sendError
-                        (HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-                } catch (Exception f) {
-                    ;
-                }
-                ok = false;
-            } catch (InterruptedIOException e) {
-                ok = false;
-            } catch (Throwable e) {
-                log("process.invoke", e);
-                try {
-                    ((HttpServletResponse) response.getResponse()).sendError
-                        (HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-                } catch (Exception f) {
-                    ;
-                }
-                ok = false;
+                log("process.parse", e);
+                ((HttpServletResponse) response.getResponse()).sendError
+                    (HttpServletResponse.SC_BAD_REQUEST);
+            } catch (Exception f) {
+                ;
             }
+            ok = false;
+        }
 
-            // Finish up the handling of the request
-            if (finishResponse) {
-                try {
-                    response.finishResponse();
-                } catch (IOException e) {
-                    ok = false;
-                } catch (Throwable e) {
-                    log("process.invoke", e);
-                    ok = false;
-                }
-                try {
-                    request.finishRequest();
-                } catch (IOException e) {
-                    ok = false;
-                } catch (Throwable e) {
-                    log("process.invoke", e);
-                    ok = false;
-                }
+        if (ok)
+            recordParseTimes(serviceStart, requestLineEnd, headersEnd);
+
+        // Close the connection after this request if it has reached the
+        // maximum number of requests
+        requestCount++;
+        int maxRequests = connector.getMaxKeepAliveRequests();
+        if (ok && keepAlive && (maxRequests > 0)
+            && (requestCount >= maxRequests)) {
+            keepAlive = false;
+            response.setHeader("Connection", "close");
+        }
+
+        // Reading the request body is now up to the application
+        if (ok && (timeoutInput != null))
+            timeoutInput.body(connector.getBodyReadTimeout());
+
+        // Switch to HTTP/2 if the client asked for it
+        try {
+            if (ok && connector.isHttp2Supported()
+                && startHttp2(socket, input, output)) {
+                status = Constants.PROCESSOR_IDLE;
+                request.recycle();
+                response.recycle();
+                return (false);
+            }
+        } catch (IOException e) {
+            ok = false;
+            finishResponse = false;
+        }
+
+        // Shed this request right away if too many requests are being
+        // processed already
+        AdmissionController admission = connector.getAdmissionController();
+        long admitted = -1L;
+        if (ok && (admission != null)) {
+            if (admission.acquire()) {
+                admitted = System.currentTimeMillis();
+            } else {
                 try {
-                    if (output != null)
-                        output.flush();
+                    output.write(connector.getServiceUnavailable());
+                    output.flush();
                 } catch (IOException e) {
-                    ok = false;
+                    ;
                 }
+                ok = false;
+                finishResponse = false;
             }
+        }
 
-            // We have to check if the connection closure has been requested
-            // by the application or the response stream (in case of HTTP/1.0
-            // and keep-alive).
-            if ( "close".equals(response.getHeader("Connection")) ) {
-                keepAlive = false;
+        // Ask our Container to process this request
+        long invokeStart = 0L;
+        try {
+            ((HttpServletResponse) response).setHeader
+                ("Date", FastHttpDateFormat.getCurrentDate());
+            if (ok) {
+                if (connector.getUseSendfile()
+                    && ((output instanceof ChannelOutputStream)
+                        || (socket.getChannel() != null)))
+                    request.setAttribute(Globals.SENDFILE_SUPPORTED_ATTR,
+                                         Boolean.TRUE);
+                request.setSuspendable(true);
+                invokeStart = System.nanoTime();
+                request.setNote(Globals.INVOKE_START_NOTE,
+                                new Long(invokeStart));
+                connector.getContainer().invoke(request, response);
+            }
+        } catch (ServletException e) {
+            log("process.invoke", e);
+            try {
+                ((HttpServletResponse) response.getResponse()).sendError
+                    (HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            } catch (Exception f) {
+                ;
+            }
+            ok = false;
+        } catch (InterruptedIOException e) {
+            ok = false;
+        } catch (Throwable e) {
+            log("process.invoke", e);
+            try {
+                ((HttpServletResponse) response.getResponse()).sendError
+                    (HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            } catch (Exception f) {
+                ;
             }
+            ok = false;
+        }
 
-            // End of request processing
-            status = Constants.PROCESSOR_IDLE;
+        connector.getLatency(Constants.PHASE_INVOKE).record
+            (invokeStart, System.nanoTime());
+
+        // If the request has been suspended, it will be finished by the
+        // thread resuming it, and this processor moves on with new request
+        // and response objects.  The admission slot is given back now, as
+        // a suspended request uses no thread, and the time it spends
+        // suspended is not a processing latency
+        if (ok && request.isSuspended()) {
+            SuspendedRequest suspension = new SuspendedRequest
+                (this, request, response, socket, output, keepAlive);
+            if (request.detach(suspension)) {
+                if (admitted >= 0)
+                    admission.release(System.currentTimeMillis() - admitted);
+                this.suspension = suspension;
+                request = (HttpRequestImpl) connector.createRequest();
+                response = (HttpResponseImpl) connector.createResponse();
+                status = Constants.PROCESSOR_IDLE;
+                return (false);
+            }
+        }
 
-            // Recycling the request and the response objects
-            request.recycle();
-            response.recycle();
+        // Finish up the handling of the request
+        if (finishResponse)
+            ok = finish(request, response, socket, output) && ok;
+        if (admitted >= 0)
+            admission.release(System.currentTimeMillis() - admitted);
 
+        // We have to check if the connection closure has been requested
+        // by the application or the response stream (in case of HTTP/1.0
+        // and keep-alive).
+        if ( "close".equals(response.getHeader("Connection")) ) {
+            keepAlive = false;
         }
 
+        // End of request processing
+        status = Constants.PROCESSOR_IDLE;
+
+        // Recycling the request and the response objects
+        request.recycle();
+        response.recycle();
+
+        return (ok && keepAlive);
+
+    }
+
+
+    /**
+     * Finish the response to the specified request, once the Container
+     * is done with it.  As this is also called by the threads resuming
+     * suspended requests, only the specified objects are used.  Return
+     * <code>false</code> if an error occurred, in which case the
+     * connection must be closed.
+     *
+     * @param request The request
+     * @param response The response
+     * @param socket The socket on which we are connected to the client
+     * @param output The output stream on which the response is written
+     */
+    boolean finish(HttpRequestImpl request, HttpResponseImpl response,
+                   Socket socket, OutputStream output) {
+
+        boolean ok = true;
+        long start = System.nanoTime();
         try {
-            shutdownInput(input);
-            socket.close();
+            response.finishResponse();
         } catch (IOException e) {
-            ;
+            ok = false;
         } catch (Throwable e) {
             log("process.invoke", e);
+            ok = false;
+        }
+        // Write the file designated by the servlet, if any, now that
+        // the headers have been sent
+        String filename = (String) request.getAttribute
+            (Globals.SENDFILE_FILENAME_ATTR);
+        if (ok && (filename != null)) {
+            try {
+                sendfile(request, socket, output, filename);
+            } catch (IOException e) {
+                ok = false;
+            }
+        }
+        try {
+            request.finishRequest();
+        } catch (IOException e) {
+            ok = false;
+        } catch (Throwable e) {
+            log("process.invoke", e);
+            ok = false;
+        }
+        long flushStart = System.nanoTime();
+        try {
+            if (output != null)
+                output.flush();
+        } catch (IOException e) {
+            ok = false;
+        }
+        long end = System.nanoTime();
+        connector.getLatency(Constants.PHASE_FINISH).record(start, flushStart);
+        connector.getLatency(Constants.PHASE_FLUSH).record(flushStart, end);
+        connector.getLatency(Constants.PHASE_TOTAL).record
+            (request.getStartTime(), end);
+        return (ok);
+
+    }
+
+
+    /**
+     * Switch the connection to HTTP/2 if the request which has just been
+     * parsed asks for it, either with an <code>Upgrade: h2c</code> header,
+     * or because it is the beginning of the HTTP/2 client connection
+     * preface.  Return <code>true</code> if the connection has been
+     * switched, in which case the request is answered on HTTP/2 stream 1
+     * (for an upgrade).  Requests with a body are not upgraded.
+     *
+     * @param socket The socket on which we are connected to the client
+     * @param input The input stream from which the request was read
+     * @param output The output stream on which the response is written
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    private boolean startHttp2(Socket socket, SocketInputStream input,
+                               OutputStream output)
+        throws IOException {
+
+        if ("PRI".equals(request.getMethod())
+            && "HTTP/2.0".equals(request.getProtocol())) {
+            http2 = new Http2Connection(connector, this, socket, input,
+                                        output);
+            return (true);
+        }
+
+        if (!http11)
+            return (false);
+        String upgrade = request.getHeader("upgrade");
+        String settings = request.getHeader("http2-settings");
+        if ((upgrade == null) || (settings == null)
+            || !upgrade.trim().equalsIgnoreCase("h2c")
+            || (request.getContentLength() > 0)
+            || (request.getHeader("transfer-encoding") != null))
+            return (false);
+
+        // Translate the request into the header list of stream 1
+        ArrayList headers = new ArrayList();
+        headers.add(":method");
+        headers.add(request.getMethod());
+        headers.add(":scheme");
+        headers.add(connector.getScheme());
+        headers.add(":path");
+        if ((requestLine.uriEnd > 0) && (requestLine.uri[0] == '/')) {
+            headers.add(new String(requestLine.uri, 0, requestLine.uriEnd));
+        } else if (request.getQueryString() != null) {
+            headers.add(request.getRequestURI() + "?"
+                        + request.getQueryString());
+        } else {
+            headers.add(request.getRequestURI());
+        }
+        for (int i = 0; i < request.nextHeader; i++) {
+            String name = request.headerPool[i].getName();
+            if (name.equals("connection") || name.equals("upgrade")
+                || name.equals("http2-settings")
+                || name.equals("keep-alive")
+                || name.equals("proxy-connection") || name.equals("te"))
+                continue;
+            headers.add(name);
+            headers.add(request.headerPool[i].getValue());
         }
-        socket = null;
 
+        Http2Connection connection =
+            new Http2Connection(connector, this, socket, input, output);
+        try {
+            connection.upgrade(settings, headers);
+        } catch (IOException e) {
+            // Answer with HTTP/1.1 instead
+            return (false);
+        }
+        output.write(SWITCHING_PROTOCOLS);
+        output.flush();
+        http2 = connection;
+        return (true);
 
+    }
+
+
+    /**
+     * Record how long it took to receive and parse the request which has
+     * just been parsed, both in the latency histograms of the connector,
+     * and as request notes.  The request is considered to start with its
+     * first byte, or when this processor got to it if it was pipelined and
+     * already buffered.
+     *
+     * @param serviceStart The time at which the processing of the request
+     *  started
+     * @param requestLineEnd The time at which the request line was parsed
+     * @param headersEnd The time at which the headers were parsed
+     */
+    private void recordParseTimes(long serviceStart, long requestLineEnd,
+                                  long headersEnd) {
+
+        long start = serviceStart;
+        if ((timeoutInput != null)
+            && (timeoutInput.getFirstByte() - serviceStart > 0))
+            start = timeoutInput.getFirstByte();
+        request.setStartTime(start);
+
+        if ((requestCount == 0) && (connectionStart != 0L)) {
+            connector.getLatency(Constants.PHASE_FIRST_BYTE).record
+                (connectionStart, start);
+            request.setNote(Globals.FIRST_BYTE_TIME_NOTE,
+                            new Long((start - connectionStart) / 1000L));
+        }
+        connector.getLatency(Constants.PHASE_REQUEST_LINE).record
+            (start, requestLineEnd);
+        request.setNote(Globals.REQUEST_LINE_TIME_NOTE,
+                        new Long((requestLineEnd - start) / 1000L));
+        connector.getLatency(Constants.PHASE_HEADERS).record
+            (requestLineEnd, headersEnd);
+        request.setNote(Globals.HEADERS_TIME_NOTE,
+                        new Long((headersEnd - requestLineEnd) / 1000L));
+
+    }
+
+
+    /**
+     * Write the region of the specified file designated by the sendfile
+     * request attributes directly to the socket, without copying it through
+     * the response buffers.
+     *
+     * @param request The request designating the file
+     * @param socket The socket on which we are connected to the client
+     * @param output The output stream on which the response is written
+     * @param filename Canonical path of the file to be written
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    private void sendfile(HttpRequestImpl request, Socket socket,
+                          OutputStream output, String filename)
+        throws IOException {
+
+        long start = ((Long) request.getAttribute
+                      (Globals.SENDFILE_FILE_START_ATTR)).longValue();
+        long end = ((Long) request.getAttribute
+                    (Globals.SENDFILE_FILE_END_ATTR)).longValue();
+
+        FileInputStream file = new FileInputStream(filename);
+        try {
+            FileChannel channel = file.getChannel();
+            if (output instanceof ChannelOutputStream) {
+                ((ChannelOutputStream) output).transferFrom
+                    (channel, start, end - start);
+                return;
+            }
+            SocketChannel target = socket.getChannel();
+            while (start < end) {
+                long n = channel.transferTo(start, end - start, target);
+                if (n <= 0)
+                    throw new EOFException();
+                start += n;
+            }
+        } finally {
+            file.close();
+        }
+
+    }
+
+
+    /**
+     * Return the number of bytes which can be read from the specified
+     * stream without blocking, or -1 if an error occurs.
+     *
+     * @param input The input stream
+     */
+    private int available(InputStream input) {
+
+        try {
+            return (input.available());
+        } catch (IOException e) {
+            return (-1);
+        }
+
+    }
+
+
+    /**
+     * Set the continuation of the specified request, suspended while
+     * processing the connection assigned to this processor: once the
+     * request is resumed, the connection is handed back to the connector
+     * to wait for the next request, as it is done after each request,
+     * along with the input stream holding the bytes of pipelined requests
+     * which were already read.
+     *
+     * @param suspension The suspended request
+     * @param socket The socket on which we are connected to the client
+     * @param input The input stream from which the request was read
+     * @param output The output stream on which the response is written
+     */
+    private void suspend(SuspendedRequest suspension, final Socket socket,
+                         final SocketInputStream input,
+                         final OutputStream output) {
+
+        final TimeoutInputStream timeoutInput = this.timeoutInput;
+        final int requestCount = this.requestCount;
+        this.timeoutInput = null;
+        if (output == channelOutput)
+            channelOutput =
+                new ChannelOutputStream(connector.getConnectionTimeout());
+
+        suspension.setContinuation(new SuspendedRequest.Continuation() {
+                void proceed(boolean keepAlive) {
+                    if (output instanceof ChannelOutputStream) {
+                        ((ChannelOutputStream) output).setChannel(null);
+                        ((ChannelOutputStream) output).release();
+                    }
+                    if (timeoutInput != null)
+                        timeoutInput.stop();
+                    if (keepAlive) {
+                        connector.proceed(socket, requestCount, input);
+                        return;
+                    }
+                    try {
+                        shutdownInput(input);
+                        socket.close();
+                    } catch (IOException e) {
+                        ;
+                    }
+                }
+            });
 
     }
 
@@ -2,12 +2,23 @@ package org.apache.catalina.connector.http;
 
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import javax.servlet.ServletInputStream;
+import javax.servlet.http.Cookie;
+import org.apache.catalina.Globals;
 import org.apache.catalina.connector.HttpRequestBase;
 import org.apache.catalina.util.Enumerator;
+import org.apache.catalina.util.RequestUtil;
+import org.apache.catalina.util.StringParser;
 
 
 /**
@@ -38,6 +49,31 @@ final class HttpRequestImpl
     protected static final int POOL_SIZE_INCREMENT = 5;
 
 
+    /**
+     * Maximum number of <code>Accept-Language</code> header values whose
+     * parsed Locales are cached.
+     */
+    protected static final int LOCALES_CACHE_SIZE = 32;
+
+
+    // ------------------------------------------------------- Static Variables
+
+
+    /**
+     * The Locales corresponding to the most recently parsed
+     * <code>Accept-Language</code> header values, keyed by header value.
+     * Browsers send a small number of distinct values, so most requests
+     * find their Locales here.  The values are Locale arrays, which must
+     * not be modified.
+     */
+    private static Map localesCache =
+        new LinkedHashMap(LOCALES_CACHE_SIZE, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return (size() > LOCALES_CACHE_SIZE);
+            }
+        };
+
+
     // ----------------------------------------------------- Instance Variables
 
 
@@ -78,6 +114,46 @@ final class HttpRequestImpl
     protected HttpHeader transferEncodingHeader = null;
 
 
+    /**
+     * Have the <code>Cookie</code> headers of this request been parsed yet?
+     */
+    protected boolean cookiesParsed = false;
+
+
+    /**
+     * Have the <code>Accept-Language</code> headers of this request been
+     * parsed yet?
+     */
+    protected boolean localesParsed = false;
+
+
+    /**
+     * The value of <code>System.nanoTime()</code> when the first byte of
+     * this request was received, or zero if unknown.
+     */
+    private long startTime = 0L;
+
+
+    /**
+     * Can this request be suspended?
+     */
+    private boolean suspendable = false;
+
+
+    /**
+     * The suspended request to finish when this request is resumed, once
+     * it has been detached from its processor.
+     */
+    private SuspendedRequest suspension = null;
+
+
+    /**
+     * The handle through which servlets suspend and resume this request,
+     * created the first time it is asked for.
+     */
+    private Suspender suspender = null;
+
+
     // ------------------------------------------------------------- Properties
 
 
@@ -117,6 +193,42 @@ final class HttpRequestImpl
     }
 
 
+    /**
+     * [Package Private] Return the value of <code>System.nanoTime()</code>
+     * when the first byte of this request was received, or zero if unknown.
+     */
+    long getStartTime() {
+
+        return (startTime);
+
+    }
+
+
+    /**
+     * [Package Private] Set the value of <code>System.nanoTime()</code>
+     * when the first byte of this request was received.
+     *
+     * @param startTime The new start time
+     */
+    void setStartTime(long startTime) {
+
+        this.startTime = startTime;
+
+    }
+
+
+    /**
+     * [Package Private] Set whether this request can be suspended.
+     *
+     * @param suspendable The new suspendable flag
+     */
+    void setSuspendable(boolean suspendable) {
+
+        this.suspendable = suspendable;
+
+    }
+
+
     // --------------------------------------------------------- Public Methods
 
 
@@ -130,6 +242,13 @@ final class HttpRequestImpl
         inet = null;
         nextHeader = 0;
         connectionHeader = null;
+        cookiesParsed = false;
+        localesParsed = false;
+        startTime = 0L;
+        synchronized (this) {
+            suspendable = false;
+            suspension = null;
+        }
 
     }
 
@@ -144,6 +263,9 @@ final class HttpRequestImpl
      */
     public ServletInputStream createInputStream() throws IOException {
 
+        // The body of HTTP/2 requests is already delimited by their stream
+        if (!(response instanceof HttpResponseImpl))
+            return (super.createInputStream());
         return (new HttpRequestStream(this, (HttpResponseImpl) response));
 
     }
@@ -211,6 +333,30 @@ final class HttpRequestImpl
     }
 
 
+    /**
+     * Clear the collection of Cookies associated with this Request,
+     * including those which have not been parsed yet.
+     */
+    public void clearCookies() {
+
+        super.clearCookies();
+        cookiesParsed = true;
+
+    }
+
+
+    /**
+     * Clear the collection of Locales associated with this Request,
+     * including those which have not been parsed yet.
+     */
+    public void clearLocales() {
+
+        super.clearLocales();
+        localesParsed = true;
+
+    }
+
+
     /**
      * Return the first value of the specified header, if any; otherwise,
      * return <code>null</code>
@@ -264,9 +410,91 @@ final class HttpRequestImpl
     }
 
 
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Detach this request from its processor if it is still suspended, so
+     * that the specified suspended request is finished when it is resumed.
+     * Return <code>false</code> if this request has been resumed already,
+     * in which case the processor must finish it itself.
+     *
+     * @param suspension The suspended request
+     */
+    synchronized boolean detach(SuspendedRequest suspension) {
+
+        if (!suspended || resumed)
+            return (false);
+        this.suspension = suspension;
+        return (true);
+
+    }
+
+
+    // ------------------------------------------------------ Protected Methods
+
+
+    /**
+     * Return <code>true</code> if this request can be suspended.
+     */
+    protected boolean isSuspendable() {
+
+        return (suspendable);
+
+    }
+
+
+    /**
+     * Finish this request, if it has been detached from its processor.
+     */
+    protected void resumed() {
+
+        SuspendedRequest suspension = null;
+        synchronized (this) {
+            suspension = this.suspension;
+            this.suspension = null;
+        }
+        if (suspension != null)
+            suspension.resume();
+
+    }
+
+
     // ------------------------------------------------- ServletRequest Methods
 
 
+    /**
+     * Return the specified request attribute if it exists; otherwise,
+     * return <code>null</code>.  Whether the response can be written
+     * without waiting is computed when it is asked for, and the handle
+     * suspending this request is only returned if it can be suspended.
+     *
+     * @param name Name of the request attribute to return
+     */
+    public Object getAttribute(String name) {
+
+        if (Globals.SUSPEND_ATTR.equals(name)) {
+            if (!isSuspendable())
+                return (null);
+            if (suspender == null)
+                suspender = new Suspender();
+            return (suspender);
+        }
+
+        if (Globals.WRITE_READY_ATTR.equals(name)
+            && (response != null)) {
+            OutputStream stream = response.getStream();
+            if (stream instanceof ChannelOutputStream) {
+                if (((ChannelOutputStream) stream).isWriteReady())
+                    return (Boolean.TRUE);
+                return (Boolean.FALSE);
+            }
+        }
+        return (super.getAttribute(name));
+
+    }
+
+
     /**
      * Return the Internet Protocol (IP) address of the client that sent
      * this request.
@@ -292,9 +520,48 @@ final class HttpRequestImpl
     }
 
 
+    /**
+     * Return the preferred Locale that the client will accept content in,
+     * based on the value for the first <code>Accept-Language</code> header
+     * that was encountered.  If the request did not specify a preferred
+     * language, the server's default Locale is returned.
+     */
+    public Locale getLocale() {
+
+        parseLocales();
+        return (super.getLocale());
+
+    }
+
+
+    /**
+     * Return the set of preferred Locales that the client will accept
+     * content in, based on the values for any <code>Accept-Language</code>
+     * headers that were encountered.  If the request did not specify a
+     * preferred language, the server's default Locale is returned.
+     */
+    public Enumeration getLocales() {
+
+        parseLocales();
+        return (super.getLocales());
+
+    }
+
+
     // --------------------------------------------- HttpServletRequest Methods
 
 
+    /**
+     * Return the set of Cookies received with this Request.
+     */
+    public Cookie[] getCookies() {
+
+        parseCookies();
+        return (super.getCookies());
+
+    }
+
+
     /**
      * Return the first value of the specified header, if any; otherwise,
      * return <code>null</code>
@@ -303,15 +570,12 @@ final class HttpRequestImpl
      */
     public String getHeader(String name) {
 
-        name = name.toLowerCase();
         for (int i = 0; i < nextHeader; i++) {
-            if (headerPool[i].equals(name))
-                return new String(headerPool[i].value, 0,
-                                  headerPool[i].valueEnd);
+            if (headerPool[i].equalsIgnoreCase(name))
+                return headerPool[i].getValue();
         }
         return null;
 
-
     }
 
 
@@ -323,12 +587,10 @@ final class HttpRequestImpl
      */
     public Enumeration getHeaders(String name) {
 
-        name = name.toLowerCase();
         ArrayList tempArrayList = new ArrayList();
         for (int i = 0; i < nextHeader; i++) {
-            if (headerPool[i].equals(name))
-                tempArrayList.add(new String(headerPool[i].value, 0,
-                                             headerPool[i].valueEnd));
+            if (headerPool[i].equalsIgnoreCase(name))
+                tempArrayList.add(headerPool[i].getValue());
         }
         return (Enumeration) new Enumerator(tempArrayList);
 
@@ -341,11 +603,205 @@ final class HttpRequestImpl
     public Enumeration getHeaderNames() {
         ArrayList tempArrayList = new ArrayList();
         for (int i = 0; i < nextHeader; i++) {
-            tempArrayList.add(new String(headerPool[i].name, 0,
-                                         headerPool[i].nameEnd));
+            tempArrayList.add(headerPool[i].getName());
         }
         return (Enumeration) new Enumerator(tempArrayList);
 
     }
 
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Parse the <code>Cookie</code> headers received with this request, if
+     * this has not been done yet.  The requested session id has already been
+     * extracted by the processor.
+     */
+    private void parseCookies() {
+
+        synchronized (cookies) {
+            if (cookiesParsed)
+                return;
+            cookiesParsed = true;
+            for (int i = 0; i < nextHeader; i++) {
+                if (headerPool[i].getOrdinal() != DefaultHeaders.COOKIE)
+                    continue;
+                Cookie results[] =
+                    RequestUtil.parseCookieHeader(headerPool[i].getValue());
+                for (int j = 0; j < results.length; j++)
+                    cookies.add(results[j]);
+            }
+        }
+
+    }
+
+
+    /**
+     * Parse the <code>Accept-Language</code> headers received with this
+     * request, if this has not been done yet.
+     */
+    private void parseLocales() {
+
+        synchronized (locales) {
+            if (localesParsed)
+                return;
+            localesParsed = true;
+            for (int i = 0; i < nextHeader; i++) {
+                if (headerPool[i].getOrdinal()
+                    != DefaultHeaders.ACCEPT_LANGUAGE)
+                    continue;
+                String value = headerPool[i].getValue();
+                Locale results[] = null;
+                synchronized (localesCache) {
+                    results = (Locale[]) localesCache.get(value);
+                }
+                if (results == null) {
+                    results = parseAcceptLanguage(value);
+                    synchronized (localesCache) {
+                        localesCache.put(value, results);
+                    }
+                }
+                for (int j = 0; j < results.length; j++)
+                    locales.add(results[j]);
+            }
+        }
+
+    }
+
+
+    /**
+     * Parse the value of an <code>Accept-Language</code> header, and return
+     * the corresponding Locales, in decreasing order of quality.
+     *
+     * @param value The value of the <code>Accept-Language</code> header.
+     */
+    private static Locale[] parseAcceptLanguage(String value) {
+
+        // Store the accumulated languages that have been requested in
+        // a local collection, sorted by the quality value (so we can
+        // add Locales in descending order).  The values will be ArrayLists
+        // containing the corresponding Locales to be added
+        TreeMap locales = new TreeMap();
+
+        // Preprocess the value to remove all whitespace
+        int white = value.indexOf(' ');
+        if (white < 0)
+            white = value.indexOf('\t');
+        if (white >= 0) {
+            StringBuffer sb = new StringBuffer();
+            int len = value.length();
+            for (int i = 0; i < len; i++) {
+                char ch = value.charAt(i);
+                if ((ch != ' ') && (ch != '\t'))
+                    sb.append(ch);
+            }
+            value = sb.toString();
+        }
+
+        // Process each comma-delimited language specification
+        StringParser parser = new StringParser(value);
+        int length = parser.getLength();
+        while (true) {
+
+            // Extract the next comma-delimited entry
+            int start = parser.getIndex();
+            if (start >= length)
+                break;
+            int end = parser.findChar(',');
+            String entry = parser.extract(start, end).trim();
+            parser.advance();   // For the following entry
+
+            // Extract the quality factor for this entry
+            double quality = 1.0;
+            int semi = entry.indexOf(";q=");
+            if (semi >= 0) {
+                try {
+                    quality = Double.parseDouble(entry.substring(semi + 3));
+                } catch (NumberFormatException e) {
+                    quality = 0.0;
+                }
+                entry = entry.substring(0, semi);
+            }
+
+            // Skip entries we are not going to keep track of
+            if (quality < 0.00005)
+                continue;       // Zero (or effectively zero) quality factors
+            if ("*".equals(entry))
+                continue;       // FIXME - "*" entries are not handled
+
+            // Extract the language and country for this entry
+            String language = null;
+            String country = null;
+            String variant = null;
+            int dash = entry.indexOf('-');
+            if (dash < 0) {
+                language = entry;
+                country = "";
+                variant = "";
+            } else {
+                language = entry.substring(0, dash);
+                country = entry.substring(dash + 1);
+                int vDash = country.indexOf('-');
+                if (vDash > 0) {
+                    String cTemp = country.substring(0, vDash);
+                    variant = country.substring(vDash + 1);
+                    country = cTemp;
+                } else {
+                    variant = "";
+                }
+            }
+
+            // Add a new Locale to the list of Locales for this quality level
+            Locale locale = new Locale(language, country, variant);
+            Double key = new Double(-quality);  // Reverse the order
+            ArrayList values = (ArrayList) locales.get(key);
+            if (values == null) {
+                values = new ArrayList();
+                locales.put(key, values);
+            }
+            values.add(locale);
+
+        }
+
+        // Collect the quality values in highest->lowest order (due to
+        // negating the Double value when creating the key)
+        ArrayList results = new ArrayList();
+        Iterator keys = locales.keySet().iterator();
+        while (keys.hasNext())
+            results.addAll((ArrayList) locales.get(keys.next()));
+        return ((Locale[]) results.toArray(new Locale[results.size()]));
+
+    }
+
+
+    // --------------------------------------------------------- Inner Classes
+
+
+    /**
+     * The handle exposed to servlets under the <code>SUSPEND_ATTR</code>
+     * request attribute, made of JDK types only, as servlets cannot see
+     * the classes of the container.
+     */
+    private final class Suspender implements Callable, Runnable {
+
+        /**
+         * Suspend the request, and return this handle to resume it.
+         */
+        public Object call() {
+            suspend();
+            return (this);
+        }
+
+        /**
+         * Resume the request.
+         */
+        public void run() {
+            resume();
+        }
+
+    }
+
+
 }
@@ -24,6 +24,24 @@ final class HttpRequestLine {
     public static final int MAX_PROTOCOL_SIZE = 1024;
 
 
+    /**
+     * Well-known request methods, which are returned without creating a
+     * new String.
+     */
+    static final String[] METHODS = {
+        "GET", "POST", "HEAD", "PUT", "DELETE", "OPTIONS", "TRACE"
+    };
+
+
+    /**
+     * Well-known protocols, which are returned without creating a new
+     * String.
+     */
+    static final String[] PROTOCOLS = {
+        "HTTP/1.1", "HTTP/1.0"
+    };
+
+
     // ----------------------------------------------------------- Constructors
 
 
@@ -63,6 +81,26 @@ final class HttpRequestLine {
     // ------------------------------------------------------------- Properties
 
 
+    /**
+     * Return the method of this request line.
+     */
+    public String getMethod() {
+
+        return (toString(method, methodEnd, METHODS));
+
+    }
+
+
+    /**
+     * Return the protocol of this request line.
+     */
+    public String getProtocol() {
+
+        return (toString(protocol, protocolEnd, PROTOCOLS));
+
+    }
+
+
     // --------------------------------------------------------- Public Methods
 
 
@@ -131,6 +169,34 @@ final class HttpRequestLine {
     }
 
 
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Return the String corresponding to the specified characters, using
+     * one of the specified well-known Strings if possible.
+     *
+     * @param buf The characters
+     * @param end The number of characters
+     * @param known The well-known Strings
+     */
+    private static String toString(char[] buf, int end, String[] known) {
+
+        for (int i = 0; i < known.length; i++) {
+            String s = known[i];
+            if (s.length() != end)
+                continue;
+            int j = 0;
+            while ((j < end) && (s.charAt(j) == buf[j]))
+                j++;
+            if (j == end)
+                return (s);
+        }
+        return (new String(buf, 0, end));
+
+    }
+
+
     // --------------------------------------------------------- Object Methods
 
 
@@ -32,8 +32,15 @@ public class HttpRequestStream extends RequestStream {
                  && (transferEncoding.indexOf("chunked") != -1));
 
         if ((!chunk) && (length == -1)) {
-            // Ask for connection close
-            response.addHeader("Connection", "close");
+            if (http11) {
+                // An HTTP/1.1 request with neither a content length nor a
+                // chunked body has no body: any bytes which follow belong
+                // to the next pipelined request, and must not be read
+                length = 0;
+            } else {
+                // Ask for connection close
+                response.addHeader("Connection", "close");
+            }
         }
 
     }
@@ -197,7 +204,7 @@ public class HttpRequestStream extends RequestStream {
     /**
      * Fill the chunk buffer.
      */
-    private synchronized boolean fillChunkBuffer()
+    private boolean fillChunkBuffer()
         throws IOException {
 
         chunkPos = 0;
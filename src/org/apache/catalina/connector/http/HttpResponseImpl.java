@@ -96,6 +96,8 @@ final class HttpResponseImpl
     public void recycle() {
 
         super.recycle();
+        if (responseStream != null)
+            responseStream.release();
         responseStream = null;
         allowChunking = false;
 
@@ -135,6 +137,8 @@ final class HttpResponseImpl
         String transferEncodingValue =
             (String) getHeader("Transfer-Encoding");
         super.reset();
+        if (responseStream != null)
+            responseStream.resetCompression();
         if (connectionValue != null)
             addHeader("Connection", connectionValue);
         if (transferEncodingValue != null)
@@ -255,6 +259,10 @@ final class HttpResponseImpl
         if (included)
             return;     // Ignore any call from an included servlet
 
+        // The length of compressed content is not known in advance
+        if ((responseStream != null) && responseStream.isCompressing())
+            return;
+
         super.setContentLength(length);
 
         if (responseStream != null)
@@ -65,6 +65,8 @@
 package org.apache.catalina.connector.http;
 
 import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import org.apache.catalina.connector.ResponseStream;
@@ -72,7 +74,8 @@ import org.apache.catalina.connector.ResponseStream;
 /**
  * Response stream for the HTTP/1.1 connector. This stream will automatically
  * chunk the answer if using HTTP/1.1 and no Content-Length has been properly
- * set.
+ * set.  When compression is enabled on the connector, it also compresses
+ * the answer using gzip or deflate if the client accepts it.
  *
  * @author <a href="mailto:remm@apache.org">Remy Maucherat</a>
  * @deprecated
@@ -89,6 +92,14 @@ public final class HttpResponseStream extends ResponseStream {
     private static final String CRLF = "\r\n";
 
 
+    /**
+     * The header of the gzip format, for data compressed with the deflate
+     * method and without any optional field.
+     */
+    private static final byte[] GZIP_HEADER =
+        { (byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+
     // ----------------------------------------------------------- Constructors
 
 
@@ -127,6 +138,45 @@ public final class HttpResponseStream extends ResponseStream {
     private boolean writeContent;
 
 
+    /**
+     * True if compression of the content has been considered.
+     */
+    private boolean compressionChecked;
+
+
+    /**
+     * The deflater compressing the content, or <code>null</code> if the
+     * content is not compressed.
+     */
+    private Deflater deflater;
+
+
+    /**
+     * True if the content is compressed using the gzip format rather than
+     * the deflate format.
+     */
+    private boolean gzip;
+
+
+    /**
+     * The checksum of the uncompressed content, for the gzip trailer.
+     */
+    private CRC32 crc;
+
+
+    /**
+     * The buffer receiving the compressed content.
+     */
+    private byte[] deflateBuffer;
+
+
+    /**
+     * Single byte buffer used by <code>write(int)</code> when the content is
+     * compressed.
+     */
+    private byte[] single = new byte[1];
+
+
     // -------------------------------------------- ServletOutputStream Methods
 
 
@@ -146,6 +196,16 @@ public final class HttpResponseStream extends ResponseStream {
         if (!writeContent)
             return;
 
+        if (!writingChunk) {
+            if (!compressionChecked)
+                checkCompression();
+            if (deflater != null) {
+                single[0] = (byte) b;
+                deflate(single, 0, 1);
+                return;
+            }
+        }
+
         if (useChunking && !writingChunk) {
             writingChunk = true;
             try {
@@ -174,6 +234,27 @@ public final class HttpResponseStream extends ResponseStream {
         if (!writeContent)
             return;
 
+        if (!writingChunk) {
+            if (!compressionChecked)
+                checkCompression();
+            if (deflater != null) {
+                deflate(b, off, len);
+                return;
+            }
+        }
+
+        writeChunk(b, off, len);
+
+    }
+
+
+    /**
+     * Write the specified bytes as a chunk if chunking is used, or as is
+     * otherwise.
+     */
+    private void writeChunk(byte[] b, int off, int len)
+        throws IOException {
+
         if (useChunking && !writingChunk) {
             if (len > 0) {
                 writingChunk = true;
@@ -192,6 +273,20 @@ public final class HttpResponseStream extends ResponseStream {
     }
 
 
+    /**
+     * Flush any buffered data for this output stream, including the data
+     * still held by the deflater when the content is compressed, so that
+     * the client can decompress everything written so far.
+     */
+    public void flush() throws IOException {
+
+        if ((deflater != null) && !suspended)
+            flushCompression();
+        super.flush();
+
+    }
+
+
     /**
      * Close this output stream, causing any buffered data to be flushed and
      * any further output data to throw an IOException.
@@ -205,6 +300,9 @@ public final class HttpResponseStream extends ResponseStream {
         if (!writeContent)
             return;
 
+        if (deflater != null)
+            finishCompression();
+
         if (useChunking) {
             // Write the final chunk.
             writingChunk = true;
@@ -247,6 +345,37 @@ public final class HttpResponseStream extends ResponseStream {
     }
 
 
+    /**
+     * Is the content of this stream compressed?
+     */
+    boolean isCompressing() {
+        return (deflater != null);
+    }
+
+
+    /**
+     * Give back the deflater used by this stream, if any, without
+     * finishing the compressed content.
+     */
+    void release() {
+        if (deflater != null) {
+            HttpConnector connector = (HttpConnector) response.getConnector();
+            connector.getDeflaterPool().release(deflater, gzip);
+            deflater = null;
+        }
+    }
+
+
+    /**
+     * Discard the compression state of this stream, after the response
+     * has been reset, so that compression is considered again.
+     */
+    void resetCompression() {
+        release();
+        compressionChecked = false;
+    }
+
+
     protected void checkHead(HttpResponseImpl response) {
         HttpServletRequest servletRequest = 
             (HttpServletRequest) response.getRequest();
@@ -258,4 +387,187 @@ public final class HttpResponseStream extends ResponseStream {
     }
 
 
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Decide whether the content of this response should be compressed,
+     * before the first byte of content is written.  The content is
+     * compressed if compression is enabled on the connector, the content
+     * type is compressable, the content length is unknown or large enough,
+     * and the client accepts the gzip or deflate encoding.
+     */
+    private void checkCompression() throws IOException {
+
+        compressionChecked = true;
+        HttpResponseImpl response = (HttpResponseImpl) this.response;
+        HttpConnector connector = (HttpConnector) response.getConnector();
+        if (!connector.getCompression() || response.isCommitted()
+            || (count != 0))
+            return;
+        if (!connector.isCompressable(response.getContentType()))
+            return;
+        int contentLength = response.getContentLength();
+        if ((contentLength >= 0)
+            && (contentLength < connector.getCompressionMinSize()))
+            return;
+        if (response.getHeader("Content-Encoding") != null)
+            return;
+
+        // The content now depends on the Accept-Encoding header
+        response.addHeader("Vary", "Accept-Encoding");
+        HttpServletRequest servletRequest =
+            (HttpServletRequest) response.getRequest();
+        String encoding =
+            acceptedEncoding(servletRequest.getHeader("Accept-Encoding"));
+        if (encoding == null)
+            return;
+
+        // The compressed length is not known, so chunk the content
+        response.setHeader("Content-Encoding", encoding);
+        response.setContentLength(-1);
+        gzip = "gzip".equals(encoding);
+        deflater = connector.getDeflaterPool().allocate(gzip);
+        deflateBuffer = new byte[MAX_CHUNK_SIZE];
+        if (gzip) {
+            crc = new CRC32();
+            writeChunk(GZIP_HEADER, 0, GZIP_HEADER.length);
+        }
+
+    }
+
+
+    /**
+     * Return the content coding to use for a client sending the specified
+     * <code>Accept-Encoding</code> header, or <code>null</code> if the
+     * client accepts neither gzip nor deflate.
+     *
+     * @param header The value of the <code>Accept-Encoding</code> header
+     */
+    private static String acceptedEncoding(String header) {
+
+        if (header == null)
+            return (null);
+        // The quality of each coding, or -1 if it is not listed
+        double gzip = -1.0;
+        double deflate = -1.0;
+        double any = -1.0;
+        int start = 0;
+        while (start < header.length()) {
+            int end = header.indexOf(',', start);
+            if (end < 0)
+                end = header.length();
+            String coding = header.substring(start, end).trim();
+            start = end + 1;
+            double quality = 1.0;
+            int semi = coding.indexOf(';');
+            if (semi >= 0) {
+                String param = coding.substring(semi + 1).trim();
+                coding = coding.substring(0, semi).trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0.0;
+                    }
+                }
+            }
+            if (coding.equalsIgnoreCase("gzip"))
+                gzip = quality;
+            else if (coding.equalsIgnoreCase("deflate"))
+                deflate = quality;
+            else if (coding.equals("*"))
+                any = quality;
+        }
+
+        // "*" only stands for the codings which are not listed, and q=0
+        // excludes a coding
+        if ((gzip > 0.0) || ((gzip < 0.0) && (any > 0.0)))
+            return ("gzip");
+        if ((deflate > 0.0) || ((deflate < 0.0) && (any > 0.0)))
+            return ("deflate");
+        return (null);
+
+    }
+
+
+    /**
+     * Compress the specified bytes, and write the compressed data which is
+     * available.
+     */
+    private void deflate(byte[] b, int off, int len) throws IOException {
+
+        if (len <= 0)
+            return;
+        if (gzip)
+            crc.update(b, off, len);
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput()) {
+            int n = deflater.deflate(deflateBuffer, 0, deflateBuffer.length);
+            if (n > 0)
+                writeChunk(deflateBuffer, 0, n);
+        }
+
+    }
+
+
+    /**
+     * Write all the compressed data held by the deflater, ending on a byte
+     * boundary so that the client can decompress it without waiting for
+     * more.
+     */
+    private void flushCompression() throws IOException {
+
+        int n = 0;
+        do {
+            n = deflater.deflate(deflateBuffer, 0, deflateBuffer.length,
+                                 Deflater.SYNC_FLUSH);
+            if (n > 0)
+                writeChunk(deflateBuffer, 0, n);
+        } while (n == deflateBuffer.length);
+
+    }
+
+
+    /**
+     * Write the end of the compressed content, and give back the deflater.
+     */
+    private void finishCompression() throws IOException {
+
+        try {
+            deflater.finish();
+            while (!deflater.finished()) {
+                int n =
+                    deflater.deflate(deflateBuffer, 0, deflateBuffer.length);
+                if (n > 0)
+                    writeChunk(deflateBuffer, 0, n);
+            }
+            if (gzip) {
+                // The trailer holds the CRC and the uncompressed size
+                byte[] trailer = new byte[8];
+                writeInt(trailer, 0, (int) crc.getValue());
+                writeInt(trailer, 4, deflater.getTotalIn());
+                writeChunk(trailer, 0, trailer.length);
+            }
+        } finally {
+            release();
+        }
+
+    }
+
+
+    /**
+     * Store the specified integer in little endian order.
+     */
+    private static void writeInt(byte[] b, int off, int value) {
+
+        b[off] = (byte) value;
+        b[off + 1] = (byte) (value >> 8);
+        b[off + 2] = (byte) (value >> 16);
+        b[off + 3] = (byte) (value >> 24);
+
+    }
+
+
 }
@@ -0,0 +1,305 @@
+package org.apache.catalina.connector.http;
+
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+
+/**
+ * Background thread watching the idle keep-alive connections of an
+ * <code>HttpConnector</code>.  Instead of blocking in a read while waiting
+ * for the next request on a persistent connection, an
+ * <code>HttpProcessor</code> parks the socket here and returns to the
+ * processor pool.  When bytes arrive on a parked socket, the socket is
+ * switched back to blocking mode and handed back to the connector, which
+ * assigns it to an available processor (or to the next processor which
+ * becomes available).
+ * <p>
+ * Only sockets which expose a <code>SocketChannel</code> (see
+ * <code>ChannelServerSocketFactory</code>) can be parked.
+ *
+ * @deprecated
+ */
+
+final class KeepAlivePoller
+    implements Runnable {
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Construct a new poller associated with the specified connector.
+     *
+     * @param connector HttpConnector that owns this poller
+     */
+    public KeepAlivePoller(HttpConnector connector) {
+
+        super();
+        this.connector = connector;
+        this.threadName = "HttpKeepAlivePoller[" + connector.getPort() + "]";
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The sockets which have been parked since the last selection.
+     */
+    private ArrayList additions = new ArrayList();
+
+
+    /**
+     * The HttpConnector with which this poller is associated.
+     */
+    private HttpConnector connector = null;
+
+
+    /**
+     * The selector on which parked sockets are registered.
+     */
+    private Selector selector = null;
+
+
+    /**
+     * The shutdown signal to our background thread.
+     */
+    private boolean stopped = false;
+
+
+    /**
+     * The background thread.
+     */
+    private Thread thread = null;
+
+
+    /**
+     * The name to register for the background thread.
+     */
+    private String threadName = null;
+
+
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Return the number of sockets currently parked.
+     */
+    int getParkedCount() {
+
+        Selector selector = this.selector;
+        if (selector == null)
+            return (0);
+        try {
+            return (selector.keys().size());
+        } catch (Exception e) {
+            return (0);
+        }
+
+    }
+
+
+    /**
+     * Park the specified idle keep-alive socket until bytes are received.
+     *
+     * @param socket The socket to park
+     */
+    void park(Socket socket) {
+
+        if (stopped) {
+            close(socket);
+            return;
+        }
+        synchronized (additions) {
+            additions.add(socket);
+        }
+        selector.wakeup();
+
+    }
+
+
+    /**
+     * Start the background thread.
+     *
+     * @exception IOException if the selector cannot be opened
+     */
+    void start() throws IOException {
+
+        selector = Selector.open();
+        stopped = false;
+        thread = new Thread(this, threadName);
+        thread.setDaemon(true);
+        thread.start();
+
+    }
+
+
+    /**
+     * Stop the background thread, and close all parked sockets.
+     */
+    void stop() {
+
+        stopped = true;
+        selector.wakeup();
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            ;
+        }
+        thread = null;
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Close the specified socket, ignoring errors.
+     *
+     * @param socket The socket to close
+     */
+    private void close(Socket socket) {
+
+        try {
+            socket.close();
+        } catch (IOException e) {
+            ;
+        }
+
+    }
+
+
+    /**
+     * Close the parked sockets which have been idle for longer than the
+     * keep-alive timeout.
+     */
+    private void closeIdleSockets() {
+
+        int timeout = connector.getKeepAliveTimeout();
+        if (timeout <= 0)
+            return;
+        long expired = System.currentTimeMillis() - timeout;
+        Iterator keys = selector.keys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = (SelectionKey) keys.next();
+            if (!key.isValid())
+                continue;
+            if (((Long) key.attachment()).longValue() < expired) {
+                key.cancel();
+                close(((SocketChannel) key.channel()).socket());
+            }
+        }
+
+    }
+
+
+    /**
+     * Register the sockets which have been parked since the last selection.
+     */
+    private void registerAdditions() {
+
+        synchronized (additions) {
+            for (int i = 0; i < additions.size(); i++) {
+                Socket socket = (Socket) additions.get(i);
+                SocketChannel channel = socket.getChannel();
+                try {
+                    channel.configureBlocking(false);
+                    channel.register(selector, SelectionKey.OP_READ,
+                                     new Long(System.currentTimeMillis()));
+                } catch (IOException e) {
+                    close(socket);
+                }
+            }
+            additions.clear();
+        }
+
+    }
+
+
+    // ---------------------------------------------- Background Thread Methods
+
+
+    /**
+     * The background thread that waits for bytes on the parked sockets,
+     * and hands them back to the connector.
+     */
+    public void run() {
+
+        long lastCheck = System.currentTimeMillis();
+
+        while (!stopped) {
+
+            try {
+                selector.select(1000);
+            } catch (IOException e) {
+                continue;
+            }
+            if (stopped)
+                break;
+
+            registerAdditions();
+
+            // Deregister the sockets which have received bytes
+            ArrayList sockets = new ArrayList();
+            Iterator keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = (SelectionKey) keys.next();
+                keys.remove();
+                if (!key.isValid())
+                    continue;
+                key.cancel();
+                sockets.add(((SocketChannel) key.channel()).socket());
+            }
+
+            if (sockets.size() > 0) {
+                // Flush the cancelled keys before switching back to
+                // blocking mode
+                try {
+                    selector.selectNow();
+                } catch (IOException e) {
+                    ;
+                }
+                for (int i = 0; i < sockets.size(); i++) {
+                    Socket socket = (Socket) sockets.get(i);
+                    try {
+                        socket.getChannel().configureBlocking(true);
+                    } catch (IOException e) {
+                        close(socket);
+                        continue;
+                    }
+                    connector.resume(socket);
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            if (now - lastCheck >= 1000) {
+                closeIdleSockets();
+                lastCheck = now;
+            }
+
+        }
+
+        // Close all parked sockets
+        Iterator keys = selector.keys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = (SelectionKey) keys.next();
+            close(((SocketChannel) key.channel()).socket());
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            ;
+        }
+
+    }
+
+
+}
@@ -0,0 +1,230 @@
+package org.apache.catalina.connector.http;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Histogram of the durations of a phase of request processing, in
+ * microseconds, which can be updated by any number of threads without
+ * locking.  Durations are counted in buckets whose width grows with the
+ * duration: each power of two is divided into eight buckets, so that
+ * percentiles are accurate within 12.5%, whatever the magnitude.
+ *
+ * @deprecated
+ */
+
+final class LatencyHistogram {
+
+
+    // ----------------------------------------------------- Manifest Constants
+
+
+    /**
+     * The number of buckets each power of two is divided into.
+     */
+    private static final int SUB_BUCKETS = 8;
+
+
+    /**
+     * The number of bits of <code>SUB_BUCKETS</code>.
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+
+    /**
+     * The number of buckets, enough for any positive long value.
+     */
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The number of durations recorded in each bucket.
+     */
+    private AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+
+    /**
+     * The number of recorded durations.
+     */
+    private AtomicLong count = new AtomicLong();
+
+
+    /**
+     * The longest recorded duration, in microseconds.
+     */
+    private AtomicLong max = new AtomicLong();
+
+
+    /**
+     * The sum of the recorded durations, in microseconds.
+     */
+    private AtomicLong total = new AtomicLong();
+
+
+    // ------------------------------------------------------------- Properties
+
+
+    /**
+     * Return the number of recorded durations.
+     */
+    long getCount() {
+
+        return (count.get());
+
+    }
+
+
+    /**
+     * Return the longest recorded duration, in microseconds.
+     */
+    long getMax() {
+
+        return (max.get());
+
+    }
+
+
+    /**
+     * Return the average recorded duration, in microseconds.
+     */
+    long getMean() {
+
+        long n = count.get();
+        if (n == 0)
+            return (0L);
+        return (total.get() / n);
+
+    }
+
+
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Return the duration below which the specified fraction of the
+     * recorded durations fall, in microseconds, rounded up to the upper
+     * bound of its bucket.
+     *
+     * @param fraction The fraction, between 0 and 1
+     */
+    long getPercentile(double fraction) {
+
+        long n = 0;
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            n += counts[i];
+        }
+        if (n == 0)
+            return (0L);
+        long rank = (long) Math.ceil(fraction * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(rank, 1L))
+                return (Math.min(upperBound(i), max.get()));
+        }
+        return (max.get());
+
+    }
+
+
+    /**
+     * Record the duration between the specified <code>System.nanoTime()</code>
+     * timestamps, unless one of them is missing.
+     *
+     * @param start The timestamp at the beginning of the phase
+     * @param end The timestamp at the end of the phase
+     */
+    void record(long start, long end) {
+
+        if ((start == 0L) || (end == 0L) || (end < start))
+            return;
+        long micros = (end - start) / 1000L;
+        buckets.incrementAndGet(index(micros));
+        count.incrementAndGet();
+        total.addAndGet(micros);
+        long current = max.get();
+        while ((micros > current) && !max.compareAndSet(current, micros))
+            current = max.get();
+
+    }
+
+
+    /**
+     * Forget all the recorded durations.
+     */
+    void reset() {
+
+        for (int i = 0; i < BUCKETS; i++)
+            buckets.set(i, 0L);
+        count.set(0L);
+        max.set(0L);
+        total.set(0L);
+
+    }
+
+
+    /**
+     * Return a summary of the recorded durations, in microseconds.
+     */
+    public String toString() {
+
+        StringBuffer sb = new StringBuffer("count=");
+        sb.append(getCount());
+        sb.append(" mean=");
+        sb.append(getMean());
+        sb.append(" p50=");
+        sb.append(getPercentile(0.5));
+        sb.append(" p99=");
+        sb.append(getPercentile(0.99));
+        sb.append(" p99.9=");
+        sb.append(getPercentile(0.999));
+        sb.append(" max=");
+        sb.append(getMax());
+        return (sb.toString());
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Return the index of the bucket of the specified duration.
+     *
+     * @param micros The duration, in microseconds
+     */
+    private static int index(long micros) {
+
+        if (micros < SUB_BUCKETS)
+            return ((int) micros);
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        return ((shift + 1) * SUB_BUCKETS
+                + (int) ((micros >> shift) - SUB_BUCKETS));
+
+    }
+
+
+    /**
+     * Return the largest duration counted in the specified bucket.
+     *
+     * @param index The index of the bucket
+     */
+    private static long upperBound(int index) {
+
+        if (index < SUB_BUCKETS)
+            return (index);
+        int shift = (index / SUB_BUCKETS) - 1;
+        long mantissa = (index % SUB_BUCKETS) + SUB_BUCKETS;
+        return (((mantissa + 1) << shift) - 1);
+
+    }
+
+
+}
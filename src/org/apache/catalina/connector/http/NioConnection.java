@@ -0,0 +1,677 @@
+package org.apache.catalina.connector.http;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+
+/**
+ * State associated with a single client connection handled by an
+ * <code>NioHttpConnector</code>.  Bytes are accumulated here by the poller
+ * thread until a complete request (request line, headers and body) has been
+ * received, at which point the connection is handed to a worker thread.
+ * Response bytes which the client was not ready to receive when the worker
+ * thread was done are kept here as well, until the poller thread has
+ * written them.
+ *
+ * @deprecated
+ */
+
+final class NioConnection {
+
+
+    // -------------------------------------------------------------- Constants
+
+
+    /**
+     * CR.
+     */
+    private static final byte CR = (byte) '\r';
+
+
+    /**
+     * LF.
+     */
+    private static final byte LF = (byte) '\n';
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Construct a new connection wrapper for the specified channel.
+     *
+     * @param channel The client channel
+     * @param bufferSize The initial size of the input buffer
+     * @param maxRequestSize The maximum size of a request
+     */
+    public NioConnection(SocketChannel channel, int bufferSize,
+                         int maxRequestSize) {
+
+        super();
+        this.channel = channel;
+        this.buf = new byte[bufferSize];
+        this.maxRequestSize = maxRequestSize;
+        this.lastAccess = System.currentTimeMillis();
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * Has the <code>100 Continue</code> acknowledgement already been sent
+     * for the request currently being received?
+     */
+    private boolean ackSent = false;
+
+
+    /**
+     * The bytes received so far on this connection.
+     */
+    private byte[] buf = null;
+
+
+    /**
+     * The client channel.
+     */
+    private SocketChannel channel = null;
+
+
+    /**
+     * The number of valid bytes in the buffer.
+     */
+    private int count = 0;
+
+
+    /**
+     * The status of the error response to send instead of processing the
+     * request being received, or 0 if it is valid so far.
+     */
+    private int errorStatus = 0;
+
+
+    /**
+     * Did the request currently being received contain an
+     * <code>Expect: 100-continue</code> header?
+     */
+    private boolean expectContinue = false;
+
+
+    /**
+     * Offset of the first byte following the headers of the request
+     * currently being received, or -1 if the headers are not complete yet.
+     */
+    private int headerEnd = -1;
+
+
+    /**
+     * Should this connection be closed once the pending response bytes
+     * have been written?
+     */
+    private boolean closeAfterWrite = false;
+
+
+    /**
+     * The selection key of this connection on the poller selector.
+     */
+    private SelectionKey key = null;
+
+
+    /**
+     * The time at which bytes were last received on this connection, or at
+     * which the last response was completed.
+     */
+    private long lastAccess = 0L;
+
+
+    /**
+     * The maximum size of a request, including its body.
+     */
+    private int maxRequestSize = 0;
+
+
+    /**
+     * The response bytes which have not been written yet, if any.
+     */
+    private ByteBuffer[] pending = null;
+
+
+    /**
+     * The number of requests processed on this connection.
+     */
+    private int requestCount = 0;
+
+
+    /**
+     * The time at which the first byte of the request being received was
+     * received.
+     */
+    private long requestStart = 0L;
+
+
+    /**
+     * The length of the body of the request currently being received, or -1
+     * if unknown.  A value of -2 indicates a chunked body.
+     */
+    private int bodyLength = -1;
+
+
+    // ------------------------------------------------------------- Properties
+
+
+    /**
+     * Return the input buffer.
+     */
+    byte[] getBuffer() {
+
+        return (this.buf);
+
+    }
+
+
+    /**
+     * Return the client channel.
+     */
+    SocketChannel getChannel() {
+
+        return (this.channel);
+
+    }
+
+
+    /**
+     * Return the number of bytes currently buffered.
+     */
+    int getCount() {
+
+        return (this.count);
+
+    }
+
+
+    /**
+     * Return the status of the error response to send instead of
+     * processing the request being received: 400 if it cannot be framed,
+     * or 413 if it is larger than the maximum request size.  Return 0 if
+     * the request is valid so far.
+     */
+    int getErrorStatus() {
+
+        return (this.errorStatus);
+
+    }
+
+
+    /**
+     * Return the selection key of this connection.
+     */
+    SelectionKey getKey() {
+
+        return (this.key);
+
+    }
+
+
+    /**
+     * Set the selection key of this connection.
+     *
+     * @param key The new selection key
+     */
+    void setKey(SelectionKey key) {
+
+        this.key = key;
+
+    }
+
+
+    /**
+     * Return <code>true</code> if the request line and headers of the
+     * request being received are complete.
+     */
+    boolean isHeaderComplete() {
+
+        return (headerEnd >= 0);
+
+    }
+
+
+    /**
+     * Return <code>true</code> if this connection should be closed once the
+     * pending response bytes have been written.
+     */
+    boolean isCloseAfterWrite() {
+
+        return (this.closeAfterWrite);
+
+    }
+
+
+    /**
+     * Return <code>true</code> if response bytes are waiting to be written
+     * on this connection.
+     */
+    boolean isWritePending() {
+
+        return (pending != null);
+
+    }
+
+
+    /**
+     * Set the response bytes which are waiting to be written on this
+     * connection.
+     *
+     * @param pending The pending bytes, or <code>null</code> if none
+     * @param closeAfterWrite Should the connection be closed once they have
+     *  been written?
+     */
+    void setPending(ByteBuffer[] pending, boolean closeAfterWrite) {
+
+        this.pending = pending;
+        this.closeAfterWrite = closeAfterWrite;
+
+    }
+
+
+    /**
+     * Return the number of requests processed on this connection.
+     */
+    int getRequestCount() {
+
+        return (this.requestCount);
+
+    }
+
+
+    /**
+     * Set the number of requests processed on this connection.
+     *
+     * @param requestCount The new number of requests
+     */
+    void setRequestCount(int requestCount) {
+
+        this.requestCount = requestCount;
+
+    }
+
+
+    /**
+     * Return the time at which the first byte of the request being received
+     * was received.
+     */
+    long getRequestStart() {
+
+        return (this.requestStart);
+
+    }
+
+
+    /**
+     * Return the last access time of this connection.
+     */
+    long getLastAccess() {
+
+        return (this.lastAccess);
+
+    }
+
+
+    /**
+     * Update the last access time of this connection.
+     */
+    void access() {
+
+        this.lastAccess = System.currentTimeMillis();
+
+    }
+
+
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Append the remaining content of the specified buffer to the bytes
+     * received on this connection.
+     *
+     * @param bb The buffer, flipped for reading
+     */
+    void append(ByteBuffer bb) {
+
+        int len = bb.remaining();
+        if (count + len > buf.length) {
+            int size = buf.length * 2;
+            while (size < count + len)
+                size *= 2;
+            byte[] newBuffer = new byte[size];
+            System.arraycopy(buf, 0, newBuffer, 0, count);
+            buf = newBuffer;
+        }
+        bb.get(buf, count, len);
+        lastAccess = System.currentTimeMillis();
+        if (count == 0)
+            requestStart = lastAccess;
+        count += len;
+
+    }
+
+
+    /**
+     * Discard the specified number of bytes at the beginning of the buffer,
+     * which correspond to a request which has been fully processed.  Any
+     * bytes which follow (the beginning of a pipelined request) are kept.
+     *
+     * @param length The number of bytes to discard
+     */
+    void consume(int length) {
+
+        if (length < count)
+            System.arraycopy(buf, length, buf, 0, count - length);
+        count -= length;
+        requestStart = System.currentTimeMillis();
+        headerEnd = -1;
+        bodyLength = -1;
+        expectContinue = false;
+        ackSent = false;
+
+    }
+
+
+    /**
+     * Return <code>true</code> if the client is waiting for a
+     * <code>100 Continue</code> acknowledgement before sending the body of
+     * the request currently being received, and it has not been sent yet.
+     * The acknowledgement is considered sent once this method has
+     * returned <code>true</code>.
+     */
+    boolean needsAck() {
+
+        if (!expectContinue || ackSent || (headerEnd < 0))
+            return (false);
+        ackSent = true;
+        return (true);
+
+    }
+
+
+    /**
+     * Return the length in bytes of the first complete request held in the
+     * buffer, or -1 if no complete request has been received yet, or if it
+     * is invalid.
+     */
+    int requestLength() {
+
+        if (errorStatus != 0)
+            return (-1);
+        if (headerEnd < 0) {
+            if (!parseHeaders())
+                return (-1);
+        }
+
+        if (bodyLength >= 0) {
+            if (count - headerEnd >= bodyLength)
+                return (headerEnd + bodyLength);
+            return (-1);
+        }
+
+        // Chunked request body
+        int pos = headerEnd;
+        while (true) {
+            int eol = indexOfLF(pos);
+            if (eol < 0)
+                return (-1);
+            int size = 0;
+            int i = pos;
+            for (; i < eol; i++) {
+                int digit = Character.digit((char) buf[i], 16);
+                if (digit < 0)
+                    break;
+                if (size > (maxRequestSize - digit) / 16) {
+                    errorStatus = 413;
+                    return (-1);
+                }
+                size = (size * 16) + digit;
+            }
+            if (i == pos) {
+                errorStatus = 400;
+                return (-1);
+            }
+            pos = eol + 1;
+            if (size > maxRequestSize - pos) {
+                errorStatus = 413;
+                return (-1);
+            }
+            if (size == 0) {
+                // Skip the trailing headers, up to the blank line
+                while (true) {
+                    eol = indexOfLF(pos);
+                    if (eol < 0)
+                        return (-1);
+                    boolean blank = (eol == pos)
+                        || ((eol == pos + 1) && (buf[pos] == CR));
+                    pos = eol + 1;
+                    if (blank)
+                        return (pos);
+                }
+            }
+            // Chunk data followed by CRLF
+            pos += size;
+            eol = indexOfLF(pos);
+            if (eol < 0)
+                return (-1);
+            pos = eol + 1;
+        }
+
+    }
+
+
+    /**
+     * Close the underlying channel.
+     */
+    void close() {
+
+        pending = null;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            ;
+        }
+
+    }
+
+
+    /**
+     * Write as many pending response bytes as the channel accepts without
+     * waiting, and return <code>true</code> if none are left.
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    boolean write() throws IOException {
+
+        if (pending == null)
+            return (true);
+        if (channel.write(pending) > 0)
+            lastAccess = System.currentTimeMillis();
+        if (pending[pending.length - 1].hasRemaining())
+            return (false);
+        pending = null;
+        return (true);
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Return the index of the first LF at or after the specified position,
+     * or -1 if none has been received yet.
+     *
+     * @param pos Starting position
+     */
+    private int indexOfLF(int pos) {
+
+        for (int i = pos; i < count; i++) {
+            if (buf[i] == LF)
+                return (i);
+        }
+        return (-1);
+
+    }
+
+
+    /**
+     * Locate the end of the headers of the request being received, and
+     * extract the header values needed to determine the length of its body.
+     * Return <code>false</code> if the headers are not complete yet, or if
+     * the request is larger than the maximum request size.
+     */
+    private boolean parseHeaders() {
+
+        // Skip blank lines preceding the request line
+        int start = 0;
+        while ((start < count) && ((buf[start] == CR) || (buf[start] == LF)))
+            start++;
+
+        // HTTP/0.9 requests have neither a protocol nor headers
+        int eol = indexOfLF(start);
+        if (eol < 0)
+            return (false);
+        if (!regionContains(start, eol, "http/")) {
+            headerEnd = eol + 1;
+            bodyLength = 0;
+            return (true);
+        }
+
+        int contentLength = -1;
+        boolean chunked = false;
+        boolean expect = false;
+        int pos = eol + 1;
+        while (true) {
+            eol = indexOfLF(pos);
+            if (eol < 0)
+                return (false);
+            if ((eol == pos) || ((eol == pos + 1) && (buf[pos] == CR)))
+                break;
+            if (regionStartsWith(pos, eol, "content-length:")) {
+                int value = parseContentLength(pos + 15, eol);
+                if (value < 0)
+                    return (false);
+                // Repeated headers must agree, as the processor may read
+                // another one than we do
+                if ((contentLength >= 0) && (value != contentLength)) {
+                    errorStatus = 400;
+                    return (false);
+                }
+                contentLength = value;
+            } else if (regionStartsWith(pos, eol, "transfer-encoding:")) {
+                chunked = regionContains(pos, eol, "chunked");
+            } else if (regionStartsWith(pos, eol, "expect:")) {
+                expect = regionContains(pos, eol, "100-continue");
+            }
+            pos = eol + 1;
+        }
+
+        if (contentLength < 0)
+            contentLength = 0;
+        if (!chunked && (contentLength > maxRequestSize - (eol + 1))) {
+            errorStatus = 413;
+            return (false);
+        }
+        headerEnd = eol + 1;
+        bodyLength = chunked ? -2 : contentLength;
+        expectContinue = expect;
+        return (true);
+
+    }
+
+
+    /**
+     * Parse the value of a <code>Content-Length</code> header, made of
+     * decimal digits with optional surrounding white space, and return it,
+     * or -1 after having set the error status if it is invalid or larger
+     * than the maximum request size.
+     *
+     * @param start The start of the value in the buffer
+     * @param end The end of the header line in the buffer
+     */
+    private int parseContentLength(int start, int end) {
+
+        while ((start < end) && isWhite(buf[start]))
+            start++;
+        while ((end > start) && isWhite(buf[end - 1]))
+            end--;
+        if (start == end) {
+            errorStatus = 400;
+            return (-1);
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            byte b = buf[i];
+            if ((b < '0') || (b > '9')) {
+                errorStatus = 400;
+                return (-1);
+            }
+            int digit = b - '0';
+            if (value > (maxRequestSize - digit) / 10) {
+                errorStatus = 413;
+                return (-1);
+            }
+            value = (value * 10) + digit;
+        }
+        return (value);
+
+    }
+
+
+    /**
+     * Return <code>true</code> if the specified byte is white space in a
+     * header line, including the CR ending it.
+     */
+    private static boolean isWhite(byte b) {
+
+        return ((b == ' ') || (b == '\t') || (b == CR));
+
+    }
+
+
+    /**
+     * Return <code>true</code> if the specified region of the buffer
+     * contains the specified (lower case) string, ignoring case.
+     */
+    private boolean regionContains(int start, int end, String s) {
+
+        for (int i = start; i <= end - s.length(); i++) {
+            if (regionStartsWith(i, end, s))
+                return (true);
+        }
+        return (false);
+
+    }
+
+
+    /**
+     * Return <code>true</code> if the specified region of the buffer
+     * starts with the specified (lower case) string, ignoring case.
+     */
+    private boolean regionStartsWith(int start, int end, String s) {
+
+        int len = s.length();
+        if (end - start < len)
+            return (false);
+        for (int i = 0; i < len; i++) {
+            byte b = buf[start + i];
+            if ((b >= 'A') && (b <= 'Z'))
+                b = (byte) (b - 'A' + 'a');
+            if (b != s.charAt(i))
+                return (false);
+        }
+        return (true);
+
+    }
+
+
+}
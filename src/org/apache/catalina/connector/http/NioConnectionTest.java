@@ -0,0 +1,196 @@
+package org.apache.catalina.connector.http;
+
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * Checks of the request framing of <code>NioConnection</code>, which
+ * decides where each request received by the poller thread of an
+ * <code>NioHttpConnector</code> ends.  Each check feeds raw bytes to a
+ * connection, and compares the length of the first request found with
+ * the expected one.
+ * <pre>
+ *   java org.apache.catalina.connector.http.NioConnectionTest
+ * </pre>
+ *
+ * @deprecated
+ */
+
+public final class NioConnectionTest {
+
+
+    // ----------------------------------------------------- Manifest Constants
+
+
+    /**
+     * The maximum request size of the connections checked.
+     */
+    private static final int MAX_REQUEST_SIZE = 1024 * 1024;
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The number of failed checks.
+     */
+    private static int failures = 0;
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    public static void main(String args[]) {
+
+        String get = "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n";
+        String post = "POST /form HTTP/1.1\r\nContent-Length: 5\r\n\r\n"
+            + "a=b&c";
+        String chunked = "POST /upload HTTP/1.1\r\n"
+            + "Transfer-Encoding: chunked\r\n\r\n"
+            + "5\r\nhello\r\n"
+            + "6;name=value\r\n world\r\n"
+            + "0\r\nTrailer: x\r\n\r\n";
+
+        System.out.println("Incomplete requests");
+        check("request line only", "GET / HTTP/1.1\r\n", -1);
+        check("headers without blank line",
+              "GET / HTTP/1.1\r\nHost: localhost\r\n", -1);
+        check("partial body", post.substring(0, post.length() - 1), -1);
+        check("partial chunked body",
+              chunked.substring(0, chunked.length() - 2), -1);
+
+        System.out.println("Complete requests");
+        check("HTTP/0.9 GET", "GET /\r\n", 7);
+        check("GET", get, get.length());
+        check("lower case protocol", "GET / http/1.0\r\n\r\n", 18);
+        check("leading blank lines", "\r\n" + get, get.length() + 2);
+        check("Content-Length", post, post.length());
+        check("chunked", chunked, chunked.length());
+        String repeated = "POST / HTTP/1.1\r\nContent-Length:\t5 \r\n"
+            + "Content-Length: 5\r\n\r\nhello";
+        check("repeated equal Content-Length", repeated, repeated.length());
+
+        System.out.println("Pipelined requests");
+        check("GET then POST", get + post, get.length());
+        check("POST then GET", post + get, post.length());
+        check("chunked then GET", chunked + get, chunked.length());
+        NioConnection connection = connection(get + post + get);
+        connection.requestLength();
+        connection.consume(get.length());
+        check("POST after consume", connection, post.length());
+        connection.consume(post.length());
+        check("GET after consume", connection, get.length());
+
+        System.out.println("Invalid requests");
+        check("huge Content-Length",
+              "POST / HTTP/1.1\r\nContent-Length: 99999999999\r\n\r\n",
+              -1, 413);
+        check("Content-Length over the maximum",
+              "POST / HTTP/1.1\r\nContent-Length: 1048577\r\n\r\n",
+              -1, 413);
+        check("huge chunk size", "POST / HTTP/1.1\r\n"
+              + "Transfer-Encoding: chunked\r\n\r\n80000000\r\n", -1, 413);
+        check("chunk size over the maximum", "POST / HTTP/1.1\r\n"
+              + "Transfer-Encoding: chunked\r\n\r\n100000\r\n", -1, 413);
+        check("Content-Length with inner space",
+              "POST / HTTP/1.1\r\nContent-Length: 1 2\r\n\r\n", -1, 400);
+        check("negative Content-Length",
+              "POST / HTTP/1.1\r\nContent-Length: -5\r\n\r\n", -1, 400);
+        check("empty Content-Length",
+              "POST / HTTP/1.1\r\nContent-Length:\r\n\r\n", -1, 400);
+        check("conflicting Content-Length", "POST / HTTP/1.1\r\n"
+              + "Content-Length: 5\r\nContent-Length: 6\r\n\r\n", -1, 400);
+        check("chunk size without digits", "POST / HTTP/1.1\r\n"
+              + "Transfer-Encoding: chunked\r\n\r\nzz\r\n", -1, 400);
+
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All checks passed");
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Check the length of the first request of the specified bytes.
+     *
+     * @param name The name of the check
+     * @param bytes The bytes received
+     * @param expected The expected length
+     */
+    private static void check(String name, String bytes, int expected) {
+
+        check(name, bytes, expected, 0);
+
+    }
+
+
+    /**
+     * Check the length of the first request of the specified bytes, and
+     * the status of the error response to send for it.
+     *
+     * @param name The name of the check
+     * @param bytes The bytes received
+     * @param expected The expected length
+     * @param status The expected error status
+     */
+    private static void check(String name, String bytes, int expected,
+                              int status) {
+
+        NioConnection connection = connection(bytes);
+        check(name, connection, expected);
+        if (connection.getErrorStatus() != status) {
+            System.out.println(" " + name + ": FAILED, expected status "
+                               + status + " but was "
+                               + connection.getErrorStatus());
+            failures++;
+        }
+
+    }
+
+
+    /**
+     * Check the length of the first request held by the specified
+     * connection.
+     *
+     * @param name The name of the check
+     * @param connection The connection
+     * @param expected The expected length
+     */
+    private static void check(String name, NioConnection connection,
+                              int expected) {
+
+        int length = connection.requestLength();
+        if (length == expected) {
+            System.out.println(" " + name + ": OK");
+        } else {
+            System.out.println(" " + name + ": FAILED, expected " + expected
+                               + " but was " + length);
+            failures++;
+        }
+
+    }
+
+
+    /**
+     * Return a connection without channel which has received the
+     * specified bytes.
+     *
+     * @param bytes The bytes received
+     */
+    private static NioConnection connection(String bytes) {
+
+        NioConnection connection =
+            new NioConnection(null, 16, MAX_REQUEST_SIZE);
+        connection.append(ByteBuffer.wrap(bytes.getBytes()));
+        return (connection);
+
+    }
+
+
+}
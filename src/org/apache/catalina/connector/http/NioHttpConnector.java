@@ -0,0 +1,885 @@
+package org.apache.catalina.connector.http;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Logger;
+import org.apache.catalina.util.Queue;
+import org.apache.catalina.util.StringManager;
+
+
+/**
+ * Implementation of an HTTP/1.1 connector based on non blocking channels.
+ * A single poller thread accepts connections and reads request bytes from
+ * all the connections which are waiting for a request; only requests which
+ * have been completely received are handed to a worker thread for
+ * processing.  Idle keep-alive connections therefore do not tie up a
+ * thread, and the number of connections is no longer limited by the number
+ * of processors.  Likewise, the part of a response which the client is
+ * not ready to receive is kept pending, up to <code>maxPendingOutput</code>
+ * bytes, and written by the poller thread as the client reads it, so that
+ * slow clients do not tie up a worker thread either.
+ * <p>
+ * Request parsing and container invocation are performed by regular
+ * <code>HttpProcessor</code> instances (one per worker thread), so the
+ * request and response objects passed to the container are the same as
+ * with <code>HttpConnector</code>.  The <code>maxProcessors</code> property
+ * sets the number of worker threads.  Server socket factories are not
+ * supported by this connector, so it cannot be used for SSL.
+ *
+ * @deprecated
+ */
+
+public final class NioHttpConnector
+    extends HttpConnector {
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The connections which have to be (re)registered for read events by
+     * the poller thread.
+     */
+    private ArrayList additions = new ArrayList();
+
+
+    /**
+     * Descriptive information about this Connector implementation.
+     */
+    private static final String info =
+        "org.apache.catalina.connector.http.NioHttpConnector/1.0";
+
+
+    /**
+     * Has this component been initialized yet?
+     */
+    private boolean initialized = false;
+
+
+    /**
+     * The maximum size in bytes of a request (including its body) which
+     * will be buffered by this connector.
+     */
+    private int maxRequestSize = 2 * 1024 * 1024;
+
+
+    /**
+     * The maximum number of response bytes of a connection which are kept
+     * pending when the client is not ready to receive them.
+     */
+    private int maxPendingOutput = 256 * 1024;
+
+
+    /**
+     * The queue of connections holding a complete request, waiting for a
+     * worker thread.
+     */
+    private Queue queue = new Queue();
+
+
+    /**
+     * Response sent when the length of a request cannot be determined.
+     */
+    private static final byte[] BAD_REQUEST =
+        ("HTTP/1.1 400 Bad Request\r\n"
+         + "Connection: close\r\nContent-Length: 0\r\n\r\n").getBytes();
+
+
+    /**
+     * Response sent when a request exceeds the maximum request size.
+     */
+    private static final byte[] REQUEST_TOO_LARGE =
+        ("HTTP/1.1 413 Request Entity Too Large\r\n"
+         + "Connection: close\r\nContent-Length: 0\r\n\r\n").getBytes();
+
+
+    /**
+     * The element put in the queue to stop a worker thread.
+     */
+    private static final Object STOP = new Object();
+
+
+    /**
+     * Ack sent when the client expects a 100 Continue response.
+     */
+    private static final byte[] ACK =
+        ("HTTP/1.1 100 Continue\r\n\r\n").getBytes();
+
+
+    /**
+     * The selector used by the poller thread.
+     */
+    private Selector selector = null;
+
+
+    /**
+     * The server socket channel through which we listen for incoming TCP
+     * connections.
+     */
+    private ServerSocketChannel serverChannel = null;
+
+
+    /**
+     * The string manager for this package.
+     */
+    private StringManager sm =
+        StringManager.getManager(Constants.Package);
+
+
+    /**
+     * Has this component been started yet?
+     */
+    private boolean started = false;
+
+
+    /**
+     * The shutdown signal to our background threads.
+     */
+    private volatile boolean stopped = false;
+
+
+    /**
+     * The poller thread.
+     */
+    private Thread thread = null;
+
+
+    /**
+     * The name to register for the poller thread.
+     */
+    private String threadName = null;
+
+
+    /**
+     * The worker threads.
+     */
+    private Thread[] workers = new Thread[0];
+
+
+    // ------------------------------------------------------------- Properties
+
+
+    /**
+     * Return the current number of worker threads.
+     */
+    public int getCurProcessors() {
+
+        return (workers.length);
+
+    }
+
+
+    /**
+     * Return descriptive information about this Connector implementation.
+     */
+    public String getInfo() {
+
+        return (info);
+
+    }
+
+
+    /**
+     * Return the maximum number of response bytes of a connection which are
+     * kept pending when the client is not ready to receive them.
+     */
+    public int getMaxPendingOutput() {
+
+        return (this.maxPendingOutput);
+
+    }
+
+
+    /**
+     * Set the maximum number of response bytes of a connection which are
+     * kept pending when the client is not ready to receive them.  Once this
+     * limit is reached, the worker thread waits for the client.  A value of
+     * zero makes the worker thread always wait.
+     *
+     * @param maxPendingOutput The new maximum number of pending bytes
+     */
+    public void setMaxPendingOutput(int maxPendingOutput) {
+
+        this.maxPendingOutput = maxPendingOutput;
+
+    }
+
+
+    /**
+     * Return the maximum size of a request which will be buffered by this
+     * connector.
+     */
+    public int getMaxRequestSize() {
+
+        return (this.maxRequestSize);
+
+    }
+
+
+    /**
+     * Set the maximum size of a request which will be buffered by this
+     * connector.  Larger requests are rejected with a 413 status.
+     *
+     * @param maxRequestSize The new maximum request size
+     */
+    public void setMaxRequestSize(int maxRequestSize) {
+
+        this.maxRequestSize = maxRequestSize;
+
+    }
+
+
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Responses are written to non blocking channels by this connector, so
+     * direct buffers avoid copying them.
+     */
+    boolean isDirectBuffers() {
+
+        return (true);
+
+    }
+
+
+    /**
+     * Return <code>false</code>, since the connections of this connector
+     * are given back to the poller thread between requests.
+     */
+    boolean isHttp2Supported() {
+
+        return (false);
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Accept a pending connection, and register it for read events.
+     */
+    private void accept() {
+
+        SocketChannel channel = null;
+        try {
+            channel = serverChannel.accept();
+            if (channel == null)
+                return;
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(getTcpNoDelay());
+            NioConnection connection =
+                new NioConnection(channel, getBufferSize(), maxRequestSize);
+            connection.setKey
+                (channel.register(selector, SelectionKey.OP_READ,
+                                  connection));
+        } catch (IOException e) {
+            if (started && !stopped)
+                log("accept error: ", e);
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException f) {
+                    ;
+                }
+            }
+        }
+
+    }
+
+
+    /**
+     * Close the connections waiting for bytes for longer than allowed:
+     * <ul>
+     * <li>idle connections, for longer than the connection timeout before
+     *     the first request, and than the keep-alive timeout after;</li>
+     * <li>connections receiving request headers, for longer than the
+     *     header read timeout since the first byte of the request;</li>
+     * <li>connections receiving a request body, for longer than the body
+     *     read timeout since the last bytes received.</li>
+     * </ul>
+     */
+    private void closeIdleConnections() {
+
+        long now = System.currentTimeMillis();
+        int keepAliveTimeout = getKeepAliveTimeout();
+        int headerTimeout = getHeaderReadTimeout();
+        int bodyTimeout = getBodyReadTimeout();
+        Iterator keys = selector.keys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = (SelectionKey) keys.next();
+            if (!key.isValid() || (key.attachment() == null))
+                continue;
+            NioConnection connection = (NioConnection) key.attachment();
+            if (key.interestOps() == SelectionKey.OP_WRITE) {
+                // The client must keep reading the pending response
+                int writeTimeout = getConnectionTimeout();
+                if ((writeTimeout > 0)
+                    && (now - connection.getLastAccess() > writeTimeout))
+                    connection.close();
+                continue;
+            }
+            if (key.interestOps() != SelectionKey.OP_READ)
+                continue;
+            long since = connection.getLastAccess();
+            int timeout = bodyTimeout;
+            if (connection.getCount() == 0) {
+                timeout = (connection.getRequestCount() == 0)
+                    ? getConnectionTimeout() : keepAliveTimeout;
+            } else if (!connection.isHeaderComplete()) {
+                since = connection.getRequestStart();
+                timeout = headerTimeout;
+            }
+            if ((timeout > 0) && (now - since > timeout))
+                connection.close();
+        }
+
+    }
+
+
+    /**
+     * Create the output stream of a worker thread.
+     */
+    private ChannelOutputStream createOutput() {
+
+        ChannelOutputStream output =
+            new ChannelOutputStream(getConnectionTimeout());
+        output.setMaxPending(maxPendingOutput);
+        return (output);
+
+    }
+
+
+    /**
+     * Hand the specified connection to a worker thread if it holds a
+     * complete request, or wait for more bytes otherwise.  The pending
+     * response bytes of the connection, if any, are written first, and
+     * requests which cannot be framed or are too large are rejected with a
+     * 400 or 413 status.  This method is called by the poller thread only.
+     *
+     * @param connection The connection
+     * @param key The selection key of the connection
+     */
+    private void dispatch(NioConnection connection, SelectionKey key)
+        throws IOException {
+
+        // The pending response bytes must be written first
+        if (!connection.write()) {
+            key.interestOps(SelectionKey.OP_WRITE);
+            return;
+        }
+        if (connection.isCloseAfterWrite()) {
+            key.cancel();
+            connection.close();
+            return;
+        }
+
+        if (connection.requestLength() >= 0) {
+            key.interestOps(0);
+            queue.put(connection);
+        } else if (connection.getErrorStatus() == 400) {
+            key.cancel();
+            connection.getChannel().write(ByteBuffer.wrap(BAD_REQUEST));
+            connection.close();
+        } else if ((connection.getErrorStatus() == 413)
+                   || (connection.getCount() > maxRequestSize)) {
+            key.cancel();
+            connection.getChannel().write(ByteBuffer.wrap(REQUEST_TOO_LARGE));
+            connection.close();
+        } else {
+            if (connection.needsAck())
+                connection.getChannel().write(ByteBuffer.wrap(ACK));
+            key.interestOps(SelectionKey.OP_READ);
+        }
+
+    }
+
+
+    /**
+     * Log a message on the Logger associated with our Container (if any).
+     *
+     * @param message Message to be logged
+     */
+    private void log(String message) {
+
+        Logger logger = container.getLogger();
+        String localName = threadName;
+        if (localName == null)
+            localName = "NioHttpConnector";
+        if (logger != null)
+            logger.log(localName + " " + message);
+        else
+            System.out.println(localName + " " + message);
+
+    }
+
+
+    /**
+     * Log a message on the Logger associated with our Container (if any).
+     *
+     * @param message Message to be logged
+     * @param throwable Associated exception
+     */
+    private void log(String message, Throwable throwable) {
+
+        Logger logger = container.getLogger();
+        String localName = threadName;
+        if (localName == null)
+            localName = "NioHttpConnector";
+        if (logger != null)
+            logger.log(localName + " " + message, throwable);
+        else {
+            System.out.println(localName + " " + message);
+            throwable.printStackTrace(System.out);
+        }
+
+    }
+
+
+    /**
+     * Read the available bytes from the connection associated with the
+     * specified key.
+     *
+     * @param key The selection key
+     * @param bb The read buffer of the poller thread
+     */
+    private void read(SelectionKey key, ByteBuffer bb) {
+
+        NioConnection connection = (NioConnection) key.attachment();
+        try {
+            bb.clear();
+            int n = connection.getChannel().read(bb);
+            if (n < 0) {
+                connection.close();
+                return;
+            }
+            bb.flip();
+            connection.append(bb);
+            dispatch(connection, key);
+        } catch (IOException e) {
+            connection.close();
+        }
+
+    }
+
+
+    /**
+     * Return a connection to the poller after a request has been processed,
+     * so that it can wait for the next request.
+     *
+     * @param connection The connection
+     */
+    private void register(NioConnection connection) {
+
+        synchronized (additions) {
+            additions.add(connection);
+        }
+        selector.wakeup();
+
+    }
+
+
+    /**
+     * Register the connections returned by the worker threads.
+     */
+    private void registerAdditions() {
+
+        synchronized (additions) {
+            for (int i = 0; i < additions.size(); i++) {
+                NioConnection connection = (NioConnection) additions.get(i);
+                SelectionKey key = connection.getKey();
+                if (!key.isValid())
+                    continue;
+                try {
+                    dispatch(connection, key);
+                } catch (IOException e) {
+                    connection.close();
+                } catch (RuntimeException e) {
+                    log("dispatch error: ", e);
+                    key.cancel();
+                    connection.close();
+                }
+            }
+            additions.clear();
+        }
+
+    }
+
+
+    /**
+     * Set the continuation of the specified request, suspended while
+     * processing a request received on the specified connection: once the
+     * request is resumed, the connection is given back to the poller
+     * thread, as it is done by the worker threads after each request.
+     *
+     * @param suspension The suspended request
+     * @param connection The connection
+     * @param length The length of the suspended request
+     * @param output The output stream on which the response is written
+     * @param requestCount The number of requests processed on the
+     *  connection, including the suspended request
+     */
+    private void suspend(SuspendedRequest suspension,
+                         final NioConnection connection, final int length,
+                         final ChannelOutputStream output,
+                         final int requestCount) {
+
+        suspension.setContinuation(new SuspendedRequest.Continuation() {
+                void proceed(boolean keepAlive) {
+                    ByteBuffer[] pending = output.detachPending();
+                    output.setChannel(null);
+                    output.release();
+                    connection.setRequestCount(requestCount);
+                    boolean open =
+                        connection.getChannel().isOpen() && !stopped;
+                    if (keepAlive && open) {
+                        connection.consume(length);
+                        connection.access();
+                        connection.setPending(pending, false);
+                        register(connection);
+                    } else if ((pending != null) && open) {
+                        connection.setPending(pending, true);
+                        register(connection);
+                    } else {
+                        connection.close();
+                    }
+                }
+            });
+
+    }
+
+
+    /**
+     * Write the pending response bytes of the connection associated with
+     * the specified key, and go on with the next request once they have
+     * all been written.
+     *
+     * @param key The selection key
+     */
+    private void write(SelectionKey key) {
+
+        NioConnection connection = (NioConnection) key.attachment();
+        try {
+            dispatch(connection, key);
+        } catch (IOException e) {
+            connection.close();
+        }
+
+    }
+
+
+    /**
+     * Open the server socket channel of this connector, bound to the
+     * configured address and port.
+     *
+     * @exception LifecycleException if the channel cannot be opened
+     */
+    private void open() throws LifecycleException {
+
+        try {
+            serverChannel = ServerSocketChannel.open();
+            InetSocketAddress endpoint = null;
+            if (getAddress() == null) {
+                log(sm.getString("httpConnector.allAddresses"));
+                endpoint = new InetSocketAddress(getPort());
+            } else {
+                log(sm.getString("httpConnector.anAddress", getAddress()));
+                endpoint = new InetSocketAddress
+                    (InetAddress.getByName(getAddress()), getPort());
+            }
+            serverChannel.socket().bind(endpoint, getAcceptCount());
+            serverChannel.configureBlocking(false);
+        } catch (IOException e) {
+            log("httpConnector, io problem: ", e);
+            throw new LifecycleException(threadName + ".open", e);
+        }
+
+    }
+
+
+    // ---------------------------------------------- Background Thread Methods
+
+
+    /**
+     * The background thread that accepts incoming connections, reads
+     * request bytes and hands complete requests to the worker threads.
+     */
+    public void run() {
+
+        ByteBuffer bb = ByteBuffer.allocate(getBufferSize());
+        long lastCheck = System.currentTimeMillis();
+
+        while (!stopped) {
+            try {
+                selector.select(1000);
+            } catch (IOException e) {
+                log("select error: ", e);
+                continue;
+            }
+            if (stopped)
+                break;
+
+            registerAdditions();
+
+            Iterator keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = (SelectionKey) keys.next();
+                keys.remove();
+                if (!key.isValid())
+                    continue;
+                // A failure on one connection must not stop the poller
+                try {
+                    if (key.isAcceptable())
+                        accept();
+                    else if (key.isReadable())
+                        read(key, bb);
+                    else if (key.isWritable())
+                        write(key);
+                } catch (RuntimeException e) {
+                    log("dispatch error: ", e);
+                    key.cancel();
+                    if (key.attachment() != null)
+                        ((NioConnection) key.attachment()).close();
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            if (now - lastCheck >= 1000) {
+                closeIdleConnections();
+                lastCheck = now;
+            }
+        }
+
+        // Close all connections, and the server socket
+        Iterator keys = selector.keys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = (SelectionKey) keys.next();
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+                ;
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            ;
+        }
+
+    }
+
+
+    /**
+     * Process the requests handed over by the poller thread.  Requests
+     * pipelined by the client behind the one handed over, and which have
+     * already been fully received, are processed by the same worker, in
+     * order, before the connection is given back to the poller thread.
+     */
+    private class Worker implements Runnable {
+
+        private HttpProcessor processor = null;
+
+        private ChannelOutputStream output = null;
+
+        // The queue of the run which started this worker
+        private Queue requests = queue;
+
+        Worker(HttpProcessor processor) {
+            this.processor = processor;
+            this.output = createOutput();
+        }
+
+        public void run() {
+
+            while (!stopped) {
+                Object next = requests.pull();
+                if ((next == STOP) || stopped)
+                    break;
+                NioConnection connection = (NioConnection) next;
+                AdmissionController admission = getAdmissionController();
+                if (admission != null)
+                    admission.addQueueTime(System.currentTimeMillis()
+                                           - connection.getLastAccess());
+                SocketChannel channel = connection.getChannel();
+                Socket socket = channel.socket();
+                output.setChannel(channel);
+                processor.setRequestCount(connection.getRequestCount());
+                boolean keepAlive = false;
+                SuspendedRequest suspension = null;
+                int length = connection.requestLength();
+                while (length >= 0) {
+                    SocketInputStream input = new SocketInputStream
+                        (new ByteArrayInputStream(connection.getBuffer(), 0,
+                                                  length), getBufferSize());
+                    keepAlive = false;
+                    try {
+                        keepAlive = processor.service(socket, input, output);
+                    } catch (Throwable t) {
+                        log("process.invoke", t);
+                    }
+                    suspension = processor.detach();
+                    // Leave the rest of the response to the poller thread
+                    // if the client is not ready to receive it
+                    if ((suspension != null) || !keepAlive
+                        || !channel.isOpen() || stopped
+                        || !output.isWriteReady())
+                        break;
+                    connection.consume(length);
+                    connection.access();
+                    length = connection.requestLength();
+                }
+                if (suspension != null) {
+                    // The connection is given back to the poller thread
+                    // when the request is resumed
+                    suspend(suspension, connection, length, output,
+                            processor.getRequestCount());
+                    output = createOutput();
+                    continue;
+                }
+                ByteBuffer[] pending = output.detachPending();
+                output.setChannel(null);
+                connection.setRequestCount(processor.getRequestCount());
+                if (keepAlive && channel.isOpen() && !stopped) {
+                    if (length >= 0)
+                        connection.consume(length);
+                    connection.setPending(pending, false);
+                    register(connection);
+                } else if ((pending != null) && channel.isOpen()
+                           && !stopped) {
+                    // Write the rest of the response before closing
+                    connection.setPending(pending, true);
+                    register(connection);
+                } else {
+                    connection.close();
+                }
+            }
+            output.release();
+
+        }
+
+    }
+
+
+    // ------------------------------------------------------ Lifecycle Methods
+
+
+    /**
+     * Initialize this connector (create the server socket channel here!)
+     */
+    public void initialize()
+    throws LifecycleException {
+
+        if (initialized)
+            throw new LifecycleException (
+                sm.getString("httpConnector.alreadyInitialized"));
+        this.initialized = true;
+
+        open();
+
+    }
+
+
+    /**
+     * Begin processing requests via this Connector.
+     *
+     * @exception LifecycleException if a fatal startup error occurs
+     */
+    public void start() throws LifecycleException {
+
+        // Validate and update our current state
+        if (started)
+            throw new LifecycleException
+                (sm.getString("httpConnector.alreadyStarted"));
+        threadName = "NioHttpConnector[" + getPort() + "]";
+        lifecycle.fireLifecycleEvent(START_EVENT, null);
+        started = true;
+        stopped = false;
+        initAdmission();
+
+        // Reopen the server socket channel closed by a previous stop()
+        if (serverChannel == null)
+            open();
+
+        try {
+            selector = Selector.open();
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new LifecycleException(threadName + ".start", e);
+        }
+
+        // Start the worker threads, with the queue of a previous run dropped
+        queue = new Queue();
+        int count = getMaxProcessors();
+        if (count <= 0)
+            count = getMinProcessors();
+        workers = new Thread[count];
+        for (int i = 0; i < count; i++) {
+            Worker worker = new Worker(new HttpProcessor(this, i));
+            workers[i] = new Thread
+                (worker, "NioHttpProcessor[" + getPort() + "][" + i + "]");
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+
+        // Start the poller thread
+        log(sm.getString("httpConnector.starting"));
+        thread = new Thread(this, threadName);
+        thread.setDaemon(true);
+        thread.start();
+
+    }
+
+
+    /**
+     * Terminate processing requests via this Connector.
+     *
+     * @exception LifecycleException if a fatal shutdown error occurs
+     */
+    public void stop() throws LifecycleException {
+
+        // Validate and update our current state
+        if (!started)
+            throw new LifecycleException
+                (sm.getString("httpConnector.notStarted"));
+        lifecycle.fireLifecycleEvent(STOP_EVENT, null);
+        started = false;
+
+        log(sm.getString("httpConnector.stopping"));
+        stopped = true;
+        selector.wakeup();
+        for (int i = 0; i < workers.length; i++)
+            queue.put(STOP);
+        try {
+            thread.join(5000);
+            for (int i = 0; i < workers.length; i++)
+                workers[i].join(5000);
+        } catch (InterruptedException e) {
+            ;
+        }
+        thread = null;
+        workers = new Thread[0];
+
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            ;
+        }
+        serverChannel = null;
+
+    }
+
+
+}
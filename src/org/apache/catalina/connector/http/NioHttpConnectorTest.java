@@ -0,0 +1,172 @@
+package org.apache.catalina.connector.http;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.catalina.Request;
+import org.apache.catalina.Response;
+import org.apache.catalina.ValveContext;
+import org.apache.catalina.core.ContainerBase;
+import org.apache.catalina.valves.ValveBase;
+
+
+/**
+ * Checks of the lifecycle of <code>NioHttpConnector</code>: a connector
+ * which has been stopped must accept and serve requests again once it is
+ * restarted.  The connector listens on a free local port, in front of a
+ * container answering every request with a short text.
+ * <pre>
+ *   java org.apache.catalina.connector.http.NioHttpConnectorTest
+ * </pre>
+ *
+ * @deprecated
+ */
+
+public final class NioHttpConnectorTest {
+
+
+    // ----------------------------------------------------- Manifest Constants
+
+
+    /**
+     * The body of the responses of the container.
+     */
+    private static final String BODY = "Hello";
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The number of failed checks.
+     */
+    private static int failures = 0;
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    public static void main(String args[]) throws Exception {
+
+        ServerSocket probe = new ServerSocket(0);
+        int port = probe.getLocalPort();
+        probe.close();
+
+        NioHttpConnector connector = new NioHttpConnector();
+        connector.setPort(port);
+        connector.setAddress("127.0.0.1");
+        connector.setContainer(container());
+
+        System.out.println("Lifecycle");
+        connector.initialize();
+        connector.start();
+        check("request after start", port);
+        connector.stop();
+        connector.start();
+        check("request after restart", port);
+        connector.stop();
+
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All checks passed");
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Check that a request sent to the specified port is answered with
+     * the body of the container.
+     *
+     * @param name The name of the check
+     * @param port The port of the connector
+     */
+    private static void check(String name, int port) {
+
+        String response = null;
+        try {
+            response = request(port);
+        } catch (IOException e) {
+            response = e.toString();
+        }
+        if (response.startsWith("HTTP/1.1 200") && response.endsWith(BODY)) {
+            System.out.println(" " + name + ": OK");
+        } else {
+            System.out.println(" " + name + ": FAILED, response was "
+                               + response);
+            failures++;
+        }
+
+    }
+
+
+    /**
+     * Return a container answering every request with the body.
+     */
+    private static ContainerBase container() {
+
+        ContainerBase container = new ContainerBase() {
+                public String getInfo() {
+                    return ("NioHttpConnectorTest");
+                }
+            };
+        container.setName("test");
+        container.getPipeline().setBasic(new ValveBase() {
+                public void invoke(Request request, Response response,
+                                   ValveContext context)
+                    throws IOException, ServletException {
+                    HttpServletResponse hres =
+                        (HttpServletResponse) response.getResponse();
+                    hres.setContentType("text/plain");
+                    hres.setContentLength(BODY.length());
+                    PrintWriter writer = hres.getWriter();
+                    writer.print(BODY);
+                    writer.flush();
+                }
+            });
+        return (container);
+
+    }
+
+
+    /**
+     * Send a request to the specified port, and return the whole response.
+     *
+     * @param port The port of the connector
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    private static String request(int port) throws IOException {
+
+        Socket socket = new Socket("127.0.0.1", port);
+        try {
+            socket.setSoTimeout(5000);
+            OutputStream os = socket.getOutputStream();
+            os.write("GET / HTTP/1.0\r\n\r\n".getBytes());
+            os.flush();
+            InputStream is = socket.getInputStream();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte buffer[] = new byte[1024];
+            int n = 0;
+            while ((n = is.read(buffer)) > 0)
+                bytes.write(buffer, 0, n);
+            return (bytes.toString());
+        } finally {
+            socket.close();
+        }
+
+    }
+
+
+}
@@ -293,8 +293,7 @@ public class SocketInputStream extends InputStream {
         throws IOException {
 
         // Recycling check
-        if (header.nameEnd != 0)
-            header.recycle();
+        header.recycle();
 
         // Checking for a blank line
         int chr = read();
@@ -517,6 +516,30 @@ public class SocketInputStream extends InputStream {
     }
 
 
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Return the number of bytes already read from the underlying input
+     * stream which have not been consumed yet.
+     */
+    int buffered() {
+
+        return (count - pos);
+
+    }
+
+
+    /**
+     * Return the underlying input stream.
+     */
+    InputStream getInputStream() {
+
+        return (is);
+
+    }
+
+
     // ------------------------------------------------------ Protected Methods
 
 
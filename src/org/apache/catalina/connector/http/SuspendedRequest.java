@@ -0,0 +1,181 @@
+package org.apache.catalina.connector.http;
+
+
+import java.io.OutputStream;
+import java.net.Socket;
+
+
+/**
+ * A request which has been suspended by the application, and whose
+ * connection has been detached from the <code>HttpProcessor</code> which
+ * received it.  When the request is resumed, from any thread, the response
+ * is finished on that thread, and the connection is handed back to the
+ * component which processed it, through its <code>Continuation</code>, so
+ * that it can wait for the next request or be closed.
+ * <p>
+ * The request may be resumed before the <code>Continuation</code> is set,
+ * or even before the Container returns from <code>invoke()</code>: the
+ * response is only finished once both have happened.
+ *
+ * @deprecated
+ */
+
+final class SuspendedRequest {
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Construct a new suspended request.
+     *
+     * @param processor The processor which received the request
+     * @param request The request
+     * @param response The response
+     * @param socket The socket on which we are connected to the client
+     * @param output The output stream on which the response is written
+     * @param keepAlive Can the connection be kept alive after the response?
+     */
+    public SuspendedRequest(HttpProcessor processor, HttpRequestImpl request,
+                            HttpResponseImpl response, Socket socket,
+                            OutputStream output, boolean keepAlive) {
+
+        super();
+        this.processor = processor;
+        this.request = request;
+        this.response = response;
+        this.socket = socket;
+        this.output = output;
+        this.keepAlive = keepAlive;
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The continuation of the connection, once it has been set.
+     */
+    private Continuation continuation = null;
+
+
+    /**
+     * Can the connection be kept alive after the response?
+     */
+    private boolean keepAlive = false;
+
+
+    /**
+     * The output stream on which the response is written.
+     */
+    private OutputStream output = null;
+
+
+    /**
+     * The processor which received the request.
+     */
+    private HttpProcessor processor = null;
+
+
+    /**
+     * The request.
+     */
+    private HttpRequestImpl request = null;
+
+
+    /**
+     * The response.
+     */
+    private HttpResponseImpl response = null;
+
+
+    /**
+     * Has the request been resumed?
+     */
+    private boolean resumed = false;
+
+
+    /**
+     * The socket on which we are connected to the client.
+     */
+    private Socket socket = null;
+
+
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Record that the request has been resumed, and finish it if the
+     * continuation has been set already.
+     */
+    void resume() {
+
+        synchronized (this) {
+            resumed = true;
+            if (continuation == null)
+                return;
+        }
+        finish();
+
+    }
+
+
+    /**
+     * Set the continuation of the connection, and finish the request if it
+     * has been resumed already.
+     *
+     * @param continuation The continuation
+     */
+    void setContinuation(Continuation continuation) {
+
+        synchronized (this) {
+            this.continuation = continuation;
+            if (!resumed)
+                return;
+        }
+        finish();
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Finish the response, release the request and hand the connection to
+     * the continuation.
+     */
+    private void finish() {
+
+        boolean ok = processor.finish(request, response, socket, output);
+        if ("close".equals(response.getHeader("Connection")))
+            keepAlive = false;
+        request.recycle();
+        response.recycle();
+
+        continuation.proceed(ok && keepAlive);
+
+    }
+
+
+    // --------------------------------------------------------- Inner Classes
+
+
+    /**
+     * What to do with the connection of a suspended request once its
+     * response has been finished.
+     */
+    abstract static class Continuation {
+
+        /**
+         * Called by the thread which finished the response.
+         *
+         * @param keepAlive Can the connection be kept alive?
+         */
+        abstract void proceed(boolean keepAlive);
+
+    }
+
+
+}
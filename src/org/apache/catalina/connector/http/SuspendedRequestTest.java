@@ -0,0 +1,271 @@
+package org.apache.catalina.connector.http;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.catalina.Request;
+import org.apache.catalina.Response;
+import org.apache.catalina.ValveContext;
+import org.apache.catalina.core.ContainerBase;
+import org.apache.catalina.valves.ValveBase;
+
+
+/**
+ * Checks of the connections of suspended requests: once a request is
+ * resumed, the next requests received on its keep-alive connection must
+ * be answered, whether they were sent after its response, while it was
+ * suspended or pipelined along with it.  The connector listens on a free
+ * local port, in front of a container which suspends the requests to
+ * <code>/suspend</code> and resumes them from another thread, and answers
+ * the others right away.
+ * <pre>
+ *   java org.apache.catalina.connector.http.SuspendedRequestTest
+ * </pre>
+ *
+ * @deprecated
+ */
+
+public final class SuspendedRequestTest {
+
+
+    // ----------------------------------------------------- Manifest Constants
+
+
+    /**
+     * The delay after which suspended requests are resumed, in
+     * milliseconds.
+     */
+    private static final long DELAY = 100L;
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The number of failed checks.
+     */
+    private static int failures = 0;
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    public static void main(String args[]) throws Exception {
+
+        check(false);
+        check(true);
+
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All checks passed");
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Run the checks against a connector which parks idle keep-alive
+     * connections or not.
+     *
+     * @param pollKeepAlive Should idle connections be parked?
+     */
+    private static void check(boolean pollKeepAlive) throws Exception {
+
+        ServerSocket probe = new ServerSocket(0);
+        int port = probe.getLocalPort();
+        probe.close();
+
+        HttpConnector connector = new HttpConnector();
+        connector.setPort(port);
+        connector.setAddress("127.0.0.1");
+        connector.setPollKeepAlive(pollKeepAlive);
+        connector.setContainer(container());
+        connector.initialize();
+        connector.start();
+
+        System.out.println("Keep-alive connections "
+                           + (pollKeepAlive ? "parked" : "not parked"));
+        Socket socket = new Socket("127.0.0.1", port);
+        try {
+            socket.setSoTimeout(5000);
+            OutputStream os = socket.getOutputStream();
+            InputStream is = socket.getInputStream();
+            os.write(request("/suspend"));
+            check("resumed request", is, "/suspend");
+            os.write(request("/next"));
+            check("keep-alive after resume", is, "/next");
+            os.write(request("/suspend"));
+            os.write(request("/pipelined"));
+            check("resumed request", is, "/suspend");
+            check("pipelined after resume", is, "/pipelined");
+            os.write(request("/suspend"));
+            Thread.sleep(DELAY / 2);
+            os.write(request("/waiting"));
+            check("resumed request", is, "/suspend");
+            check("sent while suspended", is, "/waiting");
+        } catch (IOException e) {
+            System.out.println(" FAILED, " + e);
+            failures++;
+        } finally {
+            socket.close();
+        }
+        connector.stop();
+
+    }
+
+
+    /**
+     * Check that the next response read from the specified stream is a
+     * successful one with the specified body.
+     *
+     * @param name The name of the check
+     * @param is The input stream of the connection
+     * @param body The expected body
+     */
+    private static void check(String name, InputStream is, String body) {
+
+        String response = null;
+        try {
+            response = response(is);
+        } catch (IOException e) {
+            response = e.toString();
+        }
+        if (response.startsWith("HTTP/1.1 200") && response.endsWith(body)) {
+            System.out.println(" " + name + ": OK");
+        } else {
+            System.out.println(" " + name + ": FAILED, response was "
+                               + response);
+            failures++;
+        }
+
+    }
+
+
+    /**
+     * Return a container answering each request with its URI, after having
+     * suspended it for the requests to <code>/suspend</code>.
+     */
+    private static ContainerBase container() {
+
+        ContainerBase container = new ContainerBase() {
+                public String getInfo() {
+                    return ("SuspendedRequestTest");
+                }
+            };
+        container.setName("test");
+        container.getPipeline().setBasic(new ValveBase() {
+                public void invoke(final Request request,
+                                   final Response response,
+                                   ValveContext context)
+                    throws IOException, ServletException {
+                    String uri = ((HttpServletRequest)
+                                  request.getRequest()).getRequestURI();
+                    if (!"/suspend".equals(uri)) {
+                        write(response, uri);
+                        return;
+                    }
+                    request.suspend();
+                    new Thread() {
+                        public void run() {
+                            try {
+                                Thread.sleep(DELAY);
+                                write(response, "/suspend");
+                            } catch (Exception e) {
+                                ;
+                            }
+                            request.resume();
+                        }
+                    }.start();
+                }
+            });
+        return (container);
+
+    }
+
+
+    /**
+     * Return the bytes of a keep-alive request to the specified URI.
+     *
+     * @param uri The request URI
+     */
+    private static byte[] request(String uri) {
+
+        return (("GET " + uri + " HTTP/1.1\r\nHost: localhost\r\n\r\n")
+                .getBytes());
+
+    }
+
+
+    /**
+     * Read the next response from the specified stream, whose body must
+     * have a content length, and return it.
+     *
+     * @param is The input stream of the connection
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    private static String response(InputStream is) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        String headers = null;
+        while (headers == null) {
+            int b = is.read();
+            if (b < 0)
+                throw new IOException("Connection closed after "
+                                      + bytes.toString());
+            bytes.write(b);
+            if (bytes.toString().endsWith("\r\n\r\n"))
+                headers = bytes.toString();
+        }
+        int length = 0;
+        int start = headers.toLowerCase().indexOf("content-length:");
+        if (start >= 0) {
+            int end = headers.indexOf("\r\n", start);
+            length = Integer.parseInt
+                (headers.substring(start + 15, end).trim());
+        }
+        for (int i = 0; i < length; i++) {
+            int b = is.read();
+            if (b < 0)
+                throw new IOException("Connection closed after "
+                                      + bytes.toString());
+            bytes.write(b);
+        }
+        return (bytes.toString());
+
+    }
+
+
+    /**
+     * Write the specified body as the content of the specified response.
+     *
+     * @param response The response
+     * @param body The body
+     */
+    private static void write(Response response, String body)
+        throws IOException {
+
+        HttpServletResponse hres =
+            (HttpServletResponse) response.getResponse();
+        hres.setContentType("text/plain");
+        hres.setContentLength(body.length());
+        PrintWriter writer = hres.getWriter();
+        writer.print(body);
+        writer.flush();
+
+    }
+
+
+}
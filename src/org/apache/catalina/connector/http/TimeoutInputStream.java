@@ -0,0 +1,284 @@
+package org.apache.catalina.connector.http;
+
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+
+/**
+ * Input stream of a connection processed by an <code>HttpProcessor</code>,
+ * enforcing the timeouts of the connector with its timing wheel.  The
+ * timeout applied depends on what the processor is waiting for:
+ * <ul>
+ * <li>while the connection is idle, the whole wait for the next request
+ *     is limited by the keep-alive timeout (or by the connection timeout
+ *     for the first request);</li>
+ * <li>from the first byte of a request, the whole request line and
+ *     headers must be received before the header read timeout;</li>
+ * <li>while the request body is read, each read must return before the
+ *     body read timeout, so that slow uploads are not cut off as long as
+ *     they make progress.</li>
+ * </ul>
+ * The body read timeout is not cancelled between reads, so that each read
+ * only has to push its deadline back, which the timing wheel does without
+ * locking.  It is paused instead: if it expires while the processor is not
+ * reading, the connection is left open.
+ * When a timeout expires, the socket is closed, and the pending read
+ * throws a <code>SocketTimeoutException</code>.
+ *
+ * @deprecated
+ */
+
+final class TimeoutInputStream
+    extends FilterInputStream {
+
+
+    // ----------------------------------------------------- Manifest Constants
+
+
+    /**
+     * No timeout is enforced.
+     */
+    private static final int NONE = 0;
+
+
+    /**
+     * Waiting for the next request.
+     */
+    private static final int IDLE = 1;
+
+
+    /**
+     * Reading the request line and headers.
+     */
+    private static final int HEADERS = 2;
+
+
+    /**
+     * Reading the request body.
+     */
+    private static final int BODY = 3;
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Construct a new input stream for the specified socket.
+     *
+     * @param wheel The timing wheel of the connector
+     * @param socket The socket
+     * @param headerTimeout The header read timeout, in milliseconds
+     */
+    public TimeoutInputStream(TimingWheel wheel, Socket socket,
+                              int headerTimeout) throws IOException {
+
+        super(socket.getInputStream());
+        this.wheel = wheel;
+        this.socket = socket;
+        this.headerTimeout = headerTimeout;
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The body read timeout, in milliseconds.
+     */
+    private int bodyTimeout = 0;
+
+
+    /**
+     * Has the timeout expired?
+     */
+    private volatile boolean expired = false;
+
+
+    /**
+     * The value of <code>System.nanoTime()</code> when the first byte of
+     * the last request was received while waiting for it.
+     */
+    private long firstByte = 0L;
+
+
+    /**
+     * The header read timeout, in milliseconds.
+     */
+    private int headerTimeout = 0;
+
+
+    /**
+     * Is the body read timeout paused, because the processor is not
+     * reading the body?
+     */
+    private volatile boolean paused = false;
+
+
+    /**
+     * What the processor is waiting for.
+     */
+    private int phase = NONE;
+
+
+    /**
+     * Buffer used to read a single byte.
+     */
+    private byte[] single = new byte[1];
+
+
+    /**
+     * The socket.
+     */
+    private Socket socket = null;
+
+
+    /**
+     * The timeout of this connection.
+     */
+    private TimingWheel.Timeout timeout = new TimingWheel.Timeout() {
+            void expire() {
+                if (paused)
+                    return;
+                expired = true;
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    ;
+                }
+            }
+        };
+
+
+    /**
+     * The timing wheel of the connector.
+     */
+    private TimingWheel wheel = null;
+
+
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Return the value of <code>System.nanoTime()</code> when the first
+     * byte of the last request was received while waiting for it.  This is
+     * not updated for pipelined requests which were already buffered.
+     */
+    long getFirstByte() {
+
+        return (this.firstByte);
+
+    }
+
+
+    /**
+     * Start reading the body of the current request.
+     *
+     * @param bodyTimeout The timeout of each read, in milliseconds
+     */
+    void body(int bodyTimeout) {
+
+        this.bodyTimeout = bodyTimeout;
+        paused = true;
+        phase = BODY;
+
+    }
+
+
+    /**
+     * Start waiting for the next request.
+     *
+     * @param idleTimeout The timeout of the whole wait, in milliseconds
+     */
+    void idle(int idleTimeout) {
+
+        phase = IDLE;
+        paused = false;
+        arm(idleTimeout);
+
+    }
+
+
+    /**
+     * Stop enforcing timeouts, for example because the connection is
+     * handed over to another component.
+     */
+    void stop() {
+
+        phase = NONE;
+        paused = false;
+        wheel.cancel(timeout);
+
+    }
+
+
+    // --------------------------------------------------- InputStream Methods
+
+
+    /**
+     * Read the next byte.
+     */
+    public int read() throws IOException {
+
+        int n = read(single, 0, 1);
+        if (n <= 0)
+            return (-1);
+        return (single[0] & 0xff);
+
+    }
+
+
+    /**
+     * Read bytes into the specified array.
+     */
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        int n = -1;
+        if (phase == BODY) {
+            arm(bodyTimeout);
+            paused = false;
+        }
+        try {
+            n = in.read(b, off, len);
+        } catch (IOException e) {
+            if (expired)
+                throw new SocketTimeoutException(e.getMessage());
+            throw e;
+        } finally {
+            if (phase == BODY)
+                paused = true;
+        }
+        if ((phase == IDLE) && (n > 0)) {
+            // The next request has started
+            firstByte = System.nanoTime();
+            phase = HEADERS;
+            arm(headerTimeout);
+        }
+        return (n);
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Schedule the timeout of this connection, or cancel it if the
+     * specified delay is not positive.
+     *
+     * @param delay The delay, in milliseconds
+     */
+    private void arm(int delay) {
+
+        if (delay > 0)
+            wheel.schedule(timeout, delay);
+        else
+            wheel.cancel(timeout);
+
+    }
+
+
+}
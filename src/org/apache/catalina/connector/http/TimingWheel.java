@@ -0,0 +1,330 @@
+package org.apache.catalina.connector.http;
+
+
+import java.util.ArrayList;
+
+
+/**
+ * Hashed timing wheel enforcing the timeouts of all the connections of an
+ * <code>HttpConnector</code> with a single background thread.  Timeouts
+ * are kept in a circular array of buckets, one per tick; every tick, the
+ * background thread expires the timeouts of the current bucket whose
+ * deadline has passed.  Scheduling or cancelling a timeout takes constant
+ * time, whatever the number of connections.
+ * <p>
+ * Pushing the deadline of a scheduled timeout further does not move it to
+ * another bucket: the new deadline is only checked when the bucket is
+ * expired, and the timeout is then moved to the bucket of its new
+ * deadline.  This keeps the cost of arming a timeout before each read to
+ * a single field update in most cases.
+ *
+ * @deprecated
+ */
+
+final class TimingWheel
+    implements Runnable {
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Construct a new timing wheel.
+     *
+     * @param name The name of the background thread
+     * @param tick The duration of a tick, in milliseconds
+     * @param size The number of buckets of the wheel
+     */
+    public TimingWheel(String name, long tick, int size) {
+
+        super();
+        this.threadName = name;
+        this.tick = tick;
+        this.buckets = new Timeout[size];
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The head of the list of the timeouts of each bucket.
+     */
+    private Timeout[] buckets = null;
+
+
+    /**
+     * The shutdown signal to our background thread.
+     */
+    private volatile boolean stopped = false;
+
+
+    /**
+     * The background thread.
+     */
+    private Thread thread = null;
+
+
+    /**
+     * The name to register for the background thread.
+     */
+    private String threadName = null;
+
+
+    /**
+     * The duration of a tick, in milliseconds.
+     */
+    private long tick = 0L;
+
+
+    /**
+     * The last tick which has been expired.
+     */
+    private long lastTick = 0L;
+
+
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Cancel the specified timeout.
+     *
+     * @param timeout The timeout to cancel
+     */
+    void cancel(Timeout timeout) {
+
+        timeout.deadline = 0L;
+
+    }
+
+
+    /**
+     * Schedule the specified timeout to expire after the specified delay,
+     * replacing its previous deadline, if any.
+     *
+     * @param timeout The timeout to schedule
+     * @param delay The delay, in milliseconds
+     */
+    void schedule(Timeout timeout, long delay) {
+
+        long deadline = System.currentTimeMillis() + delay;
+        long previous = timeout.deadline;
+        timeout.deadline = deadline;
+        // The timeout is still in the bucket of its previous deadline,
+        // where the new one will be noticed
+        if ((previous != 0L) && (previous <= deadline))
+            return;
+        synchronized (this) {
+            if ((timeout.bucket >= 0) && (timeout.expiry <= deadline))
+                return;
+            unlink(timeout);
+            link(timeout, deadline);
+        }
+
+    }
+
+
+    /**
+     * Start the background thread.
+     */
+    void start() {
+
+        stopped = false;
+        lastTick = System.currentTimeMillis() / tick;
+        thread = new Thread(this, threadName);
+        thread.setDaemon(true);
+        thread.start();
+
+    }
+
+
+    /**
+     * Stop the background thread.  The timeouts which are still scheduled
+     * will not expire.
+     */
+    void stop() {
+
+        stopped = true;
+        thread.interrupt();
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            ;
+        }
+        thread = null;
+        synchronized (this) {
+            for (int i = 0; i < buckets.length; i++) {
+                while (buckets[i] != null) {
+                    buckets[i].deadline = 0L;
+                    unlink(buckets[i]);
+                }
+            }
+        }
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Expire the timeouts of the specified tick whose deadline has passed,
+     * and move the other ones to the bucket of their deadline.
+     *
+     * @param current The tick
+     * @param now The current time
+     * @param expired The list to which expired timeouts are added
+     */
+    private void expire(long current, long now, ArrayList expired) {
+
+        int index = (int) (current % buckets.length);
+        Timeout timeout = buckets[index];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.expiry <= now) {
+                long deadline = timeout.deadline;
+                unlink(timeout);
+                // Cancelled timeouts are simply dropped
+                if (deadline > now) {
+                    link(timeout, deadline);
+                } else if (deadline != 0L) {
+                    timeout.deadline = 0L;
+                    expired.add(timeout);
+                }
+            }
+            timeout = next;
+        }
+
+    }
+
+
+    /**
+     * Add the specified timeout, which is not scheduled, to the bucket of
+     * the specified deadline.
+     */
+    private void link(Timeout timeout, long deadline) {
+
+        // Round up, so that the timeout never expires early, and never
+        // use a bucket which has already been expired during this round
+        long expiryTick = Math.max((deadline + tick - 1) / tick,
+                                   lastTick + 1);
+        int index = (int) (expiryTick % buckets.length);
+        timeout.expiry = expiryTick * tick;
+        timeout.bucket = index;
+        timeout.prev = null;
+        timeout.next = buckets[index];
+        if (timeout.next != null)
+            timeout.next.prev = timeout;
+        buckets[index] = timeout;
+
+    }
+
+
+    /**
+     * Remove the specified timeout from its bucket, if it is scheduled.
+     */
+    private void unlink(Timeout timeout) {
+
+        if (timeout.bucket < 0)
+            return;
+        if (timeout.prev != null)
+            timeout.prev.next = timeout.next;
+        else
+            buckets[timeout.bucket] = timeout.next;
+        if (timeout.next != null)
+            timeout.next.prev = timeout.prev;
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+
+    }
+
+
+    // ---------------------------------------------- Background Thread Methods
+
+
+    /**
+     * The background thread that expires the timeouts at each tick.
+     */
+    public void run() {
+
+        ArrayList expired = new ArrayList();
+
+        while (!stopped) {
+
+            try {
+                Thread.sleep(tick);
+            } catch (InterruptedException e) {
+                continue;
+            }
+
+            long now = System.currentTimeMillis();
+            long current = now / tick;
+            synchronized (this) {
+                // Catch up with the ticks missed, but never go around the
+                // wheel more than once
+                long first = Math.max(lastTick + 1,
+                                      current - buckets.length + 1);
+                for (long t = first; t <= current; t++)
+                    expire(t, now, expired);
+                lastTick = current;
+            }
+
+            // Expire outside of the lock, as this may take some time
+            for (int i = 0; i < expired.size(); i++) {
+                try {
+                    ((Timeout) expired.get(i)).expire();
+                } catch (Throwable t) {
+                    ;
+                }
+            }
+            expired.clear();
+
+        }
+
+    }
+
+
+    // --------------------------------------------------------- Inner Classes
+
+
+    /**
+     * A timeout which can be scheduled on a timing wheel.
+     */
+    abstract static class Timeout {
+
+        /**
+         * The deadline of this timeout, or zero if it is cancelled.
+         */
+        volatile long deadline = 0L;
+
+        /**
+         * The time at which the bucket of this timeout expires, guarded
+         * by the wheel.
+         */
+        long expiry = 0L;
+
+        /**
+         * The index of the bucket of this timeout, or -1 if it is not
+         * scheduled, guarded by the wheel.
+         */
+        int bucket = -1;
+
+        /**
+         * The neighbours of this timeout in its bucket, guarded by the
+         * wheel.
+         */
+        Timeout prev = null;
+        Timeout next = null;
+
+        /**
+         * Called by the background thread of the wheel when the deadline
+         * of this timeout has passed.
+         */
+        abstract void expire();
+
+    }
+
+
+}
@@ -90,6 +90,7 @@ import org.apache.catalina.net.DefaultServerSocketFactory;
 import org.apache.catalina.net.ServerSocketFactory;
 import org.apache.catalina.util.LifecycleSupport;
 import org.apache.catalina.util.StringManager;
+import org.apache.catalina.util.VirtualThreads;
 
 
 /**
@@ -302,6 +303,13 @@ public final class HttpConnector
     private Object threadSync = new Object();
 
 
+    /**
+     * Should each connection be processed on a thread of its own, rather
+     * than by a pooled processor ?
+     */
+    private boolean virtualThreads = false;
+
+
     // ------------------------------------------------------------- Properties
 
 
@@ -722,6 +730,33 @@ public final class HttpConnector
     }
 
 
+    /**
+     * Return the "thread per connection" flag.
+     */
+    public boolean getVirtualThreads() {
+
+        return (this.virtualThreads);
+
+    }
+
+
+    /**
+     * Set the "thread per connection" flag.  When set, each accepted
+     * connection is processed on a new thread instead of being assigned
+     * to a pooled processor, and the <code>minProcessors</code> and
+     * <code>maxProcessors</code> limits do not apply.  The new threads are
+     * virtual threads when the JVM supports them, and daemon platform
+     * threads otherwise.
+     *
+     * @param virtualThreads The new flag value
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+
+        this.virtualThreads = virtualThreads;
+
+    }
+
+
     // --------------------------------------------------------- Public Methods
 
 
@@ -761,7 +796,9 @@ public final class HttpConnector
      */
     void recycle(HttpProcessor processor) {
 
-        processors.push(processor);
+        synchronized (processors) {
+            processors.push(processor);
+        }
 
     }
 
@@ -933,6 +970,13 @@ public final class HttpConnector
                 break;
             }
 
+            // Hand this socket off to a thread of its own, if requested
+            if (virtualThreads) {
+                VirtualThreads.start(new SocketProcessor(socket),
+                                     threadName + "-connection");
+                continue;
+            }
+
             // Hand this socket off to an appropriate processor
             HttpProcessor processor = createProcessor();
             if (processor == null) {
@@ -1089,7 +1133,7 @@ public final class HttpConnector
         threadStart();
 
         // Create the specified minimum number of processors
-        while (curProcessors < minProcessors) {
+        while (!virtualThreads && (curProcessors < minProcessors)) {
             if ((maxProcessors > 0) && (curProcessors >= maxProcessors))
                 break;
             HttpProcessor processor = newProcessor();
@@ -1141,4 +1185,45 @@ public final class HttpConnector
     }
 
 
+
+    // --------------------------------------------------------- Inner Classes
+
+
+    /**
+     * Task processing a socket on a thread dedicated to this connection,
+     * using a processor borrowed from our pool.  Processors used this way
+     * do not have a background thread of their own.
+     */
+    private class SocketProcessor implements Runnable {
+
+        private Socket socket = null;
+
+        public SocketProcessor(Socket socket) {
+            this.socket = socket;
+        }
+
+        public void run() {
+
+            HttpProcessor processor = null;
+            synchronized (processors) {
+                if (processors.size() > 0)
+                    processor = (HttpProcessor) processors.pop();
+                else
+                    processor = new HttpProcessor(HttpConnector.this,
+                                                  curProcessors++);
+            }
+            try {
+                processor.service(socket);
+            } catch (Throwable t) {
+                log("process.invoke", t);
+            }
+            synchronized (processors) {
+                processors.push(processor);
+            }
+
+        }
+
+    }
+
+
 }
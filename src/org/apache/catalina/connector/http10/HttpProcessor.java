@@ -629,6 +629,23 @@ final class HttpProcessor
     }
 
 
+    /**
+     * Process an incoming HTTP request on the specified socket, and recycle
+     * our request and response objects.  This is used directly by the
+     * connector when the processor runs on a thread other than its own
+     * background thread.
+     *
+     * @param socket The socket on which we are connected to the client
+     */
+    void service(Socket socket) {
+
+        process(socket);
+        request.recycle();
+        response.recycle();
+
+    }
+
+
     /**
      * Process an incoming HTTP request on the Socket that has been assigned
      * to this Processor.  Any exceptions that occur during processing must be
@@ -801,11 +818,9 @@ final class HttpProcessor
                 continue;
 
             // Process the request from this socket
-            process(socket);
+            service(socket);
 
             // Finish up this request
-            request.recycle();
-            response.recycle();
             connector.recycle(this);
 
         }
@@ -0,0 +1,151 @@
+package org.apache.catalina.core;
+
+
+import java.util.HashMap;
+import java.util.Iterator;
+import org.apache.catalina.Container;
+import org.apache.catalina.Context;
+
+
+/**
+ * Immutable index of the Contexts of a <code>StandardHost</code> by
+ * context path, used to select the Context of a request URI without
+ * locking and without creating any String.  The context paths are kept in
+ * a trie of path segments, so that the longest context path matching a
+ * request URI is found in a single walk over its segments.
+ * <p>
+ * Only context paths which are empty or start with a slash are indexed,
+ * as only they can match a request URI starting with a slash.
+ */
+
+final class ContextMappings {
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Index the specified Contexts.
+     *
+     * @param contexts The children of the host
+     */
+    public ContextMappings(Container contexts[]) {
+
+        super();
+        Node root = new Node();
+        for (int i = 0; i < contexts.length; i++) {
+            String path = contexts[i].getName();
+            if (path.length() == 0)
+                root.context = (Context) contexts[i];
+            else if (path.startsWith("/"))
+                root.add(path, 1).context = (Context) contexts[i];
+        }
+        root.freeze();
+        this.root = root;
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The root of the trie, for the empty context path.
+     */
+    private final Node root;
+
+
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Return the Context whose path is the longest prefix of the specified
+     * URI ending at a slash or at the end of the URI, or <code>null</code>
+     * if there is none.
+     *
+     * @param uri The request URI, which must start with a slash
+     */
+    Context map(String uri) {
+
+        Context context = root.context;
+        Node node = root;
+        int end = uri.length();
+        int from = 1;
+        while (true) {
+            int slash = uri.indexOf('/', from);
+            int to = (slash < 0) ? end : slash;
+            node = (Node) node.children.get(uri, from, to);
+            if (node == null)
+                break;
+            if (node.context != null)
+                context = node.context;
+            if (to == end)
+                break;
+            from = to + 1;
+        }
+        return (context);
+
+    }
+
+
+    // --------------------------------------------------------- Inner Classes
+
+
+    /**
+     * A node of the trie, matching the path made of the segments leading
+     * to it.
+     */
+    private static final class Node {
+
+        /**
+         * The children of this node, keyed by segment, while the trie is
+         * being built.
+         */
+        private HashMap building = new HashMap();
+
+        /**
+         * The children of this node, keyed by segment.
+         */
+        private RangeTable children = null;
+
+        /**
+         * The Context whose path is the path of this node, if any.
+         */
+        Context context = null;
+
+        /**
+         * Return the node of the specified path, relative to this node,
+         * adding the missing nodes.
+         *
+         * @param path The path, whose segments start after each slash
+         * @param from The index of the first segment in the path
+         */
+        Node add(String path, int from) {
+            int slash = path.indexOf('/', from);
+            int to = (slash < 0) ? path.length() : slash;
+            String segment = path.substring(from, to);
+            Node child = (Node) building.get(segment);
+            if (child == null) {
+                child = new Node();
+                building.put(segment, child);
+            }
+            if (slash < 0)
+                return (child);
+            return (child.add(path, slash + 1));
+        }
+
+        /**
+         * Make this node and its descendants read-only.
+         */
+        void freeze() {
+            Iterator values = building.values().iterator();
+            while (values.hasNext())
+                ((Node) values.next()).freeze();
+            children = new RangeTable(building);
+            building = null;
+        }
+
+    }
+
+
+}
@@ -68,6 +68,7 @@ package org.apache.catalina.core;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import org.apache.catalina.Container;
 import org.apache.catalina.ContainerEvent;
@@ -88,6 +89,12 @@ import org.apache.catalina.util.StringManager;
  * designed to process HTTP requests.  This mapper selects an appropriate
  * <code>Host</code> based on the server name included in the request.
  * <p>
+ * The host names and aliases are looked up in an immutable
+ * <code>HostMappings</code> snapshot, replaced as a whole whenever a host,
+ * an alias or the default host changes, so that requests never lock nor
+ * see a partial update.  Names starting with <code>"*."</code> are
+ * wildcards matching any single label.
+ * <p>
  * <b>IMPLEMENTATION NOTE</b>:  This Mapper only works with a
  * <code>StandardEngine</code>, because it relies on internal APIs.
  *
@@ -103,17 +110,36 @@ public final class FastEngineMapper
 
 
     /**
-     * Cache of hostname -> Host mappings.  FIXME - use FastHashMap.
+     * The current snapshot of our host names, read without locking.
+     */
+    private volatile HostMappings mappings =
+        new HostMappings(new HashMap(), null);
+
+
+    /**
+     * The Hosts, keyed by lower case name or alias, from which snapshots
+     * are made.  Only accessed while holding <code>lock</code>.
      */
-    private java.util.HashMap cache = new java.util.HashMap();
+    private HashMap names = new HashMap();
 
 
     /**
-     * The default host used for unknown host names.
+     * The default host used for unknown host names.  Only accessed while
+     * holding <code>lock</code>.
      */
     private Host defaultHost = null;
 
 
+    /**
+     * The lock guarding our host names and the publication of their
+     * snapshots.  The engine notifies us while holding the lock of its
+     * children, so no method of the engine or of its hosts is called while
+     * holding this lock, and it is distinct from the lock of this mapper,
+     * which is held by <code>start()</code> and <code>stop()</code>.
+     */
+    private final Object lock = new Object();
+
+
     /**
      * The debugging detail level for this component.
      */
@@ -231,17 +257,17 @@ public final class FastEngineMapper
         if (debug >= 1)
             engine.log("Mapping server name '" + server + "'");
 
-        // Find the specified host in our cache
+        // Find the specified host in our snapshot
         if (debug >= 2)
-            engine.log(" Trying a cache match");
-        Host host = (Host) cache.get(server);
+            engine.log(" Trying a name match");
+        HostMappings mappings = this.mappings;
+        Host host = mappings.map(server);
 
         // Map to the default host if any
-        if ((host == null) && (defaultHost != null)) {
+        if (host == null) {
             if (debug >= 2)
                 engine.log(" Mapping to default host");
-            host = defaultHost;
-            addAlias(server, host);
+            host = mappings.getDefaultHost();
         }
 
         // Update the Request if requested, and return the selected Host
@@ -371,8 +397,11 @@ public final class FastEngineMapper
         setDefaultHost(null);
         engine.removeContainerListener(this);
 
-        // Clear our mapping cache
-        cache.clear();
+        // Clear our host names
+        synchronized (lock) {
+            names.clear();
+            publish();
+        }
 
     }
 
@@ -408,7 +437,10 @@ public final class FastEngineMapper
         if (debug >= 3)
             engine.log("Adding alias '" + alias + "' for host '" +
                        host.getName() + "'");
-        cache.put(alias.toLowerCase(), host);
+        synchronized (lock) {
+            names.put(alias.toLowerCase(), host);
+            publish();
+        }
 
     }
 
@@ -424,33 +456,31 @@ public final class FastEngineMapper
             engine.log("Adding host '" + host.getName() + "'");
 
         host.addContainerListener(this);
-
-        // Register the host name
-        addAlias(host.getName(), host);
-
-        // Register all associated aliases
+        String hostName = host.getName();
         String aliases[] = host.findAliases();
-        for (int i = 0; i < aliases.length; i++)
-            addAlias(aliases[i], host);
+        String name = engine.getDefaultHost();
 
-    }
+        synchronized (lock) {
 
+            // Register the host name
+            names.put(hostName.toLowerCase(), host);
 
-    /**
-     * Return the Host that matches the specified name (or alias), if any;
-     * otherwise, return <code>null</code>.
-     *
-     * @param name Name or alias of the desired Host
-     */
-    private Host findHost(String name) {
+            // Register all associated aliases
+            for (int i = 0; i < aliases.length; i++)
+                names.put(aliases[i].toLowerCase(), host);
 
-        return ((Host) cache.get(name.toLowerCase()));
+            // The default host may have been added after it was set
+            if ((defaultHost == null) && hostName.equalsIgnoreCase(name))
+                defaultHost = host;
+            publish();
+
+        }
 
     }
 
 
     /**
-     * Remove the specified alias from our cache.
+     * Remove the specified alias from our host names.
      *
      * @param alias Alias to remove
      */
@@ -458,7 +488,10 @@ public final class FastEngineMapper
 
         if (debug >= 3)
             engine.log("Removing alias '" + alias + "'");
-        cache.remove(alias.toLowerCase());
+        synchronized (lock) {
+            names.remove(alias.toLowerCase());
+            publish();
+        }
 
     }
 
@@ -475,19 +508,26 @@ public final class FastEngineMapper
 
         host.removeContainerListener(this);
 
-        // Identify all names mapped to this host
-        ArrayList removes = new ArrayList();
-        Iterator keys = cache.keySet().iterator();
-        while (keys.hasNext()) {
-            String key = (String) keys.next();
-            if (host.equals((Host) cache.get(key)))
-                removes.add(key);
-        }
+        synchronized (lock) {
+
+            // Identify all names mapped to this host
+            ArrayList removes = new ArrayList();
+            Iterator keys = names.keySet().iterator();
+            while (keys.hasNext()) {
+                String key = (String) keys.next();
+                if (host == names.get(key))
+                    removes.add(key);
+            }
+
+            // Remove the associated names
+            keys = removes.iterator();
+            while (keys.hasNext()) {
+                names.remove(keys.next());
+            }
+            if (host == defaultHost)
+                defaultHost = null;
+            publish();
 
-        // Remove the associated names
-        keys = removes.iterator();
-        while (keys.hasNext()) {
-            removeAlias((String) keys.next());
         }
 
     }
@@ -503,10 +543,26 @@ public final class FastEngineMapper
         if (debug >= 3)
             engine.log("Setting default host '" + name + "'");
 
-        if (name == null)
-            defaultHost = null;
-        else
-            defaultHost = (Host) engine.findChild(name);
+        // Find the host before locking, as the engine may be notifying us
+        // while holding the lock of its children
+        Host host = null;
+        if (name != null)
+            host = (Host) engine.findChild(name);
+        synchronized (lock) {
+            defaultHost = host;
+            publish();
+        }
+
+    }
+
+
+    /**
+     * Replace the snapshot used by requests with one of our current host
+     * names.  The caller must hold <code>lock</code>.
+     */
+    private void publish() {
+
+        mappings = new HostMappings(names, defaultHost);
 
     }
 
@@ -0,0 +1,112 @@
+package org.apache.catalina.core;
+
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import org.apache.catalina.Host;
+
+
+/**
+ * Immutable snapshot of the host names and aliases of an Engine, used by
+ * <code>FastEngineMapper</code> to select the Host of a server name
+ * without locking.  Names are compared ignoring case, without converting
+ * the server name of the request.
+ * <p>
+ * A name starting with <code>"*."</code> is a wildcard, matching any
+ * server name made of a single label followed by the rest of the
+ * wildcard: <code>*.example.com</code> matches <code>www.example.com</code>
+ * but neither <code>example.com</code> nor
+ * <code>a.www.example.com</code>.  Exact names are preferred to
+ * wildcards.
+ */
+
+final class HostMappings {
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Construct a snapshot of the specified names.
+     *
+     * @param names The Hosts, keyed by name or alias
+     * @param defaultHost The Host of unknown names, if any
+     */
+    public HostMappings(Map names, Host defaultHost) {
+
+        super();
+        HashMap exact = new HashMap();
+        HashMap wildcards = new HashMap();
+        Iterator entries = names.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry entry = (Map.Entry) entries.next();
+            String name = (String) entry.getKey();
+            if (name.startsWith("*."))
+                wildcards.put(name.substring(1), entry.getValue());
+            else
+                exact.put(name, entry.getValue());
+        }
+        this.exact = new RangeTable(exact, true);
+        this.wildcards = new RangeTable(wildcards, true);
+        this.defaultHost = defaultHost;
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The Host of unknown names, if any.
+     */
+    private final Host defaultHost;
+
+
+    /**
+     * The Hosts, keyed by exact name.
+     */
+    private final RangeTable exact;
+
+
+    /**
+     * The Hosts, keyed by wildcard name without its leading
+     * <code>"*"</code>.
+     */
+    private final RangeTable wildcards;
+
+
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Return the Host of unknown names, if any.
+     */
+    Host getDefaultHost() {
+
+        return (defaultHost);
+
+    }
+
+
+    /**
+     * Return the Host matching the specified server name, ignoring the
+     * default Host, or <code>null</code> if there is none.
+     *
+     * @param server The server name
+     */
+    Host map(String server) {
+
+        int length = server.length();
+        Host host = (Host) exact.get(server, 0, length);
+        if (host == null) {
+            int period = server.indexOf('.');
+            if (period > 0)
+                host = (Host) wildcards.get(server, period, length);
+        }
+        return (host);
+
+    }
+
+
+}
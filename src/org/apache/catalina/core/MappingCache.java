@@ -0,0 +1,313 @@
+package org.apache.catalina.core;
+
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.catalina.Container;
+import org.apache.catalina.ContainerEvent;
+import org.apache.catalina.ContainerListener;
+import org.apache.catalina.Context;
+import org.apache.catalina.Host;
+import org.apache.catalina.HttpRequest;
+import org.apache.catalina.Request;
+import org.apache.catalina.Wrapper;
+
+
+/**
+ * Cache of the complete mapping of requests by a <code>StandardEngine</code>,
+ * from the server name and decoded request URI to the selected Host,
+ * Context and Wrapper, with the context path, servlet path and path info.
+ * On a hit, the request is updated as the three mappers would have done,
+ * so that they return immediately; on a miss, the three mappers are run
+ * and their result is cached.  Lookups do not lock.
+ * <p>
+ * The cache watches the engine, its hosts and their contexts, and is
+ * emptied whenever a child, an alias, a servlet mapping, a mapper or the
+ * default host changes.  When it holds the maximum number of entries, it
+ * is emptied as well, and refilled by the following requests.
+ * <p>
+ * The cache assumes that the Host and Context pipelines do not change the
+ * request URI before mapping it, which is the case of the standard valves.
+ */
+
+final class MappingCache
+    implements ContainerListener, PropertyChangeListener {
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Construct a cache for the specified engine, and start watching it.
+     *
+     * @param engine The engine
+     * @param maxSize The maximum number of entries
+     */
+    public MappingCache(StandardEngine engine, int maxSize) {
+
+        super();
+        this.engine = engine;
+        this.maxSize = maxSize;
+        engine.addContainerListener(this);
+        engine.addPropertyChangeListener(this);
+        Container hosts[] = engine.findChildren();
+        for (int i = 0; i < hosts.length; i++)
+            watch(hosts[i]);
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The engine whose mappings are cached.
+     */
+    private StandardEngine engine = null;
+
+
+    /**
+     * The cached mappings of each server name, keyed by decoded request
+     * URI.
+     */
+    private ConcurrentHashMap entries = new ConcurrentHashMap();
+
+
+    /**
+     * The number of times the cache has been invalidated, so that mappings
+     * computed before a change are not cached after it.  Guarded by this
+     * cache.
+     */
+    private long generation = 0;
+
+
+    /**
+     * The maximum number of entries.
+     */
+    private int maxSize = 0;
+
+
+    /**
+     * The number of entries.  Guarded by this cache.
+     */
+    private int size = 0;
+
+
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Map the specified request to a Host, Context and Wrapper, updating
+     * the request, and return the Host, or <code>null</code> if no Host
+     * matches.
+     *
+     * @param request The request being processed
+     */
+    Host map(Request request) {
+
+        String server = request.getRequest().getServerName();
+        String uri = ((HttpRequest) request).getDecodedRequestURI();
+        if ((server == null) || (uri == null))
+            return ((Host) engine.map(request, true));
+
+        // Use the cached mapping, if any
+        ConcurrentHashMap uris = (ConcurrentHashMap) entries.get(server);
+        if (uris != null) {
+            Entry entry = (Entry) uris.get(uri);
+            if (entry != null) {
+                request.setContext(entry.context);
+                ((HttpRequest) request).setContextPath(entry.contextPath);
+                request.setWrapper(entry.wrapper);
+                ((HttpRequest) request).setServletPath(entry.servletPath);
+                ((HttpRequest) request).setPathInfo(entry.pathInfo);
+                return (entry.host);
+            }
+        }
+
+        // Map the request as the valves would, leaving failures to them
+        long generation;
+        synchronized (this) {
+            generation = this.generation;
+        }
+        Host host = (Host) engine.map(request, true);
+        if (host == null)
+            return (null);
+        Context context = (Context) host.map(request, true);
+        if (context == null)
+            return (host);
+        Wrapper wrapper = null;
+        try {
+            wrapper = (Wrapper) context.map(request, true);
+        } catch (IllegalArgumentException e) {
+            return (host);
+        }
+        if (wrapper == null)
+            return (host);
+
+        HttpServletRequest hreq = (HttpServletRequest) request.getRequest();
+        Entry entry = new Entry(host, context, hreq.getContextPath(), wrapper,
+                                hreq.getServletPath(), hreq.getPathInfo());
+        synchronized (this) {
+            // The mapping may be out of date already
+            if (generation != this.generation)
+                return (host);
+            if (size >= maxSize) {
+                entries.clear();
+                size = 0;
+            }
+            uris = (ConcurrentHashMap) entries.get(server);
+            if (uris == null) {
+                uris = new ConcurrentHashMap();
+                entries.put(server, uris);
+            }
+            if (uris.put(uri, entry) == null)
+                size++;
+        }
+        return (host);
+
+    }
+
+
+    /**
+     * Stop watching the engine, its hosts and their contexts.
+     */
+    void release() {
+
+        engine.removeContainerListener(this);
+        engine.removePropertyChangeListener(this);
+        Container hosts[] = engine.findChildren();
+        for (int i = 0; i < hosts.length; i++)
+            unwatch(hosts[i]);
+        invalidate();
+
+    }
+
+
+    // ---------------------------------------------- ContainerListener Methods
+
+
+    /**
+     * Acknowledge the occurrence of the specified event.
+     *
+     * @param event ContainerEvent that has occurred
+     */
+    public void containerEvent(ContainerEvent event) {
+
+        Object source = event.getSource();
+        String type = event.getType();
+        if (Container.ADD_CHILD_EVENT.equals(type)) {
+            if (!(source instanceof Context))
+                watch((Container) event.getData());
+        } else if (Container.REMOVE_CHILD_EVENT.equals(type)) {
+            if (!(source instanceof Context))
+                unwatch((Container) event.getData());
+        } else if (!Container.ADD_MAPPER_EVENT.equals(type)
+                   && !Container.REMOVE_MAPPER_EVENT.equals(type)
+                   && !Host.ADD_ALIAS_EVENT.equals(type)
+                   && !Host.REMOVE_ALIAS_EVENT.equals(type)
+                   && !"addServletMapping".equals(type)
+                   && !"removeServletMapping".equals(type)) {
+            return;
+        }
+        invalidate();
+
+    }
+
+
+    // ----------------------------------------- PropertyChangeListener Methods
+
+
+    /**
+     * Process a property change event.
+     */
+    public void propertyChange(PropertyChangeEvent event) {
+
+        if ("defaultHost".equals(event.getPropertyName()))
+            invalidate();
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Empty the cache, and prevent the mappings in progress from being
+     * cached.
+     */
+    private synchronized void invalidate() {
+
+        generation++;
+        entries.clear();
+        size = 0;
+
+    }
+
+
+    /**
+     * Stop watching the specified host or context, and the contexts of a
+     * host.
+     *
+     * @param container The host or context
+     */
+    private void unwatch(Container container) {
+
+        container.removeContainerListener(this);
+        if (container instanceof Host) {
+            Container contexts[] = container.findChildren();
+            for (int i = 0; i < contexts.length; i++)
+                contexts[i].removeContainerListener(this);
+        }
+
+    }
+
+
+    /**
+     * Start watching the specified host or context, and the contexts of a
+     * host.
+     *
+     * @param container The host or context
+     */
+    private void watch(Container container) {
+
+        container.addContainerListener(this);
+        if (container instanceof Host) {
+            Container contexts[] = container.findChildren();
+            for (int i = 0; i < contexts.length; i++)
+                contexts[i].addContainerListener(this);
+        }
+
+    }
+
+
+    // --------------------------------------------------------- Inner Classes
+
+
+    /**
+     * The cached mapping of a request.
+     */
+    private static final class Entry {
+
+        Entry(Host host, Context context, String contextPath,
+              Wrapper wrapper, String servletPath, String pathInfo) {
+            this.host = host;
+            this.context = context;
+            this.contextPath = contextPath;
+            this.wrapper = wrapper;
+            this.servletPath = servletPath;
+            this.pathInfo = pathInfo;
+        }
+
+        final Host host;
+        final Context context;
+        final String contextPath;
+        final Wrapper wrapper;
+        final String servletPath;
+        final String pathInfo;
+
+    }
+
+
+}
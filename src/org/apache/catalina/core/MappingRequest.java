@@ -176,7 +176,10 @@ public class MappingRequest
     public void finishRequest() throws IOException {}
     public Object getNote(String name) { return null; }
     public Iterator getNoteNames() { return null; }
+    public boolean isSuspended() { return false; }
     public void removeNote(String name) {}
+    public void resume() { throw new IllegalStateException(); }
+    public void suspend() { throw new IllegalStateException(); }
     public void setContentType(String type) {}
     public void setNote(String name, Object value) {}
     public void setProtocol(String protocol) {}
@@ -0,0 +1,150 @@
+package org.apache.catalina.core;
+
+
+import java.util.Iterator;
+import java.util.Map;
+
+
+/**
+ * Immutable hash table keyed by String, whose entries can be looked up
+ * with a range of another String, such as a segment of a request URI,
+ * without creating a String for it.  Keys can optionally be compared
+ * ignoring case, still without converting the looked up String.
+ */
+
+final class RangeTable {
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Construct a table containing the entries of the specified map, whose
+     * keys are Strings.
+     *
+     * @param map The entries
+     */
+    public RangeTable(Map map) {
+
+        this(map, false);
+
+    }
+
+
+    /**
+     * Construct a table containing the entries of the specified map, whose
+     * keys are Strings.
+     *
+     * @param map The entries
+     * @param ignoreCase Should keys be compared ignoring case?
+     */
+    public RangeTable(Map map, boolean ignoreCase) {
+
+        super();
+        this.ignoreCase = ignoreCase;
+        int size = 1;
+        while (size < map.size() * 2)
+            size <<= 1;
+        keys = new String[size];
+        hashes = new int[size];
+        values = new Object[size];
+        Iterator entries = map.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry entry = (Map.Entry) entries.next();
+            String key = (String) entry.getKey();
+            int hash = hash(key, 0, key.length());
+            int index = hash & (size - 1);
+            while (keys[index] != null)
+                index = (index + 1) & (size - 1);
+            keys[index] = key;
+            hashes[index] = hash;
+            values[index] = entry.getValue();
+        }
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The hash code of each key.
+     */
+    private final int[] hashes;
+
+
+    /**
+     * Are keys compared ignoring case?
+     */
+    private final boolean ignoreCase;
+
+
+    /**
+     * The keys, with <code>null</code> for free slots.
+     */
+    private final String[] keys;
+
+
+    /**
+     * The value of each key.
+     */
+    private final Object[] values;
+
+
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Return the value of the key equal to the specified range of a
+     * String, or <code>null</code> if there is none.
+     *
+     * @param s The String
+     * @param from The start of the range
+     * @param to The end of the range
+     */
+    Object get(String s, int from, int to) {
+
+        int hash = hash(s, from, to);
+        int mask = keys.length - 1;
+        int index = hash & mask;
+        int length = to - from;
+        while (keys[index] != null) {
+            if ((hashes[index] == hash)
+                && (keys[index].length() == length)
+                && keys[index].regionMatches(ignoreCase, 0, s, from, length))
+                return (values[index]);
+            index = (index + 1) & mask;
+        }
+        return (null);
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Return the hash code of the specified range of a String, which is
+     * the same as the hash code of the equivalent String, unless case is
+     * ignored.
+     *
+     * @param s The String
+     * @param from The start of the range
+     * @param to The end of the range
+     */
+    private int hash(String s, int from, int to) {
+
+        int hash = 0;
+        if (ignoreCase) {
+            for (int i = from; i < to; i++)
+                hash = 31 * hash + Character.toLowerCase(s.charAt(i));
+        } else {
+            for (int i = from; i < to; i++)
+                hash = 31 * hash + s.charAt(i);
+        }
+        return (hash);
+
+    }
+
+
+}
@@ -0,0 +1,277 @@
+package org.apache.catalina.core;
+
+
+import java.util.HashMap;
+import java.util.Iterator;
+import org.apache.catalina.Wrapper;
+
+
+/**
+ * Immutable, precompiled form of the servlet mappings of a
+ * <code>StandardContext</code>, used by <code>StandardContextMapper</code>
+ * to select a <code>Wrapper</code> without locking and without creating
+ * any String.  Exact and prefix patterns are kept in a trie of path
+ * segments, and extension patterns in a table of extensions; all lookups
+ * work on a range of the request URI.
+ * <p>
+ * Mappings which name a servlet that is not a child of the context are
+ * ignored, as they could never be selected.
+ */
+
+final class ServletMappings {
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Compile the current servlet mappings of the specified context.
+     *
+     * @param context The context
+     */
+    public ServletMappings(StandardContext context) {
+
+        super();
+        Node root = new Node(0);
+        HashMap extensions = new HashMap();
+        Wrapper defaultWrapper = null;
+
+        String patterns[] = context.findServletMappings();
+        for (int i = 0; i < patterns.length; i++) {
+            String pattern = patterns[i];
+            String name = context.findServletMapping(pattern);
+            Wrapper wrapper = null;
+            if (name != null)
+                wrapper = (Wrapper) context.findChild(name);
+            if (wrapper == null)
+                continue;
+            if (pattern.equals("/")) {
+                defaultWrapper = wrapper;
+            } else if (pattern.startsWith("*.")) {
+                extensions.put(pattern.substring(2), wrapper);
+            } else if (pattern.startsWith("/")) {
+                // A prefix pattern also matches its literal form exactly
+                root.add(pattern, 1).exact = wrapper;
+                if (pattern.endsWith("/*")) {
+                    String path = pattern.substring(0, pattern.length() - 2);
+                    if (path.length() == 0)
+                        root.prefix = wrapper;
+                    else
+                        root.add(path, 1).prefix = wrapper;
+                }
+            }
+        }
+
+        root.freeze();
+        this.root = root;
+        this.extensions = new RangeTable(extensions);
+        this.defaultWrapper = defaultWrapper;
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The Wrapper of the default mapping, if any.
+     */
+    private final Wrapper defaultWrapper;
+
+
+    /**
+     * The Wrappers of the extension mappings, keyed by extension.
+     */
+    private final RangeTable extensions;
+
+
+    /**
+     * The root of the trie of exact and prefix mappings.
+     */
+    private final Node root;
+
+
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Return the Wrapper of the default mapping, if any.
+     */
+    Wrapper getDefault() {
+
+        return (defaultWrapper);
+
+    }
+
+
+    /**
+     * Return the Wrapper exactly mapped to the specified range of a URI,
+     * or <code>null</code> if there is none.
+     *
+     * @param uri The URI
+     * @param start The index of the context-relative path in the URI
+     * @param end The end of the context-relative path in the URI
+     */
+    Wrapper mapExact(String uri, int start, int end) {
+
+        Node node = root.find(uri, start, end, false);
+        if (node == null)
+            return (null);
+        return (node.exact);
+
+    }
+
+
+    /**
+     * Return the Wrapper mapped to the extension of the last segment of
+     * the specified range of a URI, or <code>null</code> if there is none.
+     *
+     * @param uri The URI
+     * @param start The index of the context-relative path in the URI
+     * @param end The end of the context-relative path in the URI
+     */
+    Wrapper mapExtension(String uri, int start, int end) {
+
+        int slash = uri.lastIndexOf('/', end - 1);
+        if (slash < start)
+            return (null);
+        int period = uri.lastIndexOf('.', end - 1);
+        if (period < slash)
+            return (null);
+        return ((Wrapper) extensions.get(uri, period + 1, end));
+
+    }
+
+
+    /**
+     * Return the node of the longest prefix mapping matching the specified
+     * range of a URI, or <code>null</code> if there is none.  The Wrapper
+     * of the mapping is the <code>prefix</code> of the node, and the
+     * servlet path is the first <code>length</code> characters of the
+     * range.
+     *
+     * @param uri The URI
+     * @param start The index of the context-relative path in the URI
+     * @param end The end of the context-relative path in the URI
+     */
+    Node mapPrefix(String uri, int start, int end) {
+
+        return (root.find(uri, start, end, true));
+
+    }
+
+
+    // --------------------------------------------------------- Inner Classes
+
+
+    /**
+     * A node of the trie of exact and prefix mappings, matching the path
+     * made of the segments leading to it.
+     */
+    static final class Node {
+
+        Node(int length) {
+            this.length = length;
+        }
+
+        /**
+         * The children of this node, keyed by segment, while the trie is
+         * being built.
+         */
+        private HashMap building = new HashMap();
+
+        /**
+         * The children of this node, keyed by segment.
+         */
+        private RangeTable children = null;
+
+        /**
+         * The Wrapper exactly mapped to the path of this node, if any.
+         */
+        Wrapper exact = null;
+
+        /**
+         * The length of the path of this node.
+         */
+        final int length;
+
+        /**
+         * The Wrapper mapped to the path of this node followed by
+         * <code>"/*"</code>, if any.
+         */
+        Wrapper prefix = null;
+
+        /**
+         * Return the node of the specified path, relative to this node,
+         * adding the missing nodes.
+         *
+         * @param path The path, whose segments start after each slash
+         * @param from The index of the first segment in the path
+         */
+        Node add(String path, int from) {
+            int slash = path.indexOf('/', from);
+            int to = (slash < 0) ? path.length() : slash;
+            String segment = path.substring(from, to);
+            Node child = (Node) building.get(segment);
+            if (child == null) {
+                child = new Node(length + 1 + segment.length());
+                building.put(segment, child);
+            }
+            if (slash < 0)
+                return (child);
+            return (child.add(path, slash + 1));
+        }
+
+        /**
+         * Return the node matching the specified range of a URI, or,
+         * if <code>prefix</code> is set, the node of the longest prefix
+         * mapping matching it.
+         *
+         * @param uri The URI
+         * @param start The start of the range, before its first slash
+         * @param end The end of the range
+         * @param prefix Find the longest prefix mapping?
+         */
+        Node find(String uri, int start, int end, boolean prefix) {
+            Node best = null;
+            if (start < end) {
+                // The path cannot match any pattern without a slash
+                if (uri.charAt(start) != '/')
+                    return (null);
+            } else {
+                return (prefix && (this.prefix != null) ? this : null);
+            }
+            if (prefix && (this.prefix != null))
+                best = this;
+            Node node = this;
+            int from = start + 1;
+            while (true) {
+                int slash = uri.indexOf('/', from);
+                int to = ((slash < 0) || (slash >= end)) ? end : slash;
+                node = (Node) node.children.get(uri, from, to);
+                if (node == null)
+                    return (best);
+                if (to == end)
+                    return (!prefix ? node
+                            : ((node.prefix != null) ? node : best));
+                if (prefix && (node.prefix != null))
+                    best = node;
+                from = to + 1;
+            }
+        }
+
+        /**
+         * Make this node and its descendants read-only.
+         */
+        void freeze() {
+            Iterator values = building.values().iterator();
+            while (values.hasNext())
+                ((Node) values.next()).freeze();
+            children = new RangeTable(building);
+            building = null;
+        }
+
+    }
+
+
+}
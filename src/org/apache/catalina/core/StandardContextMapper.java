@@ -67,6 +67,8 @@ package org.apache.catalina.core;
 
 import javax.servlet.http.HttpServletRequest;
 import org.apache.catalina.Container;
+import org.apache.catalina.ContainerEvent;
+import org.apache.catalina.ContainerListener;
 import org.apache.catalina.HttpRequest;
 import org.apache.catalina.Mapper;
 import org.apache.catalina.Request;
@@ -79,6 +81,11 @@ import org.apache.catalina.util.StringManager;
  * designed to process HTTP requests.  This mapper selects an appropriate
  * <code>Wrapper</code> based on the request URI included in the request.
  * <p>
+ * The servlet mappings of the context are compiled into an immutable
+ * <code>ServletMappings</code>, which is thrown away whenever a servlet
+ * or a mapping is added or removed, and compiled again by the next
+ * request.
+ * <p>
  * <b>IMPLEMENTATION NOTE</b>:  This Mapper only works with a
  * <code>StandardContext</code>, because it relies on internal APIs.
  *
@@ -87,7 +94,7 @@ import org.apache.catalina.util.StringManager;
  */
 
 public final class StandardContextMapper
-    implements Mapper {
+    implements ContainerListener, Mapper {
 
 
     // ----------------------------------------------------- Instance Variables
@@ -99,6 +106,13 @@ public final class StandardContextMapper
     private StandardContext context = null;
 
 
+    /**
+     * The compiled servlet mappings of the context, or <code>null</code>
+     * if they must be compiled again.
+     */
+    private volatile ServletMappings mappings = null;
+
+
     /**
      * The protocol with which this Mapper is associated.
      */
@@ -138,7 +152,11 @@ public final class StandardContextMapper
         if (!(container instanceof StandardContext))
             throw new IllegalArgumentException
                 (sm.getString("httpContextMapper.container"));
+        if (context != null)
+            context.removeContainerListener(this);
         context = (StandardContext) container;
+        context.addContainerListener(this);
+        invalidate();
 
     }
 
@@ -192,53 +210,40 @@ public final class StandardContextMapper
         String contextPath =
             ((HttpServletRequest) request.getRequest()).getContextPath();
         String requestURI = ((HttpRequest) request).getDecodedRequestURI();
-        String relativeURI = requestURI.substring(contextPath.length());
-
+        int start = contextPath.length();
+        int end = requestURI.length();
 
         if (debug >= 1)
             context.log("Mapping contextPath='" + contextPath +
                         "' with requestURI='" + requestURI +
-                        "' and relativeURI='" + relativeURI + "'");
+                        "' and relativeURI='" +
+                        requestURI.substring(start) + "'");
+
+        ServletMappings mappings = this.mappings;
+        if (mappings == null)
+            mappings = compile();
 
         // Apply the standard request URI mapping rules from the specification
         Wrapper wrapper = null;
-        String servletPath = relativeURI;
-        String pathInfo = null;
-        String name = null;
+        int split = end;
 
         // Rule 1 -- Exact Match
         if (wrapper == null) {
             if (debug >= 2)
                 context.log("  Trying exact match");
-            if (!(relativeURI.equals("/")))
-                name = context.findServletMapping(relativeURI);
-            if (name != null)
-                wrapper = (Wrapper) context.findChild(name);
-            if (wrapper != null) {
-                servletPath = relativeURI;
-                pathInfo = null;
-            }
+            if ((end - start != 1) || (requestURI.charAt(start) != '/'))
+                wrapper = mappings.mapExact(requestURI, start, end);
         }
 
         // Rule 2 -- Prefix Match
         if (wrapper == null) {
             if (debug >= 2)
                 context.log("  Trying prefix match");
-            servletPath = relativeURI;
-            while (true) {
-                name = context.findServletMapping(servletPath + "/*");
-                if (name != null)
-                    wrapper = (Wrapper) context.findChild(name);
-                if (wrapper != null) {
-                    pathInfo = relativeURI.substring(servletPath.length());
-                    if (pathInfo.length() == 0)
-                        pathInfo = null;
-                    break;
-                }
-                int slash = servletPath.lastIndexOf('/');
-                if (slash < 0)
-                    break;
-                servletPath = servletPath.substring(0, slash);
+            ServletMappings.Node node =
+                mappings.mapPrefix(requestURI, start, end);
+            if (node != null) {
+                wrapper = node.prefix;
+                split = start + node.length;
             }
         }
 
@@ -246,34 +251,24 @@ public final class StandardContextMapper
         if (wrapper == null) {
             if (debug >= 2)
                 context.log("  Trying extension match");
-            int slash = relativeURI.lastIndexOf('/');
-            if (slash >= 0) {
-                String last = relativeURI.substring(slash);
-                int period = last.lastIndexOf('.');
-                if (period >= 0) {
-                    String pattern = "*" + last.substring(period);
-                    name = context.findServletMapping(pattern);
-                    if (name != null)
-                        wrapper = (Wrapper) context.findChild(name);
-                    if (wrapper != null) {
-                        servletPath = relativeURI;
-                        pathInfo = null;
-                    }
-                }
-            }
+            wrapper = mappings.mapExtension(requestURI, start, end);
         }
 
         // Rule 4 -- Default Match
         if (wrapper == null) {
             if (debug >= 2)
                 context.log("  Trying default match");
-            name = context.findServletMapping("/");
-            if (name != null)
-                wrapper = (Wrapper) context.findChild(name);
-            if (wrapper != null) {
-                servletPath = relativeURI;
-                pathInfo = null;
-            }
+            wrapper = mappings.getDefault();
+        }
+
+        // Only create the paths if they are needed
+        String servletPath = null;
+        String pathInfo = null;
+        if (update || (debug >= 1)) {
+            servletPath = ((start == 0) && (split == end))
+                ? requestURI : requestURI.substring(start, split);
+            if (split < end)
+                pathInfo = requestURI.substring(split);
         }
 
         // Update the Request (if requested) and return this Wrapper
@@ -292,4 +287,52 @@ public final class StandardContextMapper
     }
 
 
+    // ---------------------------------------------- ContainerListener Methods
+
+
+    /**
+     * Acknowledge the occurrence of the specified event.
+     *
+     * @param event ContainerEvent that has occurred
+     */
+    public void containerEvent(ContainerEvent event) {
+
+        String type = event.getType();
+        if (Container.ADD_CHILD_EVENT.equals(type)
+            || Container.REMOVE_CHILD_EVENT.equals(type)
+            || "addServletMapping".equals(type)
+            || "removeServletMapping".equals(type))
+            invalidate();
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Compile the servlet mappings of the context, unless this has been
+     * done already since they last changed.
+     */
+    private synchronized ServletMappings compile() {
+
+        if (mappings == null)
+            mappings = new ServletMappings(context);
+        return (mappings);
+
+    }
+
+
+    /**
+     * Throw away the compiled servlet mappings, which are out of date.
+     * This waits for a compilation in progress, which may have read the
+     * mappings before they changed.
+     */
+    private synchronized void invalidate() {
+
+        mappings = null;
+
+    }
+
+
 }
@@ -126,6 +126,19 @@ public class StandardEngine
         "org.apache.catalina.core.StandardEngineMapper";
 
 
+    /**
+     * The cache of the mappings of requests, if enabled and started.
+     */
+    private MappingCache mappingCache = null;
+
+
+    /**
+     * The maximum number of mappings of requests to cache, or zero to
+     * disable the cache.
+     */
+    private int mappingCacheSize = 0;
+
+
     /**
      * The <code>Service</code> that owns this Engine, if any.
      */
@@ -247,6 +260,36 @@ public class StandardEngine
     }
 
 
+    /**
+     * Return the maximum number of mappings of requests to cache, or zero
+     * if the cache is disabled.
+     */
+    public int getMappingCacheSize() {
+
+        return (this.mappingCacheSize);
+
+    }
+
+
+    /**
+     * Set the maximum number of mappings of requests to cache, from server
+     * name and request URI to Host, Context and Wrapper, or zero to
+     * disable the cache.  This only applies when the Engine is next
+     * started.
+     *
+     * @param mappingCacheSize The new maximum number of mappings
+     */
+    public void setMappingCacheSize(int mappingCacheSize) {
+
+        int oldMappingCacheSize = this.mappingCacheSize;
+        this.mappingCacheSize = mappingCacheSize;
+        support.firePropertyChange("mappingCacheSize",
+                                   new Integer(oldMappingCacheSize),
+                                   new Integer(this.mappingCacheSize));
+
+    }
+
+
     /**
      * Return the <code>Service</code> with which we are associated (if any).
      */
@@ -340,6 +383,27 @@ public class StandardEngine
         // Standard container startup
         super.start();
 
+        if (mappingCacheSize > 0)
+            mappingCache = new MappingCache(this, mappingCacheSize);
+
+    }
+
+
+    /**
+     * Stop this Engine component.
+     *
+     * @exception LifecycleException if a shutdown error occurs
+     */
+    public void stop() throws LifecycleException {
+
+        if (mappingCache != null) {
+            mappingCache.release();
+            mappingCache = null;
+        }
+
+        // Standard container shutdown
+        super.stop();
+
     }
 
 
@@ -356,6 +420,20 @@ public class StandardEngine
     }
 
 
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Return the cache of the mappings of requests, or <code>null</code>
+     * if it is disabled or the Engine is not started.
+     */
+    MappingCache getMappingCache() {
+
+        return (this.mappingCache);
+
+    }
+
+
     // ------------------------------------------------------ Protected Methods
 
 
@@ -159,7 +159,12 @@ final class StandardEngineValve
 
         // Select the Host to be used for this Request
         StandardEngine engine = (StandardEngine) getContainer();
-        Host host = (Host) engine.map(request, true);
+        MappingCache cache = engine.getMappingCache();
+        Host host = null;
+        if (cache != null)
+            host = cache.map(request);
+        else
+            host = (Host) engine.map(request, true);
         if (host == null) {
             ((HttpServletResponse) response.getResponse()).sendError
                 (HttpServletResponse.SC_BAD_REQUEST,
@@ -143,6 +143,21 @@ public class StandardHost
         "org.apache.catalina.core.StandardContext";
 
 
+    /**
+     * The index of our Contexts by context path, or <code>null</code> if
+     * it must be built again.
+     */
+    private volatile ContextMappings contextMappings = null;
+
+
+    /**
+     * The lock guarding the building of <code>contextMappings</code>.  It
+     * is not the lock of this host, which is held while applications are
+     * deployed, so that requests keep being mapped meanwhile.
+     */
+    private final Object contextMappingsLock = new Object();
+
+
     /**
      * The <code>Deployer</code> to whom we delegate application
      * deployment requests.
@@ -567,6 +582,7 @@ public class StandardHost
                 (sm.getString("standardHost.notContext"));
         }
         super.addChild(child);
+        invalidateContextMappings();
 
     }
 
@@ -611,15 +627,22 @@ public class StandardHost
         if (debug > 1)
             log("  Trying the longest context path prefix");
         Context context = null;
-        String mapuri = uri;
-        while (true) {
-            context = (Context) findChild(mapuri);
-            if (context != null)
-                break;
-            int slash = mapuri.lastIndexOf('/');
-            if (slash < 0)
-                break;
-            mapuri = mapuri.substring(0, slash);
+        if (uri.startsWith("/")) {
+            ContextMappings mappings = contextMappings;
+            if (mappings == null)
+                mappings = buildContextMappings();
+            context = mappings.map(uri);
+        } else {
+            String mapuri = uri;
+            while (true) {
+                context = (Context) findChild(mapuri);
+                if (context != null)
+                    break;
+                int slash = mapuri.lastIndexOf('/');
+                if (slash < 0)
+                    break;
+                mapuri = mapuri.substring(0, slash);
+            }
         }
 
         // If no Context matches, select the default Context
@@ -643,6 +666,20 @@ public class StandardHost
     }
 
 
+    /**
+     * Remove an existing child Container from association with this parent
+     * Container.
+     *
+     * @param child Existing child Container to be removed
+     */
+    public void removeChild(Container child) {
+
+        super.removeChild(child);
+        invalidateContextMappings();
+
+    }
+
+
     /**
      * Remove the specified alias name from the aliases for this Host.
      *
@@ -899,4 +936,36 @@ public class StandardHost
     }
 
 
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Build the index of our Contexts, unless this has been done already
+     * since they last changed.
+     */
+    private ContextMappings buildContextMappings() {
+
+        synchronized (contextMappingsLock) {
+            if (contextMappings == null)
+                contextMappings = new ContextMappings(findChildren());
+            return (contextMappings);
+        }
+
+    }
+
+
+    /**
+     * Throw away the index of our Contexts, which is out of date.  This
+     * waits for a build in progress, which may have seen the Contexts
+     * before they changed.
+     */
+    private void invalidateContextMappings() {
+
+        synchronized (contextMappingsLock) {
+            contextMappings = null;
+        }
+
+    }
+
+
 }
@@ -86,11 +86,13 @@ import org.apache.catalina.util.StringManager;
  * Standard implementation of a processing <b>Pipeline</b> that will invoke
  * a series of Valves that have been configured to be called in order.  This
  * implementation can be used for any type of Container.
- *
- * <b>IMPLEMENTATION WARNING</b> - This implementation assumes that no
- * calls to <code>addValve()</code> or <code>removeValve</code> are allowed
- * while a request is currently being processed.  Otherwise, the mechanism
- * by which per-thread state is maintained will need to be modified.
+ * <p>
+ * The Valves are compiled into an immutable chain of ValveContexts, each
+ * invoking one Valve with the rest of the chain, which is rebuilt whenever
+ * a Valve is added or removed, or the basic Valve is changed.  Requests
+ * therefore keep no per-request state in the pipeline, and a request being
+ * processed while the Valves change completes with the chain it started
+ * with.
  *
  * @author Craig R. McClanahan
  */
@@ -141,6 +143,14 @@ public class StandardPipeline
     protected Container container = null;
 
 
+    /**
+     * The compiled chain of Valves (including the basic), whose
+     * <code>invokeNext()</code> invokes the first Valve.
+     */
+    protected volatile StandardPipelineValveContext chain =
+        new StandardPipelineValveContext(null, null);
+
+
     /**
      * The debugging detail level for this component.
      */
@@ -280,6 +290,9 @@ public class StandardPipeline
         }
         if ((basic != null) && (basic instanceof Lifecycle))
             ((Lifecycle) basic).start();
+        synchronized (valves) {
+            compile();
+        }
 
         // Notify our interested LifecycleListeners
         lifecycle.fireLifecycleEvent(START_EVENT, null);
@@ -389,7 +402,10 @@ public class StandardPipeline
                 return;
             }
         }
-        this.basic = valve;
+        synchronized (valves) {
+            this.basic = valve;
+            compile();
+        }
 
     }
 
@@ -434,6 +450,7 @@ public class StandardPipeline
             System.arraycopy(valves, 0, results, 0, valves.length);
             results[valves.length] = valve;
             valves = results;
+            compile();
         }
 
     }
@@ -476,7 +493,7 @@ public class StandardPipeline
         throws IOException, ServletException {
 
         // Invoke the first Valve in this pipeline for this request
-        (new StandardPipelineValveContext()).invokeNext(request, response);
+        chain.invokeNext(request, response);
 
     }
 
@@ -513,6 +530,7 @@ public class StandardPipeline
                 results[n++] = valves[i];
             }
             valves = results;
+            compile();
             try {
                 if (valve instanceof Contained)
                     ((Contained) valve).setContainer(null);
@@ -537,6 +555,23 @@ public class StandardPipeline
     // ------------------------------------------------------ Protected Methods
 
 
+    /**
+     * Rebuild the chain of Valves from the current Valves and basic Valve.
+     * The caller must synchronize on <code>valves</code>.
+     */
+    protected void compile() {
+
+        StandardPipelineValveContext chain =
+            new StandardPipelineValveContext(null, null);
+        if (basic != null)
+            chain = new StandardPipelineValveContext(basic, chain);
+        for (int i = valves.length - 1; i >= 0; i--)
+            chain = new StandardPipelineValveContext(valves[i], chain);
+        this.chain = chain;
+
+    }
+
+
     /**
      * Log a message on the Logger associated with our Container (if any).
      *
@@ -587,10 +622,39 @@ public class StandardPipeline
         implements ValveContext {
 
 
+        // ------------------------------------------------------- Constructors
+
+
+        /**
+         * Construct a link of the chain invoking the specified Valve.
+         *
+         * @param valve The Valve to invoke, or <code>null</code> at the end
+         *  of the chain
+         * @param next The rest of the chain, passed to the Valve
+         */
+        protected StandardPipelineValveContext
+            (Valve valve, StandardPipelineValveContext next) {
+
+            this.valve = valve;
+            this.next = next;
+
+        }
+
+
         // ------------------------------------------------- Instance Variables
 
 
-        protected int stage = 0;
+        /**
+         * The rest of the chain, passed to our Valve.
+         */
+        protected final StandardPipelineValveContext next;
+
+
+        /**
+         * The Valve invoked by this link, or <code>null</code> at the end
+         * of the chain.
+         */
+        protected final Valve valve;
 
 
         // --------------------------------------------------------- Properties
@@ -632,18 +696,11 @@ public class StandardPipeline
         public void invokeNext(Request request, Response response)
             throws IOException, ServletException {
 
-            int subscript = stage;
-            stage = stage + 1;
-
-            // Invoke the requested Valve for the current request thread
-            if (subscript < valves.length) {
-                valves[subscript].invoke(request, response, this);
-            } else if ((subscript == valves.length) && (basic != null)) {
-                basic.invoke(request, response, this);
-            } else {
+            // Invoke our Valve with the rest of the chain
+            if (valve == null)
                 throw new ServletException
                     (sm.getString("standardPipeline.noValve"));
-            }
+            valve.invoke(request, response, next);
 
         }
 
@@ -70,6 +70,7 @@ import java.beans.PropertyChangeSupport;
 import org.apache.catalina.Connector;
 import org.apache.catalina.Container;
 import org.apache.catalina.Engine;
+import org.apache.catalina.Executor;
 import org.apache.catalina.Lifecycle;
 import org.apache.catalina.LifecycleException;
 import org.apache.catalina.LifecycleListener;
@@ -120,6 +121,12 @@ public final class StandardService
         "org.apache.catalina.core.StandardService/1.0";
 
 
+    /**
+     * The set of Executors which may be shared by our Connectors.
+     */
+    private Executor executors[] = new Executor[0];
+
+
     /**
      * Has this component been initialized?
      */
@@ -336,6 +343,37 @@ public final class StandardService
     }
 
 
+    /**
+     * Add a new Executor to the set of Executors which may be shared by the
+     * Connectors of this Service.
+     *
+     * @param executor The Executor to be added
+     */
+    public void addExecutor(Executor executor) {
+
+        synchronized (executors) {
+            Executor results[] = new Executor[executors.length + 1];
+            System.arraycopy(executors, 0, results, 0, executors.length);
+            results[executors.length] = executor;
+            executors = results;
+            if (executor instanceof StandardThreadExecutor)
+                ((StandardThreadExecutor) executor).setService(this);
+
+            if (started) {
+                try {
+                    executor.start();
+                } catch (LifecycleException e) {
+                    ;
+                }
+            }
+
+            // Report this property change to interested listeners
+            support.firePropertyChange("executor", null, executor);
+        }
+
+    }
+
+
     /**
      * Add a property change listener to this component.
      *
@@ -358,6 +396,34 @@ public final class StandardService
     }
 
 
+    /**
+     * Find and return the set of Executors associated with this Service.
+     */
+    public Executor[] findExecutors() {
+
+        return (executors);
+
+    }
+
+
+    /**
+     * Return the Executor with the specified name, or <code>null</code> if
+     * there is no such Executor.
+     *
+     * @param name Name of the requested Executor
+     */
+    public Executor getExecutor(String name) {
+
+        Executor results[] = executors;
+        for (int i = 0; i < results.length; i++) {
+            if (results[i].getName().equals(name))
+                return (results[i]);
+        }
+        return (null);
+
+    }
+
+
     /**
      * Remove the specified Connector from the set associated from this
      * Service.  The removed Connector will also be disassociated from our
@@ -401,6 +467,46 @@ public final class StandardService
     }
 
 
+    /**
+     * Remove the specified Executor from the set associated with this
+     * Service.
+     *
+     * @param executor The Executor to be removed
+     */
+    public void removeExecutor(Executor executor) {
+
+        synchronized (executors) {
+            int j = -1;
+            for (int i = 0; i < executors.length; i++) {
+                if (executor == executors[i]) {
+                    j = i;
+                    break;
+                }
+            }
+            if (j < 0)
+                return;
+            if (started) {
+                try {
+                    executors[j].stop();
+                } catch (LifecycleException e) {
+                    ;
+                }
+            }
+            int k = 0;
+            Executor results[] = new Executor[executors.length - 1];
+            for (int i = 0; i < executors.length; i++) {
+                if (i != j)
+                    results[k++] = executors[i];
+            }
+            executors = results;
+
+            // Report this property change to interested listeners
+            support.firePropertyChange("executor", executor, null);
+        }
+
+    }
+
+
     /**
      * Remove a property change listener from this component.
      *
@@ -498,6 +604,12 @@ public final class StandardService
             }
         }
 
+        // Start the Executors shared by our Connectors
+        synchronized (executors) {
+            for (int i = 0; i < executors.length; i++)
+                executors[i].start();
+        }
+
         // Start our defined Connectors second
         synchronized (connectors) {
             for (int i = 0; i < connectors.length; i++) {
@@ -546,6 +658,12 @@ public final class StandardService
             }
         }
 
+        // Stop the Executors once no Connector uses them anymore
+        synchronized (executors) {
+            for (int i = 0; i < executors.length; i++)
+                executors[i].stop();
+        }
+
         // Stop our defined Container second
         if (container != null) {
             synchronized (container) {
@@ -0,0 +1,641 @@
+package org.apache.catalina.core;
+
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.catalina.Container;
+import org.apache.catalina.Executor;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.LifecycleListener;
+import org.apache.catalina.Logger;
+import org.apache.catalina.Service;
+import org.apache.catalina.util.LifecycleSupport;
+import org.apache.catalina.util.StringManager;
+
+
+/**
+ * Standard implementation of the <code>Executor</code> interface, built on
+ * a <code>ThreadPoolExecutor</code>.  Threads are created on demand up to
+ * <code>maxThreads</code>; once this limit is reached, tasks are queued
+ * until a thread becomes available, and rejected when
+ * <code>maxQueueSize</code> tasks are already waiting.  Threads above
+ * <code>minSpareThreads</code> exit after having been idle for
+ * <code>maxIdleTime</code> milliseconds.
+ * <p>
+ * A plain <code>ThreadPoolExecutor</code> queues tasks as soon as its core
+ * threads are busy, and only grows when the queue is full.  The queue of
+ * this pool refuses tasks while no thread is idle and the pool can still
+ * grow, so that threads are created first.
+ */
+
+public final class StandardThreadExecutor
+    implements Executor, Lifecycle {
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * Should the threads of this pool be daemon threads?
+     */
+    private boolean daemon = true;
+
+
+    /**
+     * The pool, while this component is started.
+     */
+    private volatile ThreadPoolExecutor executor = null;
+
+
+    /**
+     * The lifecycle event support for this component.
+     */
+    private LifecycleSupport lifecycle = new LifecycleSupport(this);
+
+
+    /**
+     * The number of milliseconds a thread above the minimum number of spare
+     * threads waits for a task before exiting.
+     */
+    private int maxIdleTime = 60000;
+
+
+    /**
+     * The maximum number of tasks waiting for a thread.
+     */
+    private int maxQueueSize = 100;
+
+
+    /**
+     * The maximum number of threads in the pool.
+     */
+    private int maxThreads = 200;
+
+
+    /**
+     * The number of threads which are kept alive even when idle.
+     */
+    private int minSpareThreads = 25;
+
+
+    /**
+     * The name of this executor.
+     */
+    private String name = null;
+
+
+    /**
+     * The prefix of the names of the threads of this pool.
+     */
+    private String namePrefix = "catalina-exec-";
+
+
+    /**
+     * The tasks waiting for a thread.
+     */
+    private volatile TaskQueue queue = null;
+
+
+    /**
+     * The Service owning this executor, whose Container logs for it.
+     */
+    private Service service = null;
+
+
+    /**
+     * The string manager for this package.
+     */
+    private static final StringManager sm =
+        StringManager.getManager(Constants.Package);
+
+
+    /**
+     * Has this component been started?
+     */
+    private boolean started = false;
+
+
+    /**
+     * The number of tasks accepted and not completed yet, executing or
+     * queued.
+     */
+    private AtomicInteger submitted = new AtomicInteger();
+
+
+    /**
+     * The sequence number of the next thread created.
+     */
+    private AtomicInteger threadNumber = new AtomicInteger();
+
+
+    // ------------------------------------------------------------- Properties
+
+
+    /**
+     * Return the number of threads currently executing a task.
+     */
+    public int getActiveCount() {
+
+        ThreadPoolExecutor executor = this.executor;
+        if (executor == null)
+            return (0);
+        return (executor.getActiveCount());
+
+    }
+
+
+    /**
+     * Return the daemon flag of the threads of this pool.
+     */
+    public boolean getDaemon() {
+
+        return (this.daemon);
+
+    }
+
+
+    /**
+     * Set the daemon flag of the threads of this pool.
+     *
+     * @param daemon The new daemon flag
+     */
+    public void setDaemon(boolean daemon) {
+
+        this.daemon = daemon;
+
+    }
+
+
+    /**
+     * Return the idle time after which threads above the minimum number of
+     * spare threads exit.
+     */
+    public int getMaxIdleTime() {
+
+        return (this.maxIdleTime);
+
+    }
+
+
+    /**
+     * Set the idle time after which threads above the minimum number of
+     * spare threads exit.
+     *
+     * @param maxIdleTime The new idle time, in milliseconds
+     */
+    public void setMaxIdleTime(int maxIdleTime) {
+
+        this.maxIdleTime = maxIdleTime;
+        ThreadPoolExecutor executor = this.executor;
+        if (executor != null)
+            executor.setKeepAliveTime(maxIdleTime, TimeUnit.MILLISECONDS);
+
+    }
+
+
+    /**
+     * Return the maximum number of tasks waiting for a thread.
+     */
+    public int getMaxQueueSize() {
+
+        return (this.maxQueueSize);
+
+    }
+
+
+    /**
+     * Set the maximum number of tasks waiting for a thread, which takes
+     * effect the next time this executor is started.
+     *
+     * @param maxQueueSize The new maximum queue size
+     */
+    public void setMaxQueueSize(int maxQueueSize) {
+
+        this.maxQueueSize = maxQueueSize;
+
+    }
+
+
+    /**
+     * Return the maximum number of threads in the pool.
+     */
+    public int getMaxThreads() {
+
+        return (this.maxThreads);
+
+    }
+
+
+    /**
+     * Set the maximum number of threads in the pool.
+     *
+     * @param maxThreads The new maximum number of threads
+     */
+    public void setMaxThreads(int maxThreads) {
+
+        this.maxThreads = maxThreads;
+        resize();
+
+    }
+
+
+    /**
+     * Return the number of threads which are kept alive even when idle.
+     */
+    public int getMinSpareThreads() {
+
+        return (this.minSpareThreads);
+
+    }
+
+
+    /**
+     * Set the number of threads which are kept alive even when idle.
+     *
+     * @param minSpareThreads The new minimum number of spare threads
+     */
+    public void setMinSpareThreads(int minSpareThreads) {
+
+        this.minSpareThreads = minSpareThreads;
+        resize();
+
+    }
+
+
+    /**
+     * Return the name of this executor.
+     */
+    public String getName() {
+
+        return (this.name);
+
+    }
+
+
+    /**
+     * Set the name of this executor.
+     *
+     * @param name The new name
+     */
+    public void setName(String name) {
+
+        this.name = name;
+
+    }
+
+
+    /**
+     * Return the prefix of the names of the threads of this pool.
+     */
+    public String getNamePrefix() {
+
+        return (this.namePrefix);
+
+    }
+
+
+    /**
+     * Set the prefix of the names of the threads of this pool.
+     *
+     * @param namePrefix The new prefix
+     */
+    public void setNamePrefix(String namePrefix) {
+
+        this.namePrefix = namePrefix;
+
+    }
+
+
+    /**
+     * Return the number of threads currently in the pool.
+     */
+    public int getPoolSize() {
+
+        ThreadPoolExecutor executor = this.executor;
+        if (executor == null)
+            return (0);
+        return (executor.getPoolSize());
+
+    }
+
+
+    /**
+     * Return the number of tasks waiting for a thread.
+     */
+    public int getQueueSize() {
+
+        TaskQueue queue = this.queue;
+        if (queue == null)
+            return (0);
+        return (queue.size());
+
+    }
+
+
+    /**
+     * Return the Service owning this executor.
+     */
+    public Service getService() {
+
+        return (this.service);
+
+    }
+
+
+    /**
+     * Set the Service owning this executor.
+     *
+     * @param service The new owning Service
+     */
+    public void setService(Service service) {
+
+        this.service = service;
+
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Execute the specified task on one of the threads of this pool.
+     * Return <code>false</code> if the task was rejected.
+     *
+     * @param task The task to be executed
+     */
+    public boolean execute(Runnable task) {
+
+        ThreadPoolExecutor executor = this.executor;
+        if (executor == null)
+            return (false);
+        submitted.incrementAndGet();
+        try {
+            executor.execute(new Task(task));
+        } catch (RejectedExecutionException e) {
+            submitted.decrementAndGet();
+            return (false);
+        }
+        return (true);
+
+    }
+
+
+    /**
+     * Return a String representation of this component.
+     */
+    public String toString() {
+
+        StringBuffer sb = new StringBuffer("StandardThreadExecutor[");
+        sb.append(name);
+        sb.append("]");
+        return (sb.toString());
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Apply the current number of threads to the pool, if started.  The
+     * core size may never exceed the maximum size, even temporarily.
+     */
+    private synchronized void resize() {
+
+        ThreadPoolExecutor executor = this.executor;
+        if (executor == null)
+            return;
+        int core = Math.min(minSpareThreads, maxThreads);
+        if (maxThreads < executor.getCorePoolSize()) {
+            executor.setCorePoolSize(core);
+            executor.setMaximumPoolSize(maxThreads);
+        } else {
+            executor.setMaximumPoolSize(maxThreads);
+            executor.setCorePoolSize(core);
+        }
+
+    }
+
+
+    /**
+     * Log a message on the Logger of the Container of our Service (if any).
+     *
+     * @param message Message to be logged
+     * @param throwable Associated exception
+     */
+    private void log(String message, Throwable throwable) {
+
+        Logger logger = null;
+        Container container = null;
+        if (service != null)
+            container = service.getContainer();
+        if (container != null)
+            logger = container.getLogger();
+        if (logger != null)
+            logger.log("StandardThreadExecutor[" + name + "]: " + message,
+                       throwable);
+        else {
+            System.out.println("StandardThreadExecutor[" + name + "]: " +
+                               message);
+            throwable.printStackTrace(System.out);
+        }
+
+    }
+
+
+    // ------------------------------------------------------ Lifecycle Methods
+
+
+    /**
+     * Add a lifecycle event listener to this component.
+     *
+     * @param listener The listener to add
+     */
+    public void addLifecycleListener(LifecycleListener listener) {
+
+        lifecycle.addLifecycleListener(listener);
+
+    }
+
+
+    /**
+     * Get the lifecycle listeners associated with this lifecycle. If this
+     * Lifecycle has no listeners registered, a zero-length array is returned.
+     */
+    public LifecycleListener[] findLifecycleListeners() {
+
+        return lifecycle.findLifecycleListeners();
+
+    }
+
+
+    /**
+     * Remove a lifecycle event listener from this component.
+     *
+     * @param listener The listener to remove
+     */
+    public void removeLifecycleListener(LifecycleListener listener) {
+
+        lifecycle.removeLifecycleListener(listener);
+
+    }
+
+
+    /**
+     * Start the minimum number of spare threads of this pool.
+     *
+     * @exception LifecycleException if this component detects a fatal error
+     *  that prevents this component from being used
+     */
+    public void start() throws LifecycleException {
+
+        if (started)
+            throw new LifecycleException
+                (sm.getString("standardThreadExecutor.alreadyStarted", name));
+        lifecycle.fireLifecycleEvent(BEFORE_START_EVENT, null);
+        lifecycle.fireLifecycleEvent(START_EVENT, null);
+
+        started = true;
+        TaskQueue queue = new TaskQueue(maxQueueSize);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor
+            (Math.min(minSpareThreads, maxThreads), maxThreads,
+             maxIdleTime, TimeUnit.MILLISECONDS, queue,
+             new TaskThreadFactory(), new TaskRejectedHandler());
+        queue.setExecutor(executor);
+        executor.prestartAllCoreThreads();
+        this.queue = queue;
+        this.executor = executor;
+
+        lifecycle.fireLifecycleEvent(AFTER_START_EVENT, null);
+
+    }
+
+
+    /**
+     * Stop accepting new tasks.  The threads of this pool exit once the
+     * tasks already queued have been executed.
+     *
+     * @exception LifecycleException if this component detects a fatal error
+     *  that needs to be reported
+     */
+    public void stop() throws LifecycleException {
+
+        if (!started)
+            throw new LifecycleException
+                (sm.getString("standardThreadExecutor.notStarted", name));
+        lifecycle.fireLifecycleEvent(BEFORE_STOP_EVENT, null);
+        lifecycle.fireLifecycleEvent(STOP_EVENT, null);
+
+        started = false;
+        executor.shutdown();
+        executor = null;
+        queue = null;
+
+        lifecycle.fireLifecycleEvent(AFTER_STOP_EVENT, null);
+
+    }
+
+
+    // ---------------------------------------------------------- Inner Classes
+
+
+    /**
+     * A task accepted by this pool, logging the exceptions thrown by the
+     * task it wraps, and keeping count of the tasks not completed yet.
+     */
+    private final class Task implements Runnable {
+
+        private Runnable task = null;
+
+        Task(Runnable task) {
+            this.task = task;
+        }
+
+        public void run() {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                log("Exception executing " + task, t);
+            } finally {
+                submitted.decrementAndGet();
+            }
+        }
+
+    }
+
+
+    /**
+     * The queue of the pool, which refuses tasks while no thread is idle
+     * and the pool can still grow, so that the pool creates a thread
+     * instead of queueing them.
+     */
+    private final class TaskQueue extends LinkedBlockingQueue {
+
+        private ThreadPoolExecutor parent = null;
+
+        TaskQueue(int capacity) {
+            super(Math.max(capacity, 1));
+        }
+
+        void setExecutor(ThreadPoolExecutor parent) {
+            this.parent = parent;
+        }
+
+        /**
+         * Queue the specified task even though the pool can still grow,
+         * returning <code>false</code> if the queue is full.
+         */
+        boolean force(Object task) {
+            return (super.offer(task));
+        }
+
+        public boolean offer(Object task) {
+            int poolSize = parent.getPoolSize();
+            if ((submitted.get() <= poolSize)
+                || (poolSize >= parent.getMaximumPoolSize()))
+                return (super.offer(task));
+            return (false);
+        }
+
+    }
+
+
+    /**
+     * Queue the tasks refused because the pool could not grow after all,
+     * which happens when other threads created the last threads first.
+     */
+    private final class TaskRejectedHandler
+        implements RejectedExecutionHandler {
+
+        public void rejectedExecution(Runnable task,
+                                      ThreadPoolExecutor executor) {
+            if (executor.isShutdown()
+                || !((TaskQueue) executor.getQueue()).force(task))
+                throw new RejectedExecutionException();
+        }
+
+    }
+
+
+    /**
+     * Create the threads of this pool.
+     */
+    private final class TaskThreadFactory implements ThreadFactory {
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread
+                (runnable, namePrefix + threadNumber.incrementAndGet());
+            thread.setDaemon(daemon);
+            return (thread);
+        }
+
+    }
+
+
+}
@@ -78,6 +78,7 @@ import org.apache.catalina.Container;
 import org.apache.catalina.Context;
 import org.apache.catalina.DefaultContext;
 import org.apache.catalina.Engine;
+import org.apache.catalina.Executor;
 import org.apache.catalina.Group;
 import org.apache.catalina.Host;
 import org.apache.catalina.Loader;
@@ -131,6 +132,8 @@ public class MBeanUtils {
           "Http10Connector" },
         { "org.apache.catalina.connector.http.HttpConnector",
           "Http11Connector" },
+        { "org.apache.catalina.connector.http.NioHttpConnector",
+          "Http11Connector" },
         { "org.apache.catalina.users.JDBCGroup",
           "Group" },
         { "org.apache.catalina.users.JDBCRole",
@@ -394,6 +397,35 @@ public class MBeanUtils {
     }
 
 
+    /**
+     * Create, register, and return an MBean for this
+     * <code>Executor</code> object.
+     *
+     * @param executor The Executor to be managed
+     * @param service The Service owning this Executor
+     *
+     * @exception Exception if an MBean cannot be created or registered
+     */
+    public static ModelMBean createMBean(Executor executor, Service service)
+        throws Exception {
+
+        String mname = createManagedName(executor);
+        ManagedBean managed = registry.findManagedBean(mname);
+        if (managed == null) {
+            Exception e = new Exception("ManagedBean is not found with "+mname);
+            throw new MBeanException(e);
+        }
+        String domain = managed.getDomain();
+        if (domain == null)
+            domain = mserver.getDefaultDomain();
+        ModelMBean mbean = managed.createMBean(executor);
+        ObjectName oname = createObjectName(domain, executor, service);
+        mserver.registerMBean(mbean, oname);
+        return (mbean);
+
+    }
+
+
     /**
      * Create, register, and return an MBean for this
      * <code>Group</code> object.
@@ -1121,6 +1153,30 @@ public class MBeanUtils {
     }
 
 
+    /**
+     * Create an <code>ObjectName</code> for this
+     * <code>Executor</code> object.
+     *
+     * @param domain Domain in which this name is to be created
+     * @param executor The Executor to be named
+     * @param service The Service owning this Executor
+     *
+     * @exception MalformedObjectNameException if a name cannot be created
+     */
+    public static ObjectName createObjectName(String domain,
+                                              Executor executor,
+                                              Service service)
+        throws MalformedObjectNameException {
+
+        ObjectName name = null;
+        name = new ObjectName(domain + ":type=Executor,name=" +
+                              executor.getName() + ",service=" +
+                              service.getName());
+        return (name);
+
+    }
+
+
     /**
      * Create an <code>ObjectName</code> for this
      * <code>Group</code> object.
@@ -1840,6 +1896,32 @@ public class MBeanUtils {
     }
 
 
+    /**
+     * Deregister the MBean for this
+     * <code>Executor</code> object.
+     *
+     * @param executor The Executor to be managed
+     * @param service The Service owning this Executor
+     *
+     * @exception Exception if an MBean cannot be deregistered
+     */
+    public static void destroyMBean(Executor executor, Service service)
+        throws Exception {
+
+        String mname = createManagedName(executor);
+        ManagedBean managed = registry.findManagedBean(mname);
+        if (managed == null) {
+            return;
+        }
+        String domain = managed.getDomain();
+        if (domain == null)
+            domain = mserver.getDefaultDomain();
+        ObjectName oname = createObjectName(domain, executor, service);
+        mserver.unregisterMBean(oname);
+
+    }
+
+
     /**
      * Deregister the MBean for this
      * <code>Group</code> object.
@@ -75,6 +75,7 @@ import org.apache.catalina.ContainerListener;
 import org.apache.catalina.Context;
 import org.apache.catalina.DefaultContext;
 import org.apache.catalina.Engine;
+import org.apache.catalina.Executor;
 import org.apache.catalina.Globals;
 import org.apache.catalina.Host;
 import org.apache.catalina.Loader;
@@ -761,6 +762,14 @@ public class ServerLifecycleListener
             ((StandardService) service).addPropertyChangeListener(this);
         }
 
+        // Create the MBeans for the shared Executors
+        Executor executors[] = service.findExecutors();
+        for (int j = 0; j < executors.length; j++) {
+            if (debug >= 3)
+                log("Creating MBean for Executor " + executors[j]);
+            MBeanUtils.createMBean(executors[j], service);
+        }
+
         // Create the MBeans for the corresponding Connectors
         Connector connectors[] = service.findConnectors();
         for (int j = 0; j < connectors.length; j++) {
@@ -1194,6 +1203,14 @@ public class ServerLifecycleListener
             destroyMBeans(connectors[j], service);
         }
 
+        // Deregister the MBeans for the shared Executors
+        Executor executors[] = service.findExecutors();
+        for (int j = 0; j < executors.length; j++) {
+            if (debug >= 3)
+                log("Destroying MBean for Executor " + executors[j]);
+            MBeanUtils.destroyMBean(executors[j], service);
+        }
+
         // Deregister the MBean for the Service itself
         if (debug >= 2) {
             log("Destroying MBean for Service " + service);
@@ -0,0 +1,168 @@
+package org.apache.catalina.net;
+
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.UnrecoverableKeyException;
+import java.security.KeyManagementException;
+import java.security.cert.CertificateException;
+import org.apache.catalina.net.ServerSocketFactory;
+import org.apache.catalina.util.ReusePort;
+
+
+/**
+ * Server socket factory which returns server sockets backed by a
+ * <code>ServerSocketChannel</code>.  The sockets accepted by these server
+ * sockets behave like regular blocking sockets, but also expose their
+ * <code>SocketChannel</code>, which allows a connector to wait for input on
+ * idle connections using a <code>Selector</code>.
+ */
+
+public final class ChannelServerSocketFactory implements ServerSocketFactory {
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * Should the <code>SO_REUSEPORT</code> option be enabled on the server
+     * sockets, so that several of them can be bound to the same port?
+     */
+    private boolean reusePort = false;
+
+
+    // ------------------------------------------------------------- Properties
+
+
+    /**
+     * Return <code>true</code> if the <code>SO_REUSEPORT</code> option is
+     * enabled on the server sockets.
+     */
+    public boolean getReusePort() {
+
+        return (this.reusePort);
+
+    }
+
+
+    /**
+     * Set the flag enabling the <code>SO_REUSEPORT</code> option on the
+     * server sockets, which requires support from the JVM and from the
+     * operating system (see <code>ReusePort.isSupported()</code>).
+     *
+     * @param reusePort The new flag value
+     */
+    public void setReusePort(boolean reusePort) {
+
+        this.reusePort = reusePort;
+
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Returns a server socket which uses all network interfaces on
+     * the host, and is bound to a the specified port.
+     *
+     * @param port the port to listen to
+     *
+     * @exception IOException                input/output or network error
+     * @exception KeyStoreException          error instantiating the
+     *                                       KeyStore from file (SSL only)
+     * @exception NoSuchAlgorithmException   KeyStore algorithm unsupported
+     *                                       by current provider (SSL only)
+     * @exception CertificateException       general certificate error (SSL only)
+     * @exception UnrecoverableKeyException  internal KeyStore problem with
+     *                                       the certificate (SSL only)
+     * @exception KeyManagementException     problem in the key management
+     *                                       layer (SSL only)
+     */
+    public ServerSocket createSocket (int port)
+    throws IOException, KeyStoreException, NoSuchAlgorithmException,
+           CertificateException, UnrecoverableKeyException,
+           KeyManagementException {
+
+        return (createSocket(port, 50, null));
+
+    }
+
+
+    /**
+     * Returns a server socket which uses all network interfaces on
+     * the host, is bound to a the specified port, and uses the
+     * specified connection backlog.
+     *
+     * @param port the port to listen to
+     * @param backlog how many connections are queued
+     *
+     * @exception IOException                input/output or network error
+     * @exception KeyStoreException          error instantiating the
+     *                                       KeyStore from file (SSL only)
+     * @exception NoSuchAlgorithmException   KeyStore algorithm unsupported
+     *                                       by current provider (SSL only)
+     * @exception CertificateException       general certificate error (SSL only)
+     * @exception UnrecoverableKeyException  internal KeyStore problem with
+     *                                       the certificate (SSL only)
+     * @exception KeyManagementException     problem in the key management
+     *                                       layer (SSL only)
+     */
+    public ServerSocket createSocket (int port, int backlog)
+    throws IOException, KeyStoreException, NoSuchAlgorithmException,
+           CertificateException, UnrecoverableKeyException,
+           KeyManagementException {
+
+        return (createSocket(port, backlog, null));
+
+    }
+
+
+    /**
+     * Returns a server socket which uses only the specified network
+     * interface on the local host, is bound to a the specified port,
+     * and uses the specified connection backlog.
+     *
+     * @param port the port to listen to
+     * @param backlog how many connections are queued
+     * @param ifAddress the network interface address to use, or
+     *  <code>null</code> for all addresses
+     *
+     * @exception IOException                input/output or network error
+     * @exception KeyStoreException          error instantiating the
+     *                                       KeyStore from file (SSL only)
+     * @exception NoSuchAlgorithmException   KeyStore algorithm unsupported
+     *                                       by current provider (SSL only)
+     * @exception CertificateException       general certificate error (SSL only)
+     * @exception UnrecoverableKeyException  internal KeyStore problem with
+     *                                       the certificate (SSL only)
+     * @exception KeyManagementException     problem in the key management
+     *                                       layer (SSL only)
+     */
+    public ServerSocket createSocket (int port, int backlog,
+                                      InetAddress ifAddress)
+    throws IOException, KeyStoreException, NoSuchAlgorithmException,
+           CertificateException, UnrecoverableKeyException,
+           KeyManagementException {
+
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        ServerSocket socket = channel.socket();
+        try {
+            if (reusePort)
+                ReusePort.enable(channel);
+            socket.bind(new InetSocketAddress(ifAddress, port), backlog);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return (socket);
+
+    }
+
+
+}
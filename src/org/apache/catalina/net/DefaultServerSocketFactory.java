@@ -67,6 +67,7 @@ package org.apache.catalina.net;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
@@ -74,6 +75,7 @@ import java.security.UnrecoverableKeyException;
 import java.security.KeyManagementException;
 import java.security.cert.CertificateException;
 import org.apache.catalina.net.ServerSocketFactory;
+import org.apache.catalina.util.ReusePort;
 
 
 /**
@@ -87,6 +89,44 @@ import org.apache.catalina.net.ServerSocketFactory;
 public final class DefaultServerSocketFactory implements ServerSocketFactory {
 
 
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * Should the <code>SO_REUSEPORT</code> option be enabled on the server
+     * sockets, so that several of them can be bound to the same port?
+     */
+    private boolean reusePort = false;
+
+
+    // ------------------------------------------------------------- Properties
+
+
+    /**
+     * Return <code>true</code> if the <code>SO_REUSEPORT</code> option is
+     * enabled on the server sockets.
+     */
+    public boolean getReusePort() {
+
+        return (this.reusePort);
+
+    }
+
+
+    /**
+     * Set the flag enabling the <code>SO_REUSEPORT</code> option on the
+     * server sockets, which requires support from the JVM and from the
+     * operating system (see <code>ReusePort.isSupported()</code>).
+     *
+     * @param reusePort The new flag value
+     */
+    public void setReusePort(boolean reusePort) {
+
+        this.reusePort = reusePort;
+
+    }
+
+
     // --------------------------------------------------------- Public Methods
 
 
@@ -144,6 +184,8 @@ public final class DefaultServerSocketFactory implements ServerSocketFactory {
            CertificateException, UnrecoverableKeyException,
            KeyManagementException {
 
+        if (reusePort)
+            return (createSocket(port, backlog, null));
         return (new ServerSocket(port, backlog));
 
     }
@@ -176,7 +218,18 @@ public final class DefaultServerSocketFactory implements ServerSocketFactory {
            CertificateException, UnrecoverableKeyException,
            KeyManagementException {
 
-        return (new ServerSocket(port, backlog, ifAddress));
+        if (!reusePort)
+            return (new ServerSocket(port, backlog, ifAddress));
+
+        ServerSocket socket = new ServerSocket();
+        try {
+            ReusePort.enable(socket);
+            socket.bind(new InetSocketAddress(ifAddress, port), backlog);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return (socket);
 
     }
 
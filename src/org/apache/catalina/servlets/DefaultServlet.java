@@ -102,6 +102,7 @@ import javax.naming.directory.Attributes;
 import org.apache.naming.resources.Resource;
 import org.apache.naming.resources.ResourceAttributes;
 import org.apache.catalina.Globals;
+import org.apache.catalina.connector.ResponseFacade;
 import org.apache.catalina.util.FastHttpDateFormat;
 import org.apache.catalina.util.MD5Encoder;
 import org.apache.catalina.util.ServerInfo;
@@ -155,6 +156,14 @@ public class DefaultServlet
     protected int output = 2048;
 
 
+    /**
+     * Minimum size in kilobytes of the resources which are written directly
+     * from the file system by the connector when it supports it.  A
+     * negative value disables this feature.
+     */
+    protected int sendfileSize = 48;
+
+
     /**
      * The set of welcome files for this web application
      */
@@ -285,6 +294,12 @@ public class DefaultServlet
         } catch (Throwable t) {
             ;
         }
+        try {
+            value = getServletConfig().getInitParameter("sendfileSize");
+            sendfileSize = Integer.parseInt(value);
+        } catch (Throwable t) {
+            ;
+        }
 
         // Sanity check on the specified buffer sizes
         if (input < 256)
@@ -1061,7 +1076,9 @@ public class DefaultServlet
                     // Silent catch
                 }
                 if (ostream != null) {
-                    copy(resourceInfo, ostream);
+                    if (!checkSendfile(request, response, resourceInfo,
+                                       0, contentLength))
+                        copy(resourceInfo, ostream);
                 } else {
                     copy(resourceInfo, writer);
                 }
@@ -1099,7 +1116,9 @@ public class DefaultServlet
                         // Silent catch
                     }
                     if (ostream != null) {
-                        copy(resourceInfo, ostream, range);
+                        if (!checkSendfile(request, response, resourceInfo,
+                                           range.start, range.end + 1))
+                            copy(resourceInfo, ostream, range);
                     } else {
                         copy(resourceInfo, writer, range);
                     }
@@ -1712,6 +1731,54 @@ public class DefaultServlet
     }
 
 
+    /**
+     * Check if the connector can write the specified region of the resource
+     * directly from the file system, and if so, ask it to do so once the
+     * response headers have been sent.  This is only possible when the
+     * resource is stored in a file, when the response has not been wrapped
+     * (by a filter or a request dispatcher), and when nothing has been
+     * written to the response yet.
+     *
+     * @param request The servlet request we are processing
+     * @param response The servlet response we are creating
+     * @param resourceInfo The ResourceInfo object
+     * @param start Offset of the first byte to write
+     * @param end Offset following the last byte to write
+     * @return <code>true</code> if the connector will write the content
+     */
+    protected boolean checkSendfile(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    ResourceInfo resourceInfo,
+                                    long start, long end) {
+
+        if ((sendfileSize < 0) || resourceInfo.collection
+            || (end - start < sendfileSize * 1024L)
+            || (resourceInfo.attributes == null)
+            || !(resourceInfo.attributes instanceof ResourceAttributes)
+            || !(response instanceof ResponseFacade)
+            || response.isCommitted()
+            || (request.getAttribute(Globals.REQUEST_URI_ATTR) != null)
+            || !Boolean.TRUE.equals(request.getAttribute
+                                    (Globals.SENDFILE_SUPPORTED_ATTR)))
+            return (false);
+
+        String canonicalPath = ((ResourceAttributes) resourceInfo.attributes)
+            .getCanonicalPath();
+        if (canonicalPath == null)
+            return (false);
+
+        if (debug > 0)
+            log("DefaultServlet.checkSendfile:  '" + canonicalPath + "' "
+                + start + "-" + end);
+        request.setAttribute(Globals.SENDFILE_FILENAME_ATTR, canonicalPath);
+        request.setAttribute(Globals.SENDFILE_FILE_START_ATTR,
+                             new Long(start));
+        request.setAttribute(Globals.SENDFILE_FILE_END_ATTR, new Long(end));
+        return (true);
+
+    }
+
+
     /**
      * Copy the contents of the specified input stream to the specified
      * output stream, and ensure that both streams are closed before returning
@@ -317,6 +317,14 @@ public class Catalina {
                             "addLifecycleListener",
                             "org.apache.catalina.LifecycleListener");
 
+        digester.addObjectCreate("Server/Service/Executor",
+                                 "org.apache.catalina.core.StandardThreadExecutor",
+                                 "className");
+        digester.addSetProperties("Server/Service/Executor");
+        digester.addSetNext("Server/Service/Executor",
+                            "addExecutor",
+                            "org.apache.catalina.Executor");
+
         digester.addObjectCreate("Server/Service/Connector",
                                  "org.apache.catalina.connector.http.HttpConnector",
                                  "className");
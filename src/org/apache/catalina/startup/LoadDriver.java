@@ -0,0 +1,771 @@
+package org.apache.catalina.startup;
+
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Engine;
+import org.apache.catalina.Host;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.connector.http.HttpConnector;
+import org.apache.catalina.connector.http.NioHttpConnector;
+import org.apache.catalina.logger.SystemOutLogger;
+
+
+/**
+ * Self-contained load test of the servlet container.  An embedded server
+ * is started on the loopback interface, with an HTTP connector and a
+ * single web application deploying reference servlets, and is driven by
+ * a built-in HTTP/1.1 client, so that reproducible numbers can be taken
+ * before and after a change without any external tool.
+ * <p>
+ * The reference cases are:
+ * <ul>
+ * <li><code>static</code> - a static file served by the default
+ *     servlet;</li>
+ * <li><code>dynamic</code> - a small page generated by a servlet;</li>
+ * <li><code>session</code> - a page reading and updating several session
+ *     attributes, each client keeping its own session;</li>
+ * <li><code>burst</code> - bursts of pipelined requests for the small
+ *     page on a keep-alive connection.</li>
+ * </ul>
+ * Each case is warmed up, then measured either in a closed loop, where
+ * each client sends its next request as soon as it receives a response,
+ * or in an open loop, where requests are scheduled at a fixed rate and
+ * their latency counts from their scheduled time, so that queueing in the
+ * server is not hidden by clients slowing down.  The throughput, latency
+ * percentiles and garbage collections are reported for each case, with
+ * the allocations of the server threads: the clients have terminated
+ * when they are measured, and the thread of the driver is left out.
+ * <pre>
+ *   java org.apache.catalina.startup.LoadDriver [-nio] [-clients n]
+ *     [-rate requests/s] [-time seconds] [-warmup seconds] [case ...]
+ * </pre>
+ * If the <code>catalina.home</code> system property is not set, a
+ * temporary directory is used.
+ */
+
+public final class LoadDriver {
+
+
+    // ----------------------------------------------------- Manifest Constants
+
+
+    /**
+     * The reference cases.
+     */
+    private static final String[] CASES =
+    { "static", "dynamic", "session", "burst" };
+
+
+    /**
+     * The number of requests of a keep-alive burst.
+     */
+    private static final int BURST = 16;
+
+
+    /**
+     * The size of the static file, in bytes.
+     */
+    private static final int STATIC_SIZE = 8192;
+
+
+    // ------------------------------------------------------- Static Variables
+
+
+    /**
+     * The number of clients.
+     */
+    private static int clients = 16;
+
+
+    /**
+     * Use the NIO connector?
+     */
+    private static boolean nio = false;
+
+
+    /**
+     * The port of the server.
+     */
+    private static int port = 0;
+
+
+    /**
+     * The rate of the open loop, in requests per second, or zero for a
+     * closed loop.
+     */
+    private static int rate = 0;
+
+
+    /**
+     * The duration of each measurement, in seconds.
+     */
+    private static int time = 30;
+
+
+    /**
+     * The duration of the warm-up of each case, in seconds.
+     */
+    private static int warmup = 10;
+
+
+    // ----------------------------------------------------------- Main Program
+
+
+    public static void main(String args[]) throws Exception {
+
+        ArrayList cases = new ArrayList();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-nio"))
+                nio = true;
+            else if (args[i].equals("-clients") && (i + 1 < args.length))
+                clients = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-rate") && (i + 1 < args.length))
+                rate = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-time") && (i + 1 < args.length))
+                time = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-warmup") && (i + 1 < args.length))
+                warmup = Integer.parseInt(args[++i]);
+            else if (Arrays.asList(CASES).contains(args[i]))
+                cases.add(args[i]);
+            else {
+                usage();
+                return;
+            }
+        }
+        if (cases.isEmpty())
+            cases.addAll(Arrays.asList(CASES));
+
+        Embedded embedded = start();
+        try {
+            System.out.println("Connector: "
+                               + (nio ? "NioHttpConnector" : "HttpConnector")
+                               + ", clients: " + clients + ", "
+                               + ((rate > 0)
+                                  ? ("open loop at " + rate + " requests/s")
+                                  : "closed loop"));
+            Iterator names = cases.iterator();
+            while (names.hasNext()) {
+                String name = (String) names.next();
+                run(name, warmup, false);
+                run(name, time, true);
+            }
+        } finally {
+            embedded.stop();
+        }
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Return the number of bytes allocated so far by all the live threads
+     * but the calling one, which runs the driver, or -1 if the virtual
+     * machine cannot tell.  The allocations of the threads which have
+     * terminated, such as the clients of a finished run, are not counted.
+     */
+    private static long allocated() {
+
+        try {
+            Object bean = ManagementFactory.getThreadMXBean();
+            Class clazz = Class.forName("com.sun.management.ThreadMXBean");
+            Method method = clazz.getMethod("getThreadAllocatedBytes",
+                                            new Class[] { long[].class });
+            long[] ids = ManagementFactory.getThreadMXBean().getAllThreadIds();
+            long[] bytes =
+                (long[]) method.invoke(bean, new Object[] { ids });
+            long self = Thread.currentThread().getId();
+            long total = 0;
+            for (int i = 0; i < bytes.length; i++) {
+                if ((bytes[i] > 0) && (ids[i] != self))
+                    total += bytes[i];
+            }
+            return (total);
+        } catch (Throwable t) {
+            return (-1L);
+        }
+
+    }
+
+
+    /**
+     * Add a servlet of the specified class to the specified context.
+     *
+     * @param context The context
+     * @param name The name of the servlet
+     * @param servletClass The class of the servlet
+     * @param pattern The URL pattern mapped to the servlet
+     */
+    private static Wrapper addServlet(Context context, String name,
+                                      String servletClass, String pattern) {
+
+        Wrapper wrapper = context.createWrapper();
+        wrapper.setName(name);
+        wrapper.setServletClass(servletClass);
+        wrapper.setLoadOnStartup(1);
+        context.addChild(wrapper);
+        context.addServletMapping(pattern, name);
+        return (wrapper);
+
+    }
+
+
+    /**
+     * Return the value of a counter of all the garbage collectors.
+     *
+     * @param time Return the time spent collecting, in milliseconds,
+     *  rather than the number of collections?
+     */
+    private static long collections(boolean time) {
+
+        long total = 0;
+        Iterator beans =
+            ManagementFactory.getGarbageCollectorMXBeans().iterator();
+        while (beans.hasNext()) {
+            GarbageCollectorMXBean bean =
+                (GarbageCollectorMXBean) beans.next();
+            long value =
+                time ? bean.getCollectionTime() : bean.getCollectionCount();
+            if (value > 0)
+                total += value;
+        }
+        return (total);
+
+    }
+
+
+    /**
+     * Return the latency below which the specified fraction of the sorted
+     * latencies fall.
+     */
+    private static long percentile(long[] sorted, double fraction) {
+
+        if (sorted.length == 0)
+            return (0L);
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return (sorted[Math.max(0, Math.min(index, sorted.length - 1))]);
+
+    }
+
+
+    /**
+     * Warm up or measure the specified case, and print the results of a
+     * measurement.
+     *
+     * @param name The name of the case
+     * @param seconds The duration of the run, in seconds
+     * @param report Print the results?
+     */
+    private static void run(String name, int seconds, boolean report)
+        throws Exception {
+
+        long gcCount = collections(false);
+        long gcTime = collections(true);
+        long bytes = allocated();
+
+        long start = System.nanoTime();
+        long end = start + seconds * 1000000000L;
+        AtomicLong sequence = new AtomicLong();
+        Client[] workers = new Client[clients];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Client(name, start, end, sequence);
+            workers[i].start();
+        }
+        for (int i = 0; i < workers.length; i++)
+            workers[i].join();
+        long elapsed = System.nanoTime() - start;
+        if (!report)
+            return;
+
+        // Sample the counters before the driver merges the results
+        gcCount = collections(false) - gcCount;
+        gcTime = collections(true) - gcTime;
+        if (bytes >= 0)
+            bytes = allocated() - bytes;
+
+        int total = 0;
+        long errors = 0;
+        for (int i = 0; i < workers.length; i++) {
+            total += workers[i].getCount();
+            errors += workers[i].getErrors();
+        }
+        long[] latencies = new long[total];
+        int merged = 0;
+        for (int i = 0; i < workers.length; i++)
+            merged += workers[i].copyLatencies(latencies, merged);
+        Arrays.sort(latencies);
+        long requests = latencies.length;
+
+        System.out.println();
+        System.out.println("Case: " + name);
+        System.out.println("  requests:   " + requests + " (" + errors
+                           + " errors)");
+        System.out.println("  throughput: "
+                           + ((requests * 1000000000L) / elapsed)
+                           + " requests/s");
+        System.out.println("  latency:    p50=" + percentile(latencies, 0.5)
+                           + " p99=" + percentile(latencies, 0.99)
+                           + " p99.9=" + percentile(latencies, 0.999)
+                           + " max=" + percentile(latencies, 1.0)
+                           + " (microseconds)");
+        System.out.println("  gc:         " + gcCount + " collections, "
+                           + gcTime + " ms");
+        if (bytes >= 0)
+            System.out.println("  allocated:  " + (bytes / (1024 * 1024))
+                               + " MB, "
+                               + ((requests > 0) ? (bytes / requests) : 0)
+                               + " bytes/request");
+
+    }
+
+
+    /**
+     * Create the reference web application and start the embedded server.
+     */
+    private static Embedded start() throws Exception {
+
+        // Prepare a home and a document base
+        String home = System.getProperty("catalina.home");
+        if (home == null) {
+            File temp = File.createTempFile("catalina", "");
+            temp.delete();
+            temp.mkdirs();
+            home = temp.getAbsolutePath();
+            System.setProperty("catalina.home", home);
+        }
+        File appBase = new File(home, "loadtest");
+        File docBase = new File(appBase, "ROOT");
+        docBase.mkdirs();
+        OutputStream os =
+            new FileOutputStream(new File(docBase, "static.html"));
+        try {
+            byte[] content = new byte[STATIC_SIZE];
+            Arrays.fill(content, (byte) 'x');
+            os.write(content);
+        } finally {
+            os.close();
+        }
+
+        // Find a free port on the loopback interface
+        InetAddress loopback = InetAddress.getByName("127.0.0.1");
+        ServerSocket probe = new ServerSocket(0, 1, loopback);
+        port = probe.getLocalPort();
+        probe.close();
+
+        // Assemble the container hierarchy
+        Embedded embedded = new Embedded(new SystemOutLogger(), null);
+        Engine engine = embedded.createEngine();
+        engine.setDefaultHost("localhost");
+        Host host = embedded.createHost("localhost",
+                                        appBase.getAbsolutePath());
+        engine.addChild(host);
+        Context context =
+            embedded.createContext("", docBase.getAbsolutePath());
+        Wrapper wrapper = addServlet
+            (context, "default",
+             "org.apache.catalina.servlets.DefaultServlet", "/");
+        wrapper.addInitParameter("listings", "false");
+        addServlet(context, "dynamic", DynamicServlet.class.getName(),
+                   "/dynamic");
+        addServlet(context, "session", SessionServlet.class.getName(),
+                   "/session");
+        host.addChild(context);
+        embedded.addEngine(engine);
+
+        // Add a connector on the loopback interface
+        HttpConnector connector =
+            nio ? new NioHttpConnector() : new HttpConnector();
+        connector.setAddress(loopback.getHostAddress());
+        connector.setPort(port);
+        connector.setMaxProcessors(Math.max(clients * 2, 20));
+        embedded.addConnector(connector);
+
+        embedded.start();
+        return (embedded);
+
+    }
+
+
+    /**
+     * Print the usage of this program.
+     */
+    private static void usage() {
+
+        System.out.println("Usage: java org.apache.catalina.startup."
+                           + "LoadDriver [-nio] [-clients n]");
+        System.out.println("  [-rate requests/s] [-time seconds]"
+                           + " [-warmup seconds] [case ...]");
+        System.out.println("Cases: static dynamic session burst");
+
+    }
+
+
+    // --------------------------------------------------------- Inner Classes
+
+
+    /**
+     * A client of the server, with its own keep-alive connection, sending
+     * the requests of a case until the end of a run.
+     */
+    private static final class Client extends Thread {
+
+        Client(String name, long start, long end, AtomicLong sequence) {
+            super("LoadDriver[" + name + "]");
+            setDaemon(true);
+            this.start = start;
+            this.end = end;
+            this.sequence = sequence;
+            if (name.equals("static"))
+                path = "/static.html";
+            else if (name.equals("session"))
+                path = "/session";
+            else
+                path = "/dynamic";
+            if (name.equals("burst"))
+                burst = BURST;
+        }
+
+        /**
+         * The number of requests sent at once.
+         */
+        private int burst = 1;
+
+        /**
+         * The session cookie, if any.
+         */
+        private String cookie = null;
+
+        /**
+         * The time at which the run ends.
+         */
+        private long end = 0L;
+
+        /**
+         * The number of failed requests.
+         */
+        private long errors = 0;
+
+        /**
+         * The input stream of the connection.
+         */
+        private InputStream input = null;
+
+        /**
+         * The latencies of the requests, in microseconds.
+         */
+        private long[] latencies = new long[1024];
+
+        /**
+         * The number of latencies recorded.
+         */
+        private int count = 0;
+
+        /**
+         * The output stream of the connection.
+         */
+        private OutputStream output = null;
+
+        /**
+         * The path of the requests.
+         */
+        private String path = null;
+
+        /**
+         * The sequence of scheduled requests of the open loop.
+         */
+        private AtomicLong sequence = null;
+
+        /**
+         * The connection.
+         */
+        private Socket socket = null;
+
+        /**
+         * The time at which the run starts.
+         */
+        private long start = 0L;
+
+        long getErrors() {
+            return (errors);
+        }
+
+        int getCount() {
+            return (count);
+        }
+
+        int copyLatencies(long[] dest, int offset) {
+            System.arraycopy(latencies, 0, dest, offset, count);
+            return (count);
+        }
+
+        public void run() {
+            while (true) {
+                // Find when the next requests are due
+                long scheduled = System.nanoTime();
+                if (rate > 0) {
+                    long n = sequence.getAndAdd(burst);
+                    scheduled = start + (n * 1000000000L) / rate;
+                    long delay = scheduled - System.nanoTime();
+                    if (delay > 0) {
+                        try {
+                            Thread.sleep(delay / 1000000L,
+                                         (int) (delay % 1000000L));
+                        } catch (InterruptedException e) {
+                            ;
+                        }
+                    }
+                }
+                if (scheduled >= end)
+                    break;
+                try {
+                    exchange(scheduled);
+                } catch (IOException e) {
+                    errors += burst;
+                    close();
+                }
+            }
+            close();
+        }
+
+        /**
+         * Close the connection, if any.
+         */
+        private void close() {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    ;
+                }
+            }
+            socket = null;
+        }
+
+        /**
+         * Send a burst of requests, and read their responses.
+         *
+         * @param scheduled The time from which latencies are measured
+         */
+        private void exchange(long scheduled) throws IOException {
+            if (socket == null) {
+                socket = new Socket(InetAddress.getByName("127.0.0.1"), port);
+                socket.setTcpNoDelay(true);
+                input = new BufferedInputStream(socket.getInputStream());
+                output = socket.getOutputStream();
+            }
+            StringBuffer sb = new StringBuffer();
+            for (int i = 0; i < burst; i++) {
+                sb.append("GET ");
+                sb.append(path);
+                sb.append(" HTTP/1.1\r\nHost: localhost\r\n");
+                sb.append("User-Agent: LoadDriver\r\n");
+                if (cookie != null) {
+                    sb.append("Cookie: ");
+                    sb.append(cookie);
+                    sb.append("\r\n");
+                }
+                sb.append("\r\n");
+            }
+            output.write(sb.toString().getBytes("ISO-8859-1"));
+            output.flush();
+            boolean close = false;
+            for (int i = 0; i < burst; i++) {
+                if (close)
+                    throw new EOFException();
+                close = !readResponse();
+                record((System.nanoTime() - scheduled) / 1000L);
+            }
+            if (close)
+                close();
+        }
+
+        /**
+         * Read a line of the response, without its end of line.
+         */
+        private String readLine() throws IOException {
+            StringBuffer sb = new StringBuffer();
+            while (true) {
+                int b = input.read();
+                if (b < 0)
+                    throw new EOFException();
+                if (b == '\n')
+                    break;
+                if (b != '\r')
+                    sb.append((char) b);
+            }
+            return (sb.toString());
+        }
+
+        /**
+         * Read a response, and return <code>true</code> if the connection
+         * can be kept alive.
+         */
+        private boolean readResponse() throws IOException {
+            String status = readLine();
+            if (!status.startsWith("HTTP/1.1 2"))
+                errors++;
+            long length = -1;
+            boolean chunked = false;
+            boolean keepAlive = true;
+            while (true) {
+                String header = readLine();
+                if (header.length() == 0)
+                    break;
+                int colon = header.indexOf(':');
+                if (colon < 0)
+                    continue;
+                String name = header.substring(0, colon).trim();
+                String value = header.substring(colon + 1).trim();
+                if (name.equalsIgnoreCase("Content-Length"))
+                    length = Long.parseLong(value);
+                else if (name.equalsIgnoreCase("Transfer-Encoding"))
+                    chunked = value.equalsIgnoreCase("chunked");
+                else if (name.equalsIgnoreCase("Connection"))
+                    keepAlive = !value.equalsIgnoreCase("close");
+                else if (name.equalsIgnoreCase("Set-Cookie")) {
+                    int semicolon = value.indexOf(';');
+                    cookie = (semicolon < 0)
+                        ? value : value.substring(0, semicolon);
+                }
+            }
+            if (chunked) {
+                while (true) {
+                    String size = readLine();
+                    int semicolon = size.indexOf(';');
+                    if (semicolon >= 0)
+                        size = size.substring(0, semicolon);
+                    long n = Long.parseLong(size.trim(), 16);
+                    if (n == 0)
+                        break;
+                    skip(n);
+                    readLine();
+                }
+                while (readLine().length() > 0)
+                    ;
+            } else if (length >= 0) {
+                skip(length);
+            } else {
+                while (input.read() >= 0)
+                    ;
+                keepAlive = false;
+            }
+            return (keepAlive);
+        }
+
+        /**
+         * Record the latency of a request.
+         */
+        private void record(long micros) {
+            if (count == latencies.length) {
+                long[] grown = new long[count * 2];
+                System.arraycopy(latencies, 0, grown, 0, count);
+                latencies = grown;
+            }
+            latencies[count++] = micros;
+        }
+
+        /**
+         * Skip the specified number of bytes of the response.
+         */
+        private void skip(long n) throws IOException {
+            while (n > 0) {
+                long skipped = input.skip(n);
+                if (skipped <= 0) {
+                    if (input.read() < 0)
+                        throw new EOFException();
+                    skipped = 1;
+                }
+                n -= skipped;
+            }
+        }
+
+    }
+
+
+    /**
+     * Servlet generating a small page.
+     */
+    public static final class DynamicServlet extends HttpServlet {
+
+        public void doGet(HttpServletRequest request,
+                          HttpServletResponse response)
+            throws IOException, ServletException {
+
+            response.setContentType("text/html");
+            PrintWriter writer = response.getWriter();
+            writer.println("<html><head><title>Dynamic</title></head>");
+            writer.println("<body><h1>Dynamic page</h1><ul>");
+            for (int i = 0; i < 10; i++) {
+                writer.print("<li>Item ");
+                writer.print(i);
+                writer.print(" of request ");
+                writer.print(request.getRequestURI());
+                writer.println("</li>");
+            }
+            writer.println("</ul></body></html>");
+
+        }
+
+    }
+
+
+    /**
+     * Servlet reading and updating several attributes of the session of
+     * the client.
+     */
+    public static final class SessionServlet extends HttpServlet {
+
+        public void doGet(HttpServletRequest request,
+                          HttpServletResponse response)
+            throws IOException, ServletException {
+
+            HttpSession session = request.getSession(true);
+            Integer visits = (Integer) session.getAttribute("visits");
+            int n = (visits == null) ? 1 : visits.intValue() + 1;
+            session.setAttribute("visits", new Integer(n));
+            for (int i = 0; i < 8; i++) {
+                String name = "attribute" + i;
+                if (session.getAttribute(name) == null)
+                    session.setAttribute(name, new byte[512]);
+            }
+            session.setAttribute("lastPath", request.getRequestURI());
+
+            response.setContentType("text/html");
+            PrintWriter writer = response.getWriter();
+            writer.print("<html><body>Visit ");
+            writer.print(n);
+            writer.print(" of session ");
+            writer.print(session.getId());
+            writer.println("</body></html>");
+
+        }
+
+    }
+
+
+}
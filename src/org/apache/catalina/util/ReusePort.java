@@ -0,0 +1,175 @@
+package org.apache.catalina.util;
+
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Collection;
+
+
+/**
+ * Utility class enabling the <code>SO_REUSEPORT</code> option on server
+ * sockets which are not bound yet, when the JVM and the operating system
+ * support it (Linux does).  Several server sockets bound to the same
+ * address and port with this option enabled share the incoming
+ * connections, which the kernel distributes among them.  The option is
+ * looked up by reflection, so that this class can be compiled and run on
+ * older JVMs.
+ */
+
+public final class ReusePort {
+
+
+    // ------------------------------------------------------- Static Variables
+
+
+    /**
+     * The <code>StandardSocketOptions.SO_REUSEPORT</code> option, or
+     * <code>null</code> if this JVM does not know about it.
+     */
+    private static Object option = null;
+
+
+    /**
+     * The <code>NetworkChannel.setOption()</code> method.
+     */
+    private static Method setChannelOption = null;
+
+
+    /**
+     * The <code>ServerSocket.setOption()</code> method.
+     */
+    private static Method setSocketOption = null;
+
+
+    /**
+     * Has the support of the option by the operating system been checked?
+     */
+    private static boolean checked = false;
+
+
+    /**
+     * Is the option supported by the operating system?
+     */
+    private static boolean supported = false;
+
+
+    static {
+        try {
+            Class socketOption = Class.forName("java.net.SocketOption");
+            Class[] types = new Class[] { socketOption, Object.class };
+            setSocketOption = ServerSocket.class.getMethod("setOption", types);
+            setChannelOption = Class.forName
+                ("java.nio.channels.NetworkChannel").getMethod("setOption",
+                                                               types);
+            option = Class.forName("java.net.StandardSocketOptions")
+                .getField("SO_REUSEPORT").get(null);
+        } catch (Throwable t) {
+            option = null;
+        }
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Return <code>true</code> if the <code>SO_REUSEPORT</code> option can
+     * be enabled on server sockets.
+     */
+    public static synchronized boolean isSupported() {
+
+        if (checked)
+            return (supported);
+        checked = true;
+        if (option == null)
+            return (false);
+        ServerSocket socket = null;
+        try {
+            socket = new ServerSocket();
+            Method supportedOptions = ServerSocket.class.getMethod
+                ("supportedOptions", new Class[0]);
+            Collection options = (Collection)
+                supportedOptions.invoke(socket, new Object[0]);
+            supported = options.contains(option);
+        } catch (Throwable t) {
+            supported = false;
+        } finally {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    ;
+                }
+            }
+        }
+        return (supported);
+
+    }
+
+
+    /**
+     * Enable the <code>SO_REUSEPORT</code> option on the specified server
+     * socket, which must not be bound yet.
+     *
+     * @param socket The server socket
+     *
+     * @exception IOException if the option cannot be enabled
+     */
+    public static void enable(ServerSocket socket) throws IOException {
+
+        enable(setSocketOption, socket);
+
+    }
+
+
+    /**
+     * Enable the <code>SO_REUSEPORT</code> option on the specified server
+     * socket channel, which must not be bound yet.
+     *
+     * @param channel The server socket channel
+     *
+     * @exception IOException if the option cannot be enabled
+     */
+    public static void enable(ServerSocketChannel channel)
+        throws IOException {
+
+        enable(setChannelOption, channel);
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Invoke the specified <code>setOption()</code> method to enable the
+     * option on the specified target.
+     *
+     * @param method The method to invoke
+     * @param target The socket or channel
+     *
+     * @exception IOException if the option cannot be enabled
+     */
+    private static void enable(Method method, Object target)
+        throws IOException {
+
+        if (!isSupported())
+            throw new IOException("SO_REUSEPORT is not supported");
+        try {
+            method.invoke(target, new Object[] { option, Boolean.TRUE });
+        } catch (InvocationTargetException e) {
+            Throwable t = e.getTargetException();
+            if (t instanceof IOException)
+                throw (IOException) t;
+            throw new IOException("SO_REUSEPORT: " + t);
+        } catch (Throwable t) {
+            throw new IOException("SO_REUSEPORT: " + t);
+        }
+
+    }
+
+
+}
@@ -0,0 +1,82 @@
+package org.apache.catalina.util;
+
+
+import java.lang.reflect.Method;
+
+
+/**
+ * Utility class starting tasks on virtual threads when the JVM supports
+ * them, and on new daemon platform threads otherwise.  Virtual threads are
+ * looked up by reflection, so that this class can be compiled and run on
+ * older JVMs.
+ */
+
+public final class VirtualThreads {
+
+
+    // ------------------------------------------------------- Static Variables
+
+
+    /**
+     * The <code>Thread.startVirtualThread(Runnable)</code> method, or
+     * <code>null</code> if this JVM does not support virtual threads.
+     */
+    private static Method startVirtualThread = null;
+
+
+    static {
+        try {
+            startVirtualThread = Thread.class.getMethod
+                ("startVirtualThread", new Class[] { Runnable.class });
+        } catch (Throwable t) {
+            startVirtualThread = null;
+        }
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Return <code>true</code> if this JVM supports virtual threads.
+     */
+    public static boolean isSupported() {
+
+        return (startVirtualThread != null);
+
+    }
+
+
+    /**
+     * Run the specified task on a new thread, which is a virtual thread if
+     * this JVM supports them.
+     *
+     * @param task The task to run
+     * @param name The name of the new thread
+     */
+    public static Thread start(Runnable task, String name) {
+
+        Thread thread = null;
+        if (startVirtualThread != null) {
+            try {
+                thread = (Thread) startVirtualThread.invoke
+                    (null, new Object[] { task });
+            } catch (Throwable t) {
+                // Fall back to platform threads from now on
+                startVirtualThread = null;
+            }
+        }
+        if (thread != null) {
+            thread.setName(name);
+            return (thread);
+        }
+
+        thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return (thread);
+
+    }
+
+
+}
@@ -73,6 +73,7 @@ import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.apache.catalina.Globals;
 import org.apache.catalina.HttpResponse;
 import org.apache.catalina.Lifecycle;
 import org.apache.catalina.LifecycleException;
@@ -100,6 +101,8 @@ import org.apache.catalina.util.StringManager;
  * <li><b>%b</b> - Bytes sent, excluding HTTP headers, or '-' if no bytes
  *     were sent
  * <li><b>%B</b> - Bytes sent, excluding HTTP headers
+ * <li><b>%D</b> - Time taken by the Container to process the request so
+ *     far, in microseconds, or '-' if the connector does not record it
  * <li><b>%h</b> - Remote host name
  * <li><b>%H</b> - Request protocol
  * <li><b>%l</b> - Remote logical username from identd (always returns '-')
@@ -114,6 +117,10 @@ import org.apache.catalina.util.StringManager;
  * <li><b>%u</b> - Remote user that was authenticated
  * <li><b>%U</b> - Requested URL path
  * <li><b>%v</b> - Local server name
+ * <li><b>%{xxx}i</b> - Value of the <code>xxx</code> request header
+ * <li><b>%{xxx}n</b> - Value of the <code>xxx</code> request note, such
+ *     as the times recorded by the connector for the phases of request
+ *     processing (for example <code>org.apache.catalina.time.headers</code>)
  * </ul>
  * <p>In addition, the caller can specify one of the following aliases for
  * commonly utilized patterns:</p>
@@ -123,8 +130,6 @@ import org.apache.catalina.util.StringManager;
  *   <code>%h %l %u %t "%r" %s %b "%{Referer}i" "%{User-Agent}i"</code>
  * </ul>
  *
- * <p><b>FIXME</b> - Improve the parsing so that things like
- * <code>%{xxx}i</code> can be implemented.</p>
  *
  * @author Craig R. McClanahan
  * @author Jason Brittain
@@ -555,7 +560,16 @@ public final class AccessLogValve
             boolean replace = false;
             for (int i = 0; i < pattern.length(); i++) {
                 char ch = pattern.charAt(i);
-                if (replace) {
+                int end = -1;
+                if (replace && (ch == '{'))
+                    end = pattern.indexOf('}', i);
+                if ((end > 0) && (end + 1 < pattern.length())) {
+                    result.append(replace(pattern.substring(i + 1, end),
+                                          pattern.charAt(end + 1),
+                                          request));
+                    i = end + 1;
+                    replace = false;
+                } else if (replace) {
                     result.append(replace(ch, date, request, response));
                     replace = false;
                 } else if (ch == '%') {
@@ -707,6 +721,12 @@ public final class AccessLogValve
                 value = "" + length;
         } else if (pattern == 'B') {
             value = "" + response.getContentLength();
+        } else if (pattern == 'D') {
+            Long start = (Long) request.getNote(Globals.INVOKE_START_NOTE);
+            if (start != null)
+                value = "" + ((System.nanoTime() - start.longValue()) / 1000);
+            else
+                value = "-";
         } else if (pattern == 'h') {
             value = req.getRemoteHost();
         } else if (pattern == 'H') {
@@ -794,6 +814,35 @@ public final class AccessLogValve
     }
 
 
+    /**
+     * Return the replacement text for the specified pattern character,
+     * applied to the specified name.
+     *
+     * @param name The name between braces in the pattern
+     * @param pattern Pattern character identifying the desired text
+     * @param request Request being processed
+     */
+    private String replace(String name, char pattern, Request request) {
+
+        Object value = null;
+        if (pattern == 'i') {
+            ServletRequest req = request.getRequest();
+            if (req instanceof HttpServletRequest)
+                value = ((HttpServletRequest) req).getHeader(name);
+        } else if (pattern == 'n') {
+            value = request.getNote(name);
+        } else {
+            return ("???" + pattern + "???");
+        }
+
+        if (value == null)
+            return ("-");
+        else
+            return (value.toString());
+
+    }
+
+
     /**
      * This method returns a Date object that is accurate to within one
      * second.  If a thread calls this method to get a Date and it's been
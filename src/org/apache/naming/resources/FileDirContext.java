@@ -1139,6 +1139,23 @@ public class FileDirContext extends BaseDirContext {
         }
         
         
+        /**
+         * Get canonical path.
+         * 
+         * @return String the file's canonical path
+         */
+        public String getCanonicalPath() {
+            if (canonicalPath == null) {
+                try {
+                    canonicalPath = file.getCanonicalPath();
+                } catch (IOException e) {
+                    ; // Leave the path unknown
+                }
+            }
+            return canonicalPath;
+        }
+        
+        
     }
 
 
@@ -271,6 +271,12 @@ public class ResourceAttributes implements Attributes {
     protected Attributes attributes = null;
 
 
+    /**
+     * Canonical path of the file backing the resource, if any.
+     */
+    protected String canonicalPath = null;
+
+
     // ------------------------------------------------------------- Properties
 
 
@@ -725,6 +731,27 @@ public class ResourceAttributes implements Attributes {
             attributes.put(ETAG, eTag);
     }
 
+
+    /**
+     * Get canonical path.
+     * 
+     * @return Canonical path of the file backing the resource, or
+     * <code>null</code> if the resource is not stored in a file
+     */
+    public String getCanonicalPath() {
+        return canonicalPath;
+    }
+
+
+    /**
+     * Set canonical path.
+     * 
+     * @param canonicalPath New canonical path value
+     */
+    public void setCanonicalPath(String canonicalPath) {
+        this.canonicalPath = canonicalPath;
+    }
+
     
     // ----------------------------------------------------- Attributes Methods
 